@@ -0,0 +1,359 @@
+/*
+
+Copyright: 2010 Purdue University
+
+This file is distributed under the following terms (MIT/X11 License):
+
+  Permission is hereby granted, free of charge, to any person
+  obtaining a copy of this file and associated documentation
+  files (the "Software"), to deal in the Software without
+  restriction, including without limitation the rights to use,
+  copy, modify, merge, publish, distribute, sublicense, and/or sell
+  copies of the Software, and to permit persons to whom the
+  Software is furnished to do so, subject to the following
+  conditions:
+
+  The above copyright notice and this permission notice shall be
+  included in all copies or substantial portions of the Software.
+
+  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+  OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+package edu.purdue.bbc.io;
+
+import edu.purdue.bbc.util.ParallelUtils;
+import edu.purdue.bbc.util.RangeTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts tables of rows which may be too large to hold in memory, such as
+ * the rows read by a CSVTableReader. Rows are read until they fill the
+ * memory budget, then split between threads, each of which sorts its share
+ * and writes it to a temporary file as a sorted run. Once the input is
+ * exhausted the runs are merged, reading one row at a time from each. When
+ * there are more runs than can be merged at once they are first merged in
+ * groups into longer runs. Input which fits within the memory budget is
+ * sorted without using any files.
+ * <p>
+ * The sort is stable: rows which compare as equal are returned in the order
+ * they were read.
+ */
+public class ExternalSort {
+  private static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+  private static final int MERGE_WIDTH = 128;
+  private static final int MIN_RUN_LENGTH = 1024;
+
+  private Comparator<? super Map<String,String>> comparator;
+  private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+  private File tempDirectory;
+
+  /**
+   * Creates a new ExternalSort.
+   *
+   * @param comparator The Comparator which determines the order of the rows.
+   */
+  public ExternalSort( Comparator<? super Map<String,String>> comparator ) {
+  	this.comparator = comparator;
+  }
+
+  /**
+   * Returns a Comparator which orders rows by the numeric value of a column.
+   * Rows where the column is missing or is not a number are placed last.
+   *
+   * @param key The name of the column.
+   * @param descending Whether larger values should come first.
+   * @return The new Comparator.
+   */
+  public static Comparator<Map<String,String>> byNumber(
+      final String key, final boolean descending ) {
+  	return new Comparator<Map<String,String>>( ) {
+  		public int compare( Map<String,String> a, Map<String,String> b ) {
+  			double x = parse( a.get( key ));
+  			double y = parse( b.get( key ));
+  			if ( Double.isNaN( x ) || Double.isNaN( y ))
+  				return Double.isNaN( x ) ? ( Double.isNaN( y ) ? 0 : 1 ) : -1;
+  			return descending ? Double.compare( y, x ) : Double.compare( x, y );
+  		}
+  	};
+  }
+
+  /**
+   * Returns a Comparator which orders rows by the String value of a column.
+   * Rows where the column is missing are placed last.
+   *
+   * @param key The name of the column.
+   * @param descending Whether later values should come first.
+   * @return The new Comparator.
+   */
+  public static Comparator<Map<String,String>> byString(
+      final String key, final boolean descending ) {
+  	return new Comparator<Map<String,String>>( ) {
+  		public int compare( Map<String,String> a, Map<String,String> b ) {
+  			String x = a.get( key );
+  			String y = b.get( key );
+  			if ( x == null || y == null )
+  				return ( x == null ) ? (( y == null ) ? 0 : 1 ) : -1;
+  			return descending ? y.compareTo( x ) : x.compareTo( y );
+  		}
+  	};
+  }
+
+  private static double parse( String value ) {
+  	if ( value == null )
+  		return Double.NaN;
+  	try {
+  		return Double.parseDouble( value.trim( ));
+  	} catch ( NumberFormatException e ) {
+  		return Double.NaN;
+  	}
+  }
+
+  /**
+   * Sets the approximate number of bytes of rows held in memory while
+   * building the sorted runs. The default is 64 MiB.
+   *
+   * @param bytes The memory budget in bytes.
+   */
+  public void setMemoryBudget( long bytes ) {
+  	this.memoryBudget = bytes;
+  }
+
+  /**
+   * Returns the approximate number of bytes of rows held in memory while
+   * building the sorted runs.
+   *
+   * @return The memory budget in bytes.
+   */
+  public long getMemoryBudget( ) {
+  	return this.memoryBudget;
+  }
+
+  /**
+   * Sets the directory the sorted runs are written to.
+   *
+   * @param directory The directory, or null for the default temporary
+   *	directory.
+   */
+  public void setTempDirectory( File directory ) {
+  	this.tempDirectory = directory;
+  }
+
+  /**
+   * Sorts rows and writes them to a CSVTableWriter. The writer is not
+   * closed.
+   *
+   * @param rows The rows to sort, for instance a CSVTableReader.
+   * @param output The writer to write the sorted rows to.
+   * @return The number of rows written.
+   * @throws IOException If a temporary file or the output cannot be written.
+   */
+  public int sort( Iterator<? extends Map<String,String>> rows,
+                   CSVTableWriter output ) throws IOException {
+  	int returnValue = 0;
+  	Iterator<Map<String,String>> sorted = this.sort( rows );
+  	while ( sorted.hasNext( )) {
+  		output.write( sorted.next( ));
+  		returnValue++;
+  	}
+  	return returnValue;
+  }
+
+  /**
+   * Sorts rows. All of the input is read before this method returns; the
+   * final merge takes place as the returned Iterator advances and each
+   * temporary file is deleted once it has been read.
+   *
+   * @param rows The rows to sort, for instance a CSVTableReader.
+   * @return An Iterator over the sorted rows.
+   * @throws IOException If a temporary file cannot be written.
+   */
+  public Iterator<Map<String,String>> sort(
+      Iterator<? extends Map<String,String>> rows ) throws IOException {
+  	List<File> runs = new ArrayList<File>( );
+  	List<Map<String,String>> buffer = new ArrayList<Map<String,String>>( );
+  	long size = 0;
+  	while ( rows.hasNext( )) {
+  		Map<String,String> row = rows.next( );
+  		buffer.add( row );
+  		size += RowFile.sizeOf( row );
+  		if ( size > this.memoryBudget ) {
+  			this.writeRuns( buffer, runs );
+  			buffer.clear( );
+  			size = 0;
+  		}
+  	}
+  	if ( runs.isEmpty( )) {
+  		Collections.sort( buffer, this.comparator );
+  		return Collections.unmodifiableList( buffer ).iterator( );
+  	}
+  	this.writeRuns( buffer, runs );
+  	while ( runs.size( ) > MERGE_WIDTH ) {
+  		List<File> merged = new ArrayList<File>( );
+  		for ( int i=0; i < runs.size( ); i += MERGE_WIDTH ) {
+  			List<File> group =
+  				runs.subList( i, Math.min( i + MERGE_WIDTH, runs.size( )));
+  			File file = RowFile.createTempFile( this.tempDirectory );
+  			RowFile.Writer writer = new RowFile.Writer( file );
+  			try {
+  				Iterator<Map<String,String>> iterator = new MergeIterator( group );
+  				while ( iterator.hasNext( )) {
+  					writer.write( iterator.next( ));
+  				}
+  			} finally {
+  				writer.close( );
+  			}
+  			merged.add( file );
+  		}
+  		runs = merged;
+  	}
+  	return new MergeIterator( runs );
+  }
+
+  /**
+   * Splits rows between threads, each of which sorts its share and writes it
+   * as a run. The new runs are added to the list in the order of the rows
+   * they contain.
+   *
+   * @param buffer The rows to write.
+   * @param runs The list of runs to add to.
+   */
+  private void writeRuns( final List<Map<String,String>> buffer,
+                          List<File> runs ) throws IOException {
+  	if ( buffer.isEmpty( ))
+  		return;
+  	final int pieces = Math.max( 1, Math.min( ParallelUtils.getThreadCount( ),
+  	                             buffer.size( ) / MIN_RUN_LENGTH ));
+  	final File[] files = new File[ pieces ];
+  	final IOException[] error = new IOException[ 1 ];
+  	ParallelUtils.forRange( 0, pieces, 1, new RangeTask( ) {
+  		public void run( int start, int end ) {
+  			for ( int i=start; i < end; i++ ) {
+  				List<Map<String,String>> piece = new ArrayList<Map<String,String>>(
+  					buffer.subList((int)((long)buffer.size( ) * i / pieces ),
+  				                 (int)((long)buffer.size( ) * ( i + 1 ) / pieces )));
+  				Collections.sort( piece, ExternalSort.this.comparator );
+  				try {
+  					files[ i ] = RowFile.createTempFile(
+  						ExternalSort.this.tempDirectory );
+  					RowFile.Writer writer = new RowFile.Writer( files[ i ]);
+  					try {
+  						for ( Map<String,String> row : piece ) {
+  							writer.write( row );
+  						}
+  					} finally {
+  						writer.close( );
+  					}
+  				} catch ( IOException e ) {
+  					synchronized( error ) {
+  						error[ 0 ] = e;
+  					}
+  				}
+  			}
+  		}
+  	});
+  	synchronized( error ) {
+  		if ( error[ 0 ] != null ) {
+  			for ( File file : files ) {
+  				if ( file != null )
+  					file.delete( );
+  			}
+  			throw error[ 0 ];
+  		}
+  	}
+  	for ( File file : files ) {
+  		runs.add( file );
+  	}
+  }
+
+  /**
+   * Merges sorted runs, deleting each run once it has been read. Rows which
+   * compare as equal are taken from the earliest run first.
+   */
+  private class MergeIterator implements Iterator<Map<String,String>> {
+  	private PriorityQueue<Run> queue;
+
+  	MergeIterator( List<File> files ) throws IOException {
+  		this.queue = new PriorityQueue<Run>( Math.max( files.size( ), 1 ));
+  		for ( int i=0; i < files.size( ); i++ ) {
+  			Run run = new Run( files.get( i ), i );
+  			if ( run.advance( ))
+  				this.queue.add( run );
+  		}
+  	}
+
+  	public boolean hasNext( ) {
+  		return !this.queue.isEmpty( );
+  	}
+
+  	public Map<String,String> next( ) {
+  		Run run = this.queue.poll( );
+  		if ( run == null )
+  			throw new NoSuchElementException( );
+  		Map<String,String> returnValue = run.row;
+  		if ( run.advance( ))
+  			this.queue.add( run );
+  		return returnValue;
+  	}
+
+  	public void remove( ) {
+  		throw new UnsupportedOperationException( );
+  	}
+  }
+
+  /**
+   * A sorted run being merged, along with its current row.
+   */
+  private class Run implements Comparable<Run> {
+  	private File file;
+  	private RowFile.Reader reader;
+  	private int index;
+  	Map<String,String> row;
+
+  	Run( File file, int index ) throws IOException {
+  		this.file = file;
+  		this.reader = new RowFile.Reader( file );
+  		this.index = index;
+  	}
+
+  	/**
+  	 * Moves to the next row of this run, deleting the file at the end.
+  	 *
+  	 * @return false if there are no more rows.
+  	 */
+  	boolean advance( ) {
+  		if ( !this.reader.hasNext( )) {
+  			this.row = null;
+  			this.file.delete( );
+  			return false;
+  		}
+  		this.row = this.reader.next( );
+  		return true;
+  	}
+
+  	public int compareTo( Run other ) {
+  		int returnValue =
+  			ExternalSort.this.comparator.compare( this.row, other.row );
+  		if ( returnValue == 0 )
+  			returnValue = ( this.index < other.index ) ? -1 : 1;
+  		return returnValue;
+  	}
+  }
+}
@@ -0,0 +1,481 @@
+/*
+
+Copyright: 2010 Purdue University
+
+This file is distributed under the following terms (MIT/X11 License):
+
+  Permission is hereby granted, free of charge, to any person
+  obtaining a copy of this file and associated documentation
+  files (the "Software"), to deal in the Software without
+  restriction, including without limitation the rights to use,
+  copy, modify, merge, publish, distribute, sublicense, and/or sell
+  copies of the Software, and to permit persons to whom the
+  Software is furnished to do so, subject to the following
+  conditions:
+
+  The above copyright notice and this permission notice shall be
+  included in all copies or substantial portions of the Software.
+
+  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+  OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+package edu.purdue.bbc.io;
+
+import edu.purdue.bbc.util.attributes.Attributes;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Joins two tables of rows on a key column, such as the rows read by two
+ * CSVTableReaders. One side, the build side, is loaded into a hash table
+ * keyed by its join column and the other side, the probe side, is streamed
+ * past it, so each joined row is found with a single lookup rather than by
+ * comparing every pair of rows. This is an inner join: rows whose key is
+ * missing, or which have no partner on the other side, are left out.
+ * <p>
+ * Each joined row contains every attribute of both rows. Where both rows
+ * have an attribute with the same name, the value from the left row is
+ * kept. Rows are produced in the order of the probe side, with rows
+ * matching the same probe row in the order of the build side.
+ * <p>
+ * If the build side grows larger than the memory budget, both sides are
+ * split by the hash of their key into partition files in the temporary
+ * directory and the partitions are joined one at a time. Rows are then
+ * produced partition by partition rather than in probe order. Each
+ * partition of the build side must fit in memory by itself.
+ */
+public class HashJoin {
+  private static final int PARTITIONS = 64;
+  private static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+
+  private String leftKey;
+  private String rightKey;
+  private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+  private File tempDirectory;
+
+  /**
+   * Creates a new HashJoin for tables which share the name of their key
+   * column.
+   *
+   * @param key The name of the column to join on.
+   */
+  public HashJoin( String key ) {
+  	this( key, key );
+  }
+
+  /**
+   * Creates a new HashJoin.
+   *
+   * @param leftKey The name of the column to join on in the left table.
+   * @param rightKey The name of the column to join on in the right table.
+   */
+  public HashJoin( String leftKey, String rightKey ) {
+  	this.leftKey = leftKey;
+  	this.rightKey = rightKey;
+  }
+
+  /**
+   * Sets the approximate number of bytes the build side may use before it
+   * is partitioned to disk. The default is 64 MiB.
+   *
+   * @param bytes The memory budget in bytes.
+   */
+  public void setMemoryBudget( long bytes ) {
+  	this.memoryBudget = bytes;
+  }
+
+  /**
+   * Returns the approximate number of bytes the build side may use before it
+   * is partitioned to disk.
+   *
+   * @return The memory budget in bytes.
+   */
+  public long getMemoryBudget( ) {
+  	return this.memoryBudget;
+  }
+
+  /**
+   * Sets the directory partition files are written to.
+   *
+   * @param directory The directory, or null for the default temporary
+   *	directory.
+   */
+  public void setTempDirectory( File directory ) {
+  	this.tempDirectory = directory;
+  }
+
+  /**
+   * Joins two streams of rows, using the right side as the build side. The
+   * right side is read completely before this method returns; the left
+   * side is read as the returned Iterator advances. The right side should
+   * therefore be the smaller of the two.
+   *
+   * @param left The rows of the left table, for instance a CSVTableReader.
+   * @param right The rows of the right table.
+   * @return An Iterator over the joined rows.
+   * @throws IOException If the rows need to be partitioned and a partition
+   *	file cannot be written.
+   */
+  public Iterator<Map<String,String>> join(
+      Iterator<? extends Map<String,String>> left,
+      Iterator<? extends Map<String,String>> right ) throws IOException {
+  	return this.join( left, this.leftKey, right, this.rightKey, false );
+  }
+
+  /**
+   * Joins two tables held in memory, using the smaller of them as the build
+   * side.
+   *
+   * @param left The rows of the left table.
+   * @param right The rows of the right table.
+   * @return An Iterator over the joined rows.
+   * @throws IOException If the rows need to be partitioned and a partition
+   *	file cannot be written.
+   */
+  public Iterator<Map<String,String>> join(
+      Collection<? extends Map<String,String>> left,
+      Collection<? extends Map<String,String>> right ) throws IOException {
+  	if ( left.size( ) < right.size( ))
+  		return this.join( right.iterator( ), this.rightKey,
+  	                    left.iterator( ), this.leftKey, true );
+  	return this.join( left.iterator( ), this.leftKey,
+  	                  right.iterator( ), this.rightKey, false );
+  }
+
+  /**
+   * Adapts Attributes to rows which can be joined, converting each value to
+   * a String with String.valueOf( Object ).
+   *
+   * @param attributes The Attributes to adapt.
+   * @return An Iterator over the attributes as rows.
+   */
+  public static Iterator<Map<String,String>> rows(
+      final Iterator<? extends Attributes> attributes ) {
+  	return new Iterator<Map<String,String>>( ) {
+  		public boolean hasNext( ) {
+  			return attributes.hasNext( );
+  		}
+
+  		public Map<String,String> next( ) {
+  			Attributes<?> next = attributes.next( );
+  			Map<String,String> returnValue = new LinkedHashMap<String,String>( );
+  			for ( Map.Entry<String,?> entry : next.getAttributes( ).entrySet( )) {
+  				if ( entry.getValue( ) != null )
+  					returnValue.put( entry.getKey( ),
+  					                 String.valueOf( entry.getValue( )));
+  			}
+  			return returnValue;
+  		}
+
+  		public void remove( ) {
+  			attributes.remove( );
+  		}
+  	};
+  }
+
+  /**
+   * Performs the join.
+   *
+   * @param probe The rows to stream.
+   * @param probeKey The key column of the probe rows.
+   * @param build The rows to load into the hash table.
+   * @param buildKey The key column of the build rows.
+   * @param buildIsLeft Whether the build rows are the left table.
+   */
+  private Iterator<Map<String,String>> join(
+      Iterator<? extends Map<String,String>> probe, String probeKey,
+      Iterator<? extends Map<String,String>> build, String buildKey,
+      boolean buildIsLeft ) throws IOException {
+  	Map<String,List<Map<String,String>>> table =
+  		new HashMap<String,List<Map<String,String>>>( );
+  	long size = 0;
+  	while ( build.hasNext( )) {
+  		Map<String,String> row = build.next( );
+  		String key = row.get( buildKey );
+  		if ( key == null )
+  			continue;
+  		put( table, key, row );
+  		size += RowFile.sizeOf( row );
+  		if ( size > this.memoryBudget ) {
+  			File[] buildFiles = this.partition( table, build, buildKey );
+  			File[] probeFiles;
+  			try {
+  				probeFiles = this.partition(
+  					new HashMap<String,List<Map<String,String>>>( ), probe, probeKey );
+  			} catch ( IOException e ) {
+  				delete( buildFiles );
+  				throw e;
+  			} catch ( RuntimeException e ) {
+  				delete( buildFiles );
+  				throw e;
+  			}
+  			return new PartitionIterator( buildFiles, buildKey,
+  			                              probeFiles, probeKey, buildIsLeft );
+  		}
+  	}
+  	return new ProbeIterator( table, probe, probeKey, buildIsLeft );
+  }
+
+  /**
+   * Writes rows into partition files by the hash of their key. The files
+   * are deleted if they cannot all be written.
+   *
+   * @param table Rows already read, which are written first.
+   * @param rows The remaining rows.
+   * @param key The key column of the rows.
+   * @return The partition files.
+   */
+  private File[] partition( Map<String,List<Map<String,String>>> table,
+                            Iterator<? extends Map<String,String>> rows,
+                            String key ) throws IOException {
+  	File[] returnValue = new File[ PARTITIONS ];
+  	RowFile.Writer[] writers = new RowFile.Writer[ PARTITIONS ];
+  	try {
+  		this.write( table, rows, key, returnValue, writers );
+  	} catch ( IOException e ) {
+  		delete( returnValue );
+  		throw e;
+  	} catch ( RuntimeException e ) {
+  		delete( returnValue );
+  		throw e;
+  	}
+  	return returnValue;
+  }
+
+  /**
+   * Creates the partition files and writes the rows into them, closing
+   * the files afterwards.
+   */
+  private void write( Map<String,List<Map<String,String>>> table,
+                      Iterator<? extends Map<String,String>> rows,
+                      String key, File[] files, RowFile.Writer[] writers )
+                      throws IOException {
+  	try {
+  		for ( int i=0; i < PARTITIONS; i++ ) {
+  			files[ i ] = RowFile.createTempFile( this.tempDirectory );
+  			writers[ i ] = new RowFile.Writer( files[ i ]);
+  		}
+  		for ( Map.Entry<String,List<Map<String,String>>> entry :
+  		      table.entrySet( )) {
+  			RowFile.Writer writer = writers[ partitionOf( entry.getKey( ))];
+  			for ( Map<String,String> row : entry.getValue( )) {
+  				writer.write( row );
+  			}
+  		}
+  		table.clear( );
+  		while ( rows.hasNext( )) {
+  			Map<String,String> row = rows.next( );
+  			String value = row.get( key );
+  			if ( value != null )
+  				writers[ partitionOf( value )].write( row );
+  		}
+  	} finally {
+  		for ( RowFile.Writer writer : writers ) {
+  			if ( writer != null )
+  				writer.close( );
+  		}
+  	}
+  }
+
+  /**
+   * Deletes the files which have been created.
+   */
+  private static void delete( File[] files ) {
+  	for ( File file : files ) {
+  		if ( file != null )
+  			file.delete( );
+  	}
+  }
+
+  private static int partitionOf( String key ) {
+  	int hash = key.hashCode( ) * 0x9E3779B9;
+  	hash ^= hash >>> 16;
+  	return hash & ( PARTITIONS - 1 );
+  }
+
+  private static void put( Map<String,List<Map<String,String>>> table,
+                           String key, Map<String,String> row ) {
+  	List<Map<String,String>> rows = table.get( key );
+  	if ( rows == null ) {
+  		rows = new ArrayList<Map<String,String>>( 1 );
+  		table.put( key, rows );
+  	}
+  	rows.add( row );
+  }
+
+  /**
+   * Streams probe rows past a hash table of build rows.
+   */
+  private static class ProbeIterator
+      implements Iterator<Map<String,String>> {
+  	private Map<String,List<Map<String,String>>> table;
+  	private Iterator<? extends Map<String,String>> probe;
+  	private String probeKey;
+  	private boolean buildIsLeft;
+  	private Map<String,String> row;
+  	private List<Map<String,String>> matches = Collections.emptyList( );
+  	private int index;
+
+  	ProbeIterator( Map<String,List<Map<String,String>>> table,
+  	               Iterator<? extends Map<String,String>> probe,
+  	               String probeKey, boolean buildIsLeft ) {
+  		this.table = table;
+  		this.probe = probe;
+  		this.probeKey = probeKey;
+  		this.buildIsLeft = buildIsLeft;
+  	}
+
+  	public boolean hasNext( ) {
+  		while ( this.index >= this.matches.size( )) {
+  			if ( this.table.isEmpty( ) || !this.probe.hasNext( ))
+  				return false;
+  			this.row = this.probe.next( );
+  			String key = this.row.get( this.probeKey );
+  			List<Map<String,String>> rows =
+  				( key == null ) ? null : this.table.get( key );
+  			this.matches = ( rows == null ) ?
+  				Collections.<Map<String,String>>emptyList( ) : rows;
+  			this.index = 0;
+  		}
+  		return true;
+  	}
+
+  	public Map<String,String> next( ) {
+  		if ( !this.hasNext( ))
+  			throw new NoSuchElementException( );
+  		Map<String,String> match = this.matches.get( this.index++ );
+  		Map<String,String> left = this.buildIsLeft ? match : this.row;
+  		Map<String,String> right = this.buildIsLeft ? this.row : match;
+  		Map<String,String> returnValue = new LinkedHashMap<String,String>( left );
+  		for ( Map.Entry<String,String> entry : right.entrySet( )) {
+  			if ( !returnValue.containsKey( entry.getKey( )))
+  				returnValue.put( entry.getKey( ), entry.getValue( ));
+  		}
+  		return returnValue;
+  	}
+
+  	public void remove( ) {
+  		throw new UnsupportedOperationException( );
+  	}
+  }
+
+  /**
+   * Joins partition files one pair at a time, deleting each pair once it
+   * has been joined. The remaining files are deleted if a partition cannot
+   * be read, or when the iterator is abandoned and garbage collected.
+   */
+  private static class PartitionIterator
+      implements Iterator<Map<String,String>> {
+  	private File[] buildFiles;
+  	private String buildKey;
+  	private File[] probeFiles;
+  	private String probeKey;
+  	private boolean buildIsLeft;
+  	private int partition = -1;
+  	private RowFile.Reader reader;
+  	private Iterator<Map<String,String>> current =
+  		Collections.<Map<String,String>>emptyList( ).iterator( );
+
+  	PartitionIterator( File[] buildFiles, String buildKey,
+  	                   File[] probeFiles, String probeKey,
+  	                   boolean buildIsLeft ) {
+  		this.buildFiles = buildFiles;
+  		this.buildKey = buildKey;
+  		this.probeFiles = probeFiles;
+  		this.probeKey = probeKey;
+  		this.buildIsLeft = buildIsLeft;
+  	}
+
+  	public boolean hasNext( ) {
+  		while ( !this.current.hasNext( )) {
+  			if ( this.partition >= this.buildFiles.length )
+  				return false;
+  			if ( this.partition >= 0 )
+  				this.probeFiles[ this.partition ].delete( );
+  			if ( ++this.partition >= this.buildFiles.length )
+  				return false;
+  			try {
+  				this.current = this.open( this.partition );
+  			} catch ( IOException e ) {
+  				this.close( );
+  				throw new IllegalStateException(
+  					"Unable to read partition file", e );
+  			}
+  		}
+  		return true;
+  	}
+
+  	public Map<String,String> next( ) {
+  		if ( !this.hasNext( ))
+  			throw new NoSuchElementException( );
+  		return this.current.next( );
+  	}
+
+  	public void remove( ) {
+  		throw new UnsupportedOperationException( );
+  	}
+
+  	/**
+  	 * Closes the partition being read and deletes the files of the
+  	 * partitions which have not been joined.
+  	 */
+  	void close( ) {
+  		if ( this.reader != null ) {
+  			try {
+  				this.reader.close( );
+  			} catch ( IOException e ) { }
+  		}
+  		for ( int i=Math.max( this.partition, 0 ); i < this.buildFiles.length;
+  		      i++ ) {
+  			this.buildFiles[ i ].delete( );
+  			this.probeFiles[ i ].delete( );
+  		}
+  		this.partition = this.buildFiles.length;
+  		this.current = Collections.<Map<String,String>>emptyList( ).iterator( );
+  	}
+
+  	@Override
+  	protected void finalize( ) throws Throwable {
+  		try {
+  			this.close( );
+  		} finally {
+  			super.finalize( );
+  		}
+  	}
+
+  	private Iterator<Map<String,String>> open( int partition )
+  	                                           throws IOException {
+  		Map<String,List<Map<String,String>>> table =
+  			new HashMap<String,List<Map<String,String>>>( );
+  		RowFile.Reader build = new RowFile.Reader( this.buildFiles[ partition ]);
+  		while ( build.hasNext( )) {
+  			Map<String,String> row = build.next( );
+  			put( table, row.get( this.buildKey ), row );
+  		}
+  		this.buildFiles[ partition ].delete( );
+  		RowFile.Reader probe = new RowFile.Reader( this.probeFiles[ partition ]);
+  		this.reader = probe;
+  		if ( table.isEmpty( ))
+  			probe.close( );
+  		return new ProbeIterator( table, probe, this.probeKey, this.buildIsLeft );
+  	}
+  }
+}
@@ -0,0 +1,418 @@
+/*
+
+Copyright: 2010 Purdue University
+
+This file is distributed under the following terms (MIT/X11 License):
+
+  Permission is hereby granted, free of charge, to any person
+  obtaining a copy of this file and associated documentation
+  files (the "Software"), to deal in the Software without
+  restriction, including without limitation the rights to use,
+  copy, modify, merge, publish, distribute, sublicense, and/or sell
+  copies of the Software, and to permit persons to whom the
+  Software is furnished to do so, subject to the following
+  conditions:
+
+  The above copyright notice and this permission notice shall be
+  included in all copies or substantial portions of the Software.
+
+  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+  OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+package edu.purdue.bbc.io;
+
+import edu.purdue.bbc.util.CompressedSparseMatrix;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A read-only view of a sparse matrix file which has been mapped into memory.
+ * Values are read directly from the mapped file when requested, so only the
+ * pages which are actually used are ever loaded.
+ *
+ * @see SparseMatrixFile#map( java.io.File )
+ */
+public class MappedSparseMatrix {
+  private int rowCount;
+  private long entryCount;
+  private double defaultValue;
+  private boolean symmetric;
+  private SparseMatrixFile.Region rows;
+  private SparseMatrixFile.Region entryStart;
+  private SparseMatrixFile.Region byteStart;
+  private SparseMatrixFile.Region values;
+  private SparseMatrixFile.Region columns;
+
+  /**
+   * Maps the sections of a sparse matrix file.
+   *
+   * @param channel The channel for the file.
+   * @throws IOException If the file cannot be read or is not a matrix file.
+   */
+  MappedSparseMatrix( FileChannel channel ) throws IOException {
+  	ByteBuffer header = ByteBuffer.allocate( SparseMatrixFile.HEADER_SIZE );
+  	while ( header.hasRemaining( )) {
+  		if ( channel.read( header, header.position( )) < 0 )
+  			throw new IOException( "Sparse matrix file is truncated" );
+  	}
+  	header.flip( );
+  	if ( header.getInt( ) != SparseMatrixFile.MAGIC )
+  		throw new IOException( "Not a sparse matrix file" );
+  	int version = header.getInt( );
+  	if ( version != SparseMatrixFile.VERSION )
+  		throw new IOException( "Unsupported sparse matrix file version " +
+  	                         version );
+  	this.symmetric = ( header.getInt( ) & SparseMatrixFile.SYMMETRIC ) != 0;
+  	this.rowCount = header.getInt( );
+  	this.entryCount = header.getLong( );
+  	this.defaultValue = header.getDouble( );
+
+  	long offset = SparseMatrixFile.HEADER_SIZE;
+  	long length = 4L * ( this.rowCount + this.rowCount % 2 );
+  	this.rows = new SparseMatrixFile.Region( channel, offset, length );
+  	offset += length;
+  	length = 8L * ( this.rowCount + 1 );
+  	this.entryStart = new SparseMatrixFile.Region( channel, offset, length );
+  	offset += length;
+  	this.byteStart = new SparseMatrixFile.Region( channel, offset, length );
+  	offset += length;
+  	length = 8L * this.entryCount;
+  	this.values = new SparseMatrixFile.Region( channel, offset, length );
+  	offset += length;
+  	length = this.byteStart.getLong( this.rowCount );
+  	if ( offset + length > channel.size( ))
+  		throw new IOException( "Sparse matrix file is truncated" );
+  	this.columns = new SparseMatrixFile.Region( channel, offset, length );
+  }
+
+  /**
+   * Gets a value from the matrix.
+   *
+   * @param x The x coordinate of the value to get.
+   * @param y The y coordinate of the value to get.
+   * @return The value of the specified coordinate if it is set, or the
+   *	default value if it is not.
+   */
+  public double get( int x, int y ) {
+  	long index = this.indexOf( x, y );
+  	return ( index < 0 ) ? this.defaultValue : this.values.getDouble( index );
+  }
+
+  /**
+   * Determines whether this value has been set or not.
+   *
+   * @param x The x coordinate of the value to check.
+   * @param y The y coordinate of the value to check.
+   * @return A boolean indicating whether the given location has been set.
+   */
+  public boolean isSet( int x, int y ) {
+  	return this.indexOf( x, y ) >= 0;
+  }
+
+  /**
+   * Gets the default value for this matrix. This is the value that is returned
+   * when an unset location is specified.
+   *
+   * @return The default value for this matrix.
+   */
+  public double getDefault( ) {
+  	return this.defaultValue;
+  }
+
+  /**
+   * Determines whether this matrix is symmetric, storing only the upper
+   * triangle.
+   *
+   * @return true if this matrix is symmetric.
+   */
+  public boolean isSymmetric( ) {
+  	return this.symmetric;
+  }
+
+  /**
+   * Returns the number of entries which have been set in this matrix. For a
+   * symmetric matrix, each pair of mirrored entries is counted once.
+   *
+   * @return The number of entries.
+   */
+  public long size( ) {
+  	return this.entryCount;
+  }
+
+  /**
+   * Returns the number of rows which contain at least one entry.
+   *
+   * @return The number of non-empty rows.
+   */
+  public int getRowCount( ) {
+  	return this.rowCount;
+  }
+
+  /**
+   * Returns the x coordinates of all rows with entries stored under them, in
+   * ascending order. For a symmetric matrix, rows whose only entries are in
+   * the lower triangle are not included.
+   *
+   * @return A new array containing the row coordinates.
+   */
+  public int[] getRows( ) {
+  	int[] returnValue = new int[ this.rowCount ];
+  	for ( int i=0; i < this.rowCount; i++ ) {
+  		returnValue[ i ] = this.rows.getInt( i );
+  	}
+  	return returnValue;
+  }
+
+  /**
+   * Returns the y coordinates of the entries set in the given row, in
+   * ascending order. For a symmetric matrix the entries mirrored from the
+   * upper triangle are found by searching each of the preceding rows.
+   *
+   * @param x The x coordinate of the row.
+   * @return A new array containing the column coordinates of the row. This
+   *	array is empty if the row has no entries.
+   */
+  public int[] getRowColumns( int x ) {
+  	long[] lower = this.lowerEntries( x );
+  	int row = this.findRow( x );
+  	int length = ( row < 0 ) ? 0 : this.rowLength( row );
+  	int[] returnValue = new int[ lower.length + length ];
+  	for ( int i=0; i < lower.length; i++ ) {
+  		returnValue[ i ] = this.rows.getInt((int)( lower[ i ] >>> 32 ));
+  	}
+  	if ( row >= 0 ) {
+  		int[] upper = new int[ length ];
+  		this.decodeRow( row, upper );
+  		System.arraycopy( upper, 0, returnValue, lower.length, length );
+  	}
+  	return returnValue;
+  }
+
+  /**
+   * Returns the values of the entries set in the given row, in the same order
+   * as the columns returned by getRowColumns( x ).
+   *
+   * @param x The x coordinate of the row.
+   * @return A new array containing the values in the row. This array is
+   *	empty if the row has no entries.
+   */
+  public double[] getRowValues( int x ) {
+  	long[] lower = this.lowerEntries( x );
+  	int row = this.findRow( x );
+  	int length = ( row < 0 ) ? 0 : this.rowLength( row );
+  	double[] returnValue = new double[ lower.length + length ];
+  	for ( int i=0; i < lower.length; i++ ) {
+  		returnValue[ i ] = this.values.getDouble(
+  			this.entryStart.getLong((int)( lower[ i ] >>> 32 )) +
+  			( lower[ i ] & 0xffffffffL ));
+  	}
+  	if ( row >= 0 ) {
+  		long start = this.entryStart.getLong( row );
+  		for ( int i=0; i < length; i++ ) {
+  			returnValue[ lower.length + i ] = this.values.getDouble( start + i );
+  		}
+  	}
+  	return returnValue;
+  }
+
+  /**
+   * Multiplies this matrix by a vector, storing the product in the passed in
+   * array. Unset entries are treated as zero regardless of the default value.
+   *
+   * @param vector The vector to multiply by, indexed by y coordinate.
+   * @param result The array to store the product in, indexed by x coordinate.
+   *	Any previous contents are overwritten.
+   */
+  public void multiply( double[] vector, double[] result ) {
+  	Arrays.fill( result, 0.0 );
+  	int[] rowColumns = new int[ 0 ];
+  	for ( int row=0; row < this.rowCount; row++ ) {
+  		int length = this.rowLength( row );
+  		if ( rowColumns.length < length )
+  			rowColumns = new int[ length ];
+  		this.decodeRow( row, rowColumns );
+  		long start = this.entryStart.getLong( row );
+  		int x = this.rows.getInt( row );
+  		double sum = 0.0;
+  		for ( int i=0; i < length; i++ ) {
+  			double value = this.values.getDouble( start + i );
+  			sum += value * vector[ rowColumns[ i ]];
+  			if ( this.symmetric && rowColumns[ i ] != x )
+  				result[ rowColumns[ i ]] += value * vector[ x ];
+  		}
+  		result[ x ] += sum;
+  	}
+  }
+
+  /**
+   * Copies the contents of this matrix onto the heap.
+   *
+   * @return A CompressedSparseMatrix containing the same entries.
+   * @throws IOException If the matrix has too many entries to be held in
+   *	arrays.
+   */
+  public CompressedSparseMatrix load( ) throws IOException {
+  	if ( this.entryCount > Integer.MAX_VALUE )
+  		throw new IOException( "Sparse matrix is too large to load onto the heap" );
+  	int[] rowArray = this.getRows( );
+  	int[] rowStart = new int[ this.rowCount + 1 ];
+  	int[] columnArray = new int[(int)this.entryCount ];
+  	double[] valueArray = new double[(int)this.entryCount ];
+  	int[] rowColumns = new int[ 0 ];
+  	for ( int row=0; row < this.rowCount; row++ ) {
+  		int start = (int)this.entryStart.getLong( row );
+  		int length = this.rowLength( row );
+  		if ( rowColumns.length < length )
+  			rowColumns = new int[ length ];
+  		this.decodeRow( row, rowColumns );
+  		System.arraycopy( rowColumns, 0, columnArray, start, length );
+  		for ( int i=0; i < length; i++ ) {
+  			valueArray[ start + i ] = this.values.getDouble( start + i );
+  		}
+  		rowStart[ row ] = start;
+  	}
+  	rowStart[ this.rowCount ] = (int)this.entryCount;
+  	return new CompressedSparseMatrix( rowArray, rowStart, columnArray,
+  	                                   valueArray, this.defaultValue,
+  	                                   this.symmetric );
+  }
+
+  /**
+   * Finds the position of an entry in the values section.
+   *
+   * @param x The x coordinate of the entry.
+   * @param y The y coordinate of the entry.
+   * @return The index of the entry, or -1 if it is not set.
+   */
+  private long indexOf( int x, int y ) {
+  	if ( this.symmetric && x > y ) {
+  		int swap = x;
+  		x = y;
+  		y = swap;
+  	}
+  	int row = this.findRow( x );
+  	if ( row < 0 )
+  		return -1;
+  	return this.indexInRow( row, y );
+  }
+
+  /**
+   * Finds the position of an entry within a row.
+   *
+   * @param row The index of the row in the row sections.
+   * @param y The y coordinate of the entry.
+   * @return The index of the entry in the values section, or -1 if it is
+   *	not set.
+   */
+  private long indexInRow( int row, int y ) {
+  	long position = this.byteStart.getLong( row );
+  	long start = this.entryStart.getLong( row );
+  	long end = this.entryStart.getLong( row + 1 );
+  	long column = 0;
+  	for ( long index=start; index < end; index++ ) {
+  		long value = 0;
+  		int shift = 0;
+  		byte b;
+  		do {
+  			b = this.columns.getByte( position++ );
+  			value |= ( b & 0x7fL ) << shift;
+  			shift += 7;
+  		} while (( b & 0x80 ) != 0 );
+  		column = ( index == start ) ? SparseMatrixFile.unZigZag( value ) :
+  		                              column + value;
+  		if ( column >= y )
+  			return ( column == y ) ? index : -1;
+  	}
+  	return -1;
+  }
+
+  /**
+   * Finds the entries of a symmetric matrix which are stored in the upper
+   * triangle as ( i, x ) for some row i &lt; x.
+   *
+   * @param x The x coordinate of the row.
+   * @return The entries found, in ascending order of i, each packed as the
+   *	index of the row holding it in the upper 32 bits and its position
+   *	within that row in the lower 32 bits.
+   */
+  private long[] lowerEntries( int x ) {
+  	if ( !this.symmetric )
+  		return new long[ 0 ];
+  	long[] returnValue = new long[ 16 ];
+  	int count = 0;
+  	for ( int row=0; row < this.rowCount && this.rows.getInt( row ) < x; row++ ) {
+  		long index = this.indexInRow( row, x );
+  		if ( index >= 0 ) {
+  			if ( count == returnValue.length ) {
+  				long[] grown = new long[ count * 2 ];
+  				System.arraycopy( returnValue, 0, grown, 0, count );
+  				returnValue = grown;
+  			}
+  			returnValue[ count++ ] = ((long)row << 32 ) | 
+  				( index - this.entryStart.getLong( row ));
+  		}
+  	}
+  	long[] trimmed = new long[ count ];
+  	System.arraycopy( returnValue, 0, trimmed, 0, count );
+  	return trimmed;
+  }
+
+  /**
+   * Finds the position of a row in the row sections.
+   *
+   * @param x The x coordinate of the row.
+   * @return The index of the row, or -1 if it has no entries.
+   */
+  private int findRow( int x ) {
+  	int low = 0;
+  	int high = this.rowCount - 1;
+  	while ( low <= high ) {
+  		int mid = ( low + high ) >>> 1;
+  		int row = this.rows.getInt( mid );
+  		if ( row < x )
+  			low = mid + 1;
+  		else if ( row > x )
+  			high = mid - 1;
+  		else
+  			return mid;
+  	}
+  	return -1;
+  }
+
+  private int rowLength( int row ) {
+  	return (int)( this.entryStart.getLong( row + 1 ) -
+  	              this.entryStart.getLong( row ));
+  }
+
+  /**
+   * Decodes the y coordinates of a row into an array.
+   */
+  private void decodeRow( int row, int[] target ) {
+  	int length = this.rowLength( row );
+  	long position = this.byteStart.getLong( row );
+  	long column = 0;
+  	for ( int i=0; i < length; i++ ) {
+  		long value = 0;
+  		int shift = 0;
+  		byte b;
+  		do {
+  			b = this.columns.getByte( position++ );
+  			value |= ( b & 0x7fL ) << shift;
+  			shift += 7;
+  		} while (( b & 0x80 ) != 0 );
+  		column = ( i == 0 ) ? SparseMatrixFile.unZigZag( value ) : column + value;
+  		target[ i ] = (int)column;
+  	}
+  }
+}
@@ -0,0 +1,227 @@
+/*
+
+Copyright: 2010 Purdue University
+
+This file is distributed under the following terms (MIT/X11 License):
+
+  Permission is hereby granted, free of charge, to any person
+  obtaining a copy of this file and associated documentation
+  files (the "Software"), to deal in the Software without
+  restriction, including without limitation the rights to use,
+  copy, modify, merge, publish, distribute, sublicense, and/or sell
+  copies of the Software, and to permit persons to whom the
+  Software is furnished to do so, subject to the following
+  conditions:
+
+  The above copyright notice and this permission notice shall be
+  included in all copies or substantial portions of the Software.
+
+  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+  OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+package edu.purdue.bbc.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A compact binary format for temporary files of rows, used where rows are
+ * spilled to disk. Each attribute name is written in full only the first
+ * time it appears in a file and by number afterwards. A row is written as
+ * its number of fields plus one, followed by each field as a name number
+ * and a value. A name number equal to the count of names seen so far is
+ * followed by the new name. Numbers are unsigned variable length integers
+ * and strings are their UTF-8 length followed by their UTF-8 bytes. A
+ * zero ends the file. Null values are not written.
+ */
+class RowFile {
+
+  private RowFile( ) { }
+
+  /**
+   * Estimates the number of bytes of heap used by a row.
+   *
+   * @param row The row.
+   * @return The approximate size of the row, including the Map holding it.
+   */
+  static long sizeOf( Map<String,String> row ) {
+  	long returnValue = 64;
+  	for ( Map.Entry<String,String> entry : row.entrySet( )) {
+  		returnValue += 64 + 2L * entry.getKey( ).length( );
+  		if ( entry.getValue( ) != null )
+  			returnValue += 2L * entry.getValue( ).length( );
+  	}
+  	return returnValue;
+  }
+
+  /**
+   * Creates a temporary file which is deleted when the virtual machine
+   * exits, if not before.
+   *
+   * @param directory The directory to create it in, or null for the
+   *	default temporary directory.
+   * @return The new file.
+   * @throws IOException If the file cannot be created.
+   */
+  static File createTempFile( File directory ) throws IOException {
+  	File returnValue = File.createTempFile( "rows", ".bin", directory );
+  	returnValue.deleteOnExit( );
+  	return returnValue;
+  }
+
+  /**
+   * Writes rows to a file.
+   */
+  static class Writer {
+  	private DataOutputStream out;
+  	private Map<String,Integer> names = new HashMap<String,Integer>( );
+
+  	Writer( File file ) throws IOException {
+  		this.out = new DataOutputStream( new BufferedOutputStream(
+  			new FileOutputStream( file ), 65536 ));
+  	}
+
+  	void write( Map<String,String> row ) throws IOException {
+  		int count = 0;
+  		for ( String value : row.values( )) {
+  			if ( value != null )
+  				count++;
+  		}
+  		writeVarInt( this.out, count + 1 );
+  		for ( Map.Entry<String,String> entry : row.entrySet( )) {
+  			if ( entry.getValue( ) == null )
+  				continue;
+  			Integer number = this.names.get( entry.getKey( ));
+  			if ( number == null ) {
+  				writeVarInt( this.out, this.names.size( ));
+  				writeString( this.out, entry.getKey( ));
+  				this.names.put( entry.getKey( ), this.names.size( ));
+  			} else {
+  				writeVarInt( this.out, number.intValue( ));
+  			}
+  			writeString( this.out, entry.getValue( ));
+  		}
+  	}
+
+  	void close( ) throws IOException {
+  		writeVarInt( this.out, 0 );
+  		this.out.close( );
+  	}
+  }
+
+  /**
+   * Reads the rows from a file in the order they were written.
+   */
+  static class Reader implements Iterator<Map<String,String>> {
+  	private DataInputStream in;
+  	private List<String> names = new ArrayList<String>( );
+  	private Map<String,String> next;
+
+  	Reader( File file ) throws IOException {
+  		this.in = new DataInputStream( new BufferedInputStream(
+  			new FileInputStream( file ), 65536 ));
+  		this.next = this.read( );
+  	}
+
+  	public boolean hasNext( ) {
+  		return this.next != null;
+  	}
+
+  	public Map<String,String> next( ) {
+  		if ( this.next == null )
+  			throw new NoSuchElementException( );
+  		Map<String,String> returnValue = this.next;
+  		try {
+  			this.next = this.read( );
+  		} catch ( IOException e ) {
+  			throw new IllegalStateException( "Unable to read row", e );
+  		}
+  		return returnValue;
+  	}
+
+  	public void remove( ) {
+  		throw new UnsupportedOperationException( );
+  	}
+
+  	void close( ) throws IOException {
+  		this.next = null;
+  		this.in.close( );
+  	}
+
+  	/**
+  	 * Reads the next row, closing the file after the last one.
+  	 *
+  	 * @return The row, or null at the end of the file.
+  	 */
+  	private Map<String,String> read( ) throws IOException {
+  		int count = readVarInt( this.in ) - 1;
+  		if ( count < 0 ) {
+  			this.in.close( );
+  			return null;
+  		}
+  		Map<String,String> returnValue =
+  			new LinkedHashMap<String,String>( count * 2 );
+  		for ( int i=0; i < count; i++ ) {
+  			int number = readVarInt( this.in );
+  			if ( number == this.names.size( ))
+  				this.names.add( readString( this.in ));
+  			returnValue.put( this.names.get( number ), readString( this.in ));
+  		}
+  		return returnValue;
+  	}
+  }
+
+  private static void writeVarInt( DataOutputStream out, int value )
+                                   throws IOException {
+  	while (( value & ~0x7f ) != 0 ) {
+  		out.writeByte(( value & 0x7f ) | 0x80 );
+  		value >>>= 7;
+  	}
+  	out.writeByte( value );
+  }
+
+  private static int readVarInt( DataInputStream in ) throws IOException {
+  	int returnValue = 0;
+  	for ( int shift=0; shift < 32; shift += 7 ) {
+  		int b = in.readByte( );
+  		returnValue |= ( b & 0x7f ) << shift;
+  		if (( b & 0x80 ) == 0 )
+  			return returnValue;
+  	}
+  	throw new IOException( "Malformed row file" );
+  }
+
+  private static void writeString( DataOutputStream out, String value )
+                                   throws IOException {
+  	byte[] bytes = value.getBytes( "UTF-8" );
+  	writeVarInt( out, bytes.length );
+  	out.write( bytes );
+  }
+
+  private static String readString( DataInputStream in ) throws IOException {
+  	byte[] bytes = new byte[ readVarInt( in )];
+  	in.readFully( bytes );
+  	return new String( bytes, "UTF-8" );
+  }
+}
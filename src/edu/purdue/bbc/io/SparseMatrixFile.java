@@ -0,0 +1,293 @@
+/*
+
+Copyright: 2010 Purdue University
+
+This file is distributed under the following terms (MIT/X11 License):
+
+  Permission is hereby granted, free of charge, to any person
+  obtaining a copy of this file and associated documentation
+  files (the "Software"), to deal in the Software without
+  restriction, including without limitation the rights to use,
+  copy, modify, merge, publish, distribute, sublicense, and/or sell
+  copies of the Software, and to permit persons to whom the
+  Software is furnished to do so, subject to the following
+  conditions:
+
+  The above copyright notice and this permission notice shall be
+  included in all copies or substantial portions of the Software.
+
+  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+  OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+package edu.purdue.bbc.io;
+
+import edu.purdue.bbc.util.CompressedSparseMatrix;
+import edu.purdue.bbc.util.SparseMatrix;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A class for saving sparse matrices in a compact binary file and loading
+ * them again. All numbers are stored big-endian, and the file consists of:
+ *
+ * <ul>
+ *   <li>A 64 byte header: the magic number, the format version, a flags
+ *	field, the number of non-empty rows, the number of entries and the
+ *	default value. The only flag currently defined is SYMMETRIC, in which
+ *	case only the upper triangle of the matrix is stored.</li>
+ *   <li>The x coordinate of each non-empty row, as ints, padded to a multiple
+ *	of 8 bytes.</li>
+ *   <li>The index of the first entry of each row, as longs, plus one final
+ *	entry containing the number of entries.</li>
+ *   <li>The offset of each row within the column section, as longs, plus one
+ *	final entry containing the length of the column section.</li>
+ *   <li>The entry values as doubles.</li>
+ *   <li>The column section: for each row, the first y coordinate as a
+ *	zig-zag encoded variable length integer followed by the gap to each
+ *	subsequent y coordinate as an unsigned variable length integer.</li>
+ * </ul>
+ *
+ * Files written with this class can be mapped into memory with map( File ),
+ * which reads the file in place without copying it onto the heap.
+ */
+public class SparseMatrixFile {
+  static final int MAGIC = 0x42424353;
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 64;
+  static final int SYMMETRIC = 1;
+
+  private SparseMatrixFile( ) { }
+
+  /**
+   * Writes a matrix to a file, replacing any existing contents.
+   *
+   * @param matrix The matrix to write.
+   * @param file The file to write to.
+   * @throws IOException If the file cannot be written.
+   */
+  public static void write( CompressedSparseMatrix matrix, File file )
+                            throws IOException {
+  	int[] rows = matrix.getRows( );
+  	int[] skip = new int[ rows.length ];
+  	long[] entryStart = new long[ rows.length + 1 ];
+  	long[] byteStart = new long[ rows.length + 1 ];
+  	for ( int i=0; i < rows.length; i++ ) {
+  		int[] columns = matrix.getRowColumns( rows[ i ]);
+  		skip[ i ] = mirrored( matrix, rows[ i ], columns );
+  		entryStart[ i + 1 ] = entryStart[ i ] + columns.length - skip[ i ];
+  		byteStart[ i + 1 ] = byteStart[ i ] + encodedLength( columns, skip[ i ]);
+  	}
+
+  	DataOutputStream out = new DataOutputStream( new BufferedOutputStream(
+  		new FileOutputStream( file ), 65536 ));
+  	try {
+  		out.writeInt( MAGIC );
+  		out.writeInt( VERSION );
+  		out.writeInt( matrix.isSymmetric( ) ? SYMMETRIC : 0 );
+  		out.writeInt( rows.length );
+  		out.writeLong( entryStart[ rows.length ]);
+  		out.writeDouble( matrix.getDefault( ));
+  		for ( int i=32; i < HEADER_SIZE; i++ ) {
+  			out.writeByte( 0 );
+  		}
+  		for ( int row : rows ) {
+  			out.writeInt( row );
+  		}
+  		if ( rows.length % 2 != 0 ) {
+  			out.writeInt( 0 );
+  		}
+  		for ( long start : entryStart ) {
+  			out.writeLong( start );
+  		}
+  		for ( long start : byteStart ) {
+  			out.writeLong( start );
+  		}
+  		for ( int i=0; i < rows.length; i++ ) {
+  			double[] values = matrix.getRowValues( rows[ i ]);
+  			for ( int j=skip[ i ]; j < values.length; j++ ) {
+  				out.writeDouble( values[ j ]);
+  			}
+  		}
+  		for ( int i=0; i < rows.length; i++ ) {
+  			int[] columns = matrix.getRowColumns( rows[ i ]);
+  			int from = skip[ i ];
+  			writeVarLong( out, zigZag( columns[ from ]));
+  			for ( int j=from + 1; j < columns.length; j++ ) {
+  				writeVarLong( out, (long)columns[ j ] - columns[ j - 1 ]);
+  			}
+  		}
+  	} finally {
+  		out.close( );
+  	}
+  }
+
+  /**
+   * Writes a SparseMatrix of Numbers to a file, replacing any existing
+   * contents.
+   *
+   * @param matrix The matrix to write.
+   * @param file The file to write to.
+   * @throws IOException If the file cannot be written.
+   */
+  public static void write( SparseMatrix<? extends Number> matrix, File file )
+                            throws IOException {
+  	write( CompressedSparseMatrix.valueOf( matrix ), file );
+  }
+
+  /**
+   * Maps a matrix file into memory as a read-only view. The contents are read
+   * from the file in place, so matrices larger than the heap can be queried.
+   *
+   * @param file The file to map.
+   * @return A read-only view of the matrix in the file.
+   * @throws IOException If the file cannot be read or is not a matrix file.
+   */
+  public static MappedSparseMatrix map( File file ) throws IOException {
+  	RandomAccessFile input = new RandomAccessFile( file, "r" );
+  	try {
+  		return new MappedSparseMatrix( input.getChannel( ));
+  	} finally {
+  		// the mapping remains valid after the channel is closed.
+  		input.close( );
+  	}
+  }
+
+  /**
+   * Reads a matrix file fully onto the heap.
+   *
+   * @param file The file to read.
+   * @return A CompressedSparseMatrix containing the contents of the file.
+   * @throws IOException If the file cannot be read, is not a matrix file, or
+   *	contains too many entries to be held in arrays.
+   */
+  public static CompressedSparseMatrix read( File file ) throws IOException {
+  	return map( file ).load( );
+  }
+
+  /**
+   * Returns the number of leading entries of a row which are mirrored from
+   * the lower triangle of a symmetric matrix. Only the upper triangle is
+   * stored in the file, so these entries are skipped when writing.
+   *
+   * @param matrix The matrix being written.
+   * @param x The x coordinate of the row.
+   * @param columns The columns of the row, as returned by getRowColumns.
+   * @return The number of columns less than x for a symmetric matrix, or 0.
+   */
+  private static int mirrored( CompressedSparseMatrix matrix, int x,
+                               int[] columns ) {
+  	if ( !matrix.isSymmetric( ))
+  		return 0;
+  	int returnValue = 0;
+  	while ( returnValue < columns.length && columns[ returnValue ] < x ) {
+  		returnValue++;
+  	}
+  	return returnValue;
+  }
+
+  /**
+   * Returns the number of bytes needed to encode the columns of a row,
+   * starting from the given entry.
+   */
+  private static long encodedLength( int[] columns, int from ) {
+  	long returnValue = varLongLength( zigZag( columns[ from ]));
+  	for ( int i=from + 1; i < columns.length; i++ ) {
+  		returnValue += varLongLength((long)columns[ i ] - columns[ i - 1 ]);
+  	}
+  	return returnValue;
+  }
+
+  /**
+   * Maps a signed int onto an unsigned value so that numbers close to zero
+   * encode to short variable length integers.
+   */
+  static long zigZag( int value ) {
+  	return (( value << 1 ) ^ ( value >> 31 )) & 0xffffffffL;
+  }
+
+  /**
+   * Reverses zigZag( int ).
+   */
+  static int unZigZag( long value ) {
+  	int bits = (int)value;
+  	return ( bits >>> 1 ) ^ -( bits & 1 );
+  }
+
+  private static int varLongLength( long value ) {
+  	int returnValue = 1;
+  	while (( value >>>= 7 ) != 0 ) {
+  		returnValue++;
+  	}
+  	return returnValue;
+  }
+
+  private static void writeVarLong( DataOutputStream out, long value )
+                                    throws IOException {
+  	while (( value & ~0x7fL ) != 0 ) {
+  		out.writeByte((int)(( value & 0x7f ) | 0x80 ));
+  		value >>>= 7;
+  	}
+  	out.writeByte((int)value );
+  }
+
+  /**
+   * A section of a file mapped into memory. Sections larger than a single
+   * buffer can address are split into several buffers; as the chunk size is
+   * a multiple of 8, a value never spans two of them.
+   */
+  static class Region {
+  	private static final int CHUNK_BITS = 30;
+  	private static final long CHUNK_MASK = ( 1L << CHUNK_BITS ) - 1;
+  	private ByteBuffer[] chunks;
+
+  	Region( FileChannel channel, long offset, long length )
+  	        throws IOException {
+  		int count = (int)(( length + CHUNK_MASK ) >>> CHUNK_BITS );
+  		this.chunks = new ByteBuffer[ Math.max( count, 1 )];
+  		this.chunks[ 0 ] = ByteBuffer.allocate( 0 );
+  		for ( int i=0; i < count; i++ ) {
+  			long start = (long)i << CHUNK_BITS;
+  			this.chunks[ i ] = channel.map( FileChannel.MapMode.READ_ONLY,
+  				offset + start, Math.min( length - start, CHUNK_MASK + 1 ));
+  		}
+  	}
+
+  	byte getByte( long position ) {
+  		return this.chunks[(int)( position >>> CHUNK_BITS )].get(
+  			(int)( position & CHUNK_MASK ));
+  	}
+
+  	int getInt( long index ) {
+  		long position = index << 2;
+  		return this.chunks[(int)( position >>> CHUNK_BITS )].getInt(
+  			(int)( position & CHUNK_MASK ));
+  	}
+
+  	long getLong( long index ) {
+  		long position = index << 3;
+  		return this.chunks[(int)( position >>> CHUNK_BITS )].getLong(
+  			(int)( position & CHUNK_MASK ));
+  	}
+
+  	double getDouble( long index ) {
+  		long position = index << 3;
+  		return this.chunks[(int)( position >>> CHUNK_BITS )].getDouble(
+  			(int)( position & CHUNK_MASK ));
+  	}
+  }
+}
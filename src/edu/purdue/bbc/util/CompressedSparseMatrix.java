@@ -0,0 +1,512 @@
+/*
+
+Copyright: 2010 Purdue University
+
+This file is distributed under the following terms (MIT/X11 License):
+
+  Permission is hereby granted, free of charge, to any person
+  obtaining a copy of this file and associated documentation
+  files (the "Software"), to deal in the Software without
+  restriction, including without limitation the rights to use,
+  copy, modify, merge, publish, distribute, sublicense, and/or sell
+  copies of the Software, and to permit persons to whom the
+  Software is furnished to do so, subject to the following
+  conditions:
+
+  The above copyright notice and this permission notice shall be
+  included in all copies or substantial portions of the Software.
+
+  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+  OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+package edu.purdue.bbc.util;
+
+import java.util.Arrays;
+
+/**
+ * An immutable sparse 2D array of double values stored in compressed row
+ * form. Each non-empty row (x coordinate) holds its column (y coordinate)
+ * indices in ascending order alongside a primitive array of values, so
+ * lookups are a pair of binary searches and nothing is boxed. A symmetric
+ * matrix stores only its upper triangle (x &lt;= y).
+ *
+ * @see ConcurrentSparseMatrix#freeze( )
+ */
+public class CompressedSparseMatrix {
+  private int[] rows;
+  private int[] rowStart;
+  private int[] columns;
+  private double[] values;
+  private double defaultValue;
+  private boolean symmetric;
+  // the upper triangle viewed by column, built when rows of a symmetric
+  // matrix are first requested.
+  private volatile Transpose transpose;
+
+  /**
+   * Creates a new CompressedSparseMatrix from its raw arrays. The arrays are
+   * used as-is and must not be modified afterwards.
+   *
+   * @param rows The x coordinates of the non-empty rows, in ascending order.
+   * @param rowStart The offset of the first entry of each row in columns and
+   *	values. This array has one more element than rows, the last being the
+   *	total number of entries.
+   * @param columns The y coordinates of the entries, ascending within a row.
+   * @param values The values of the entries.
+   * @param defaultValue The value to return if the index is not set.
+   */
+  public CompressedSparseMatrix( int[] rows, int[] rowStart, int[] columns,
+                                 double[] values, double defaultValue ) {
+  	this( rows, rowStart, columns, values, defaultValue, false );
+  }
+
+  /**
+   * Creates a new CompressedSparseMatrix from its raw arrays. The arrays are
+   * used as-is and must not be modified afterwards.
+   *
+   * @param rows The x coordinates of the non-empty rows, in ascending order.
+   * @param rowStart The offset of the first entry of each row in columns and
+   *	values. This array has one more element than rows, the last being the
+   *	total number of entries.
+   * @param columns The y coordinates of the entries, ascending within a row.
+   * @param values The values of the entries.
+   * @param defaultValue The value to return if the index is not set.
+   * @param symmetric Whether the matrix is symmetric. If so, the arrays must
+   *	only contain entries with x &lt;= y.
+   */
+  public CompressedSparseMatrix( int[] rows, int[] rowStart, int[] columns,
+                                 double[] values, double defaultValue,
+                                 boolean symmetric ) {
+  	if ( rowStart.length != rows.length + 1 ||
+  	     columns.length != values.length ||
+  	     rowStart[ rows.length ] != columns.length ) {
+  		throw new IllegalArgumentException(
+  			"Inconsistent array lengths for a compressed sparse matrix" );
+  	}
+  	this.rows = rows;
+  	this.rowStart = rowStart;
+  	this.columns = columns;
+  	this.values = values;
+  	this.defaultValue = defaultValue;
+  	this.symmetric = symmetric;
+  }
+
+  /**
+   * Creates a CompressedSparseMatrix containing the entries of a SparseMatrix
+   * of Numbers. Unset locations keep the default value of the original matrix,
+   * or NaN if that is null.
+   *
+   * @param matrix The matrix to copy.
+   * @return A new CompressedSparseMatrix with the same entries.
+   */
+  public static CompressedSparseMatrix valueOf( 
+      SparseMatrix<? extends Number> matrix ) {
+  	long[] keys = new long[ matrix.size( )];
+  	double[] values = new double[ matrix.size( )];
+  	int count = matrix.pack( keys, values );
+  	Number defaultValue = matrix.getDefault( );
+  	return build( keys, values, count, 
+  		( defaultValue == null ) ? Double.NaN : defaultValue.doubleValue( ),
+  		matrix.isSymmetric( ));
+  }
+
+  /**
+   * Gets a value from the matrix.
+   *
+   * @param x The x coordinate of the value to get.
+   * @param y The y coordinate of the value to get.
+   * @return The value of the specified coordinate if it is set, or the
+   *	default value if it is not.
+   */
+  public double get( int x, int y ) {
+  	int index = this.indexOf( x, y );
+  	return ( index < 0 ) ? this.defaultValue : this.values[ index ];
+  }
+
+  /**
+   * Determines whether this value has been set or not.
+   *
+   * @param x The x coordinate of the value to check.
+   * @param y The y coordinate of the value to check.
+   * @return A boolean indicating whether the given location has been set.
+   */
+  public boolean isSet( int x, int y ) {
+  	return this.indexOf( x, y ) >= 0;
+  }
+
+  /**
+   * Gets the default value for this matrix. This is the value that is returned
+   * when an unset location is specified.
+   *
+   * @return The default value for this matrix.
+   */
+  public double getDefault( ) {
+  	return this.defaultValue;
+  }
+
+  /**
+   * Determines whether this matrix is symmetric, storing only the upper
+   * triangle.
+   *
+   * @return true if this matrix is symmetric.
+   */
+  public boolean isSymmetric( ) {
+  	return this.symmetric;
+  }
+
+  /**
+   * Returns the number of entries which have been set in this matrix. For a
+   * symmetric matrix, each pair of mirrored entries is counted once.
+   *
+   * @return The number of entries.
+   */
+  public int size( ) {
+  	return this.values.length;
+  }
+
+  /**
+   * Returns the number of rows which contain at least one entry.
+   *
+   * @return The number of non-empty rows.
+   */
+  public int getRowCount( ) {
+  	return this.rows.length;
+  }
+
+  /**
+   * Returns the x coordinates of all rows with entries stored under them, in
+   * ascending order. For a symmetric matrix, rows whose only entries are in
+   * the lower triangle are not included.
+   *
+   * @return A new array containing the row coordinates.
+   */
+  public int[] getRows( ) {
+  	int[] returnValue = new int[ this.rows.length ];
+  	System.arraycopy( this.rows, 0, returnValue, 0, this.rows.length );
+  	return returnValue;
+  }
+
+  /**
+   * Returns the y coordinates of the entries set in the given row, in
+   * ascending order.
+   *
+   * @param x The x coordinate of the row.
+   * @return A new array containing the column coordinates of the row. This
+   *	array is empty if the row has no entries.
+   */
+  public int[] getRowColumns( int x ) {
+  	int row = search( this.rows, 0, this.rows.length, x );
+  	int from = ( row < 0 ) ? 0 : this.rowStart[ row ];
+  	int to = ( row < 0 ) ? 0 : this.rowStart[ row + 1 ];
+  	Transpose lower = this.lowerTriangle( );
+  	int column = ( lower == null ) ? -1 : 
+  		search( lower.columns, 0, lower.columns.length, x );
+  	int lowerFrom = ( column < 0 ) ? 0 : lower.columnStart[ column ];
+  	int lowerTo = ( column < 0 ) ? 0 : lower.columnStart[ column + 1 ];
+
+  	int[] returnValue = new int[( lowerTo - lowerFrom ) + ( to - from )];
+  	int n = 0;
+  	for ( int i=lowerFrom; i < lowerTo; i++ ) {
+  		returnValue[ n++ ] = lower.rows[ i ];
+  	}
+  	System.arraycopy( this.columns, from, returnValue, n, to - from );
+  	return returnValue;
+  }
+
+  /**
+   * Returns the values of the entries set in the given row, in the same order
+   * as the columns returned by getRowColumns( x ).
+   *
+   * @param x The x coordinate of the row.
+   * @return A new array containing the values in the row. This array is
+   *	empty if the row has no entries.
+   */
+  public double[] getRowValues( int x ) {
+  	int row = search( this.rows, 0, this.rows.length, x );
+  	int from = ( row < 0 ) ? 0 : this.rowStart[ row ];
+  	int to = ( row < 0 ) ? 0 : this.rowStart[ row + 1 ];
+  	Transpose lower = this.lowerTriangle( );
+  	int column = ( lower == null ) ? -1 : 
+  		search( lower.columns, 0, lower.columns.length, x );
+  	int lowerFrom = ( column < 0 ) ? 0 : lower.columnStart[ column ];
+  	int lowerTo = ( column < 0 ) ? 0 : lower.columnStart[ column + 1 ];
+
+  	double[] returnValue = new double[( lowerTo - lowerFrom ) + ( to - from )];
+  	int n = 0;
+  	for ( int i=lowerFrom; i < lowerTo; i++ ) {
+  		returnValue[ n++ ] = this.values[ lower.entries[ i ]];
+  	}
+  	System.arraycopy( this.values, from, returnValue, n, to - from );
+  	return returnValue;
+  }
+
+  /**
+   * Multiplies this matrix by a vector, treating this matrix as square with
+   * the same dimension as the vector. Unset entries are treated as zero
+   * regardless of the default value.
+   *
+   * @param vector The vector to multiply by, indexed by y coordinate.
+   * @return A new array containing the product, indexed by x coordinate.
+   */
+  public double[] multiply( double[] vector ) {
+  	double[] returnValue = new double[ vector.length ];
+  	this.multiply( vector, returnValue );
+  	return returnValue;
+  }
+
+  /**
+   * Multiplies this matrix by a vector, storing the product in the passed in
+   * array. Unset entries are treated as zero regardless of the default value.
+   *
+   * @param vector The vector to multiply by, indexed by y coordinate.
+   * @param result The array to store the product in, indexed by x coordinate.
+   *	Any previous contents are overwritten.
+   */
+  public void multiply( double[] vector, double[] result ) {
+  	Arrays.fill( result, 0.0 );
+  	for ( int row=0; row < this.rows.length; row++ ) {
+  		int x = this.rows[ row ];
+  		double sum = 0.0;
+  		if ( this.symmetric ) {
+  			double scale = vector[ x ];
+  			for ( int i=this.rowStart[ row ]; i < this.rowStart[ row + 1 ]; i++ ) {
+  				int y = this.columns[ i ];
+  				sum += this.values[ i ] * vector[ y ];
+  				if ( y != x )
+  					result[ y ] += this.values[ i ] * scale;
+  			}
+  		} else {
+  			for ( int i=this.rowStart[ row ]; i < this.rowStart[ row + 1 ]; i++ ) {
+  				sum += this.values[ i ] * vector[ this.columns[ i ]];
+  			}
+  		}
+  		result[ x ] += sum;
+  	}
+  }
+
+  /**
+   * Finds the position of an entry in the columns and values arrays.
+   *
+   * @param x The x coordinate of the entry.
+   * @param y The y coordinate of the entry.
+   * @return The index of the entry, or a negative number if it is not set.
+   */
+  private int indexOf( int x, int y ) {
+  	if ( this.symmetric && x > y ) {
+  		int swap = x;
+  		x = y;
+  		y = swap;
+  	}
+  	int row = search( this.rows, 0, this.rows.length, x );
+  	if ( row < 0 )
+  		return -1;
+  	return search( this.columns, this.rowStart[ row ],
+  	               this.rowStart[ row + 1 ], y );
+  }
+
+  /**
+   * Returns the entries of a symmetric matrix which lie strictly below the
+   * diagonal when mirrored, grouped by column, building the index the first
+   * time it is needed.
+   *
+   * @return The index, or null if this matrix is not symmetric.
+   */
+  private Transpose lowerTriangle( ) {
+  	if ( !this.symmetric )
+  		return null;
+  	Transpose returnValue = this.transpose;
+  	if ( returnValue == null ) {
+  		returnValue = new Transpose( );
+  		this.transpose = returnValue;
+  	}
+  	return returnValue;
+  }
+
+  /**
+   * The off-diagonal entries of the upper triangle ordered by column and then
+   * row, which are the rows of the lower triangle of a symmetric matrix.
+   */
+  private class Transpose {
+  	int[] columns;
+  	int[] columnStart;
+  	int[] rows;
+  	int[] entries;
+
+  	Transpose( ) {
+  		int[] upperRows = CompressedSparseMatrix.this.rows;
+  		int[] upperColumns = CompressedSparseMatrix.this.columns;
+  		long[] keys = new long[ upperColumns.length ];
+  		int count = 0;
+  		for ( int row=0; row < upperRows.length; row++ ) {
+  			for ( int i=rowStart[ row ]; i < rowStart[ row + 1 ]; i++ ) {
+  				if ( upperColumns[ i ] != upperRows[ row ]) {
+  					keys[ count++ ] = key( upperColumns[ i ], upperRows[ row ]);
+  				}
+  			}
+  		}
+  		Arrays.sort( keys, 0, count );
+  		int columnCount = 0;
+  		for ( int i=0; i < count; i++ ) {
+  			if ( i == 0 || keyX( keys[ i ]) != keyX( keys[ i - 1 ]))
+  				columnCount++;
+  		}
+  		this.columns = new int[ columnCount ];
+  		this.columnStart = new int[ columnCount + 1 ];
+  		this.rows = new int[ count ];
+  		this.entries = new int[ count ];
+  		int column = -1;
+  		for ( int i=0; i < count; i++ ) {
+  			int y = keyX( keys[ i ]);
+  			if ( column < 0 || this.columns[ column ] != y ) {
+  				column++;
+  				this.columns[ column ] = y;
+  				this.columnStart[ column ] = i;
+  			}
+  			this.rows[ i ] = keyY( keys[ i ]);
+  			this.entries[ i ] = indexOf( this.rows[ i ], y );
+  		}
+  		this.columnStart[ columnCount ] = count;
+  	}
+  }
+
+  /**
+   * Searches a sorted range of an int array.
+   *
+   * @param array The array to search.
+   * @param from The first index to search (inclusive).
+   * @param to The last index to search (exclusive).
+   * @param key The value to search for.
+   * @return The index of key, or -1 if it is not present in the range.
+   */
+  static int search( int[] array, int from, int to, int key ) {
+  	int low = from;
+  	int high = to - 1;
+  	while ( low <= high ) {
+  		int mid = ( low + high ) >>> 1;
+  		if ( array[ mid ] < key )
+  			low = mid + 1;
+  		else if ( array[ mid ] > key )
+  			high = mid - 1;
+  		else
+  			return mid;
+  	}
+  	return -1;
+  }
+
+  /**
+   * Packs a pair of coordinates into a single long such that ordering the
+   * packed values as signed longs orders the coordinates first by x, then by
+   * y.
+   *
+   * @param x The x coordinate.
+   * @param y The y coordinate.
+   * @return The packed key.
+   */
+  static long key( int x, int y ) {
+  	return (((long)x ) << 32 ) | (( y ^ 0x80000000 ) & 0xffffffffL );
+  }
+
+  /**
+   * Returns the x coordinate of a key created with key( x, y ).
+   */
+  static int keyX( long key ) {
+  	return (int)( key >> 32 );
+  }
+
+  /**
+   * Returns the y coordinate of a key created with key( x, y ).
+   */
+  static int keyY( long key ) {
+  	return ((int)key ) ^ 0x80000000;
+  }
+
+  /**
+   * Builds a CompressedSparseMatrix from packed keys and their values. The
+   * arrays are sorted in place.
+   *
+   * @param keys The packed coordinates of the entries. Must be distinct.
+   * @param values The values for each of the keys.
+   * @param count The number of entries in the arrays which are in use.
+   * @param defaultValue The value to return if the index is not set.
+   * @param symmetric Whether the keys hold the upper triangle of a symmetric
+   *	matrix.
+   * @return The new matrix.
+   */
+  static CompressedSparseMatrix build( long[] keys, double[] values,
+                                       int count, double defaultValue,
+                                       boolean symmetric ) {
+  	sort( keys, values, 0, count - 1 );
+  	int rowCount = 0;
+  	for ( int i=0; i < count; i++ ) {
+  		if ( i == 0 || keyX( keys[ i ]) != keyX( keys[ i - 1 ]))
+  			rowCount++;
+  	}
+  	int[] rows = new int[ rowCount ];
+  	int[] rowStart = new int[ rowCount + 1 ];
+  	int[] columns = new int[ count ];
+  	double[] entryValues = new double[ count ];
+  	int row = -1;
+  	for ( int i=0; i < count; i++ ) {
+  		int x = keyX( keys[ i ]);
+  		if ( row < 0 || rows[ row ] != x ) {
+  			row++;
+  			rows[ row ] = x;
+  			rowStart[ row ] = i;
+  		}
+  		columns[ i ] = keyY( keys[ i ]);
+  		entryValues[ i ] = values[ i ];
+  	}
+  	rowStart[ rowCount ] = count;
+  	return new CompressedSparseMatrix( rows, rowStart, columns, entryValues,
+  	                                   defaultValue, symmetric );
+  }
+
+  /**
+   * Sorts a range of keys in ascending order, moving the matching values
+   * along with them.
+   */
+  private static void sort( long[] keys, double[] values, int low, int high ) {
+  	while ( high - low > 16 ) {
+  		long pivot = keys[( low + high ) >>> 1 ];
+  		int i = low;
+  		int j = high;
+  		while ( i <= j ) {
+  			while ( keys[ i ] < pivot ) i++;
+  			while ( keys[ j ] > pivot ) j--;
+  			if ( i <= j ) {
+  				swap( keys, values, i++, j-- );
+  			}
+  		}
+  		// recurse into the smaller half to bound the stack depth
+  		if ( j - low < high - i ) {
+  			sort( keys, values, low, j );
+  			low = i;
+  		} else {
+  			sort( keys, values, i, high );
+  			high = j;
+  		}
+  	}
+  	for ( int i=low + 1; i <= high; i++ ) {
+  		for ( int j=i; j > low && keys[ j - 1 ] > keys[ j ]; j-- ) {
+  			swap( keys, values, j, j - 1 );
+  		}
+  	}
+  }
+
+  private static void swap( long[] keys, double[] values, int i, int j ) {
+  	long key = keys[ i ];
+  	keys[ i ] = keys[ j ];
+  	keys[ j ] = key;
+  	double value = values[ i ];
+  	values[ i ] = values[ j ];
+  	values[ j ] = value;
+  }
+}
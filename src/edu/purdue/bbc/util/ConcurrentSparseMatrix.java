@@ -0,0 +1,348 @@
+/*
+
+Copyright: 2010 Purdue University
+
+This file is distributed under the following terms (MIT/X11 License):
+
+  Permission is hereby granted, free of charge, to any person
+  obtaining a copy of this file and associated documentation
+  files (the "Software"), to deal in the Software without
+  restriction, including without limitation the rights to use,
+  copy, modify, merge, publish, distribute, sublicense, and/or sell
+  copies of the Software, and to permit persons to whom the
+  Software is furnished to do so, subject to the following
+  conditions:
+
+  The above copyright notice and this permission notice shall be
+  included in all copies or substantial portions of the Software.
+
+  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+  OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+package edu.purdue.bbc.util;
+
+/**
+ * A thread-safe sparse 2D array of double values, intended to be filled by
+ * several threads at once. Entries are kept in a fixed number of
+ * independently locked stripes, chosen by the x coordinate, so that threads
+ * working on different rows rarely contend with each other. Once the matrix
+ * has been built it can be compacted into an immutable, read-optimized
+ * CompressedSparseMatrix with freeze( ). A symmetric matrix stores only its
+ * upper triangle (x &lt;= y), so (x, y) and (y, x) share a single entry.
+ */
+public class ConcurrentSparseMatrix {
+  private static final int DEFAULT_CONCURRENCY = 64;
+
+  private Stripe[] stripes;
+  private double defaultValue;
+  private boolean symmetric;
+
+  /**
+   * Creates a new ConcurrentSparseMatrix with a default value of 0.
+   */
+  public ConcurrentSparseMatrix( ) {
+  	this( 0.0 );
+  }
+
+  /**
+   * Creates a new ConcurrentSparseMatrix with the passed in default value.
+   *
+   * @param defaultValue The value to return if the index is not set.
+   */
+  public ConcurrentSparseMatrix( double defaultValue ) {
+  	this( defaultValue, DEFAULT_CONCURRENCY );
+  }
+
+  /**
+   * Creates a new ConcurrentSparseMatrix with the passed in default value.
+   *
+   * @param defaultValue The value to return if the index is not set.
+   * @param concurrency The expected number of threads writing to the matrix
+   *	at the same time. This is rounded up to a power of 2 and used as the
+   *	number of lock stripes.
+   */
+  public ConcurrentSparseMatrix( double defaultValue, int concurrency ) {
+  	this( defaultValue, concurrency, false );
+  }
+
+  /**
+   * Creates a new ConcurrentSparseMatrix with the passed in default value.
+   *
+   * @param defaultValue The value to return if the index is not set.
+   * @param concurrency The expected number of threads writing to the matrix
+   *	at the same time. This is rounded up to a power of 2 and used as the
+   *	number of lock stripes.
+   * @param symmetric Whether the matrix is symmetric.
+   */
+  public ConcurrentSparseMatrix( double defaultValue, int concurrency,
+                                 boolean symmetric ) {
+  	int stripeCount = 1;
+  	while ( stripeCount < concurrency ) {
+  		stripeCount <<= 1;
+  	}
+  	this.stripes = new Stripe[ stripeCount ];
+  	for ( int i=0; i < stripeCount; i++ ) {
+  		this.stripes[ i ] = new Stripe( );
+  	}
+  	this.defaultValue = defaultValue;
+  	this.symmetric = symmetric;
+  }
+
+  /**
+   * Sets a value in the matrix.
+   *
+   * @param x The x coordinate of the value to set.
+   * @param y The y coordinate of the value to set.
+   * @param value The value to set the index to.
+   * @return The old value of this location, or the default value if there
+   *	is not one.
+   */
+  public double set( int x, int y, double value ) {
+  	if ( this.symmetric && x > y ) {
+  		int swap = x;
+  		x = y;
+  		y = swap;
+  	}
+  	Stripe stripe = this.stripeFor( x );
+  	long key = CompressedSparseMatrix.key( x, y );
+  	synchronized( stripe ) {
+  		int index = stripe.indexOf( key );
+  		if ( index < 0 ) {
+  			stripe.insert( -1 - index, key, value );
+  			return this.defaultValue;
+  		}
+  		double returnValue = stripe.values[ index ];
+  		stripe.values[ index ] = value;
+  		return returnValue;
+  	}
+  }
+
+  /**
+   * Atomically adds to a value in the matrix. If the location has not been
+   * set, the delta is added to the default value.
+   *
+   * @param x The x coordinate of the value to add to.
+   * @param y The y coordinate of the value to add to.
+   * @param delta The amount to add to the current value.
+   * @return The new value of this location.
+   */
+  public double addTo( int x, int y, double delta ) {
+  	if ( this.symmetric && x > y ) {
+  		int swap = x;
+  		x = y;
+  		y = swap;
+  	}
+  	Stripe stripe = this.stripeFor( x );
+  	long key = CompressedSparseMatrix.key( x, y );
+  	synchronized( stripe ) {
+  		int index = stripe.indexOf( key );
+  		if ( index < 0 ) {
+  			double returnValue = this.defaultValue + delta;
+  			stripe.insert( -1 - index, key, returnValue );
+  			return returnValue;
+  		}
+  		return stripe.values[ index ] += delta;
+  	}
+  }
+
+  /**
+   * Gets a value from the matrix.
+   *
+   * @param x The x coordinate of the value to get.
+   * @param y The y coordinate of the value to get.
+   * @return The value of the specified coordinate if it is set, or the
+   *	default value if it is not.
+   */
+  public double get( int x, int y ) {
+  	if ( this.symmetric && x > y ) {
+  		int swap = x;
+  		x = y;
+  		y = swap;
+  	}
+  	Stripe stripe = this.stripeFor( x );
+  	synchronized( stripe ) {
+  		int index = stripe.indexOf( CompressedSparseMatrix.key( x, y ));
+  		return ( index < 0 ) ? this.defaultValue : stripe.values[ index ];
+  	}
+  }
+
+  /**
+   * Determines whether this value has been set or not.
+   *
+   * @param x The x coordinate of the value to check.
+   * @param y The y coordinate of the value to check.
+   * @return A boolean indicating whether the given location has been set.
+   */
+  public boolean isSet( int x, int y ) {
+  	if ( this.symmetric && x > y ) {
+  		int swap = x;
+  		x = y;
+  		y = swap;
+  	}
+  	Stripe stripe = this.stripeFor( x );
+  	synchronized( stripe ) {
+  		return stripe.indexOf( CompressedSparseMatrix.key( x, y )) >= 0;
+  	}
+  }
+
+  /**
+   * Gets the default value for this matrix. This is the value that is returned
+   * when an unset location is specified.
+   *
+   * @return The default value for this matrix.
+   */
+  public double getDefault( ) {
+  	return this.defaultValue;
+  }
+
+  /**
+   * Determines whether this matrix is symmetric, storing only the upper
+   * triangle.
+   *
+   * @return true if this matrix is symmetric.
+   */
+  public boolean isSymmetric( ) {
+  	return this.symmetric;
+  }
+
+  /**
+   * Returns the number of entries which have been set in this matrix. For a
+   * symmetric matrix, each pair of mirrored entries is counted once. If
+   * other threads are writing to the matrix the result is only an estimate.
+   *
+   * @return The number of entries.
+   */
+  public int size( ) {
+  	int returnValue = 0;
+  	for ( Stripe stripe : this.stripes ) {
+  		synchronized( stripe ) {
+  			returnValue += stripe.size;
+  		}
+  	}
+  	return returnValue;
+  }
+
+  /**
+   * Compacts the contents of this matrix into an immutable
+   * CompressedSparseMatrix. This matrix is left unchanged and may continue to
+   * be written to, but later changes are not reflected in the returned
+   * matrix. Writes made by other threads while freezing may or may not be
+   * included, so all writers should normally be finished first.
+   *
+   * @return A read-only copy of this matrix.
+   */
+  public CompressedSparseMatrix freeze( ) {
+  	long[][] stripeKeys = new long[ this.stripes.length ][ ];
+  	double[][] stripeValues = new double[ this.stripes.length ][ ];
+  	int count = 0;
+  	for ( int i=0; i < this.stripes.length; i++ ) {
+  		Stripe stripe = this.stripes[ i ];
+  		synchronized( stripe ) {
+  			stripeKeys[ i ] = new long[ stripe.size ];
+  			stripeValues[ i ] = new double[ stripe.size ];
+  			int n = 0;
+  			for ( int j=0; j < stripe.keys.length; j++ ) {
+  				if ( stripe.used[ j ]) {
+  					stripeKeys[ i ][ n ] = stripe.keys[ j ];
+  					stripeValues[ i ][ n ] = stripe.values[ j ];
+  					n++;
+  				}
+  			}
+  		}
+  		count += stripeKeys[ i ].length;
+  	}
+  	long[] keys = new long[ count ];
+  	double[] values = new double[ count ];
+  	int offset = 0;
+  	for ( int i=0; i < this.stripes.length; i++ ) {
+  		int length = stripeKeys[ i ].length;
+  		System.arraycopy( stripeKeys[ i ], 0, keys, offset, length );
+  		System.arraycopy( stripeValues[ i ], 0, values, offset, length );
+  		offset += length;
+  	}
+  	return CompressedSparseMatrix.build( keys, values, count,
+  	                                     this.defaultValue, this.symmetric );
+  }
+
+  /**
+   * Returns the stripe which holds the given row.
+   *
+   * @param x The x coordinate of the row.
+   * @return The Stripe for that row.
+   */
+  private Stripe stripeFor( int x ) {
+  	int hash = x * 0x9E3779B9;
+  	hash ^= hash >>> 16;
+  	return this.stripes[ hash & ( this.stripes.length - 1 )];
+  }
+
+  /**
+   * An open addressing hash table from packed coordinates to values. All
+   * access must be synchronized on the Stripe.
+   */
+  private static class Stripe {
+  	long[] keys = new long[ 16 ];
+  	double[] values = new double[ 16 ];
+  	boolean[] used = new boolean[ 16 ];
+  	int size;
+
+  	/**
+  	 * Finds the slot for a key.
+  	 *
+  	 * @param key The key to look for.
+  	 * @return The slot holding the key, or (-1 - slot) for the empty slot
+  	 *	where it would be inserted.
+  	 */
+  	int indexOf( long key ) {
+  		int mask = this.keys.length - 1;
+  		long hash = key * 0x9E3779B97F4A7C15L;
+  		int i = (int)( hash ^ ( hash >>> 32 )) & mask;
+  		while ( this.used[ i ]) {
+  			if ( this.keys[ i ] == key )
+  				return i;
+  			i = ( i + 1 ) & mask;
+  		}
+  		return -1 - i;
+  	}
+
+  	/**
+  	 * Stores a new key in an empty slot returned by indexOf( key ).
+  	 */
+  	void insert( int slot, long key, double value ) {
+  		this.keys[ slot ] = key;
+  		this.values[ slot ] = value;
+  		this.used[ slot ] = true;
+  		if ( ++this.size * 2 > this.keys.length ) {
+  			this.grow( );
+  		}
+  	}
+
+  	/**
+  	 * Doubles the capacity of this table.
+  	 */
+  	private void grow( ) {
+  		long[] oldKeys = this.keys;
+  		double[] oldValues = this.values;
+  		boolean[] oldUsed = this.used;
+  		this.keys = new long[ oldKeys.length * 2 ];
+  		this.values = new double[ oldKeys.length * 2 ];
+  		this.used = new boolean[ oldKeys.length * 2 ];
+  		for ( int i=0; i < oldKeys.length; i++ ) {
+  			if ( oldUsed[ i ]) {
+  				int slot = -1 - this.indexOf( oldKeys[ i ]);
+  				this.keys[ slot ] = oldKeys[ i ];
+  				this.values[ slot ] = oldValues[ i ];
+  				this.used[ slot ] = true;
+  			}
+  		}
+  	}
+  }
+}
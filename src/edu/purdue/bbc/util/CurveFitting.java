@@ -40,6 +40,14 @@ import org.apache.log4j.Logger;
  * @author Thomas McGrew
  */
 public class CurveFitting {
+  /** Identifies a linear fit, y = a + bx. */
+  public static final int LINEAR = 0;
+  /** Identifies a power law fit, y = ax<sup>b</sup>. */
+  public static final int POWER_LAW = 1;
+  /** Identifies a logarithmic fit, as found by logFit( double[] ). */
+  public static final int LOGARITHMIC = 2;
+  /** Identifies an exponential fit, y = ae<sup>bx</sup>. */
+  public static final int EXPONENTIAL = 3;
 
   private CurveFitting( ){ }
   
@@ -110,8 +118,73 @@ public class CurveFitting {
   	return new EquationTerm( a, b );
   }
 
+  /**
+   * Finds the least squares quadratic fit for a set of data, using the array
+   * indices as the x values.
+   *
+   * @param values The y values of the points on a graph.
+   * @return A Polynomial of degree 2 which best fits the data.
+   */
   public static Polynomial quadraticFit( double [] values ) {
-  	return null;
+  	return polynomialFit( values, 2 );
+  }
+
+  /**
+   * Finds the least squares polynomial fit of a given degree for a set of
+   * data, using the array indices as the x values. NaN values are ignored.
+   *
+   * @param values The y values of the points on a graph.
+   * @param degree The degree of the polynomial to fit.
+   * @return A Polynomial which best fits the data.
+   * @see PolynomialFitter
+   */
+  public static Polynomial polynomialFit( double [] values, int degree ) {
+  	PolynomialFitter fitter = new PolynomialFitter( degree );
+  	for ( int x=0; x < values.length; x++ ) {
+  		fitter.add( x, values[ x ]);
+  	}
+  	return fitter.getPolynomial( );
+  }
+
+  /**
+   * Finds the least squares polynomial fit of a given degree for a set of
+   * points. Points containing NaN are ignored.
+   *
+   * @param x The x values of the points.
+   * @param y The y values of the points.
+   * @param degree The degree of the polynomial to fit.
+   * @return A Polynomial which best fits the data.
+   * @see PolynomialFitter
+   */
+  public static Polynomial polynomialFit( double [] x, double [] y,
+                                          int degree ) {
+  	return polynomialFit( x, y, null, degree );
+  }
+
+  /**
+   * Finds the weighted least squares polynomial fit of a given degree for a
+   * set of points. Points containing NaN are ignored.
+   *
+   * @param x The x values of the points.
+   * @param y The y values of the points.
+   * @param weights The weight of each point, or null to weight all points
+   *	equally.
+   * @param degree The degree of the polynomial to fit.
+   * @return A Polynomial which best fits the data.
+   * @see PolynomialFitter
+   */
+  public static Polynomial polynomialFit( double [] x, double [] y,
+                                          double [] weights, int degree ) {
+  	if ( x.length != y.length ||
+  	     ( weights != null && weights.length != x.length ))
+  		throw new IllegalArgumentException( "Array lengths do not match" );
+  	PolynomialFitter fitter = new PolynomialFitter( degree );
+  	if ( weights == null ) {
+  		fitter.addAll( x, y );
+  	} else {
+  		fitter.addAll( x, y, weights );
+  	}
+  	return fitter.getPolynomial( );
   }
 
   /**
@@ -193,30 +266,65 @@ public class CurveFitting {
    * @return The best fitting equation found.
    */
   public static Equation chiSquareFit( double [] values ) {
-  	Equation returnValue = linearFit( values );
-  	double chi2 = getChiSquare( values, returnValue );
-
-  	Equation current = powerLawFit( values );
-  	double currentChi2 = getChiSquare( values, current );
-  	if ( Double.compare( currentChi2, chi2 ) < 0 ) {
-  		returnValue = current;
-  		chi2 = currentChi2;
-  	}
+  	FitEngine engine = new FitEngine( );
+  	int model = engine.fit( values );
+  	return engine.getEquation( model );
+  }
 
-  	current = logFit( values );
-  	currentChi2 = getChiSquare( values, current );
-  	if ( Double.compare( currentChi2, chi2 ) < 0 ) {
-  		returnValue = current;
-  		chi2 = currentChi2;
-  	}
+  /**
+   * Finds the best curve fitting equation for each of a set of series, in the
+   * same way as chiSquareFit( double[] ). The series are divided between
+   * several threads, and the results are returned as primitive arrays rather
+   * than as one Equation per series.
+   *
+   * @param values The series to fit, each containing the y values of the
+   *	points on a graph.
+   * @return The type, coefficients and chi-square statistic of the best
+   *	fitting model for each series.
+   */
+  public static FitResults chiSquareFit( final double [][] values ) {
+  	final FitResults returnValue = new FitResults( values.length );
+  	ParallelUtils.forRange( 0, values.length, new RangeTask( ) {
+  		public void run( int start, int end ) {
+  			FitEngine engine = new FitEngine( );
+  			for ( int i=start; i < end; i++ ) {
+  				int model = engine.fit( values[ i ]);
+  				returnValue.models[ i ] = model;
+  				returnValue.a[ i ] = engine.a[ model ];
+  				returnValue.b[ i ] = engine.b[ model ];
+  				returnValue.chiSquare[ i ] = engine.chiSquare[ model ];
+  			}
+  		}
+  	});
+  	return returnValue;
+  }
 
-  	current = exponentialFit( values );
-  	currentChi2 = getChiSquare( values, current );
-  	if ( !Double.isNaN( currentChi2 ) && Double.compare( currentChi2, chi2 ) < 0 ) {
-  		returnValue = current;
-  		chi2 = currentChi2;
+  /**
+   * Creates the Equation for a fitted model, of the same form as returned by
+   * the individual fitting methods.
+   *
+   * @param model The type of model, one of LINEAR, POWER_LAW, LOGARITHMIC or
+   *	EXPONENTIAL.
+   * @param a The first coefficient of the model.
+   * @param b The second coefficient of the model.
+   * @return The Equation for the model.
+   */
+  public static Equation getEquation( int model, double a, double b ) {
+  	switch( model ) {
+  		case LINEAR:
+  			return new Polynomial( a, b );
+  		case POWER_LAW:
+  			return new EquationTerm( a, b );
+  		case LOGARITHMIC:
+  			MultiPartEquation returnValue = new MultiPartEquation( );
+  			returnValue.add( new LogEquation( b ));
+  			returnValue.add( new EquationTerm( a, 0 ));
+  			return returnValue;
+  		case EXPONENTIAL:
+  			return new ExponentialEquation( a, b );
+  		default:
+  			throw new IllegalArgumentException( "Unknown model type " + model );
   	}
-  	return returnValue;
   }
 
   public static double getChiSquare( double [] values, Equation equation ) {
@@ -238,5 +346,256 @@ public class CurveFitting {
   	}
   	return returnValue;
   }
-}
 
+  /**
+   * Fits all of the candidate models used by chiSquareFit( double[] ) at
+   * once. The sums needed by linearFit, powerLawFit, logFit and
+   * exponentialFit are gathered in a single pass over the data, with each
+   * logarithm calculated only once per point, and the chi-square statistic
+   * of every model is then found in one more pass which evaluates the
+   * models directly from their coefficients. The results match those of
+   * the individual fitting methods and getChiSquare( double[], Equation ).
+   *
+   * An engine holds no references to the data between calls and may be
+   * reused, but must not be shared between threads.
+   */
+  static final class FitEngine {
+  	/** The coefficients a and b of each model, indexed by model type. */
+  	final double[] a = new double[ 4 ];
+  	final double[] b = new double[ 4 ];
+  	/** The chi-square statistic of each model, indexed by model type. */
+  	final double[] chiSquare = new double[ 4 ];
+
+  	/**
+  	 * Fits every model to a set of values, using the array indices as the x
+  	 * values.
+  	 *
+  	 * @param values The y values of the points on a graph.
+  	 * @return The type of the best fitting model, one of LINEAR, POWER_LAW,
+  	 *	LOGARITHMIC or EXPONENTIAL.
+  	 */
+  	int fit( double[] values ) {
+  		this.fitModels( values );
+  		this.score( values );
+  		int returnValue = LINEAR;
+  		double chi2 = this.chiSquare[ LINEAR ];
+  		for ( int model=POWER_LAW; model <= EXPONENTIAL; model++ ) {
+  			if ( Double.compare( this.chiSquare[ model ], chi2 ) < 0 ) {
+  				returnValue = model;
+  				chi2 = this.chiSquare[ model ];
+  			}
+  		}
+  		return returnValue;
+  	}
+
+  	/**
+  	 * Creates the Equation for one of the fitted models, of the same form as
+  	 * returned by the individual fitting methods.
+  	 *
+  	 * @param model The type of model.
+  	 * @return The Equation for that model.
+  	 */
+  	Equation getEquation( int model ) {
+  		return CurveFitting.getEquation( model, this.a[ model ], this.b[ model ]);
+  	}
+
+  	/**
+  	 * Gathers the sums for all of the models in a single pass and solves for
+  	 * their coefficients.
+  	 */
+  	private void fitModels( double[] values ) {
+  		// all non-NaN points (linear and power law)
+  		int n = 0;
+  		double sumX = 0.0, sumY = 0.0, sumXY = 0.0, sumX2 = 0.0;
+  		double sumLogX = 0.0, sumLogY = 0.0, sumLogX2 = 0.0, sumLogXLogY = 0.0;
+  		// non-zero y (exponential)
+  		int nExp = 0;
+  		double expSumX = 0.0, expSumX2 = 0.0, expSumLogY = 0.0;
+  		double expSumXLogY = 0.0;
+  		// non-zero x and y (logarithmic)
+  		int nLog = 0;
+  		double logSumY = 0.0, logSumLogX = 0.0, logSumLogX2 = 0.0;
+  		double logSumYLogX = 0.0;
+
+  		for ( int x=0; x < values.length; x++ ) {
+  			double y = values[ x ];
+  			if ( Double.isNaN( y ))
+  				continue;
+  			double logX = Math.log( x );
+  			double logY = Math.log( y );
+  			double logX2 = logX * logX;
+  			n++;
+  			sumX += x;
+  			sumY += y;
+  			sumXY += x * y;
+  			sumX2 += x * x;
+  			sumLogX += logX;
+  			sumLogY += logY;
+  			sumLogX2 += logX2;
+  			sumLogXLogY += logX * logY;
+  			if ( Double.compare( y, 0.0 ) != 0 ) {
+  				nExp++;
+  				expSumX += x;
+  				expSumX2 += x * x;
+  				expSumLogY += logY;
+  				expSumXLogY += x * logY;
+  				if ( x != 0 ) {
+  					nLog++;
+  					logSumY += y;
+  					logSumLogX += logX;
+  					logSumLogX2 += logX2;
+  					logSumYLogX += logX * y;
+  				}
+  			}
+  		}
+
+  		double meanX = sumX / n;
+  		double meanY = sumY / n;
+  		this.b[ LINEAR ] = ( sumXY / n - ( meanX * meanY )) /
+  		                   ( sumX2 / n - ( meanX * meanX ));
+  		this.a[ LINEAR ] = meanY - this.b[ LINEAR ] * meanX;
+
+  		this.b[ POWER_LAW ] = ( n * sumLogXLogY - sumLogX * sumLogY ) /
+  		                      ( n * sumLogX2 - sumLogX * sumLogX );
+  		this.a[ POWER_LAW ] = 
+  			Math.exp(( sumLogY - this.b[ POWER_LAW ] * sumLogX ) / n );
+
+  		this.b[ LOGARITHMIC ] = 
+  			Math.abs(( nLog * logSumYLogX - logSumY * logSumLogX ) /
+  		           ( nLog * logSumLogX2 - logSumLogX * logSumLogX ));
+  		this.a[ LOGARITHMIC ] = 
+  			( logSumY - this.b[ LOGARITHMIC ] * logSumLogX ) / nLog;
+
+  		this.b[ EXPONENTIAL ] = ( expSumXLogY - ( expSumX * expSumLogY / nExp )) /
+  		                        ( expSumX2 - expSumX * expSumX / nExp );
+  		this.a[ EXPONENTIAL ] = Math.exp( expSumLogY / nExp ) - 
+  		                        this.b[ EXPONENTIAL ] * ( expSumX / nExp );
+  	}
+
+  	/**
+  	 * Finds the chi-square statistic of every model in a single pass. Points
+  	 * are skipped where getChiSquare( double[], Equation ) would skip them.
+  	 */
+  	private void score( double[] values ) {
+  		double linearA = this.a[ LINEAR ], linearB = this.b[ LINEAR ];
+  		double powerA = this.a[ POWER_LAW ], powerB = this.b[ POWER_LAW ];
+  		double logA = this.a[ LOGARITHMIC ], logB = this.b[ LOGARITHMIC ];
+  		double expA = this.a[ EXPONENTIAL ], expB = this.b[ EXPONENTIAL ];
+  		double linear = Double.NaN, power = Double.NaN;
+  		double log = Double.NaN, exponential = Double.NaN;
+  		for ( int x=0; x < values.length; x++ ) {
+  			double actual = values[ x ];
+  			if ( Double.isNaN( actual ))
+  				continue;
+  			linear = addChiSquare( linear, actual, linearA + x * linearB );
+  			power = addChiSquare( power, actual, powerA * Math.pow( x, powerB ));
+  			exponential = 
+  				addChiSquare( exponential, actual, expA * Math.exp( expB * x ));
+  			// LogEquation.solve( ) rejects negative arguments.
+  			double logArgument = logB * x;
+  			if ( !( logArgument < 0 )) {
+  				log = addChiSquare( log, actual, logA + Math.log(
+  					( logArgument == 0 ) ? Double.MIN_VALUE : logArgument ));
+  			}
+  		}
+  		this.chiSquare[ LINEAR ] = linear;
+  		this.chiSquare[ POWER_LAW ] = power;
+  		this.chiSquare[ LOGARITHMIC ] = log;
+  		this.chiSquare[ EXPONENTIAL ] = exponential;
+  	}
+
+  	/**
+  	 * Adds the contribution of one point to a running chi-square statistic,
+  	 * in the same way as getChiSquare( double[], Equation ).
+  	 */
+  	private static double addChiSquare( double chiSquare, double actual,
+  	                                    double expected ) {
+  		if ( Double.isNaN( expected ))
+  			return chiSquare;
+  		if ( Double.isNaN( chiSquare ))
+  			return 0.0;
+  		double difference = actual - expected;
+  		return chiSquare + difference * difference / Math.abs( expected );
+  	}
+  }
+
+  /**
+   * The results of fitting a set of series with chiSquareFit( double[][] ).
+   * Each result is held in a set of parallel arrays indexed by series.
+   */
+  public static class FitResults {
+  	private final int[] models;
+  	private final double[] a;
+  	private final double[] b;
+  	private final double[] chiSquare;
+
+  	FitResults( int size ) {
+  		this.models = new int[ size ];
+  		this.a = new double[ size ];
+  		this.b = new double[ size ];
+  		this.chiSquare = new double[ size ];
+  	}
+
+  	/**
+  	 * Returns the number of series which were fitted.
+  	 *
+  	 * @return The number of results.
+  	 */
+  	public int size( ) {
+  		return this.models.length;
+  	}
+
+  	/**
+  	 * Returns the type of the best fitting model for each series. The array is
+  	 * not copied.
+  	 *
+  	 * @return An array of LINEAR, POWER_LAW, LOGARITHMIC or EXPONENTIAL.
+  	 */
+  	public int[] getModels( ) {
+  		return this.models;
+  	}
+
+  	/**
+  	 * Returns the first coefficient of the model for each series. The array is
+  	 * not copied.
+  	 *
+  	 * @return An array containing the value of a for each series.
+  	 * @see CurveFitting#getEquation(int,double,double)
+  	 */
+  	public double[] getA( ) {
+  		return this.a;
+  	}
+
+  	/**
+  	 * Returns the second coefficient of the model for each series. The array
+  	 * is not copied.
+  	 *
+  	 * @return An array containing the value of b for each series.
+  	 * @see CurveFitting#getEquation(int,double,double)
+  	 */
+  	public double[] getB( ) {
+  		return this.b;
+  	}
+
+  	/**
+  	 * Returns the chi-square statistic of the model for each series. The
+  	 * array is not copied.
+  	 *
+  	 * @return An array containing the chi-square statistic for each series.
+  	 */
+  	public double[] getChiSquare( ) {
+  		return this.chiSquare;
+  	}
+
+  	/**
+  	 * Creates the Equation for the model of one series.
+  	 *
+  	 * @param index The index of the series.
+  	 * @return The best fitting Equation for that series.
+  	 */
+  	public Equation getEquation( int index ) {
+  		return CurveFitting.getEquation(
+  			this.models[ index ], this.a[ index ], this.b[ index ]);
+  	}
+  }
+}
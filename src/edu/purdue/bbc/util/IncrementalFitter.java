@@ -0,0 +1,229 @@
+/*
+
+Copyright: 2010 Purdue University
+
+This file is distributed under the following terms (MIT/X11 License):
+
+  Permission is hereby granted, free of charge, to any person
+  obtaining a copy of this file and associated documentation
+  files (the "Software"), to deal in the Software without
+  restriction, including without limitation the rights to use,
+  copy, modify, merge, publish, distribute, sublicense, and/or sell
+  copies of the Software, and to permit persons to whom the
+  Software is furnished to do so, subject to the following
+  conditions:
+
+  The above copyright notice and this permission notice shall be
+  included in all copies or substantial portions of the Software.
+
+  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+  OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+
+package edu.purdue.bbc.util;
+
+import edu.purdue.bbc.util.equation.Equation;
+import edu.purdue.bbc.util.equation.EquationTerm;
+import edu.purdue.bbc.util.equation.ExponentialEquation;
+import edu.purdue.bbc.util.equation.LogEquation;
+import edu.purdue.bbc.util.equation.MultiPartEquation;
+import edu.purdue.bbc.util.equation.Polynomial;
+
+/**
+ * Fits a curve to a stream of points, updating the fit in constant time as
+ * each point is added or removed. Removing the oldest point after each new
+ * one is added gives a fit over a sliding window.
+ *
+ * Each model is fitted as a linear regression on transformed values:
+ *
+ * <ul>
+ *   <li>LINEAR: y = a + bx, from x and y.</li>
+ *   <li>POWER_LAW: y = ax<sup>b</sup>, from ln x and ln y.</li>
+ *   <li>LOGARITHMIC: y = a + b ln x, from ln x and y.</li>
+ *   <li>EXPONENTIAL: y = ae<sup>bx</sup>, from x and ln y.</li>
+ * </ul>
+ *
+ * Points for which a transformed value is not finite, such as a y value of 0
+ * for an exponential fit, are ignored. The running means and co-moments are
+ * updated with Welford's method rather than kept as raw sums, so removing
+ * points does not lose precision to cancellation when the x values are large.
+ *
+ * An IncrementalFitter is not thread-safe.
+ *
+ * @see CurveFitting
+ */
+public class IncrementalFitter {
+  private final int model;
+  private long count;
+  private double meanU;
+  private double meanV;
+  private double varianceU;
+  private double covariance;
+
+  /**
+   * Creates a new IncrementalFitter.
+   *
+   * @param model The type of model to fit, one of CurveFitting.LINEAR,
+   *	CurveFitting.POWER_LAW, CurveFitting.LOGARITHMIC or
+   *	CurveFitting.EXPONENTIAL.
+   */
+  public IncrementalFitter( int model ) {
+  	if ( model < CurveFitting.LINEAR || model > CurveFitting.EXPONENTIAL )
+  		throw new IllegalArgumentException( "Unknown model type " + model );
+  	this.model = model;
+  }
+
+  /**
+   * Returns the type of model being fitted.
+   *
+   * @return The model type.
+   */
+  public int getModel( ) {
+  	return this.model;
+  }
+
+  /**
+   * Adds a point to the fit.
+   *
+   * @param x The x value of the point.
+   * @param y The y value of the point.
+   * @return true if the point was used, false if it was ignored.
+   */
+  public boolean add( double x, double y ) {
+  	double u = this.transformX( x );
+  	double v = this.transformY( y );
+  	if ( !isFinite( u ) || !isFinite( v ))
+  		return false;
+  	this.count++;
+  	double du = u - this.meanU;
+  	this.meanU += du / this.count;
+  	this.meanV += ( v - this.meanV ) / this.count;
+  	this.varianceU += du * ( u - this.meanU );
+  	this.covariance += du * ( v - this.meanV );
+  	return true;
+  }
+
+  /**
+   * Removes a point which was previously added. The result is undefined if
+   * the point was never added.
+   *
+   * @param x The x value of the point.
+   * @param y The y value of the point.
+   * @return true if the point was removed, false if it would have been
+   *	ignored by add( double, double ).
+   */
+  public boolean remove( double x, double y ) {
+  	double u = this.transformX( x );
+  	double v = this.transformY( y );
+  	if ( !isFinite( u ) || !isFinite( v ) || this.count == 0 )
+  		return false;
+  	if ( --this.count == 0 ) {
+  		this.clear( );
+  		return true;
+  	}
+  	double du = u - this.meanU;
+  	this.meanU -= du / this.count;
+  	this.meanV -= ( v - this.meanV ) / this.count;
+  	this.varianceU -= du * ( u - this.meanU );
+  	this.covariance -= du * ( v - this.meanV );
+  	return true;
+  }
+
+  /**
+   * Removes all points from the fit.
+   */
+  public void clear( ) {
+  	this.count = 0;
+  	this.meanU = 0.0;
+  	this.meanV = 0.0;
+  	this.varianceU = 0.0;
+  	this.covariance = 0.0;
+  }
+
+  /**
+   * Returns the number of points currently in the fit.
+   *
+   * @return The number of points.
+   */
+  public long getCount( ) {
+  	return this.count;
+  }
+
+  /**
+   * Returns the coefficient a of the current fit. This is NaN if fewer than 2
+   * distinct x values have been added.
+   *
+   * @return The value of a.
+   */
+  public double getA( ) {
+  	double intercept = this.meanV - this.getB( ) * this.meanU;
+  	switch( this.model ) {
+  		case CurveFitting.POWER_LAW:
+  		case CurveFitting.EXPONENTIAL:
+  			return Math.exp( intercept );
+  		default:
+  			return intercept;
+  	}
+  }
+
+  /**
+   * Returns the coefficient b of the current fit. This is NaN if fewer than 2
+   * distinct x values have been added.
+   *
+   * @return The value of b.
+   */
+  public double getB( ) {
+  	if ( !( this.varianceU > 0.0 ))
+  		return Double.NaN;
+  	return this.covariance / this.varianceU;
+  }
+
+  /**
+   * Creates an Equation for the current fit.
+   *
+   * @return The fitted Equation.
+   */
+  public Equation getEquation( ) {
+  	double a = this.getA( );
+  	double b = this.getB( );
+  	switch( this.model ) {
+  		case CurveFitting.LINEAR:
+  			return new Polynomial( a, b );
+  		case CurveFitting.POWER_LAW:
+  			return new EquationTerm( a, b );
+  		case CurveFitting.LOGARITHMIC:
+  			MultiPartEquation returnValue = new MultiPartEquation( );
+  			returnValue.add( new LogEquation( b, 1.0 ));
+  			returnValue.add( new EquationTerm( a, 0 ));
+  			return returnValue;
+  		default:
+  			return new ExponentialEquation( a, b );
+  	}
+  }
+
+  private double transformX( double x ) {
+  	if ( this.model == CurveFitting.POWER_LAW ||
+  	     this.model == CurveFitting.LOGARITHMIC )
+  		return Math.log( x );
+  	return x;
+  }
+
+  private double transformY( double y ) {
+  	if ( this.model == CurveFitting.POWER_LAW ||
+  	     this.model == CurveFitting.EXPONENTIAL )
+  		return Math.log( y );
+  	return y;
+  }
+
+  private static boolean isFinite( double value ) {
+  	return !Double.isNaN( value ) && !Double.isInfinite( value );
+  }
+}
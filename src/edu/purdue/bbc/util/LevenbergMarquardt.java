@@ -0,0 +1,346 @@
+/*
+
+Copyright: 2010 Purdue University
+
+This file is distributed under the following terms (MIT/X11 License):
+
+  Permission is hereby granted, free of charge, to any person
+  obtaining a copy of this file and associated documentation
+  files (the "Software"), to deal in the Software without
+  restriction, including without limitation the rights to use,
+  copy, modify, merge, publish, distribute, sublicense, and/or sell
+  copies of the Software, and to permit persons to whom the
+  Software is furnished to do so, subject to the following
+  conditions:
+
+  The above copyright notice and this permission notice shall be
+  included in all copies or substantial portions of the Software.
+
+  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+  OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+
+package edu.purdue.bbc.util;
+
+import edu.purdue.bbc.util.equation.ParametricEquation;
+
+import java.util.Arrays;
+
+/**
+ * Fits a ParametricEquation to a set of points by nonlinear weighted least
+ * squares, using the Levenberg-Marquardt method. Unlike the log-linearized
+ * fits in CurveFitting, the residuals are minimized on the original scale of
+ * the data, so the fit is not biased towards small values and points at or
+ * below zero are used. The partial derivatives are taken from the equation
+ * itself, which all of the built in parametric equations calculate
+ * analytically.
+ *
+ * The equation passed in supplies both the form of the model and the
+ * starting parameters. A log-linearized fit from CurveFitting is usually a
+ * good starting point.
+ *
+ * A LevenbergMarquardt object keeps its work arrays between fits, so reusing
+ * one for many fits of the same form does not allocate memory during the
+ * iterations. It is not thread-safe; see fit( ParametricEquation, double[],
+ * double[][] ) for fitting many series at once.
+ *
+ * References:
+ * <CITE>Press, W. H. et al. (2007). Numerical Recipes: The Art of Scientific
+ * Computing, 3rd ed. (pp 801-806) Cambridge University Press.</CITE>
+ */
+public class LevenbergMarquardt {
+  private static final double MAX_LAMBDA = 1e16;
+
+  private int maxIterations = 200;
+  private double tolerance = 1e-10;
+
+  private int size = -1;
+  private double[] parameters;
+  private double[] trial;
+  private double[] gradient;
+  private double[] step;
+  private double[] alpha;
+  private double[] beta;
+  private double[] factor;
+
+  private double chiSquare;
+  private int iterations;
+  private boolean converged;
+
+  /**
+   * Creates a new LevenbergMarquardt fitter.
+   */
+  public LevenbergMarquardt( ) { }
+
+  /**
+   * Sets the maximum number of iterations for each fit. The default is 200.
+   *
+   * @param maxIterations The maximum number of iterations.
+   */
+  public void setMaxIterations( int maxIterations ) {
+  	this.maxIterations = maxIterations;
+  }
+
+  /**
+   * Sets the relative change in chi-square below which a fit is considered
+   * to have converged. The default is 1e-10.
+   *
+   * @param tolerance The convergence tolerance.
+   */
+  public void setTolerance( double tolerance ) {
+  	this.tolerance = tolerance;
+  }
+
+  /**
+   * Fits an equation to a set of points, giving each point a weight of 1.
+   *
+   * @param equation The form of the model and the starting parameters.
+   * @param x The x values of the points.
+   * @param y The y values of the points.
+   * @return A new equation of the same form with the fitted parameters.
+   */
+  public ParametricEquation fit( ParametricEquation equation,
+                                 double[] x, double[] y ) {
+  	return this.fit( equation, x, y, null );
+  }
+
+  /**
+   * Fits an equation to a set of weighted points. Points where x or y is NaN
+   * or the weight is not positive are ignored.
+   *
+   * @param equation The form of the model and the starting parameters.
+   * @param x The x values of the points.
+   * @param y The y values of the points.
+   * @param weights The weight of each point, usually the reciprocal of the
+   *	variance of y, or null to weight all points equally.
+   * @return A new equation of the same form with the fitted parameters.
+   */
+  public ParametricEquation fit( ParametricEquation equation, double[] x,
+                                 double[] y, double[] weights ) {
+  	if ( x.length != y.length ||
+  	     ( weights != null && weights.length != x.length ))
+  		throw new IllegalArgumentException( "Array lengths do not match" );
+  	this.allocate( equation.getParameterCount( ));
+  	double[] start = equation.getParameters( );
+  	System.arraycopy( start, 0, this.parameters, 0, this.size );
+  	this.iterations = 0;
+  	this.converged = false;
+
+  	double lambda = 1e-3;
+  	double chi2 = this.buildSystem( equation, x, y, weights );
+  	while ( this.iterations < this.maxIterations && !this.converged ) {
+  		this.iterations++;
+  		boolean improved = false;
+  		while ( !improved && lambda < MAX_LAMBDA ) {
+  			if ( this.solveStep( lambda )) {
+  				for ( int i=0; i < this.size; i++ ) {
+  					this.trial[ i ] = this.parameters[ i ] + this.step[ i ];
+  				}
+  				double trialChi2 = this.getChiSquare( equation, this.trial,
+  				                                      x, y, weights );
+  				if ( trialChi2 <= chi2 ) {
+  					improved = true;
+  					double[] swap = this.parameters;
+  					this.parameters = this.trial;
+  					this.trial = swap;
+  					this.converged =
+  						chi2 - trialChi2 <= this.tolerance * trialChi2 ||
+  						this.isStepSmall( );
+  					lambda = Math.max( lambda * 0.1, 1e-12 );
+  					chi2 = this.buildSystem( equation, x, y, weights );
+  					continue;
+  				}
+  			}
+  			lambda *= 10.0;
+  		}
+  		if ( !improved ) {
+  			// no step in any direction reduces chi-square, so this is a minimum.
+  			this.converged = true;
+  		}
+  	}
+  	this.chiSquare = chi2;
+  	double[] returnValue = new double[ this.size ];
+  	System.arraycopy( this.parameters, 0, returnValue, 0, this.size );
+  	return equation.withParameters( returnValue );
+  }
+
+  /**
+   * Returns the weighted sum of squared residuals of the last fit.
+   *
+   * @return The chi-square statistic of the last fit.
+   */
+  public double getChiSquare( ) {
+  	return this.chiSquare;
+  }
+
+  /**
+   * Returns the number of iterations used by the last fit.
+   *
+   * @return The number of iterations.
+   */
+  public int getIterations( ) {
+  	return this.iterations;
+  }
+
+  /**
+   * Determines whether the last fit converged before reaching the maximum
+   * number of iterations.
+   *
+   * @return true if the last fit converged.
+   */
+  public boolean hasConverged( ) {
+  	return this.converged;
+  }
+
+  /**
+   * Fits an equation to many series in parallel. All series share the same x
+   * values, and each fit starts from the parameters of the passed in
+   * equation.
+   *
+   * @param equation The form of the model and the starting parameters.
+   * @param x The x values shared by all series.
+   * @param y The y values of each series.
+   * @return The fitted equation for each series.
+   */
+  public static ParametricEquation[] fit( final ParametricEquation equation,
+                                          final double[] x,
+                                          final double[][] y ) {
+  	final ParametricEquation[] returnValue = new ParametricEquation[ y.length ];
+  	ParallelUtils.forRange( 0, y.length, new RangeTask( ) {
+  		public void run( int start, int end ) {
+  			LevenbergMarquardt fitter = new LevenbergMarquardt( );
+  			for ( int i=start; i < end; i++ ) {
+  				returnValue[ i ] = fitter.fit( equation, x, y[ i ]);
+  			}
+  		}
+  	});
+  	return returnValue;
+  }
+
+  /**
+   * Sizes the work arrays for equations with the given number of parameters.
+   */
+  private void allocate( int size ) {
+  	if ( size == this.size )
+  		return;
+  	this.size = size;
+  	this.parameters = new double[ size ];
+  	this.trial = new double[ size ];
+  	this.gradient = new double[ size ];
+  	this.step = new double[ size ];
+  	this.alpha = new double[ size * size ];
+  	this.beta = new double[ size ];
+  	this.factor = new double[ size * size ];
+  }
+
+  /**
+   * Builds the normal equations at the current parameters: alpha is
+   * J<sup>T</sup>WJ and beta is J<sup>T</sup>Wr, where r is the residuals.
+   *
+   * @return The chi-square statistic at the current parameters.
+   */
+  private double buildSystem( ParametricEquation equation, double[] x,
+                              double[] y, double[] weights ) {
+  	int n = this.size;
+  	Arrays.fill( this.alpha, 0.0 );
+  	Arrays.fill( this.beta, 0.0 );
+  	double returnValue = 0.0;
+  	for ( int i=0; i < x.length; i++ ) {
+  		double weight = ( weights == null ) ? 1.0 : weights[ i ];
+  		if ( Double.isNaN( x[ i ]) || Double.isNaN( y[ i ]) || !( weight > 0 ))
+  			continue;
+  		double residual = y[ i ] - equation.solve( x[ i ], this.parameters );
+  		equation.gradient( x[ i ], this.parameters, this.gradient );
+  		returnValue += weight * residual * residual;
+  		for ( int j=0; j < n; j++ ) {
+  			double wg = weight * this.gradient[ j ];
+  			this.beta[ j ] += wg * residual;
+  			for ( int k=0; k <= j; k++ ) {
+  				this.alpha[ j * n + k ] += wg * this.gradient[ k ];
+  			}
+  		}
+  	}
+  	return returnValue;
+  }
+
+  /**
+   * Solves ( alpha + lambda * diag( alpha )) step = beta by Cholesky
+   * decomposition, using the lower triangle of alpha.
+   *
+   * @return false if the damped matrix is not positive definite.
+   */
+  private boolean solveStep( double lambda ) {
+  	int n = this.size;
+  	for ( int j=0; j < n; j++ ) {
+  		for ( int k=0; k <= j; k++ ) {
+  			double sum = this.alpha[ j * n + k ];
+  			if ( j == k ) {
+  				sum += lambda * Math.max( sum, 1e-300 );
+  			}
+  			for ( int m=0; m < k; m++ ) {
+  				sum -= this.factor[ j * n + m ] * this.factor[ k * n + m ];
+  			}
+  			if ( j == k ) {
+  				if ( !( sum > 0.0 ))
+  					return false;
+  				this.factor[ j * n + j ] = Math.sqrt( sum );
+  			} else {
+  				this.factor[ j * n + k ] = sum / this.factor[ k * n + k ];
+  			}
+  		}
+  	}
+  	for ( int j=0; j < n; j++ ) {
+  		double sum = this.beta[ j ];
+  		for ( int m=0; m < j; m++ ) {
+  			sum -= this.factor[ j * n + m ] * this.step[ m ];
+  		}
+  		this.step[ j ] = sum / this.factor[ j * n + j ];
+  	}
+  	for ( int j=n-1; j >= 0; j-- ) {
+  		double sum = this.step[ j ];
+  		for ( int m=j+1; m < n; m++ ) {
+  			sum -= this.factor[ m * n + j ] * this.step[ m ];
+  		}
+  		this.step[ j ] = sum / this.factor[ j * n + j ];
+  	}
+  	return true;
+  }
+
+  /**
+   * Returns the chi-square statistic for a set of parameters, or infinity if
+   * the equation is undefined at any of the points.
+   */
+  private double getChiSquare( ParametricEquation equation, double[] parameters,
+                               double[] x, double[] y, double[] weights ) {
+  	double returnValue = 0.0;
+  	for ( int i=0; i < x.length; i++ ) {
+  		double weight = ( weights == null ) ? 1.0 : weights[ i ];
+  		if ( Double.isNaN( x[ i ]) || Double.isNaN( y[ i ]) || !( weight > 0 ))
+  			continue;
+  		double residual = y[ i ] - equation.solve( x[ i ], parameters );
+  		returnValue += weight * residual * residual;
+  	}
+  	return Double.isNaN( returnValue ) ? Double.POSITIVE_INFINITY : returnValue;
+  }
+
+  /**
+   * Determines whether the last step was negligible compared to the
+   * parameters.
+   */
+  private boolean isStepSmall( ) {
+  	for ( int i=0; i < this.size; i++ ) {
+  		if ( Math.abs( this.step[ i ]) >
+  		     this.tolerance * ( Math.abs( this.parameters[ i ]) + this.tolerance ))
+  			return false;
+  	}
+  	return true;
+  }
+}
@@ -0,0 +1,200 @@
+/*
+
+Copyright: 2010 Purdue University
+
+This file is distributed under the following terms (MIT/X11 License):
+
+  Permission is hereby granted, free of charge, to any person
+  obtaining a copy of this file and associated documentation
+  files (the "Software"), to deal in the Software without
+  restriction, including without limitation the rights to use,
+  copy, modify, merge, publish, distribute, sublicense, and/or sell
+  copies of the Software, and to permit persons to whom the
+  Software is furnished to do so, subject to the following
+  conditions:
+
+  The above copyright notice and this permission notice shall be
+  included in all copies or substantial portions of the Software.
+
+  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+  OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+
+package edu.purdue.bbc.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Utilities for dividing work on arrays between several threads.
+ *
+ * Work is split into chunks of indices which are claimed one at a time by a
+ * shared pool of daemon threads, so threads which finish early simply take
+ * more chunks rather than waiting on slower ones. The calling thread claims
+ * chunks as well, which means nested calls cannot deadlock even when every
+ * pool thread is busy.
+ */
+public class ParallelUtils {
+  private static final int THREADS =
+  	Runtime.getRuntime( ).availableProcessors( );
+  private static final int CHUNKS_PER_THREAD = 8;
+  private static ExecutorService executor;
+
+  private ParallelUtils( ){ }
+
+  /**
+   * Returns the number of threads work is divided between.
+   *
+   * @return The number of threads used, including the calling thread.
+   */
+  public static int getThreadCount( ) {
+  	return THREADS;
+  }
+
+  /**
+   * Runs a task over a range of indices in parallel, returning when the whole
+   * range has been processed. The range is split into several chunks per
+   * thread.
+   *
+   * @param start The first index to process.
+   * @param end One past the last index to process.
+   * @param task The task to run on each chunk of the range.
+   */
+  public static void forRange( int start, int end, RangeTask task ) {
+  	int grain = ( end - start ) / ( THREADS * CHUNKS_PER_THREAD );
+  	forRange( start, end, Math.max( grain, 1 ), task );
+  }
+
+  /**
+   * Runs a task over a range of indices in parallel, returning when the whole
+   * range has been processed. If the task throws an exception, no further
+   * chunks are started and the exception is rethrown in the calling thread
+   * once the chunks already running have finished.
+   *
+   * @param start The first index to process.
+   * @param end One past the last index to process.
+   * @param grain The number of indices in each chunk. Larger chunks reduce
+   *	overhead, smaller chunks balance uneven work better.
+   * @param task The task to run on each chunk of the range.
+   */
+  public static void forRange( int start, int end, int grain, RangeTask task ) {
+  	if ( end <= start )
+  		return;
+  	grain = Math.max( grain, 1 );
+  	int chunks = (int)((((long)end - start ) + grain - 1 ) / grain );
+  	int helpers = Math.min( THREADS, chunks ) - 1;
+  	if ( helpers <= 0 ) {
+  		task.run( start, end );
+  		return;
+  	}
+  	Job job = new Job( start, end, grain, chunks, task );
+  	ExecutorService executor = getExecutor( );
+  	for ( int i=0; i < helpers; i++ ) {
+  		executor.execute( job );
+  	}
+  	job.run( );
+  	job.await( );
+  }
+
+  /**
+   * Returns the shared thread pool, creating it if necessary.
+   */
+  private static synchronized ExecutorService getExecutor( ) {
+  	if ( executor == null ) {
+  		executor = Executors.newFixedThreadPool( THREADS, new ThreadFactory( ) {
+  			private AtomicInteger count = new AtomicInteger( );
+  			public Thread newThread( Runnable runnable ) {
+  				Thread returnValue = new Thread( runnable,
+  					"ParallelUtils-" + count.incrementAndGet( ));
+  				returnValue.setDaemon( true );
+  				return returnValue;
+  			}
+  		});
+  	}
+  	return executor;
+  }
+
+  /**
+   * A single call to forRange. Each thread running the job repeatedly claims
+   * the next chunk until none are left.
+   */
+  private static class Job implements Runnable {
+  	private final int start;
+  	private final int end;
+  	private final int grain;
+  	private final int chunks;
+  	private final RangeTask task;
+  	private final AtomicInteger next = new AtomicInteger( );
+  	private int finished;
+  	private Throwable failure;
+
+  	Job( int start, int end, int grain, int chunks, RangeTask task ) {
+  		this.start = start;
+  		this.end = end;
+  		this.grain = grain;
+  		this.chunks = chunks;
+  		this.task = task;
+  	}
+
+  	public void run( ) {
+  		int chunk;
+  		while (( chunk = this.next.getAndIncrement( )) < this.chunks ) {
+  			Throwable error = null;
+  			if ( !this.isFailed( )) {
+  				long from = this.start + (long)chunk * this.grain;
+  				try {
+  					int to = (int)Math.min( from + this.grain, this.end );
+  					this.task.run((int)from, to );
+  				} catch ( Throwable e ) {
+  					error = e;
+  				}
+  			}
+  			this.finish( error );
+  		}
+  	}
+
+  	private synchronized boolean isFailed( ) {
+  		return this.failure != null;
+  	}
+
+  	private synchronized void finish( Throwable error ) {
+  		if ( error != null && this.failure == null )
+  			this.failure = error;
+  		if ( ++this.finished == this.chunks )
+  			this.notifyAll( );
+  	}
+
+  	/**
+  	 * Waits for every chunk to finish and rethrows the first failure, if any.
+  	 */
+  	synchronized void await( ) {
+  		boolean interrupted = false;
+  		while ( this.finished < this.chunks ) {
+  			try {
+  				this.wait( );
+  			} catch ( InterruptedException e ) {
+  				// the chunks still running use the caller's arrays, so keep waiting.
+  				interrupted = true;
+  			}
+  		}
+  		if ( interrupted )
+  			Thread.currentThread( ).interrupt( );
+  		if ( this.failure instanceof RuntimeException )
+  			throw (RuntimeException)this.failure;
+  		if ( this.failure instanceof Error )
+  			throw (Error)this.failure;
+  		if ( this.failure != null )
+  			throw new RuntimeException( this.failure );
+  	}
+  }
+}
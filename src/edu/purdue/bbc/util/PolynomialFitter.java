@@ -0,0 +1,228 @@
+/*
+
+Copyright: 2010 Purdue University
+
+This file is distributed under the following terms (MIT/X11 License):
+
+  Permission is hereby granted, free of charge, to any person
+  obtaining a copy of this file and associated documentation
+  files (the "Software"), to deal in the Software without
+  restriction, including without limitation the rights to use,
+  copy, modify, merge, publish, distribute, sublicense, and/or sell
+  copies of the Software, and to permit persons to whom the
+  Software is furnished to do so, subject to the following
+  conditions:
+
+  The above copyright notice and this permission notice shall be
+  included in all copies or substantial portions of the Software.
+
+  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+  OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+
+package edu.purdue.bbc.util;
+
+import edu.purdue.bbc.util.equation.Polynomial;
+
+import java.util.Arrays;
+
+/**
+ * Fits a polynomial of a given degree to a stream of points by weighted least
+ * squares. Each point is folded into an upper triangular factor R of the
+ * (weighted) design matrix with a series of Givens rotations as it is added,
+ * so the design matrix is never built and memory use depends only on the
+ * degree. Solving from R avoids forming the normal equations, which would
+ * square the condition number of the problem.
+ *
+ * A PolynomialFitter is not thread-safe.
+ */
+public class PolynomialFitter {
+  private final int size;
+  private final double[] r;
+  private final double[] qty;
+  private final double[] row;
+  private double residual;
+  private long count;
+
+  /**
+   * Creates a new PolynomialFitter.
+   *
+   * @param degree The degree of the polynomial to fit.
+   */
+  public PolynomialFitter( int degree ) {
+  	if ( degree < 0 )
+  		throw new IllegalArgumentException( "Invalid degree " + degree );
+  	this.size = degree + 1;
+  	this.r = new double[ this.size * this.size ];
+  	this.qty = new double[ this.size ];
+  	this.row = new double[ this.size ];
+  }
+
+  /**
+   * Returns the degree of the polynomial being fitted.
+   *
+   * @return The degree of the polynomial.
+   */
+  public int getDegree( ) {
+  	return this.size - 1;
+  }
+
+  /**
+   * Adds a point with a weight of 1.
+   *
+   * @param x The x value of the point.
+   * @param y The y value of the point.
+   */
+  public void add( double x, double y ) {
+  	this.add( x, y, 1.0 );
+  }
+
+  /**
+   * Adds a weighted point. Points where x, y or the weight are NaN, or with a
+   * weight of 0, are ignored.
+   *
+   * @param x The x value of the point.
+   * @param y The y value of the point.
+   * @param weight The weight of the point, usually the reciprocal of the
+   *	variance of y.
+   */
+  public void add( double x, double y, double weight ) {
+  	if ( weight < 0 )
+  		throw new IllegalArgumentException( "Invalid weight " + weight );
+  	if ( Double.isNaN( x ) || Double.isNaN( y ) || !( weight > 0 ))
+  		return;
+  	double scale = Math.sqrt( weight );
+  	double power = scale;
+  	for ( int j=0; j < this.size; j++ ) {
+  		this.row[ j ] = power;
+  		power *= x;
+  	}
+  	double rhs = scale * y;
+  	for ( int i=0; i < this.size; i++ ) {
+  		double value = this.row[ i ];
+  		if ( value == 0.0 )
+  			continue;
+  		int offset = i * this.size;
+  		double diagonal = this.r[ offset + i ];
+  		if ( diagonal == 0.0 ) {
+  			// this row of R is empty, so the rest of the point fills it.
+  			System.arraycopy( this.row, i, this.r, offset + i, this.size - i );
+  			this.qty[ i ] = rhs;
+  			rhs = 0.0;
+  			break;
+  		}
+  		double length = Math.sqrt( diagonal * diagonal + value * value );
+  		double cos = diagonal / length;
+  		double sin = value / length;
+  		this.r[ offset + i ] = length;
+  		for ( int k=i+1; k < this.size; k++ ) {
+  			double current = this.r[ offset + k ];
+  			this.r[ offset + k ] = cos * current + sin * this.row[ k ];
+  			this.row[ k ] = cos * this.row[ k ] - sin * current;
+  		}
+  		double current = this.qty[ i ];
+  		this.qty[ i ] = cos * current + sin * rhs;
+  		rhs = cos * rhs - sin * current;
+  	}
+  	this.residual += rhs * rhs;
+  	this.count++;
+  }
+
+  /**
+   * Adds a series of points with a weight of 1.
+   *
+   * @param x The x values of the points.
+   * @param y The y values of the points.
+   */
+  public void addAll( double[] x, double[] y ) {
+  	for ( int i=0; i < x.length; i++ ) {
+  		this.add( x[ i ], y[ i ], 1.0 );
+  	}
+  }
+
+  /**
+   * Adds a series of weighted points.
+   *
+   * @param x The x values of the points.
+   * @param y The y values of the points.
+   * @param weights The weight of each point.
+   */
+  public void addAll( double[] x, double[] y, double[] weights ) {
+  	for ( int i=0; i < x.length; i++ ) {
+  		this.add( x[ i ], y[ i ], weights[ i ]);
+  	}
+  }
+
+  /**
+   * Returns the number of points which have been added, not counting those
+   * which were ignored.
+   *
+   * @return The number of points.
+   */
+  public long getCount( ) {
+  	return this.count;
+  }
+
+  /**
+   * Returns the weighted sum of the squared residuals of the current fit.
+   *
+   * @return The residual sum of squares.
+   */
+  public double getResidualSumOfSquares( ) {
+  	return this.residual;
+  }
+
+  /**
+   * Solves for the coefficients of the polynomial which best fits the points
+   * added so far. If the fit is underdetermined, for instance because fewer
+   * distinct x values than coefficients have been added, every coefficient
+   * is NaN.
+   *
+   * @return The coefficients for the powers of x, in order from 0 to n.
+   */
+  public double[] getCoefficients( ) {
+  	double[] returnValue = new double[ this.size ];
+  	for ( int i=this.size-1; i >= 0; i-- ) {
+  		int offset = i * this.size;
+  		double diagonal = this.r[ offset + i ];
+  		if ( diagonal == 0.0 ) {
+  			Arrays.fill( returnValue, Double.NaN );
+  			return returnValue;
+  		}
+  		double sum = this.qty[ i ];
+  		for ( int k=i+1; k < this.size; k++ ) {
+  			sum -= this.r[ offset + k ] * returnValue[ k ];
+  		}
+  		returnValue[ i ] = sum / diagonal;
+  	}
+  	return returnValue;
+  }
+
+  /**
+   * Returns the polynomial which best fits the points added so far.
+   *
+   * @return The fitted Polynomial.
+   * @see #getCoefficients()
+   */
+  public Polynomial getPolynomial( ) {
+  	return new Polynomial( this.getCoefficients( ));
+  }
+
+  /**
+   * Removes all points from this fitter.
+   */
+  public void clear( ) {
+  	Arrays.fill( this.r, 0.0 );
+  	Arrays.fill( this.qty, 0.0 );
+  	this.residual = 0.0;
+  	this.count = 0;
+  }
+}
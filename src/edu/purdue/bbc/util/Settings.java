@@ -30,23 +30,82 @@ This file is distributed under the following terms (MIT/X11 License):
 package edu.purdue.bbc.util;
 
 import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Properties;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ScheduledFuture;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 
 import org.apache.log4j.Logger;
 
+/**
+ * Application settings, stored as Properties. Reads do not lock: every
+ * change publishes a new immutable copy of the settings, including the
+ * defaults, which getProperty( String ) and the typed getters read from.
+ * Values returned by the typed getters are parsed once and cached until
+ * the property changes.
+ * <p>
+ * SettingsListeners can be registered for individual properties or for
+ * every property. Listeners are called on a background daemon thread, a
+ * short time after a change, with every change made in the meantime
+ * collected into a single SettingsEvent.
+ * <p>
+ * Changes made with setProperty are saved in the background once no
+ * further changes have been made for a second. The settings file is
+ * written to a temporary file which then replaces the old one, so a crash
+ * while saving leaves the previous file intact. With setJournaled( true ),
+ * changes are instead appended to a journal beside the settings file,
+ * which is replayed by load( ) and compacted into the settings file once
+ * it grows long.
+ */
 public class Settings extends Properties {
+  private static final long NOTIFY_DELAY = 20;
+  private static final long SAVE_DELAY = 1000;
+  private static final long MAX_SAVE_DELAY = 10000;
+  private static final int COMPACT_SIZE = 1000;
   private static Settings settings;
   private static Language language;
+  private static ScheduledExecutorService executor;
   private String settingsFilename;
+  private volatile Map<String,String> values = Collections.emptyMap( );
+  private ConcurrentHashMap<String,Parsed> parsed =
+  	new ConcurrentHashMap<String,Parsed>( );
+  private int updating;
+  private List<SettingsListener> listeners =
+  	new CopyOnWriteArrayList<SettingsListener>( );
+  private ConcurrentHashMap<String,CopyOnWriteArrayList<SettingsListener>>
+  	propertyListeners =
+  	new ConcurrentHashMap<String,CopyOnWriteArrayList<SettingsListener>>( );
+  private Map<String,String> pending;
+  private Map<String,String> unsaved = new LinkedHashMap<String,String>( );
+  private long unsavedSince;
+  private ScheduledFuture<?> saveTask;
+  private boolean shutdownHook;
+  private volatile boolean journaled;
+  private int journalSize;
+  private final Object saveLock = new Object( );
 
   /**
    * Creates a new Settings object.
@@ -101,6 +160,7 @@ public class Settings extends Properties {
   			this.defaults.setProperty( prop, defaultSettings.getProperty( prop ));
   		}
   	}
+  	this.publish( );
   	this.settingsFilename = settingsFile;
   	if ( this.settingsFilename != null ) {
   		this.load( );
@@ -126,6 +186,7 @@ public class Settings extends Properties {
   			this.defaults.setProperty( entry.getKey( ), entry.getValue( ));
   		}
   	}
+  	this.publish( );
   	this.settingsFilename = settingsFile;
   	if ( this.settingsFilename != null ) {
   		this.load( );
@@ -136,7 +197,9 @@ public class Settings extends Properties {
   }
 
   /**
-   * Sets the specified property to the specified value.
+   * Sets the specified property to the specified value. The value is stored
+   * and recorded for the next save under the same lock, so the journal
+   * never ends with an older value than the one set.
    * 
    * @param property The name of property to be set.
    * @param value The value to set the property to.
@@ -144,14 +207,313 @@ public class Settings extends Properties {
    *	is not one.
    */
   @Override
-  public Object setProperty( String property, String value ) {
+  public synchronized Object setProperty( String property, String value ) {
   	Object returnValue = super.setProperty( property, value );
   	if ( "locale".equals( property ))
   		if ( language == null )
   			language = new Language( value );
   		else
   			language.setLocale( value );
-  	this.save( );
+  	this.saveLater( property, value );
+  	return returnValue;
+  }
+
+  /**
+   * Sets a property and publishes the change to readers. Properties which
+   * are not Strings are kept but are not visible through getProperty.
+   *
+   * @param key The name of the property.
+   * @param value The new value.
+   * @return The previous value, or null if there is not one.
+   */
+  @Override
+  public synchronized Object put( Object key, Object value ) {
+  	Object returnValue = super.put( key, value );
+  	this.changed( key );
+  	return returnValue;
+  }
+
+  /**
+   * Removes a property and publishes the change to readers.
+   *
+   * @param key The name of the property.
+   * @return The previous value, or null if there is not one.
+   */
+  @Override
+  public synchronized Object remove( Object key ) {
+  	Object returnValue = super.remove( key );
+  	this.changed( key );
+  	return returnValue;
+  }
+
+  /**
+   * Sets several properties, publishing them to readers together.
+   *
+   * @param map The properties to set.
+   */
+  @Override
+  public synchronized void putAll( Map<?,?> map ) {
+  	this.updating++;
+  	try {
+  		super.putAll( map );
+  	} finally {
+  		this.updating--;
+  		this.parsed.clear( );
+  		this.publish( );
+  	}
+  }
+
+  /**
+   * Removes every property, leaving only the defaults.
+   */
+  @Override
+  public synchronized void clear( ) {
+  	super.clear( );
+  	this.parsed.clear( );
+  	this.publish( );
+  }
+
+  /**
+   * Returns the value of the property, or the default value for it if
+   * it is not set. This reads the most recently published copy of the
+   * settings without locking.
+   *
+   * @param property The name of the property to retrieve.
+   * @return The value of the property, or null if there is not one.
+   */
+  @Override
+  public String getProperty( String property ) {
+  	return this.values.get( property );
+  }
+
+  /**
+   * Called when a property or its default changes.
+   *
+   * @param key The property which changed.
+   */
+  private void changed( Object key ) {
+  	this.publish( );
+  	this.parsed.remove( key );
+  }
+
+  /**
+   * Publishes a new copy of the settings for getProperty( String ) to read.
+   * Nothing is published while a bulk update is in progress.
+   */
+  private synchronized void publish( ) {
+  	if ( this.updating > 0 )
+  		return;
+  	Map<String,String> values = new HashMap<String,String>( );
+  	if ( this.defaults != null ) {
+  		Enumeration names = this.defaults.propertyNames( );
+  		while ( names.hasMoreElements( )) {
+  			String name = names.nextElement( ).toString( );
+  			values.put( name, this.defaults.getProperty( name ));
+  		}
+  	}
+  	for ( Map.Entry<Object,Object> entry : super.entrySet( )) {
+  		if ( entry.getKey( ) instanceof String &&
+  		     entry.getValue( ) instanceof String ) {
+  			values.put((String)entry.getKey( ), (String)entry.getValue( ));
+  		}
+  	}
+  	Map<String,String> oldValues = this.values;
+  	this.values = Collections.unmodifiableMap( values );
+  	this.record( oldValues, values );
+  }
+
+  /**
+   * Adds a listener which is notified when any property changes.
+   *
+   * @param listener The listener to add.
+   */
+  public void addSettingsListener( SettingsListener listener ) {
+  	if ( !this.listeners.contains( listener ))
+  		this.listeners.add( listener );
+  }
+
+  /**
+   * Adds a listener which is notified when a property changes. A listener
+   * added for several properties receives one event covering all of them.
+   *
+   * @param property The name of the property to listen to.
+   * @param listener The listener to add.
+   */
+  public void addSettingsListener( String property,
+                                   SettingsListener listener ) {
+  	CopyOnWriteArrayList<SettingsListener> listeners =
+  		this.propertyListeners.get( property );
+  	if ( listeners == null ) {
+  		listeners = new CopyOnWriteArrayList<SettingsListener>( );
+  		CopyOnWriteArrayList<SettingsListener> existing =
+  			this.propertyListeners.putIfAbsent( property, listeners );
+  		if ( existing != null )
+  			listeners = existing;
+  	}
+  	listeners.addIfAbsent( listener );
+  }
+
+  /**
+   * Removes a listener added with addSettingsListener( SettingsListener ).
+   *
+   * @param listener The listener to remove.
+   * @return true if the listener was registered.
+   */
+  public boolean removeSettingsListener( SettingsListener listener ) {
+  	return this.listeners.remove( listener );
+  }
+
+  /**
+   * Removes a listener added for a property.
+   *
+   * @param property The name of the property.
+   * @param listener The listener to remove.
+   * @return true if the listener was registered for the property.
+   */
+  public boolean removeSettingsListener( String property,
+                                         SettingsListener listener ) {
+  	List<SettingsListener> listeners = this.propertyListeners.get( property );
+  	return listeners != null && listeners.remove( listener );
+  }
+
+  /**
+   * Records the properties which differ between two published copies of
+   * the settings, scheduling a notification if one is not already pending.
+   * Must be called while synchronized on this object.
+   *
+   * @param oldValues The previously published settings.
+   * @param values The newly published settings.
+   */
+  private void record( Map<String,String> oldValues,
+                       Map<String,String> values ) {
+  	if ( this.listeners.isEmpty( ) && this.propertyListeners.isEmpty( ))
+  		return;
+  	boolean schedule = ( this.pending == null );
+  	if ( schedule )
+  		this.pending = new HashMap<String,String>( );
+  	for ( Map.Entry<String,String> entry : values.entrySet( )) {
+  		String oldValue = oldValues.get( entry.getKey( ));
+  		if ( !entry.getValue( ).equals( oldValue ) &&
+  		     !this.pending.containsKey( entry.getKey( ))) {
+  			this.pending.put( entry.getKey( ), oldValue );
+  		}
+  	}
+  	for ( Map.Entry<String,String> entry : oldValues.entrySet( )) {
+  		if ( !values.containsKey( entry.getKey( )) &&
+  		     !this.pending.containsKey( entry.getKey( ))) {
+  			this.pending.put( entry.getKey( ), entry.getValue( ));
+  		}
+  	}
+  	if ( this.pending.isEmpty( )) {
+  		this.pending = null;
+  	} else if ( schedule ) {
+  		getExecutor( ).schedule( new Runnable( ) {
+  			public void run( ) {
+  				Settings.this.notifyListeners( );
+  			}
+  		}, NOTIFY_DELAY, TimeUnit.MILLISECONDS );
+  	}
+  }
+
+  /**
+   * Delivers the pending changes to the listeners. Properties which have
+   * been changed back to their original value are left out.
+   */
+  private void notifyListeners( ) {
+  	Map<String,String> oldValues;
+  	Map<String,String> values;
+  	synchronized( this ) {
+  		oldValues = this.pending;
+  		values = this.values;
+  		this.pending = null;
+  	}
+  	if ( oldValues == null )
+  		return;
+  	Map<String,String> newValues = new HashMap<String,String>( );
+  	Iterator<Map.Entry<String,String>> iterator =
+  		oldValues.entrySet( ).iterator( );
+  	while ( iterator.hasNext( )) {
+  		Map.Entry<String,String> entry = iterator.next( );
+  		String value = values.get( entry.getKey( ));
+  		if (( value == null ) ? entry.getValue( ) == null :
+  		    value.equals( entry.getValue( ))) {
+  			iterator.remove( );
+  		} else {
+  			newValues.put( entry.getKey( ), value );
+  		}
+  	}
+  	if ( oldValues.isEmpty( ))
+  		return;
+
+  	SettingsEvent event = new SettingsEvent( this, oldValues, newValues );
+  	for ( SettingsListener listener : this.listeners ) {
+  		this.fire( listener, event );
+  	}
+  	Map<SettingsListener,List<String>> interested =
+  		new LinkedHashMap<SettingsListener,List<String>>( );
+  	for ( String property : oldValues.keySet( )) {
+  		List<SettingsListener> listeners =
+  			this.propertyListeners.get( property );
+  		if ( listeners == null )
+  			continue;
+  		for ( SettingsListener listener : listeners ) {
+  			if ( this.listeners.contains( listener ))
+  				continue;
+  			List<String> properties = interested.get( listener );
+  			if ( properties == null ) {
+  				properties = new ArrayList<String>( );
+  				interested.put( listener, properties );
+  			}
+  			properties.add( property );
+  		}
+  	}
+  	for ( Map.Entry<SettingsListener,List<String>> entry :
+  	      interested.entrySet( )) {
+  		this.fire( entry.getKey( ), event.select( entry.getValue( )));
+  	}
+  }
+
+  private void fire( SettingsListener listener, SettingsEvent event ) {
+  	try {
+  		listener.settingsChanged( event );
+  	} catch ( RuntimeException e ) {
+  		Logger.getLogger( getClass( )).error(
+  			"Settings listener threw an exception", e );
+  	}
+  }
+
+  /**
+   * Returns the thread used for notifying listeners and saving in the
+   * background, creating it if necessary.
+   */
+  private static synchronized ScheduledExecutorService getExecutor( ) {
+  	if ( executor == null ) {
+  		executor = Executors.newSingleThreadScheduledExecutor(
+  			new ThreadFactory( ) {
+  				public Thread newThread( Runnable runnable ) {
+  					Thread returnValue = new Thread( runnable, "Settings" );
+  					returnValue.setDaemon( true );
+  					return returnValue;
+  				}
+  			});
+  	}
+  	return executor;
+  }
+
+  /**
+   * Returns the cached parsed forms of a value, creating them if the value
+   * has changed since they were cached.
+   *
+   * @param property The name of the property.
+   * @param value The current value of the property.
+   * @return The Parsed value.
+   */
+  private Parsed parse( String property, String value ) {
+  	Parsed returnValue = this.parsed.get( property );
+  	if ( returnValue == null || !returnValue.source.equals( value )) {
+  		returnValue = new Parsed( value );
+  		this.parsed.put( property, returnValue );
+  	}
   	return returnValue;
   }
 
@@ -194,7 +556,7 @@ public class Settings extends Properties {
    * @return A boolean containing the value of this property.
    */
   public boolean getBoolean( String property ) {
-  	return Boolean.parseBoolean( this.get( property ));
+  	return this.getBoolean( property, false );
   }
 
   /**
@@ -210,7 +572,7 @@ public class Settings extends Properties {
   	if ( returnValue == null )
   		return defaultValue;
   	else
-  		return Boolean.parseBoolean( returnValue );
+  		return this.parse( property, returnValue ).getBoolean( );
   }
 
   /**
@@ -222,7 +584,10 @@ public class Settings extends Properties {
    *	integer.
    */
   public int getInt( String property ) {
-  	return Integer.parseInt( this.get( property ));
+  	String returnValue = this.get( property );
+  	if ( returnValue == null )
+  		throw new NumberFormatException( "null" );
+  	return this.parse( property, returnValue ).getInt( );
   }
 
   /**
@@ -240,7 +605,7 @@ public class Settings extends Properties {
   	if ( returnValue == null )
   		return defaultValue;
   	else
-  		return Integer.parseInt( returnValue );
+  		return this.parse( property, returnValue ).getInt( );
   }
 
   /**
@@ -252,7 +617,10 @@ public class Settings extends Properties {
    *	double.
    */
   public double getDouble( String property ) {
-  	return Double.parseDouble( this.get( property ));
+  	String returnValue = this.get( property );
+  	if ( returnValue == null )
+  		throw new NullPointerException( );
+  	return this.parse( property, returnValue ).getDouble( );
   }
 
   /**
@@ -270,7 +638,7 @@ public class Settings extends Properties {
   	if ( returnValue == null )
   		return defaultValue;
   	else
-  		return Double.parseDouble( returnValue );
+  		return this.parse( property, returnValue ).getDouble( );
   }
 
   /**
@@ -357,8 +725,111 @@ public class Settings extends Properties {
   }
 
   /**
-   * Saves the settings to the output file specified in the constructor.
-   * 
+   * Determines whether changes are saved by appending them to a journal.
+   *
+   * @return true if changes are journaled.
+   */
+  public boolean isJournaled( ) {
+  	return this.journaled;
+  }
+
+  /**
+   * Sets whether changes made with setProperty are saved by appending them
+   * to a journal beside the settings file rather than by rewriting the
+   * whole file. The journal is compacted into the settings file when it
+   * reaches 1000 entries and whenever save( ) is called.
+   *
+   * @param journaled Whether to journal changes.
+   */
+  public void setJournaled( boolean journaled ) {
+  	this.journaled = journaled;
+  }
+
+  /**
+   * Saves any changes which are waiting to be saved in the background
+   * immediately, on the calling thread. This is called automatically when
+   * the virtual machine shuts down.
+   */
+  public void flush( ) {
+  	synchronized( this ) {
+  		if ( this.saveTask != null ) {
+  			this.saveTask.cancel( false );
+  			this.saveTask = null;
+  		}
+  	}
+  	this.writeChanges( );
+  }
+
+  /**
+   * Records a change to be saved in the background, postponing the save if
+   * one is already waiting. Properties set while loading are already in
+   * the file, so they are not recorded.
+   *
+   * @param property The name of the property which changed.
+   * @param value The new value of the property.
+   */
+  private synchronized void saveLater( String property, String value ) {
+  	if ( this.settingsFilename == null || this.updating > 0 )
+  		return;
+  	long now = System.currentTimeMillis( );
+  	if ( this.unsaved.isEmpty( ))
+  		this.unsavedSince = now;
+  	this.unsaved.remove( property );
+  	this.unsaved.put( property, value );
+  	if ( this.saveTask != null )
+  		this.saveTask.cancel( false );
+  	long delay = Math.max( 0, Math.min( SAVE_DELAY,
+  		this.unsavedSince + MAX_SAVE_DELAY - now ));
+  	this.saveTask = getExecutor( ).schedule( new Runnable( ) {
+  		public void run( ) {
+  			Settings.this.writeChanges( );
+  		}
+  	}, delay, TimeUnit.MILLISECONDS );
+  	if ( !this.shutdownHook ) {
+  		this.shutdownHook = true;
+  		Runtime.getRuntime( ).addShutdownHook( new Thread( "Settings" ) {
+  			public void run( ) {
+  				Settings.this.flush( );
+  			}
+  		});
+  	}
+  }
+
+  /**
+   * Saves the changes recorded by saveLater, either by appending them to
+   * the journal or by saving the whole file.
+   */
+  private void writeChanges( ) {
+  	synchronized( this.saveLock ) {
+  		Map<String,String> changes;
+  		synchronized( this ) {
+  			this.saveTask = null;
+  			if ( this.unsaved.isEmpty( ))
+  				return;
+  			changes = this.unsaved;
+  			this.unsaved = new LinkedHashMap<String,String>( );
+  		}
+  		if ( this.journaled &&
+  		     this.journalSize + changes.size( ) < COMPACT_SIZE ) {
+  			try {
+  				this.appendJournal( changes );
+  				return;
+  			} catch ( IOException e ) {
+  				Logger.getLogger( getClass( )).error( String.format(
+  					"Unable to write to settings journal '%s'.",
+  					this.getJournalFile( )), e );
+  			}
+  		}
+  		this.save( );
+  	}
+  }
+
+  /**
+   * Saves the settings to the output file specified in the constructor. The
+   * settings are written to a temporary file which then replaces the
+   * output file, and any journal is removed once it has been compacted
+   * into the file.
+   *
    * @return true if saving of the file was successful.
    */
   public boolean save( ) {
@@ -367,28 +838,57 @@ public class Settings extends Properties {
   	if ( this.settingsFilename == null ) {
   		return false;
   	}
-  	try {
-  		logger.debug( "Saving settings..." );
-  		File settingsFile = new File( this.settingsFilename );
-  		if( !settingsFile.getParentFile( ).exists( ) && !settingsFile.getParentFile( ).mkdirs( )) {
-  			logger.error( String.format(
-  			  "Unable to create directory '%s' for saving program settings.",
-  				settingsFile.getParent( )));
+  	synchronized( this.saveLock ) {
+  		File settingsFile = new File( this.settingsFilename ).getAbsoluteFile( );
+  		File tempFile = new File( settingsFile.getPath( ) + ".tmp" );
+  		try {
+  			logger.debug( "Saving settings..." );
+  			if( !settingsFile.getParentFile( ).exists( ) && !settingsFile.getParentFile( ).mkdirs( )) {
+  				logger.error( String.format(
+  					"Unable to create directory '%s' for saving program settings.",
+  					settingsFile.getParent( )));
+  				return false;
+  			}
+  			Properties properties = new Properties( );
+  			synchronized( this ) {
+  				for ( Map.Entry<Object,Object> entry : super.entrySet( )) {
+  					properties.put( entry.getKey( ), entry.getValue( ));
+  				}
+  				this.unsaved.clear( );
+  			}
+  			FileOutputStream output = new FileOutputStream( tempFile );
+  			try {
+  				BufferedOutputStream buffer = new BufferedOutputStream( output );
+  				properties.storeToXML( buffer, null );
+  				buffer.flush( );
+  				output.getFD( ).sync( );
+  			} finally {
+  				output.close( );
+  			}
+  			if ( !tempFile.renameTo( settingsFile )) {
+  				// renaming over an existing file fails on some platforms.
+  				settingsFile.delete( );
+  				if ( !tempFile.renameTo( settingsFile ))
+  					throw new IOException( "Unable to replace " + settingsFile );
+  			}
+  			if ( this.getJournalFile( ).exists( ))
+  				this.getJournalFile( ).delete( );
+  			this.journalSize = 0;
+  		} catch ( IOException e ) {
+  			tempFile.delete( );
+  			logger.error( String.format( 
+  				"Unable to save program settings. File '%s' is not writeable", 
+  				this.getProperty( "settingsFile" )), e );
   			return false;
   		}
-  		this.storeToXML( new BufferedOutputStream( 
-  			new FileOutputStream( settingsFile )), null );
-  	} catch ( IOException e ) {
-  		logger.error( String.format( 
-  			"Unable to save program settings. File '%s' is not writeable", 
-  			this.getProperty( "settingsFile" )), e );
-  		return false;
   	}
   	return true;
   }
   
   /**
-   * Loads the settings from the file specified in the constructor.
+   * Loads the settings from the file specified in the constructor, then
+   * applies any changes recorded in the journal and compacts them into the
+   * file.
    * 
    * @return true if loading of the settings was successful.
    */
@@ -397,16 +897,38 @@ public class Settings extends Properties {
   	if ( this.settingsFilename == null ) {
   		return false;
   	}
-  	try {
-  		logger.debug( "Loading settings..." );
-  		this.loadFromXML( new BufferedInputStream( 
-  			new FileInputStream( new File( this.settingsFilename ))));
-  	} catch ( IOException e ) {
-  		logger.debug( String.format(
-  		  "Unable to read program settings. File %s is not readable",
-  			this.getProperty( "settingsFile" )));
-  		return false;
+  	boolean returnValue = true;
+  	int replayed;
+  	synchronized( this.saveLock ) {
+  		synchronized( this ) {
+  			this.updating++;
+  			try {
+  				try {
+  					logger.debug( "Loading settings..." );
+  					this.loadFromXML( new BufferedInputStream(
+  						new FileInputStream( new File( this.settingsFilename ))));
+  				} catch ( IOException e ) {
+  					logger.debug( String.format(
+  						"Unable to read program settings. File %s is not readable",
+  						this.getProperty( "settingsFile" )));
+  					returnValue = false;
+  				}
+  				replayed = this.replayJournal( );
+  			} finally {
+  				this.updating--;
+  				this.parsed.clear( );
+  				this.publish( );
+  			}
+  		}
+  		// compacting also removes any incomplete line, which would otherwise
+  		// be joined to the next change appended.
+  		if ( replayed > 0 || this.getJournalFile( ).exists( )) {
+  			this.save( );
+  			returnValue = true;
+  		}
   	}
+  	if ( !returnValue )
+  		return false;
   	if ( this.getProperty( "locale" ) != null )
   		if ( language != null )
   			language.setLocale( get( "locale" ));
@@ -414,6 +936,113 @@ public class Settings extends Properties {
   			language = new Language( get( "locale" ));
   	return true;
   }
+
+  private File getJournalFile( ) {
+  	return new File( this.settingsFilename + ".journal" );
+  }
+
+  /**
+   * Appends changes to the journal. Each change is written as a line
+   * containing the escaped name and value separated by a tab and ended by
+   * a newline.
+   *
+   * @param changes The changed properties and their new values.
+   * @throws IOException If the journal cannot be written.
+   */
+  private void appendJournal( Map<String,String> changes ) throws IOException {
+  	FileOutputStream output =
+  		new FileOutputStream( this.getJournalFile( ), true );
+  	try {
+  		BufferedWriter writer = new BufferedWriter(
+  			new OutputStreamWriter( output, "UTF-8" ));
+  		for ( Map.Entry<String,String> entry : changes.entrySet( )) {
+  			writer.write( escape( entry.getKey( )));
+  			writer.write( '\t' );
+  			writer.write( escape( entry.getValue( )));
+  			writer.write( '\n' );
+  		}
+  		writer.flush( );
+  		output.getFD( ).sync( );
+  	} finally {
+  		output.close( );
+  	}
+  	this.journalSize += changes.size( );
+  }
+
+  /**
+   * Applies the changes in the journal. Only lines ended by a newline are
+   * applied, so a line left incomplete by a crash while appending is
+   * ignored.
+   *
+   * @return The number of changes applied.
+   */
+  private int replayJournal( ) {
+  	File journal = this.getJournalFile( );
+  	int returnValue = 0;
+  	if ( !journal.exists( ))
+  		return returnValue;
+  	try {
+  		BufferedReader reader = new BufferedReader( new InputStreamReader(
+  			new FileInputStream( journal ), "UTF-8" ));
+  		try {
+  			StringBuilder line = new StringBuilder( );
+  			int c;
+  			while (( c = reader.read( )) >= 0 ) {
+  				if ( c != '\n' ) {
+  					line.append(( char )c );
+  					continue;
+  				}
+  				int tab = line.indexOf( "\t" );
+  				if ( tab >= 0 ) {
+  					this.put( unescape( line.substring( 0, tab )),
+  					          unescape( line.substring( tab + 1 )));
+  					returnValue++;
+  				}
+  				line.setLength( 0 );
+  			}
+  		} finally {
+  			reader.close( );
+  		}
+  	} catch ( IOException e ) {
+  		Logger.getLogger( getClass( )).error( String.format(
+  			"Unable to read settings journal '%s'.", journal ), e );
+  	}
+  	this.journalSize = returnValue;
+  	return returnValue;
+  }
+
+  private static String escape( String value ) {
+  	StringBuilder returnValue = new StringBuilder( value.length( ));
+  	for ( int i=0; i < value.length( ); i++ ) {
+  		char c = value.charAt( i );
+  		switch ( c ) {
+  			case '\\': returnValue.append( "\\\\" ); break;
+  			case '\t': returnValue.append( "\\t" ); break;
+  			case '\n': returnValue.append( "\\n" ); break;
+  			case '\r': returnValue.append( "\\r" ); break;
+  			default: returnValue.append( c );
+  		}
+  	}
+  	return returnValue.toString( );
+  }
+
+  private static String unescape( String value ) {
+  	StringBuilder returnValue = new StringBuilder( value.length( ));
+  	for ( int i=0; i < value.length( ); i++ ) {
+  		char c = value.charAt( i );
+  		if ( c == '\\' && i + 1 < value.length( )) {
+  			c = value.charAt( ++i );
+  			if ( c == 't' )
+  				c = '\t';
+  			else if ( c == 'n' )
+  				c = '\n';
+  			else if ( c == 'r' )
+  				c = '\r';
+  		}
+  		returnValue.append( c );
+  	}
+  	return returnValue.toString( );
+  }
   
   private class DefaultSettings extends Properties {
 
@@ -424,5 +1053,62 @@ public class Settings extends Properties {
   		this.setProperty( "verbose", "false" );
   	}
 
+  	@Override
+  	public Object put( Object key, Object value ) {
+  		Object returnValue = super.put( key, value );
+  		Settings.this.changed( key );
+  		return returnValue;
+  	}
+
+  	@Override
+  	public Object remove( Object key ) {
+  		Object returnValue = super.remove( key );
+  		Settings.this.changed( key );
+  		return returnValue;
+  	}
+
+  }
+
+  /**
+   * The parsed forms of a value, each filled in when first requested.
+   * Boxed values are immutable, so threads racing to fill one in at most
+   * parse the value twice.
+   */
+  private static class Parsed {
+  	final String source;
+  	private Boolean booleanValue;
+  	private Integer intValue;
+  	private Double doubleValue;
+
+  	Parsed( String source ) {
+  		this.source = source;
+  	}
+
+  	boolean getBoolean( ) {
+  		Boolean returnValue = this.booleanValue;
+  		if ( returnValue == null ) {
+  			returnValue = Boolean.valueOf( this.source );
+  			this.booleanValue = returnValue;
+  		}
+  		return returnValue.booleanValue( );
+  	}
+
+  	int getInt( ) {
+  		Integer returnValue = this.intValue;
+  		if ( returnValue == null ) {
+  			returnValue = Integer.valueOf( this.source );
+  			this.intValue = returnValue;
+  		}
+  		return returnValue.intValue( );
+  	}
+
+  	double getDouble( ) {
+  		Double returnValue = this.doubleValue;
+  		if ( returnValue == null ) {
+  			returnValue = Double.valueOf( this.source );
+  			this.doubleValue = returnValue;
+  		}
+  		return returnValue.doubleValue( );
+  	}
   }
 }
@@ -0,0 +1,131 @@
+/*
+
+Copyright: 2010 Purdue University
+
+This file is distributed under the following terms (MIT/X11 License):
+
+  Permission is hereby granted, free of charge, to any person
+  obtaining a copy of this file and associated documentation
+  files (the "Software"), to deal in the Software without
+  restriction, including without limitation the rights to use,
+  copy, modify, merge, publish, distribute, sublicense, and/or sell
+  copies of the Software, and to permit persons to whom the
+  Software is furnished to do so, subject to the following
+  conditions:
+
+  The above copyright notice and this permission notice shall be
+  included in all copies or substantial portions of the Software.
+
+  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+  OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+package edu.purdue.bbc.util;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EventObject;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Describes a batch of changes to Settings. Each property appears once, with
+ * the value it had before the first change in the batch and the value it
+ * had when the event was delivered. Values include the defaults, so
+ * removing a property which has a default is reported as a change to the
+ * default value.
+ */
+public class SettingsEvent extends EventObject {
+  private Map<String,String> oldValues;
+  private Map<String,String> newValues;
+
+  /**
+   * Creates a new SettingsEvent.
+   *
+   * @param source The Settings which changed.
+   * @param oldValues The previous value of each changed property, or null
+   *	for properties which were not set.
+   * @param newValues The new value of each changed property, or null for
+   *	properties which were removed.
+   */
+  public SettingsEvent( Settings source, Map<String,String> oldValues,
+                        Map<String,String> newValues ) {
+  	super( source );
+  	this.oldValues = Collections.unmodifiableMap( oldValues );
+  	this.newValues = Collections.unmodifiableMap( newValues );
+  }
+
+  /**
+   * Returns the Settings which changed.
+   *
+   * @return The Settings.
+   */
+  public Settings getSettings( ) {
+  	return (Settings)this.getSource( );
+  }
+
+  /**
+   * Returns the names of the properties which changed.
+   *
+   * @return An unmodifiable Set of property names.
+   */
+  public Set<String> getProperties( ) {
+  	return this.oldValues.keySet( );
+  }
+
+  /**
+   * Determines whether a property is one of those which changed.
+   *
+   * @param property The name of the property.
+   * @return true if the property changed.
+   */
+  public boolean isChanged( String property ) {
+  	return this.oldValues.containsKey( property );
+  }
+
+  /**
+   * Returns the value a property had before the change.
+   *
+   * @param property The name of the property.
+   * @return The old value, or null if the property was not set or did not
+   *	change.
+   */
+  public String getOldValue( String property ) {
+  	return this.oldValues.get( property );
+  }
+
+  /**
+   * Returns the value of a property after the change.
+   *
+   * @param property The name of the property.
+   * @return The new value, or null if the property was removed or did not
+   *	change.
+   */
+  public String getNewValue( String property ) {
+  	return this.newValues.get( property );
+  }
+
+  /**
+   * Returns an event containing only some of the properties in this one.
+   *
+   * @param properties The names of the properties to keep.
+   * @return The new event.
+   */
+  SettingsEvent select( Collection<String> properties ) {
+  	Map<String,String> oldValues = new HashMap<String,String>( );
+  	Map<String,String> newValues = new HashMap<String,String>( );
+  	for ( String property : properties ) {
+  		oldValues.put( property, this.oldValues.get( property ));
+  		newValues.put( property, this.newValues.get( property ));
+  	}
+  	return new SettingsEvent( this.getSettings( ), oldValues, newValues );
+  }
+}
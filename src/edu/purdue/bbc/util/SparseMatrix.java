@@ -29,6 +29,8 @@ License: X11 license.
 
 package edu.purdue.bbc.util;
 
+import java.util.Map;
+import java.util.SortedMap;
 import java.util.TreeMap;
 
 /**
@@ -37,6 +39,7 @@ import java.util.TreeMap;
 public class SparseMatrix<T> {
   private TreeMap<Key,T> values;
   private T defaultValue;
+  private boolean symmetric;
 
   /**
    * Creates a new SparseMatrix with a null default value.
@@ -51,8 +54,21 @@ public class SparseMatrix<T> {
    * @param defaultValue The value to return if the index is not set.
    */
   public SparseMatrix( T defaultValue ) {
+  	this( defaultValue, false );
+  }
+
+  /**
+   * Creates a new SparseMatrix with the passed in default value.
+   * 
+   * @param defaultValue The value to return if the index is not set.
+   * @param symmetric Whether the matrix is symmetric. A symmetric matrix only
+   *	stores the upper triangle (x &lt;= y), and (y, x) always refers to the 
+   *	same value as (x, y).
+   */
+  public SparseMatrix( T defaultValue, boolean symmetric ) {
   	this.values = new TreeMap<Key,T>( );
   	this.defaultValue = defaultValue;
+  	this.symmetric = symmetric;
   }
 
   /**
@@ -65,7 +81,7 @@ public class SparseMatrix<T> {
    *	is not one.
    */
   public T set( int x, int y, T value ) {
-  	T returnValue = this.values.put( new Key( x, y ), value );
+  	T returnValue = this.values.put( this.key( x, y ), value );
   	if ( returnValue == null )
   		returnValue = this.defaultValue;
   	return returnValue;
@@ -80,7 +96,7 @@ public class SparseMatrix<T> {
    *	default value if it is not.
    */
   public T get( int x, int y ) {
-  	T returnValue = this.values.get( new Key( x, y ));
+  	T returnValue = this.values.get( this.key( x, y ));
   	if ( returnValue == null )
   		returnValue = this.defaultValue;
   	return returnValue;
@@ -94,7 +110,77 @@ public class SparseMatrix<T> {
    * @return A boolean indicating whether the given location has been set.
    */
   public boolean isSet( int x, int y ) {
-  	return this.values.containsKey( new Key( x, y ));
+  	return this.values.containsKey( this.key( x, y ));
+  }
+
+  /**
+   * Gets the values which have been set in a row of the matrix. For a
+   * symmetric matrix this includes the entries stored as (i, x) for i &lt; x,
+   * which requires a scan of the rows before x.
+   * 
+   * @param x The x coordinate of the row.
+   * @return A new Map from the y coordinate to the value of each entry in the
+   *	row, ordered by y coordinate.
+   */
+  public SortedMap<Integer,T> getRow( int x ) {
+  	SortedMap<Integer,T> returnValue = new TreeMap<Integer,T>( );
+  	SortedMap<Key,T> row = ( x == Integer.MAX_VALUE ) ?
+  		this.values.tailMap( new Key( x, Integer.MIN_VALUE )) :
+  		this.values.subMap( new Key( x, Integer.MIN_VALUE ), 
+  		                    new Key( x + 1, Integer.MIN_VALUE ));
+  	for ( Map.Entry<Key,T> entry : row.entrySet( )) {
+  		returnValue.put( entry.getKey( ).y, entry.getValue( ));
+  	}
+  	if ( this.symmetric ) {
+  		for ( Map.Entry<Key,T> entry : 
+  		      this.values.headMap( new Key( x, Integer.MIN_VALUE )).entrySet( )) {
+  			if ( entry.getKey( ).y == x )
+  				returnValue.put( entry.getKey( ).x, entry.getValue( ));
+  		}
+  	}
+  	return returnValue;
+  }
+
+  /**
+   * Determines whether this matrix is symmetric, storing only the upper
+   * triangle.
+   * 
+   * @return true if this matrix is symmetric.
+   */
+  public boolean isSymmetric( ) {
+  	return this.symmetric;
+  }
+
+  /**
+   * Returns the number of entries which have been set in this matrix. For a
+   * symmetric matrix, each pair of mirrored entries is counted once.
+   * 
+   * @return The number of entries.
+   */
+  public int size( ) {
+  	return this.values.size( );
+  }
+
+  /**
+   * Copies the numeric entries of this matrix into packed coordinate and value
+   * arrays for use by CompressedSparseMatrix. Null entries are skipped.
+   * 
+   * @param keys The array to store the packed coordinates in.
+   * @param values The array to store the values in.
+   * @return The number of entries copied.
+   * @throws ClassCastException if an entry is not a Number.
+   */
+  int pack( long[] keys, double[] values ) {
+  	int count = 0;
+  	for ( Map.Entry<Key,T> entry : this.values.entrySet( )) {
+  		if ( entry.getValue( ) != null ) {
+  			keys[ count ] = CompressedSparseMatrix.key( entry.getKey( ).x, 
+  			                                            entry.getKey( ).y );
+  			values[ count ] = ((Number)entry.getValue( )).doubleValue( );
+  			count++;
+  		}
+  	}
+  	return count;
   }
 
   /**
@@ -117,6 +203,20 @@ public class SparseMatrix<T> {
   	this.defaultValue = defaultValue;
   }
   
+  /**
+   * Creates the Key for a location, swapping the coordinates of locations in
+   * the lower triangle of a symmetric matrix.
+   * 
+   * @param x The x coordinate of the location.
+   * @param y The y coordinate of the location.
+   * @return The Key under which the location is stored.
+   */
+  private Key key( int x, int y ) {
+  	if ( this.symmetric && x > y )
+  		return new Key( y, x );
+  	return new Key( x, y );
+  }
+
   /**
    * A class for use as an index to keys in the internal Map.
    */
@@ -144,11 +244,11 @@ public class SparseMatrix<T> {
   	 * @return An int indicating the order for these keys.
   	 */
   	public int compareTo( Key k ) {
-  		int returnValue = this.x - k.x;
-  		if ( returnValue == 0 ) {
-  			returnValue = this.y - k.y;
-  		}
-  		return returnValue;
+  		if ( this.x != k.x )
+  			return ( this.x < k.x ) ? -1 : 1;
+  		if ( this.y != k.y )
+  			return ( this.y < k.y ) ? -1 : 1;
+  		return 0;
   	}
 
   	/**
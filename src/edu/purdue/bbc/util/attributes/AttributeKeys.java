@@ -0,0 +1,144 @@
+/*
+
+Copyright: 2010 Bindley Bioscience Center, Purdue University
+
+License: X11 license.
+
+  Permission is hereby granted, free of charge, to any person
+  obtaining a copy of this software and associated documentation
+  files (the "Software"), to deal in the Software without
+  restriction, including without limitation the rights to use,
+  copy, modify, merge, publish, distribute, sublicense, and/or sell
+  copies of the Software, and to permit persons to whom the
+  Software is furnished to do so, subject to the following
+  conditions:
+
+  The above copyright notice and this permission notice shall be
+  included in all copies or substantial portions of the Software.
+
+  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+  OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+package edu.purdue.bbc.util.attributes;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A table assigning each attribute name a small integer slot. Attributes
+ * objects which share a table store their values in arrays indexed by slot,
+ * so each record holds no key strings of its own, and a name resolved once
+ * can be used for many records. For a table which is not case sensitive,
+ * names are converted to lower case when they are first seen, and each
+ * spelling is remembered so that it is only converted once.
+ *
+ * Slots are never released, so a table should only be used for a bounded
+ * set of names. Tables may be used from several threads at once; looking
+ * up a name which already has a slot does not lock or allocate.
+ */
+public class AttributeKeys {
+  private ConcurrentHashMap<String,Integer> slots =
+  	new ConcurrentHashMap<String,Integer>( );
+  private volatile String[] names = new String[ 0 ];
+  private boolean caseSensitive;
+
+  /**
+   * Creates a new, empty AttributeKeys table.
+   *
+   * @param caseSensitive Whether or not names which differ only by case
+   *	should have different slots.
+   */
+  public AttributeKeys( boolean caseSensitive ) {
+  	this.caseSensitive = caseSensitive;
+  }
+
+  /**
+   * Determines whether this table is case sensitive.
+   *
+   * @return true if names which differ only by case have different slots.
+   */
+  public boolean isCaseSensitive( ) {
+  	return this.caseSensitive;
+  }
+
+  /**
+   * Gets the slot for a name, assigning a new one if the name has not been
+   * seen before.
+   *
+   * @param name The attribute name.
+   * @return The slot for the name.
+   */
+  public int getSlot( String name ) {
+  	Integer returnValue = this.slots.get( name );
+  	if ( returnValue != null )
+  		return returnValue.intValue( );
+  	return this.intern( name );
+  }
+
+  /**
+   * Gets the slot for a name without assigning one.
+   *
+   * @param name The attribute name.
+   * @return The slot for the name, or -1 if it does not have one.
+   */
+  public int findSlot( String name ) {
+  	Integer returnValue = this.slots.get( name );
+  	if ( returnValue != null )
+  		return returnValue.intValue( );
+  	if ( !this.caseSensitive ) {
+  		returnValue = this.slots.get( name.toLowerCase( ));
+  		if ( returnValue != null ) {
+  			this.slots.putIfAbsent( name, returnValue );
+  			return returnValue.intValue( );
+  		}
+  	}
+  	return -1;
+  }
+
+  /**
+   * Gets the name stored in a slot. For a table which is not case
+   * sensitive, this is the name in lower case.
+   *
+   * @param slot The slot.
+   * @return The name.
+   */
+  public String getName( int slot ) {
+  	return this.names[ slot ];
+  }
+
+  /**
+   * Returns the number of slots which have been assigned.
+   *
+   * @return The number of slots.
+   */
+  public int size( ) {
+  	return this.names.length;
+  }
+
+  /**
+   * Assigns a slot to a name which was not found.
+   */
+  private synchronized int intern( String name ) {
+  	String key = this.caseSensitive ? name : name.toLowerCase( );
+  	Integer slot = this.slots.get( key );
+  	if ( slot == null ) {
+  		String[] newNames = new String[ this.names.length + 1 ];
+  		System.arraycopy( this.names, 0, newNames, 0, this.names.length );
+  		newNames[ this.names.length ] = key;
+  		slot = Integer.valueOf( this.names.length );
+  		// publish the name before the slot so readers never see a slot
+  		// without its name.
+  		this.names = newNames;
+  		this.slots.put( key, slot );
+  	}
+  	this.slots.put( name, slot );
+  	return slot.intValue( );
+  }
+}
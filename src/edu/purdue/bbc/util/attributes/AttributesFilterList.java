@@ -31,13 +31,20 @@ package edu.purdue.bbc.util.attributes;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
 
 public class AttributesFilterList<T extends Attributes>
                                   extends ArrayList<AttributesFilter<T>> 
-                                  implements AttributesFilter<T> {
+                                  implements AttributesFilter<T>,
+                                             AttributesPredicate<T> {
   public static final int AND = 0;
   public static final int OR = 1;
+  private static final int SAMPLE_SIZE = 256;
   private int operation = AND;
 
   /**
@@ -105,6 +112,16 @@ public class AttributesFilterList<T extends Attributes>
 
   /**
    * Filters the passed in Attribute objects based on this filter's criteria.
+   * The results are returned in the order of the passed in collection.
+   * 
+   * Filters which implement AttributesPredicate are evaluated one record at
+   * a time, with the most selective filter tried first in AND mode and the
+   * least selective first in OR mode, so that most records are decided by
+   * a single test. The selectivity of each filter is taken from the indexes
+   * of an IndexedAttributesCollection where possible, and otherwise
+   * estimated from a sample of the records. Any other filters are applied
+   * to the collection as a whole. An IndexedAttributesCollection is filtered
+   * as a RowBitmap, as described in IndexedAttributesCollection.select( ).
    * 
    * @see AttributesFilter#filter( Collection )
    * @param attributes The set of Attributes to be filtered.
@@ -112,17 +129,240 @@ public class AttributesFilterList<T extends Attributes>
    *	filtering process.
    */
   public Collection<T> filter( Collection<T> attributes ) {
+  	if ( attributes instanceof IndexedAttributesCollection ) {
+  		IndexedAttributesCollection<T> indexed =
+  			( IndexedAttributesCollection<T> )attributes;
+  		return indexed.get( this.select( indexed, null ));
+  	}
+  	List<AttributesPredicate<T>> predicates =
+  		new ArrayList<AttributesPredicate<T>>( );
+  	List<AttributesFilter<T>> others = new ArrayList<AttributesFilter<T>>( );
+  	this.split( predicates, others );
+  	for ( int i=0; i < predicates.size( ); i++ ) {
+  		predicates.set( i, Predicates.compile(
+  			( AttributesFilter<T> )predicates.get( i )));
+  	}
+  	List<AttributesPredicate<T>> plan = this.plan( attributes, predicates );
+  	if ( this.operation == OR )
+  		return this.filterOr( attributes, plan, others );
+  	return this.filterAnd( attributes, plan, others );
+  }
+
+  /**
+   * Determines whether an Attributes object passes this filter list. Filters
+   * which do not implement AttributesPredicate are applied to a collection
+   * containing only this object.
+   * 
+   * @param attributes The object to test.
+   * @return true if the object passes.
+   */
+  public boolean accept( T attributes ) {
+  	for ( AttributesFilter<T> filter : this ) {
+  		boolean passes;
+  		if ( filter instanceof AttributesPredicate ) {
+  			passes = (( AttributesPredicate<T> )filter ).accept( attributes );
+  		} else {
+  			passes = !filter.filter(
+  				Collections.singletonList( attributes )).isEmpty( );
+  		}
+  		if ( passes == ( this.operation == OR ))
+  			return passes;
+  	}
+  	return this.operation != OR;
+  }
 
-  	Collection<T> returnValue;
-  	if ( operation == OR ) {
-  		returnValue = new HashSet( );
-  		for( AttributesFilter a : this ) {
-  			returnValue.addAll( a.filter( attributes ));
+  /**
+   * Compiles this list into a single predicate by compiling each of its
+   * filters, as described in Criterion.compile( ). The filters are tested
+   * in the order of this list.
+   * 
+   * @return A predicate accepting the same objects as this list.
+   */
+  public AttributesPredicate<T> compile( ) {
+  	List<AttributesPredicate<T>> predicates =
+  		new ArrayList<AttributesPredicate<T>>( );
+  	for ( AttributesFilter<T> filter : this ) {
+  		predicates.add( Predicates.compile( filter ));
+  	}
+  	if ( predicates.isEmpty( ))
+  		return this;
+  	if ( this.operation == OR )
+  		return Predicates.or( predicates );
+  	return Predicates.and( predicates );
+  }
+
+  /**
+   * Finds the positions of the records in an IndexedAttributesCollection
+   * which pass this filter list, by combining the RowBitmaps of its
+   * filters. Each filter only examines the records which could still change
+   * the result.
+   * 
+   * @param indexed The collection to filter.
+   * @param candidates The positions to consider, or null for all of them.
+   * @return The positions of the passing records.
+   */
+  RowBitmap select( IndexedAttributesCollection<T> indexed,
+                    RowBitmap candidates ) {
+  	List<AttributesPredicate<T>> predicates =
+  		new ArrayList<AttributesPredicate<T>>( );
+  	List<AttributesFilter<T>> filters = new ArrayList<AttributesFilter<T>>( );
+  	this.split( predicates, filters );
+  	List<AttributesPredicate<T>> plan = this.plan( indexed, predicates );
+  	if ( this.operation == OR )
+  		Collections.reverse( plan );
+  	for ( int i=0; i < plan.size( ); i++ ) {
+  		filters.add( i, ( AttributesFilter<T> )plan.get( i ));
+  	}
+
+  	if ( this.operation == OR ) {
+  		RowBitmap returnValue = new RowBitmap( );
+  		for ( AttributesFilter<T> filter : filters ) {
+  			RowBitmap remaining = ( candidates == null ) ?
+  				returnValue.not( indexed.size( )) : candidates.andNot( returnValue );
+  			if ( remaining.isEmpty( ))
+  				break;
+  			returnValue = returnValue.or( indexed.select( filter, remaining ));
+  		}
+  		return returnValue;
+  	}
+  	RowBitmap returnValue = candidates;
+  	for ( AttributesFilter<T> filter : filters ) {
+  		returnValue = indexed.select( filter, returnValue );
+  		if ( returnValue.isEmpty( ))
+  			break;
+  	}
+  	return ( returnValue == null ) ? RowBitmap.range( 0, indexed.size( )) :
+  	                                 returnValue;
+  }
+
+  /**
+   * Separates the filters in this list which implement AttributesPredicate
+   * from the others.
+   */
+  private void split( List<AttributesPredicate<T>> predicates,
+                      List<AttributesFilter<T>> others ) {
+  	for ( AttributesFilter<T> filter : this ) {
+  		if ( filter instanceof AttributesPredicate )
+  			predicates.add(( AttributesPredicate<T> )filter );
+  		else
+  			others.add( filter );
+  	}
+  }
+
+  private Collection<T> filterAnd( Collection<T> attributes,
+                                   List<AttributesPredicate<T>> plan,
+                                   List<AttributesFilter<T>> others ) {
+  	Collection<T> returnValue = new ArrayList<T>( );
+  	for ( T record : attributes ) {
+  		if ( acceptsAll( plan, record ))
+  			returnValue.add( record );
+  	}
+  	for ( AttributesFilter<T> filter : others ) {
+  		returnValue = filter.filter( returnValue );
+  	}
+  	return returnValue;
+  }
+
+  private Collection<T> filterOr( Collection<T> attributes,
+                                  List<AttributesPredicate<T>> plan,
+                                  List<AttributesFilter<T>> others ) {
+  	Collections.reverse( plan );
+  	Map<T,Boolean> otherMatches = new IdentityHashMap<T,Boolean>( );
+  	for ( AttributesFilter<T> filter : others ) {
+  		for ( T record : filter.filter( attributes )) {
+  			otherMatches.put( record, Boolean.TRUE );
+  		}
+  	}
+  	Collection<T> returnValue = new ArrayList<T>( );
+  	for ( T record : attributes ) {
+  		if ( acceptsAny( plan, record ) || otherMatches.containsKey( record ))
+  			returnValue.add( record );
+  	}
+  	return returnValue;
+  }
+
+  private static <T extends Attributes> boolean acceptsAll(
+      List<AttributesPredicate<T>> predicates, T record ) {
+  	for ( AttributesPredicate<T> predicate : predicates ) {
+  		if ( !predicate.accept( record ))
+  			return false;
+  	}
+  	return true;
+  }
+
+  private static <T extends Attributes> boolean acceptsAny(
+      List<AttributesPredicate<T>> predicates, T record ) {
+  	for ( AttributesPredicate<T> predicate : predicates ) {
+  		if ( predicate.accept( record ))
+  			return true;
+  	}
+  	return false;
+  }
+
+  /**
+   * Orders predicates from the most to the least selective.
+   * 
+   * @param attributes The records which will be filtered.
+   * @param predicates The predicates to order.
+   * @return A new List containing the predicates in order.
+   */
+  private List<AttributesPredicate<T>> plan( Collection<T> attributes,
+      List<AttributesPredicate<T>> predicates ) {
+  	List<AttributesPredicate<T>> returnValue =
+  		new ArrayList<AttributesPredicate<T>>( predicates );
+  	if ( returnValue.size( ) < 2 )
+  		return returnValue;
+  	final Map<AttributesPredicate<T>,Double> selectivity =
+  		new IdentityHashMap<AttributesPredicate<T>,Double>( );
+  	List<T> sample = null;
+  	for ( AttributesPredicate<T> predicate : returnValue ) {
+  		double estimate = -1.0;
+  		if ( attributes instanceof IndexedAttributesCollection &&
+  		     predicate instanceof Criterion && attributes.size( ) > 0 ) {
+  			int count = (( Criterion<T> )predicate ).count(
+  				( IndexedAttributesCollection<T> )attributes );
+  			if ( count >= 0 )
+  				estimate = (double)count / attributes.size( );
+  		}
+  		if ( estimate < 0 ) {
+  			if ( sample == null )
+  				sample = sample( attributes );
+  			int count = 0;
+  			for ( T record : sample ) {
+  				if ( predicate.accept( record ))
+  					count++;
+  			}
+  			// add one to each side so an empty sample counts as unselective.
+  			estimate = ( count + 1.0 ) / ( sample.size( ) + 1.0 );
+  		}
+  		selectivity.put( predicate, estimate );
+  	}
+  	Collections.sort( returnValue, new Comparator<AttributesPredicate<T>>( ) {
+  		public int compare( AttributesPredicate<T> a,
+  		                    AttributesPredicate<T> b ) {
+  			return selectivity.get( a ).compareTo( selectivity.get( b ));
+  		}
+  	});
+  	return returnValue;
+  }
+
+  /**
+   * Takes up to SAMPLE_SIZE records spread evenly through a random access
+   * List, or from the start of any other collection.
+   */
+  private static <T> List<T> sample( Collection<T> attributes ) {
+  	List<T> returnValue = new ArrayList<T>( );
+  	int size = attributes.size( );
+  	if ( attributes instanceof RandomAccess && size > SAMPLE_SIZE ) {
+  		List<T> list = ( List<T> )attributes;
+  		for ( int i=0; i < SAMPLE_SIZE; i++ ) {
+  			returnValue.add( list.get((int)(( long )i * size / SAMPLE_SIZE )));
   		}
   	} else {
-  		returnValue = new ArrayList( attributes );
-  		for ( AttributesFilter a : this ) {
-  			returnValue = a.filter( returnValue );
+  		for ( T record : attributes ) {
+  			if ( returnValue.size( ) == SAMPLE_SIZE )
+  				break;
+  			returnValue.add( record );
   		}
   	}
   	return returnValue;
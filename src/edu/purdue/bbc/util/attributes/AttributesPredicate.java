@@ -0,0 +1,49 @@
+/*
+
+Copyright: 2010 Bindley Bioscience Center, Purdue University
+
+License: X11 license.
+
+  Permission is hereby granted, free of charge, to any person
+  obtaining a copy of this software and associated documentation
+  files (the "Software"), to deal in the Software without
+  restriction, including without limitation the rights to use,
+  copy, modify, merge, publish, distribute, sublicense, and/or sell
+  copies of the Software, and to permit persons to whom the
+  Software is furnished to do so, subject to the following
+  conditions:
+
+  The above copyright notice and this permission notice shall be
+  included in all copies or substantial portions of the Software.
+
+  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+  OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+package edu.purdue.bbc.util.attributes;
+
+/**
+ * An interface for testing a single Attributes object. Filters which can
+ * decide on each record independently implement this as well as
+ * AttributesFilter, which lets an AttributesFilterList evaluate them one
+ * record at a time without building intermediate collections.
+ */
+public interface AttributesPredicate<T extends Attributes> {
+
+  /**
+   * Determines whether an Attributes object passes this filter.
+   * 
+   * @param attributes The object to test.
+   * @return true if the object passes.
+   */
+  public boolean accept( T attributes );
+
+}
+
@@ -0,0 +1,735 @@
+/*
+
+Copyright: 2010 Bindley Bioscience Center, Purdue University
+
+License: X11 license.
+
+  Permission is hereby granted, free of charge, to any person
+  obtaining a copy of this software and associated documentation
+  files (the "Software"), to deal in the Software without
+  restriction, including without limitation the rights to use,
+  copy, modify, merge, publish, distribute, sublicense, and/or sell
+  copies of the Software, and to permit persons to whom the
+  Software is furnished to do so, subject to the following
+  conditions:
+
+  The above copyright notice and this permission notice shall be
+  included in all copies or substantial portions of the Software.
+
+  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+  OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+package edu.purdue.bbc.util.attributes;
+
+import edu.purdue.bbc.util.StringUtils;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * A table of records stored column by column. Numeric columns are held in
+ * primitive double arrays and all other columns are dictionary encoded, so
+ * each distinct string is stored only once. Rows are exposed as lightweight
+ * Attributes views which read from and write to the table, so a table can be
+ * filtered with the existing Criterion classes through getRows( ).
+ *
+ * The type of a column is chosen from the first value stored in it. A
+ * string is only stored in such a column as a number if formatting the
+ * number gives back the same string, so values such as "007" or "1.50"
+ * keep their spelling. A numeric column is converted to a string column,
+ * without changing any values, if a string which is not stored as a number
+ * is later put in it. Columns declared with addNumericColumn( String )
+ * instead convert every numeric string to a double and treat empty
+ * strings as missing values. This class is not synchronized; concurrent
+ * reads are safe once the table has been built.
+ */
+public class AttributesTable implements Iterable<AttributesTable.Row> {
+  private static final int INITIAL_CAPACITY = 16;
+
+  private Map<String,Column> columns = new LinkedHashMap<String,Column>( );
+  private boolean caseSensitive;
+  private int size;
+  private int capacity = INITIAL_CAPACITY;
+
+  /**
+   * Creates a new, empty case sensitive AttributesTable.
+   */
+  public AttributesTable( ) {
+  	this( true );
+  }
+
+  /**
+   * Creates a new, empty AttributesTable.
+   *
+   * @param caseSensitive Whether or not column names should be case
+   *	sensitive.
+   */
+  public AttributesTable( boolean caseSensitive ) {
+  	this.caseSensitive = caseSensitive;
+  }
+
+  /**
+   * Creates a new AttributesTable containing the records read from an
+   * Iterator, such as a CSVTableReader.
+   *
+   * @param rows The records to add.
+   * @param caseSensitive Whether or not column names should be case
+   *	sensitive.
+   */
+  public AttributesTable( Iterator<? extends Map<String,?>> rows,
+                          boolean caseSensitive ) {
+  	this( caseSensitive );
+  	this.addAll( rows );
+  }
+
+  /**
+   * Declares a numeric column. Values stored in it are converted to doubles
+   * where possible, so the original spelling of numbers is not kept.
+   *
+   * @param name The name of the column.
+   * @throws IllegalArgumentException If the column already exists.
+   */
+  public void addNumericColumn( String name ) {
+  	this.addColumn( name, new NumericColumn( this.capacity, false ));
+  }
+
+  /**
+   * Declares a string column. Values stored in it are kept as strings.
+   *
+   * @param name The name of the column.
+   * @throws IllegalArgumentException If the column already exists.
+   */
+  public void addStringColumn( String name ) {
+  	this.addColumn( name, new StringColumn( this.capacity ));
+  }
+
+  private void addColumn( String name, Column column ) {
+  	name = this.normalize( name );
+  	if ( this.columns.containsKey( name ))
+  		throw new IllegalArgumentException(
+  	    "Column " + name + " already exists" );
+  	this.columns.put( name, column );
+  }
+
+  /**
+   * Gets the names of the columns in this table, in the order they were
+   * added.
+   *
+   * @return An unmodifiable Set of column names.
+   */
+  public Set<String> getColumnNames( ) {
+  	return Collections.unmodifiableSet( this.columns.keySet( ));
+  }
+
+  /**
+   * Determines whether this table has a column with the given name.
+   *
+   * @param name The name of the column.
+   * @return true if the column exists.
+   */
+  public boolean hasColumn( String name ) {
+  	return this.columns.containsKey( this.normalize( name ));
+  }
+
+  /**
+   * Determines whether a column is stored as numbers.
+   *
+   * @param name The name of the column.
+   * @return true if the column exists and is numeric.
+   */
+  public boolean isNumeric( String name ) {
+  	return this.getColumn( name ) instanceof NumericColumn;
+  }
+
+  /**
+   * Gets the number of distinct values in a string column.
+   *
+   * @param name The name of the column.
+   * @return The number of distinct values, or -1 if the column does not
+   *	exist or is numeric.
+   */
+  public int getCardinality( String name ) {
+  	Column column = this.getColumn( name );
+  	if ( column instanceof StringColumn )
+  		return (( StringColumn )column ).dictionary.size( );
+  	return -1;
+  }
+
+  /**
+   * Returns the number of rows in this table.
+   *
+   * @return The number of rows.
+   */
+  public int size( ) {
+  	return this.size;
+  }
+
+  /**
+   * Appends a row to this table. Null values are stored as missing.
+   *
+   * @param values The values of the row, keyed by column name.
+   * @return The index of the new row.
+   */
+  public int addRow( Map<String,?> values ) {
+  	int row = this.size;
+  	if ( row == this.capacity ) {
+  		this.capacity *= 2;
+  		for ( Column column : this.columns.values( )) {
+  			column.grow( this.capacity );
+  		}
+  	}
+  	this.size++;
+  	for ( Map.Entry<String,?> entry : values.entrySet( )) {
+  		this.set( row, entry.getKey( ), entry.getValue( ));
+  	}
+  	return row;
+  }
+
+  /**
+   * Appends a copy of an Attributes object to this table.
+   *
+   * @param attributes The attributes to copy.
+   * @return The index of the new row.
+   */
+  public int addRow( Attributes<?> attributes ) {
+  	return this.addRow( attributes.getAttributes( ));
+  }
+
+  /**
+   * Appends all of the remaining records from an Iterator, such as a
+   * CSVTableReader, to this table.
+   *
+   * @param rows The records to add.
+   * @return The number of rows added.
+   */
+  public int addAll( Iterator<? extends Map<String,?>> rows ) {
+  	int returnValue = 0;
+  	while ( rows.hasNext( )) {
+  		this.addRow( rows.next( ));
+  		returnValue++;
+  	}
+  	return returnValue;
+  }
+
+  /**
+   * Gets a view of a single row.
+   *
+   * @param index The index of the row.
+   * @return An Attributes view of the row.
+   * @throws IndexOutOfBoundsException If the row does not exist.
+   */
+  public Row getRow( int index ) {
+  	this.checkRow( index );
+  	return new Row( index );
+  }
+
+  /**
+   * Gets a view of all of the rows in this table. The list grows as rows are
+   * added to the table.
+   *
+   * @return An unmodifiable, random access List of row views.
+   */
+  public List<Row> getRows( ) {
+  	return new RowList( );
+  }
+
+  /**
+   * Returns an Iterator over the rows in this table.
+   *
+   * @return An Iterator of row views.
+   */
+  public Iterator<Row> iterator( ) {
+  	return this.getRows( ).iterator( );
+  }
+
+  /**
+   * Gets a value from the table.
+   *
+   * @param row The index of the row.
+   * @param column The name of the column.
+   * @return A Double for numeric columns, a String for other columns, or
+   *	null if the value is missing.
+   */
+  public Object get( int row, String column ) {
+  	this.checkRow( row );
+  	Column c = this.getColumn( column );
+  	return ( c == null ) ? null : c.get( row );
+  }
+
+  /**
+   * Gets a value from the table as a double without creating any objects
+   * for numeric columns.
+   *
+   * @param row The index of the row.
+   * @param column The name of the column.
+   * @return The value, or NaN if it is missing or not a number.
+   */
+  public double getDouble( int row, String column ) {
+  	this.checkRow( row );
+  	Column c = this.getColumn( column );
+  	return ( c == null ) ? Double.NaN : c.getDouble( row );
+  }
+
+  /**
+   * Gets a value from the table as a String.
+   *
+   * @param row The index of the row.
+   * @param column The name of the column.
+   * @return The value as a String, or null if it is missing.
+   */
+  public String getString( int row, String column ) {
+  	Object value = this.get( row, column );
+  	if ( value instanceof Double )
+  		return format((( Double )value ).doubleValue( ));
+  	return ( String )value;
+  }
+
+  /**
+   * Determines whether a value is present in the table.
+   *
+   * @param row The index of the row.
+   * @param column The name of the column.
+   * @return true if the value is set.
+   */
+  public boolean isSet( int row, String column ) {
+  	this.checkRow( row );
+  	Column c = this.getColumn( column );
+  	return c != null && c.isSet( row );
+  }
+
+  /**
+   * Sets a value in the table, creating the column if needed.
+   *
+   * @param row The index of the row.
+   * @param column The name of the column.
+   * @param value The new value. Null removes the value.
+   * @return The previous value, or null if there was none.
+   */
+  public Object set( int row, String column, Object value ) {
+  	this.checkRow( row );
+  	column = this.normalize( column );
+  	Column c = this.columns.get( column );
+  	if ( c == null ) {
+  		if ( value == null )
+  			return null;
+  		c = isNumber( value ) ? new NumericColumn( this.capacity, true ) :
+  		                        new StringColumn( this.capacity );
+  		this.columns.put( column, c );
+  	}
+  	Object returnValue = c.get( row );
+  	if ( !c.set( row, value )) {
+  		c = (( NumericColumn )c ).toStringColumn( this.size, this.capacity );
+  		this.columns.put( column, c );
+  		c.set( row, value );
+  	}
+  	return returnValue;
+  }
+
+  /**
+   * Removes a value from the table.
+   *
+   * @param row The index of the row.
+   * @param column The name of the column.
+   * @return The previous value, or null if there was none.
+   */
+  public Object remove( int row, String column ) {
+  	this.checkRow( row );
+  	Column c = this.getColumn( column );
+  	if ( c == null )
+  		return null;
+  	Object returnValue = c.get( row );
+  	c.clear( row );
+  	return returnValue;
+  }
+
+  /**
+   * Gets the storage for a column.
+   *
+   * @param name The name of the column.
+   * @return The column, or null if it does not exist.
+   */
+  Column getColumn( String name ) {
+  	return this.columns.get( this.normalize( name ));
+  }
+
+  private String normalize( String name ) {
+  	return this.caseSensitive ? name : name.toLowerCase( );
+  }
+
+  private void checkRow( int row ) {
+  	if ( row < 0 || row >= this.size )
+  		throw new IndexOutOfBoundsException(
+  	    "Row: " + row + ", Size: " + this.size );
+  }
+
+  /**
+   * Determines whether a value can be stored in a new numeric column.
+   */
+  private static boolean isNumber( Object value ) {
+  	return ( value instanceof Number ) || isExactNumber( value.toString( ));
+  }
+
+  /**
+   * Determines whether a string is a number which format( double ) turns
+   * back into the same string.
+   */
+  static boolean isExactNumber( String value ) {
+  	return StringUtils.isNumeric( value ) &&
+  	       format( Double.parseDouble( value )).equals( value );
+  }
+
+  /**
+   * Formats a double as a string, omitting the fraction of whole numbers.
+   */
+  static String format( double value ) {
+  	if ( value == Math.rint( value ) && Math.abs( value ) < 1e15 )
+  		return Long.toString(( long )value );
+  	return Double.toString( value );
+  }
+
+  /**
+   * The storage for a single column.
+   */
+  abstract static class Column {
+  	abstract boolean isSet( int row );
+  	abstract Object get( int row );
+  	abstract double getDouble( int row );
+  	abstract void clear( int row );
+  	abstract void grow( int capacity );
+
+  	/**
+  	 * Stores a value in this column.
+  	 *
+  	 * @return false if the value cannot be held by this type of column.
+  	 */
+  	abstract boolean set( int row, Object value );
+  }
+
+  /**
+   * A column of doubles, with a BitSet marking the rows which are present.
+   */
+  static class NumericColumn extends Column {
+  	double[] values;
+  	BitSet present = new BitSet( );
+  	private boolean exact;
+
+  	/**
+  	 * @param exact Whether strings are only accepted if format( double )
+  	 *	reproduces them, as for columns whose type was inferred.
+  	 */
+  	NumericColumn( int capacity, boolean exact ) {
+  		this.values = new double[ capacity ];
+  		this.exact = exact;
+  	}
+
+  	boolean isSet( int row ) {
+  		return this.present.get( row );
+  	}
+
+  	Object get( int row ) {
+  		return this.present.get( row ) ? Double.valueOf( this.values[ row ]) :
+  		                                 null;
+  	}
+
+  	double getDouble( int row ) {
+  		return this.present.get( row ) ? this.values[ row ] : Double.NaN;
+  	}
+
+  	void clear( int row ) {
+  		this.present.clear( row );
+  		this.values[ row ] = 0.0;
+  	}
+
+  	void grow( int capacity ) {
+  		double[] newValues = new double[ capacity ];
+  		System.arraycopy( this.values, 0, newValues, 0, this.values.length );
+  		this.values = newValues;
+  	}
+
+  	boolean set( int row, Object value ) {
+  		if ( value instanceof Number ) {
+  			this.values[ row ] = (( Number )value ).doubleValue( );
+  			this.present.set( row );
+  			return true;
+  		}
+  		if ( value == null ) {
+  			this.clear( row );
+  			return true;
+  		}
+  		if ( this.exact ) {
+  			if ( !isExactNumber( value.toString( )))
+  				return false;
+  			this.values[ row ] = Double.parseDouble( value.toString( ));
+  			this.present.set( row );
+  			return true;
+  		}
+  		String s = value.toString( ).trim( );
+  		if ( s.length( ) == 0 ) {
+  			this.clear( row );
+  			return true;
+  		}
+  		if ( !StringUtils.isNumeric( s ))
+  			return false;
+  		this.values[ row ] = Double.parseDouble( s );
+  		this.present.set( row );
+  		return true;
+  	}
+
+  	/**
+  	 * Creates a string column holding the same values as this one. For a
+  	 * column whose type was inferred these are the strings which were
+  	 * originally stored.
+  	 */
+  	StringColumn toStringColumn( int size, int capacity ) {
+  		StringColumn returnValue = new StringColumn( capacity );
+  		for ( int i = this.present.nextSetBit( 0 ); i >= 0 && i < size;
+  		      i = this.present.nextSetBit( i + 1 )) {
+  			returnValue.set( i, format( this.values[ i ]));
+  		}
+  		return returnValue;
+  	}
+  }
+
+  /**
+   * A dictionary encoded column of strings. Each row holds the code of its
+   * value in the dictionary, or -1 if it is missing.
+   */
+  static class StringColumn extends Column {
+  	int[] codes;
+  	List<String> dictionary = new ArrayList<String>( );
+  	Map<String,Integer> lookup = new HashMap<String,Integer>( );
+
+  	StringColumn( int capacity ) {
+  		this.codes = new int[ capacity ];
+  		Arrays.fill( this.codes, -1 );
+  	}
+
+  	boolean isSet( int row ) {
+  		return this.codes[ row ] >= 0;
+  	}
+
+  	Object get( int row ) {
+  		int code = this.codes[ row ];
+  		return ( code < 0 ) ? null : this.dictionary.get( code );
+  	}
+
+  	double getDouble( int row ) {
+  		int code = this.codes[ row ];
+  		if ( code < 0 )
+  			return Double.NaN;
+  		String value = this.dictionary.get( code ).trim( );
+  		return StringUtils.isNumeric( value ) ? Double.parseDouble( value ) :
+  		                                        Double.NaN;
+  	}
+
+  	void clear( int row ) {
+  		this.codes[ row ] = -1;
+  	}
+
+  	void grow( int capacity ) {
+  		int[] newCodes = new int[ capacity ];
+  		System.arraycopy( this.codes, 0, newCodes, 0, this.codes.length );
+  		Arrays.fill( newCodes, this.codes.length, capacity, -1 );
+  		this.codes = newCodes;
+  	}
+
+  	boolean set( int row, Object value ) {
+  		if ( value == null ) {
+  			this.codes[ row ] = -1;
+  			return true;
+  		}
+  		String s = value.toString( );
+  		Integer code = this.lookup.get( s );
+  		if ( code == null ) {
+  			code = Integer.valueOf( this.dictionary.size( ));
+  			this.dictionary.add( s );
+  			this.lookup.put( s, code );
+  		}
+  		this.codes[ row ] = code.intValue( );
+  		return true;
+  	}
+
+  	/**
+  	 * Gets the dictionary code of a value.
+  	 *
+  	 * @return The code, or -1 if the value does not occur in this column.
+  	 */
+  	int codeOf( String value ) {
+  		Integer code = this.lookup.get( value );
+  		return ( code == null ) ? -1 : code.intValue( );
+  	}
+  }
+
+  /**
+   * A List view of the rows of the table.
+   */
+  private class RowList extends AbstractList<Row> implements RandomAccess {
+  	public Row get( int index ) {
+  		return AttributesTable.this.getRow( index );
+  	}
+
+  	public int size( ) {
+  		return AttributesTable.this.size;
+  	}
+  }
+
+  /**
+   * An Attributes view of a single row of the table. Changes made through
+   * the view are written to the table. Two views are equal if they refer to
+   * the same row of the same table.
+   */
+  public class Row implements Attributes<Object> {
+  	private int index;
+
+  	Row( int index ) {
+  		this.index = index;
+  	}
+
+  	/**
+  	 * Gets the index of this row in the table.
+  	 *
+  	 * @return The row index.
+  	 */
+  	public int getIndex( ) {
+  		return this.index;
+  	}
+
+  	/**
+  	 * Gets the table this row belongs to.
+  	 *
+  	 * @return The table.
+  	 */
+  	public AttributesTable getTable( ) {
+  		return AttributesTable.this;
+  	}
+
+  	/**
+  	 * Gets an attribute as a double without creating any objects for
+  	 * numeric columns.
+  	 *
+  	 * @param attribute The attribute to retrieve.
+  	 * @return The value, or NaN if it is missing or not a number.
+  	 */
+  	public double getDouble( String attribute ) {
+  		return AttributesTable.this.getDouble( this.index, attribute );
+  	}
+
+  	/**
+  	 * Gets an attribute for this row.
+  	 *
+  	 * @param attribute The attribute to retrieve.
+  	 * @return The value of the requested attribute, or null if it is missing.
+  	 */
+  	public Object getAttribute( String attribute ) {
+  		return AttributesTable.this.get( this.index, attribute );
+  	}
+
+  	/**
+  	 * Gets an attribute for this row.
+  	 *
+  	 * @param attribute The attribute to retrieve.
+  	 * @param defaultValue A value to be returned if the attribute is not set.
+  	 * @return The value of the requested attribute, or defaultValue.
+  	 */
+  	public Object getAttribute( String attribute, Object defaultValue ) {
+  		Object returnValue = this.getAttribute( attribute );
+  		return ( returnValue == null ) ? defaultValue : returnValue;
+  	}
+
+  	/**
+  	 * Gets a copy of the values present in this row.
+  	 *
+  	 * @return A Map containing the attributes of this row.
+  	 */
+  	public Map<String,Object> getAttributes( ) {
+  		Map<String,Object> returnValue = new LinkedHashMap<String,Object>( );
+  		for ( Map.Entry<String,Column> entry :
+  		      AttributesTable.this.columns.entrySet( )) {
+  			Object value = entry.getValue( ).get( this.index );
+  			if ( value != null )
+  				returnValue.put( entry.getKey( ), value );
+  		}
+  		return returnValue;
+  	}
+
+  	/**
+  	 * Determines if this row has a value for the requested attribute.
+  	 *
+  	 * @param attribute The attribute to check for.
+  	 * @return true if the value is present.
+  	 */
+  	public boolean hasAttribute( String attribute ) {
+  		return AttributesTable.this.isSet( this.index, attribute );
+  	}
+
+  	/**
+  	 * Sets an attribute for this row, creating the column if needed.
+  	 *
+  	 * @param attribute The attribute to set.
+  	 * @param value The new value.
+  	 * @return The previous value, or null if there was none.
+  	 */
+  	public Object setAttribute( String attribute, Object value ) {
+  		return AttributesTable.this.set( this.index, attribute, value );
+  	}
+
+  	/**
+  	 * Sets several attributes for this row.
+  	 *
+  	 * @param attributes The attributes to set.
+  	 */
+  	public void setAttributes( Map<String,Object> attributes ) {
+  		for ( Map.Entry<String,Object> entry : attributes.entrySet( )) {
+  			this.setAttribute( entry.getKey( ), entry.getValue( ));
+  		}
+  	}
+
+  	/**
+  	 * Removes an attribute from this row.
+  	 *
+  	 * @param attribute The attribute to remove.
+  	 * @return The previous value, or null if there was none.
+  	 */
+  	public Object removeAttribute( String attribute ) {
+  		return AttributesTable.this.remove( this.index, attribute );
+  	}
+
+  	@Override
+  	public boolean equals( Object o ) {
+  		if ( !( o instanceof Row ))
+  			return false;
+  		Row other = ( Row )o;
+  		return other.getTable( ) == this.getTable( ) &&
+  		       other.index == this.index;
+  	}
+
+  	@Override
+  	public int hashCode( ) {
+  		return System.identityHashCode( AttributesTable.this ) * 31 +
+  		       this.index;
+  	}
+
+  	@Override
+  	public String toString( ) {
+  		return this.getAttributes( ).toString( );
+  	}
+  }
+}
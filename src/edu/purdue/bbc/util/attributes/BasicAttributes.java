@@ -29,20 +29,47 @@ License: X11 license.
 
 package edu.purdue.bbc.util.attributes;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 /**
  * A class containing arbitrary attributes.
+ *
+ * By default the attributes are kept in a HashMap belonging to the object.
+ * Objects created with an AttributeKeys table instead resolve attribute
+ * names to slots in that table, shared with the other objects using it,
+ * and keep their values in an array indexed by slot. Names are then
+ * converted to lower case only once per spelling, and getAttribute( int )
+ * reads a value without any hashing at all. A table should be shared only
+ * by records from the same source, such as the rows of one file.
  */
 public class BasicAttributes<T> implements Attributes<T> {
-  protected Map<String,T> attributes = new HashMap<String,T>( );
+  /**
+   * Marks a slot holding a null value, as empty slots hold null.
+   */
+  private static final Object NULL = new Object( );
+  private static final Object[] EMPTY = new Object[ 0 ];
+
+  /**
+   * A live Map view of the attributes of this object.
+   */
+  protected Map<String,T> attributes = new AttributesMap( );
   protected boolean caseSensitive = true;
+  private AttributeKeys keys;
+  private Object[] values = EMPTY;
+  private Map<String,T> map;
 
   /**
    * Creates a new BasicAttributes object.
    */
-  public BasicAttributes( ) { }
+  public BasicAttributes( ) {
+  	this( true );
+  }
 
   /**
    * Creates a new Basicattributes object with the specified case sensitivity.
@@ -53,6 +80,44 @@ public class BasicAttributes<T> implements Attributes<T> {
    */
   public BasicAttributes( boolean caseSensitive ) {
   	this.caseSensitive = caseSensitive;
+  	this.map = new HashMap<String,T>( );
+  }
+
+  /**
+   * Creates a new BasicAttributes object which resolves attribute names
+   * with the given table. The case sensitivity is that of the table.
+   * 
+   * @param keys The table of attribute names to use.
+   */
+  public BasicAttributes( AttributeKeys keys ) {
+  	this.keys = keys;
+  	this.caseSensitive = keys.isCaseSensitive( );
+  }
+
+  /**
+   * Gets the table used to resolve the attribute names of this object.
+   * 
+   * @return The AttributeKeys table, or null if this object was not
+   *	created with one.
+   */
+  public AttributeKeys getKeys( ) {
+  	return this.keys;
+  }
+
+  /**
+   * Gets an attribute for this object by its slot in the table returned by
+   * getKeys( ). Subclasses which override getAttribute( String ) should
+   * override this as well.
+   * 
+   * @param slot The slot of the attribute to retrieve.
+   * @return The value of the requested attribute, or null if it does not
+   *	exist or this object has no AttributeKeys table.
+   */
+  public T getAttribute( int slot ) {
+  	if ( slot < 0 || slot >= this.values.length )
+  		return null;
+  	Object value = this.values[ slot ];
+  	return ( value == NULL ) ? null : ( T )value;
   }
 
   /**
@@ -62,10 +127,9 @@ public class BasicAttributes<T> implements Attributes<T> {
    * @return The value of the requested attribute, or null if it does not exist.
    */
   public T getAttribute( String attribute ) {
-  	if ( !this.caseSensitive ) {
-  		attribute = attribute.toLowerCase( );
-  	}
-  	return this.attributes.get( attribute );
+  	if ( this.map != null )
+  		return this.map.get( this.fold( attribute ));
+  	return this.getAttribute( this.keys.findSlot( attribute ));
   }
 
   /**
@@ -76,11 +140,16 @@ public class BasicAttributes<T> implements Attributes<T> {
    * @return The value of the requested attribute, or null if it does not exist.
    */
   public T getAttribute( String attribute, T defaultValue ) {
-  	if ( !this.caseSensitive ) {
-  		attribute = attribute.toLowerCase( );
+  	if ( this.map != null ) {
+  		attribute = this.fold( attribute );
+  		T returnValue = this.map.get( attribute );
+  		// only a null value needs a second lookup to tell if it is set.
+  		if ( returnValue == null && !this.map.containsKey( attribute ))
+  			return defaultValue;
+  		return returnValue;
   	}
-  	return ( this.hasAttribute( attribute )) ? 
-  		this.attributes.get( attribute ) : defaultValue;
+  	int slot = this.keys.findSlot( attribute );
+  	return ( this.isSet( slot )) ? this.getAttribute( slot ) : defaultValue;
   }
 
   /**
@@ -100,10 +169,9 @@ public class BasicAttributes<T> implements Attributes<T> {
    *	attribute.
    */
   public boolean hasAttribute( String attribute ) {
-  	if ( !this.caseSensitive ) {
-  		attribute = attribute.toLowerCase( );
-  	}
-  	return this.attributes.containsKey( attribute );
+  	if ( this.map != null )
+  		return this.map.containsKey( this.fold( attribute ));
+  	return this.isSet( this.keys.findSlot( attribute ));
   }
 
   /**
@@ -113,10 +181,18 @@ public class BasicAttributes<T> implements Attributes<T> {
    * @param value The new value for the specified attribute.
    */
   public T setAttribute( String attribute, T value ) {
-  	if ( !this.caseSensitive ) {
-  		attribute = attribute.toLowerCase( );
+  	if ( this.map != null )
+  		return this.map.put( this.fold( attribute ), value );
+  	int slot = this.keys.getSlot( attribute );
+  	if ( slot >= this.values.length ) {
+  		Object[] newValues = new Object[ Math.max( slot + 1,
+  			Math.min( this.values.length * 2, this.keys.size( )))];
+  		System.arraycopy( this.values, 0, newValues, 0, this.values.length );
+  		this.values = newValues;
   	}
-  	return this.attributes.put( attribute, value );
+  	T returnValue = this.getAttribute( slot );
+  	this.values[ slot ] = ( value == null ) ? NULL : value;
+  	return returnValue;
   }
 
   /**
@@ -126,12 +202,7 @@ public class BasicAttributes<T> implements Attributes<T> {
    */
   public void setAttributes( Map<String,T> map ) {
   	for ( Map.Entry<String,T> attribute : map.entrySet( )) {
-  		if ( !this.caseSensitive ) {
-  			this.attributes.put( attribute.getKey( ).toLowerCase( ), 
-  			                     attribute.getValue( ));
-  		} else {
-  			this.attributes.put( attribute.getKey( ), attribute.getValue( ));
-  		}
+  		this.setAttribute( attribute.getKey( ), attribute.getValue( ));
   	}
   }
 
@@ -142,15 +213,7 @@ public class BasicAttributes<T> implements Attributes<T> {
    *	to be set.
    */
   public void setAttributes( Attributes<T> attributes ) {
-  	for ( Map.Entry<String,T> attribute : 
-  		    attributes.getAttributes( ).entrySet( )) {
-  		if ( !this.caseSensitive ) {
-  			this.attributes.put( attribute.getKey( ).toLowerCase( ), 
-  			                     attribute.getValue( ) );
-  		} else {
-  			this.attributes.put( attribute.getKey( ), attribute.getValue( ) );
-  		}
-  	}
+  	this.setAttributes( attributes.getAttributes( ));
   }
 
   /**
@@ -160,9 +223,146 @@ public class BasicAttributes<T> implements Attributes<T> {
    * @return The value of the requested attribute, or null if it does not exist.
    */
   public T removeAttribute( String attribute ) {
-  	if ( !this.caseSensitive )
-  		attribute = attribute.toLowerCase( );
-  	return this.attributes.remove( attribute );
+  	if ( this.map != null )
+  		return this.map.remove( this.fold( attribute ));
+  	int slot = this.keys.findSlot( attribute );
+  	T returnValue = this.getAttribute( slot );
+  	if ( this.isSet( slot ))
+  		this.values[ slot ] = null;
+  	return returnValue;
+  }
+
+  /**
+   * Converts an attribute name to lower case if this object is not case
+   * sensitive.
+   */
+  private String fold( String attribute ) {
+  	return this.caseSensitive ? attribute : attribute.toLowerCase( );
+  }
+
+  /**
+   * Determines whether a slot holds a value.
+   */
+  private boolean isSet( int slot ) {
+  	return slot >= 0 && slot < this.values.length &&
+  	       this.values[ slot ] != null;
+  }
+
+  /**
+   * A Map view of the attributes, reading and writing the HashMap or the
+   * slot array.
+   */
+  private class AttributesMap extends AbstractMap<String,T> {
+  	public T get( Object key ) {
+  		return ( key instanceof String ) ?
+  			BasicAttributes.this.getAttribute(( String )key ) : null;
+  	}
+
+  	public boolean containsKey( Object key ) {
+  		return ( key instanceof String ) &&
+  			BasicAttributes.this.hasAttribute(( String )key );
+  	}
+
+  	public T put( String key, T value ) {
+  		return BasicAttributes.this.setAttribute( key, value );
+  	}
+
+  	public T remove( Object key ) {
+  		return ( key instanceof String ) ?
+  			BasicAttributes.this.removeAttribute(( String )key ) : null;
+  	}
+
+  	public Set<Map.Entry<String,T>> entrySet( ) {
+  		if ( BasicAttributes.this.map != null )
+  			return BasicAttributes.this.map.entrySet( );
+  		return new AbstractSet<Map.Entry<String,T>>( ) {
+  			public int size( ) {
+  				int returnValue = 0;
+  				for ( Object value : BasicAttributes.this.values ) {
+  					if ( value != null )
+  						returnValue++;
+  				}
+  				return returnValue;
+  			}
+
+  			public Iterator<Map.Entry<String,T>> iterator( ) {
+  				return new EntryIterator( );
+  			}
+  		};
+  	}
+  }
+
+  /**
+   * An Iterator over the slots which hold values.
+   */
+  private class EntryIterator implements Iterator<Map.Entry<String,T>> {
+  	private int next = this.find( 0 );
+  	private int last = -1;
+
+  	public boolean hasNext( ) {
+  		return this.next >= 0;
+  	}
+
+  	public Map.Entry<String,T> next( ) {
+  		if ( this.next < 0 )
+  			throw new NoSuchElementException( );
+  		final int slot = this.next;
+  		this.last = slot;
+  		this.next = this.find( slot + 1 );
+  		return new Map.Entry<String,T>( ) {
+  			public String getKey( ) {
+  				return BasicAttributes.this.keys.getName( slot );
+  			}
+
+  			public T getValue( ) {
+  				return BasicAttributes.this.getAttribute( slot );
+  			}
+
+  			public T setValue( T value ) {
+  				T returnValue = this.getValue( );
+  				BasicAttributes.this.values[ slot ] = ( value == null ) ? NULL :
+  				                                                         value;
+  				return returnValue;
+  			}
+
+  			public boolean equals( Object o ) {
+  				if ( !( o instanceof Map.Entry ))
+  					return false;
+  				Map.Entry other = ( Map.Entry )o;
+  				Object value = this.getValue( );
+  				return this.getKey( ).equals( other.getKey( )) &&
+  					( value == null ? other.getValue( ) == null :
+  				                    value.equals( other.getValue( )));
+  			}
+
+  			public int hashCode( ) {
+  				Object value = this.getValue( );
+  				return this.getKey( ).hashCode( ) ^
+  				       (( value == null ) ? 0 : value.hashCode( ));
+  			}
+
+  			public String toString( ) {
+  				return this.getKey( ) + "=" + this.getValue( );
+  			}
+  		};
+  	}
+
+  	public void remove( ) {
+  		if ( this.last < 0 )
+  			throw new IllegalStateException( );
+  		BasicAttributes.this.values[ this.last ] = null;
+  		this.last = -1;
+  	}
+
+  	private int find( int slot ) {
+  		Object[] values = BasicAttributes.this.values;
+  		while ( slot < values.length ) {
+  			if ( values[ slot ] != null )
+  				return slot;
+  			slot++;
+  		}
+  		return -1;
+  	}
   }
 }
 
@@ -35,7 +35,8 @@ import java.util.Collection;
  * An interface for filtering a set of Attributes based on a single Criterion.
  */
 public class Criterion<T extends Attributes> 
-                         implements AttributesFilter<T>,Cloneable {
+                         implements AttributesFilter<T>,AttributesPredicate<T>,
+                                    Cloneable {
   public static final int EQUAL = 1;
   public static final int LESS = 2;
   public static final int GREATER = 4;
@@ -122,16 +123,26 @@ public class Criterion<T extends Attributes>
   /**
    * Filters the attribute Collection based on this Criterion.
    * 
+   * If the collection is an IndexedAttributesCollection with a suitable
+   * index on the key, the index is used instead of examining every record.
+   * 
    * @param attributesCollection The collection of attributes to be filtered.
    * @return The filtered Collection of attributes.
    */
   public Collection<T> filter( 
   		Collection<T> attributesCollection ) {
 
+  	if ( attributesCollection instanceof IndexedAttributesCollection ) {
+  		IndexedAttributesCollection<T> indexed =
+  			( IndexedAttributesCollection<T> )attributesCollection;
+  		int[] positions = this.find( indexed );
+  		if ( positions != null )
+  			return indexed.get( positions );
+  	}
+  	AttributesPredicate<T> predicate = this.compile( );
   	Collection<T> returnValue = new ArrayList<T>( );
   	for ( T attributes : attributesCollection ) {
-  		Comparable value = (Comparable)attributes.getAttribute( this.key );
-  		if ( this.passes( value )) {
+  		if ( predicate.accept( attributes )) {
   			returnValue.add( attributes );
   		}
   	}
@@ -139,13 +150,75 @@ public class Criterion<T extends Attributes>
   }
 
   /**
-   * Determines whether or not this value meets the Criterion.
+   * Determines whether an Attributes object meets this Criterion. Objects
+   * which do not have the attribute never do.
+   * 
+   * @param attributes The object to test.
+   * @return true if the object passes.
+   */
+  public boolean accept( T attributes ) {
+  	Object value = attributes.getAttribute( this.key );
+  	if ( value == null )
+  		return false;
+  	if ( this.value instanceof String && !( value instanceof String ))
+  		value = Predicates.asString( value );
+  	return this.passes(( Comparable )value );
+  }
+
+  /**
+   * Compiles this Criterion into a predicate specialized for its value and
+   * condition, which is faster to apply to many records than accept( ).
+   * Later changes to this Criterion do not affect the predicate. Subclasses
+   * which do not override this method are returned unchanged.
+   * 
+   * @return A predicate accepting the same objects as this Criterion.
+   */
+  public AttributesPredicate<T> compile( ) {
+  	if ( this.getClass( ) != Criterion.class )
+  		return this;
+  	return Predicates.compare( this.key, this.value, this.condition );
+  }
+
+  /**
+   * Looks up the records meeting this Criterion in the indexes of a
+   * collection. Subclasses which do not override this method are never
+   * answered from an index, since they may change the meaning of
+   * passes( Comparable ).
+   * 
+   * @param collection The collection to search.
+   * @return The positions of the matching records in ascending order, or
+   *	null if the collection has no index which can answer the query.
+   */
+  protected int[] find( IndexedAttributesCollection<T> collection ) {
+  	if ( this.getClass( ) != Criterion.class )
+  		return null;
+  	return collection.find( this.key, this.value, this.condition );
+  }
+
+  /**
+   * Counts the records meeting this Criterion using the indexes of a
+   * collection. Subclasses which do not override this method are never
+   * counted from an index.
+   * 
+   * @param collection The collection to search.
+   * @return The number of matching records, or -1 if the collection has no
+   *	index which can answer the query.
+   */
+  protected int count( IndexedAttributesCollection<T> collection ) {
+  	if ( this.getClass( ) != Criterion.class )
+  		return -1;
+  	return collection.count( this.key, this.value, this.condition );
+  }
+
+  /**
+   * Determines whether or not this value meets the Criterion. Numbers of
+   * different classes are compared by their double values.
    * 
    * @param value The value to be compared.
    * @return true if the value meets the criterion.
    */
   protected boolean passes( Comparable value ) {
-  	int result = value.compareTo( this.value );
+  	int result = Predicates.compareValues( value, this.value );
   	return ( result == 0 && ( this.condition & EQUAL   ) != 0 ) ||
   	       ( result >  0 && ( this.condition & GREATER ) != 0 ) ||
   	       ( result <  0 && ( this.condition & LESS    ) != 0 );
@@ -0,0 +1,218 @@
+/*
+
+Copyright: 2010 Bindley Bioscience Center, Purdue University
+
+License: X11 license.
+
+  Permission is hereby granted, free of charge, to any person
+  obtaining a copy of this software and associated documentation
+  files (the "Software"), to deal in the Software without
+  restriction, including without limitation the rights to use,
+  copy, modify, merge, publish, distribute, sublicense, and/or sell
+  copies of the Software, and to permit persons to whom the
+  Software is furnished to do so, subject to the following
+  conditions:
+
+  The above copyright notice and this permission notice shall be
+  included in all copies or substantial portions of the Software.
+
+  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+  OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+package edu.purdue.bbc.util.attributes;
+
+import edu.purdue.bbc.util.ParallelUtils;
+import edu.purdue.bbc.util.RangeTask;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Utilities for applying an AttributesFilter to records one at a time
+ * instead of to a whole Collection. Filters are compiled into predicates
+ * first, as described in Criterion.compile( ).
+ *
+ * The iterators returned here read their source lazily, so records from a
+ * source such as a CSVTableReader can be filtered without ever holding all
+ * of them in memory, and the results can be consumed as they are found.
+ * The parallel methods divide the records between the threads used by
+ * ParallelUtils and return the results in their original order. Filters
+ * which do not implement AttributesPredicate must be safe to call from
+ * several threads for those.
+ */
+public class FilterUtils {
+  /**
+   * The number of records each thread tests at a time in parallelIterator.
+   */
+  private static final int BATCH_SIZE = 4096;
+
+  private FilterUtils( ) { }
+
+  /**
+   * Returns an Iterator over the records from a source which pass a filter.
+   * Records are read from the source only as they are needed.
+   *
+   * @param source The records to filter.
+   * @param filter The filter to apply.
+   * @return An Iterator over the passing records.
+   */
+  public static <T extends Attributes> Iterator<T> iterator(
+      final Iterator<? extends T> source, AttributesFilter<T> filter ) {
+  	final AttributesPredicate<T> predicate = Predicates.compile( filter );
+  	return new Iterator<T>( ) {
+  		private T next;
+  		private boolean ready;
+
+  		public boolean hasNext( ) {
+  			while ( !this.ready && source.hasNext( )) {
+  				T record = source.next( );
+  				if ( predicate.accept( record )) {
+  					this.next = record;
+  					this.ready = true;
+  				}
+  			}
+  			return this.ready;
+  		}
+
+  		public T next( ) {
+  			if ( !this.hasNext( ))
+  				throw new NoSuchElementException( );
+  			T returnValue = this.next;
+  			this.next = null;
+  			this.ready = false;
+  			return returnValue;
+  		}
+
+  		public void remove( ) {
+  			throw new UnsupportedOperationException( );
+  		}
+  	};
+  }
+
+  /**
+   * Returns an Iterator over the records in a List which pass a filter,
+   * testing them in parallel. The records are tested in batches as the
+   * Iterator advances, so the first results are available quickly and no
+   * more than one batch of results is held at a time.
+   *
+   * @param source The records to filter.
+   * @param filter The filter to apply.
+   * @return An Iterator over the passing records, in their original order.
+   */
+  public static <T extends Attributes> Iterator<T> parallelIterator(
+      final List<? extends T> source, AttributesFilter<T> filter ) {
+  	final AttributesPredicate<T> predicate = Predicates.compile( filter );
+  	final int batchSize = BATCH_SIZE * ParallelUtils.getThreadCount( );
+  	return new Iterator<T>( ) {
+  		private boolean[] passed = new boolean[ 0 ];
+  		private int batchStart;
+  		private int position;
+
+  		public boolean hasNext( ) {
+  			while ( true ) {
+  				while ( this.position < this.passed.length ) {
+  					if ( this.passed[ this.position ])
+  						return true;
+  					this.position++;
+  				}
+  				this.batchStart += this.passed.length;
+  				if ( this.batchStart >= source.size( ))
+  					return false;
+  				this.passed = test( source, predicate, this.batchStart,
+  					Math.min( this.batchStart + batchSize, source.size( )));
+  				this.position = 0;
+  			}
+  		}
+
+  		public T next( ) {
+  			if ( !this.hasNext( ))
+  				throw new NoSuchElementException( );
+  			return source.get( this.batchStart + this.position++ );
+  		}
+
+  		public void remove( ) {
+  			throw new UnsupportedOperationException( );
+  		}
+  	};
+  }
+
+  /**
+   * Filters a List, testing the records in parallel.
+   *
+   * @param source The records to filter.
+   * @param filter The filter to apply.
+   * @return A new List containing the passing records, in their original
+   *	order.
+   */
+  public static <T extends Attributes> List<T> parallelFilter(
+      List<? extends T> source, AttributesFilter<T> filter ) {
+  	boolean[] passed = test( source, Predicates.compile( filter ), 0,
+  	                         source.size( ));
+  	List<T> returnValue = new ArrayList<T>( );
+  	for ( int i=0; i < passed.length; i++ ) {
+  		if ( passed[ i ])
+  			returnValue.add( source.get( i ));
+  	}
+  	return returnValue;
+  }
+
+  /**
+   * Wraps each Map from a source, such as a CSVTableReader, in a
+   * StringAttributes object so that it can be filtered. Records are read
+   * from the source only as they are needed. The records share an
+   * AttributeKeys table of their own, so they hold no copies of the
+   * column names.
+   *
+   * @param source The records to wrap.
+   * @return An Iterator of StringAttributes.
+   */
+  public static Iterator<StringAttributes> attributes(
+      final Iterator<? extends Map<String,String>> source ) {
+  	final AttributeKeys keys = new AttributeKeys( true );
+  	return new Iterator<StringAttributes>( ) {
+  		public boolean hasNext( ) {
+  			return source.hasNext( );
+  		}
+
+  		public StringAttributes next( ) {
+  			StringAttributes returnValue = new StringAttributes( keys );
+  			returnValue.setAttributes( source.next( ));
+  			return returnValue;
+  		}
+
+  		public void remove( ) {
+  			source.remove( );
+  		}
+  	};
+  }
+
+  /**
+   * Tests a range of records in parallel.
+   *
+   * @return Whether each record in the range passed.
+   */
+  private static <T extends Attributes> boolean[] test(
+      final List<? extends T> source, final AttributesPredicate<T> predicate,
+      final int start, int end ) {
+  	final boolean[] returnValue = new boolean[ end - start ];
+  	ParallelUtils.forRange( start, end, new RangeTask( ) {
+  		public void run( int from, int to ) {
+  			for ( int i=from; i < to; i++ ) {
+  				returnValue[ i - start ] = predicate.accept( source.get( i ));
+  			}
+  		}
+  	});
+  	return returnValue;
+  }
+}
@@ -0,0 +1,404 @@
+/*
+
+Copyright: 2010 Bindley Bioscience Center, Purdue University
+
+License: X11 license.
+
+  Permission is hereby granted, free of charge, to any person
+  obtaining a copy of this software and associated documentation
+  files (the "Software"), to deal in the Software without
+  restriction, including without limitation the rights to use,
+  copy, modify, merge, publish, distribute, sublicense, and/or sell
+  copies of the Software, and to permit persons to whom the
+  Software is furnished to do so, subject to the following
+  conditions:
+
+  The above copyright notice and this permission notice shall be
+  included in all copies or substantial portions of the Software.
+
+  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+  OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+package edu.purdue.bbc.util.attributes;
+
+import edu.purdue.bbc.util.ParallelUtils;
+import edu.purdue.bbc.util.RangeTask;
+import edu.purdue.bbc.util.Statistics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups Attributes objects by the values of one or more attributes and
+ * computes aggregates of numeric attributes for each group. Groups are
+ * kept in a hash table with running totals held in primitive arrays, so
+ * records can be aggregated as they are read from an Iterator, such as the
+ * one returned by FilterUtils.attributes( CSVTableReader ), without being
+ * stored. Values are only kept for the median and quartiles, which are
+ * found with the methods of Statistics.
+ *
+ * Each result is a BasicAttributes object holding the grouping attributes,
+ * a "count" attribute with the number of records in the group, and one
+ * attribute per aggregate, named like "mean(score)". Groups are returned in
+ * the order in which they are first seen. Values which are missing or are
+ * not numbers are left out of the aggregates.
+ */
+public class GroupBy {
+  public static final int COUNT = 0;
+  public static final int SUM = 1;
+  public static final int MEAN = 2;
+  public static final int STANDARD_DEVIATION = 3;
+  public static final int MIN = 4;
+  public static final int MAX = 5;
+  public static final int MEDIAN = 6;
+  public static final int FIRST_QUARTILE = 7;
+  public static final int THIRD_QUARTILE = 8;
+
+  private static final String[] NAMES = { "count", "sum", "mean", "sd",
+  	"min", "max", "median", "q1", "q3" };
+
+  private String[] keys;
+  private List<String> attributes = new ArrayList<String>( );
+  private List<Integer> functions = new ArrayList<Integer>( );
+
+  /**
+   * Creates a new GroupBy.
+   *
+   * @param keys The attributes to group the records by. If none are given,
+   *	all records are put into a single group.
+   */
+  public GroupBy( String... keys ) {
+  	this.keys = keys.clone( );
+  }
+
+  /**
+   * Adds an aggregate to be computed for each group.
+   *
+   * @param attribute The numeric attribute to aggregate.
+   * @param function One of COUNT, SUM, MEAN, STANDARD_DEVIATION, MIN, MAX,
+   *	MEDIAN, FIRST_QUARTILE or THIRD_QUARTILE.
+   */
+  public void addAggregate( String attribute, int function ) {
+  	if ( function < COUNT || function > THIRD_QUARTILE )
+  		throw new IllegalArgumentException( "Unknown function: " + function );
+  	this.attributes.add( attribute );
+  	this.functions.add( function );
+  }
+
+  /**
+   * Gets the name of the result attribute holding an aggregate.
+   *
+   * @param attribute The aggregated attribute.
+   * @param function The aggregate function.
+   * @return The name of the result attribute, such as "mean(score)".
+   */
+  public static String getName( String attribute, int function ) {
+  	return NAMES[ function ] + "(" + attribute + ")";
+  }
+
+  /**
+   * Groups and aggregates the records from an Iterator, reading each one
+   * only once.
+   *
+   * @param records The records to aggregate.
+   * @return The aggregated groups.
+   */
+  public List<BasicAttributes<Object>> apply(
+      Iterator<? extends Attributes> records ) {
+  	Table table = new Table( );
+  	while ( records.hasNext( )) {
+  		table.add( records.next( ));
+  	}
+  	return table.toAttributes( );
+  }
+
+  /**
+   * Groups and aggregates a Collection of records.
+   *
+   * @param records The records to aggregate.
+   * @return The aggregated groups.
+   */
+  public List<BasicAttributes<Object>> apply(
+      Collection<? extends Attributes> records ) {
+  	return this.apply( records.iterator( ));
+  }
+
+  /**
+   * Groups and aggregates a List of records in parallel. Each thread
+   * aggregates part of the List into its own table, and the tables are
+   * then merged in order, so the groups are the same and in the same order
+   * as those returned by apply( ).
+   *
+   * @param records The records to aggregate.
+   * @return The aggregated groups.
+   */
+  public List<BasicAttributes<Object>> applyParallel(
+      final List<? extends Attributes> records ) {
+  	int size = records.size( );
+  	final int grain = Math.max( 1024,
+  		size / ( ParallelUtils.getThreadCount( ) * 4 ) + 1 );
+  	final Table[] partials = new Table[( size + grain - 1 ) / grain ];
+  	ParallelUtils.forRange( 0, size, grain, new RangeTask( ) {
+  		public void run( int start, int end ) {
+  			Table table = new Table( );
+  			for ( int i=start; i < end; i++ ) {
+  				table.add( records.get( i ));
+  			}
+  			partials[ start / grain ] = table;
+  		}
+  	});
+  	Table returnValue = new Table( );
+  	for ( Table partial : partials ) {
+  		// a range too small to divide is run as a single chunk.
+  		if ( partial != null )
+  			returnValue.merge( partial );
+  	}
+  	return returnValue.toAttributes( );
+  }
+
+  /**
+   * Reads an attribute as a double.
+   *
+   * @return The value, or NaN if it is missing or is not a number.
+   */
+  private static double getDouble( Attributes record, String attribute ) {
+  	if ( record instanceof AttributesTable.Row )
+  		return (( AttributesTable.Row )record ).getDouble( attribute );
+  	Object value = record.getAttribute( attribute );
+  	if ( value instanceof Number )
+  		return (( Number )value ).doubleValue( );
+  	if ( value == null )
+  		return Double.NaN;
+  	try {
+  		return Double.parseDouble( value.toString( ));
+  	} catch ( NumberFormatException e ) {
+  		return Double.NaN;
+  	}
+  }
+
+  /**
+   * The values of the grouping attributes of a record.
+   */
+  private static class GroupKey {
+  	private Object[] values;
+  	private int hash;
+
+  	GroupKey( Object[] values ) {
+  		this.values = values;
+  		this.hash = Arrays.hashCode( values );
+  	}
+
+  	public boolean equals( Object o ) {
+  		return ( o instanceof GroupKey ) &&
+  		       Arrays.equals( this.values, (( GroupKey )o ).values );
+  	}
+
+  	public int hashCode( ) {
+  		return this.hash;
+  	}
+  }
+
+  /**
+   * A hash table of groups with their running totals.
+   */
+  private class Table {
+  	private Map<GroupKey,Group> groups =
+  		new LinkedHashMap<GroupKey,Group>( );
+  	private String[] columns;
+  	private boolean[] keepValues;
+
+  	Table( ) {
+  		// each distinct attribute is read once per record, whatever the
+  		// number of aggregates computed from it.
+  		List<String> columns = new ArrayList<String>( );
+  		for ( String attribute : GroupBy.this.attributes ) {
+  			if ( !columns.contains( attribute ))
+  				columns.add( attribute );
+  		}
+  		this.columns = columns.toArray( new String[ columns.size( )]);
+  		this.keepValues = new boolean[ this.columns.length ];
+  		for ( int i=0; i < GroupBy.this.functions.size( ); i++ ) {
+  			if ( GroupBy.this.functions.get( i ) >= MEDIAN ) {
+  				this.keepValues[ columns.indexOf(
+  					GroupBy.this.attributes.get( i ))] = true;
+  			}
+  		}
+  	}
+
+  	void add( Attributes record ) {
+  		Object[] values = new Object[ GroupBy.this.keys.length ];
+  		for ( int i=0; i < values.length; i++ ) {
+  			values[ i ] = record.getAttribute( GroupBy.this.keys[ i ]);
+  		}
+  		GroupKey key = new GroupKey( values );
+  		Group group = this.groups.get( key );
+  		if ( group == null ) {
+  			group = new Group( this.columns.length, this.keepValues );
+  			this.groups.put( key, group );
+  		}
+  		group.rows++;
+  		for ( int i=0; i < this.columns.length; i++ ) {
+  			double value = getDouble( record, this.columns[ i ]);
+  			if ( value == value )
+  				group.add( i, value );
+  		}
+  	}
+
+  	void merge( Table other ) {
+  		for ( Map.Entry<GroupKey,Group> entry : other.groups.entrySet( )) {
+  			Group group = this.groups.get( entry.getKey( ));
+  			if ( group == null )
+  				this.groups.put( entry.getKey( ), entry.getValue( ));
+  			else
+  				group.merge( entry.getValue( ));
+  		}
+  	}
+
+  	List<BasicAttributes<Object>> toAttributes( ) {
+  		List<String> columns = Arrays.asList( this.columns );
+  		List<BasicAttributes<Object>> returnValue =
+  			new ArrayList<BasicAttributes<Object>>( this.groups.size( ));
+  		AttributeKeys resultKeys = new AttributeKeys( true );
+  		for ( Map.Entry<GroupKey,Group> entry : this.groups.entrySet( )) {
+  			BasicAttributes<Object> result =
+  				new BasicAttributes<Object>( resultKeys );
+  			Object[] values = entry.getKey( ).values;
+  			for ( int i=0; i < values.length; i++ ) {
+  				result.setAttribute( GroupBy.this.keys[ i ], values[ i ]);
+  			}
+  			Group group = entry.getValue( );
+  			result.setAttribute( "count", Long.valueOf( group.rows ));
+  			for ( int i=0; i < GroupBy.this.functions.size( ); i++ ) {
+  				String attribute = GroupBy.this.attributes.get( i );
+  				int function = GroupBy.this.functions.get( i );
+  				int column = columns.indexOf( attribute );
+  				Object value;
+  				if ( function == COUNT )
+  					value = Long.valueOf( group.count[ column ]);
+  				else
+  					value = Double.valueOf( group.get( column, function ));
+  				result.setAttribute( getName( attribute, function ), value );
+  			}
+  			returnValue.add( result );
+  		}
+  		return returnValue;
+  	}
+  }
+
+  /**
+   * The running totals for a single group, one entry per aggregated
+   * attribute. Means and squared deviations are kept with Welford's
+   * method, which remains accurate for large counts and can be merged.
+   */
+  private static class Group {
+  	long rows;
+  	long[] count;
+  	double[] sum;
+  	double[] mean;
+  	double[] m2;
+  	double[] min;
+  	double[] max;
+  	double[][] values;
+
+  	Group( int columns, boolean[] keepValues ) {
+  		this.count = new long[ columns ];
+  		this.sum = new double[ columns ];
+  		this.mean = new double[ columns ];
+  		this.m2 = new double[ columns ];
+  		this.min = new double[ columns ];
+  		this.max = new double[ columns ];
+  		Arrays.fill( this.min, Double.POSITIVE_INFINITY );
+  		Arrays.fill( this.max, Double.NEGATIVE_INFINITY );
+  		this.values = new double[ columns ][ ];
+  		for ( int i=0; i < columns; i++ ) {
+  			if ( keepValues[ i ])
+  				this.values[ i ] = new double[ 8 ];
+  		}
+  	}
+
+  	void add( int column, double value ) {
+  		long n = ++this.count[ column ];
+  		double delta = value - this.mean[ column ];
+  		this.mean[ column ] += delta / n;
+  		this.m2[ column ] += delta * ( value - this.mean[ column ]);
+  		this.sum[ column ] += value;
+  		this.min[ column ] = Math.min( this.min[ column ], value );
+  		this.max[ column ] = Math.max( this.max[ column ], value );
+  		double[] stored = this.values[ column ];
+  		if ( stored != null ) {
+  			if ( n > stored.length ) {
+  				double[] grown = new double[ stored.length * 2 ];
+  				System.arraycopy( stored, 0, grown, 0, stored.length );
+  				this.values[ column ] = stored = grown;
+  			}
+  			stored[ (int)n - 1 ] = value;
+  		}
+  	}
+
+  	void merge( Group other ) {
+  		this.rows += other.rows;
+  		for ( int i=0; i < this.count.length; i++ ) {
+  			long na = this.count[ i ];
+  			long nb = other.count[ i ];
+  			if ( nb == 0 )
+  				continue;
+  			long n = na + nb;
+  			double delta = other.mean[ i ] - this.mean[ i ];
+  			this.mean[ i ] += delta * nb / n;
+  			this.m2[ i ] += other.m2[ i ] + delta * delta * na * nb / n;
+  			this.count[ i ] = n;
+  			this.sum[ i ] += other.sum[ i ];
+  			this.min[ i ] = Math.min( this.min[ i ], other.min[ i ]);
+  			this.max[ i ] = Math.max( this.max[ i ], other.max[ i ]);
+  			if ( this.values[ i ] != null ) {
+  				double[] merged = new double[ (int)n ];
+  				System.arraycopy( this.values[ i ], 0, merged, 0, (int)na );
+  				System.arraycopy( other.values[ i ], 0, merged, (int)na, (int)nb );
+  				this.values[ i ] = merged;
+  			}
+  		}
+  	}
+
+  	double get( int column, int function ) {
+  		long n = this.count[ column ];
+  		if ( n == 0 )
+  			return ( function == SUM ) ? 0.0 : Double.NaN;
+  		switch ( function ) {
+  			case SUM:
+  				return this.sum[ column ];
+  			case MEAN:
+  				return this.mean[ column ];
+  			case STANDARD_DEVIATION:
+  				return ( n < 2 ) ? Double.NaN :
+  			                     Math.sqrt( this.m2[ column ] / ( n - 1 ));
+  			case MIN:
+  				return this.min[ column ];
+  			case MAX:
+  				return this.max[ column ];
+  		}
+  		double[] values = new double[ (int)n ];
+  		System.arraycopy( this.values[ column ], 0, values, 0, (int)n );
+  		switch ( function ) {
+  			case MEDIAN:
+  				return Statistics.median( values );
+  			case FIRST_QUARTILE:
+  				return Statistics.firstQuartile( values );
+  			default:
+  				return Statistics.thirdQuartile( values );
+  		}
+  	}
+  }
+}
@@ -0,0 +1,663 @@
+/*
+
+Copyright: 2010 Bindley Bioscience Center, Purdue University
+
+License: X11 license.
+
+  Permission is hereby granted, free of charge, to any person
+  obtaining a copy of this software and associated documentation
+  files (the "Software"), to deal in the Software without
+  restriction, including without limitation the rights to use,
+  copy, modify, merge, publish, distribute, sublicense, and/or sell
+  copies of the Software, and to permit persons to whom the
+  Software is furnished to do so, subject to the following
+  conditions:
+
+  The above copyright notice and this permission notice shall be
+  included in all copies or substantial portions of the Software.
+
+  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+  OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+package edu.purdue.bbc.util.attributes;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * A List of Attributes objects which can keep sorted and hash indexes on
+ * individual attributes. Criterion and NumericalCriterion use these indexes
+ * automatically when filtering an IndexedAttributesCollection, so selective
+ * queries become range lookups instead of full scans.
+ *
+ * Indexes are rebuilt lazily after the list is modified. Changes made to the
+ * attributes of records already in the list cannot be detected; reindex( )
+ * must be called after making them. Records which do not have an indexed
+ * attribute (or whose value is not a number, for numeric indexes) are left
+ * out of that index, and so never match a Criterion on it. A sorted or hash
+ * index only answers a Criterion whose value has the same class as every
+ * value in the index; other queries are answered by scanning the records,
+ * which may compare values of different classes.
+ */
+public class IndexedAttributesCollection<T extends Attributes>
+                                         extends AbstractList<T>
+                                         implements RandomAccess {
+  private ArrayList<T> records;
+  private Map<String,SortedIndex> sortedIndexes =
+  	new HashMap<String,SortedIndex>( );
+  private Map<String,NumericIndex> numericIndexes =
+  	new HashMap<String,NumericIndex>( );
+  private Map<String,HashIndex> hashIndexes =
+  	new HashMap<String,HashIndex>( );
+  private int indexedModCount;
+
+  /**
+   * Creates a new, empty IndexedAttributesCollection.
+   */
+  public IndexedAttributesCollection( ) {
+  	this.records = new ArrayList<T>( );
+  }
+
+  /**
+   * Creates a new IndexedAttributesCollection containing the passed in
+   * records.
+   *
+   * @param records The initial contents of the collection.
+   */
+  public IndexedAttributesCollection( Collection<? extends T> records ) {
+  	this.records = new ArrayList<T>( records );
+  }
+
+  public T get( int index ) {
+  	return this.records.get( index );
+  }
+
+  public int size( ) {
+  	return this.records.size( );
+  }
+
+  public void add( int index, T element ) {
+  	this.records.add( index, element );
+  	this.modCount++;
+  }
+
+  public T set( int index, T element ) {
+  	T returnValue = this.records.set( index, element );
+  	this.modCount++;
+  	return returnValue;
+  }
+
+  public T remove( int index ) {
+  	T returnValue = this.records.remove( index );
+  	this.modCount++;
+  	return returnValue;
+  }
+
+  /**
+   * Creates a sorted index on an attribute, using the natural ordering of
+   * its values. This index serves Criterion lookups with any condition.
+   *
+   * @param key The attribute to index.
+   */
+  public void createIndex( String key ) {
+  	this.sortedIndexes.put( key, null );
+  }
+
+  /**
+   * Creates a numeric index on an attribute. Values are compared as doubles,
+   * as NumericalCriterion does. This index serves NumericalCriterion lookups
+   * with any condition.
+   *
+   * @param key The attribute to index.
+   */
+  public void createNumericIndex( String key ) {
+  	this.numericIndexes.put( key, null );
+  }
+
+  /**
+   * Creates a hash index on an attribute. This index only serves Criterion
+   * lookups for EQUAL, but needs no ordering of the values.
+   *
+   * @param key The attribute to index.
+   */
+  public void createHashIndex( String key ) {
+  	this.hashIndexes.put( key, null );
+  }
+
+  /**
+   * Removes all of the indexes on an attribute.
+   *
+   * @param key The attribute.
+   */
+  public void dropIndexes( String key ) {
+  	this.sortedIndexes.remove( key );
+  	this.numericIndexes.remove( key );
+  	this.hashIndexes.remove( key );
+  }
+
+  /**
+   * Determines whether there is any index on an attribute.
+   *
+   * @param key The attribute.
+   * @return true if the attribute is indexed.
+   */
+  public boolean hasIndex( String key ) {
+  	return this.sortedIndexes.containsKey( key ) ||
+  	       this.numericIndexes.containsKey( key ) ||
+  	       this.hashIndexes.containsKey( key );
+  }
+
+  /**
+   * Discards the contents of all indexes so that they are rebuilt on their
+   * next use. This must be called after changing the attributes of records
+   * in this collection.
+   */
+  public void reindex( ) {
+  	this.modCount++;
+  }
+
+  /**
+   * Finds the records whose value for an attribute compares to a value in
+   * the way given by a Criterion condition.
+   *
+   * @param key The attribute to compare.
+   * @param value The value to compare to.
+   * @param condition A combination of Criterion.EQUAL, Criterion.LESS and
+   *	Criterion.GREATER.
+   * @return The positions of the matching records in ascending order, or
+   *	null if there is no index which can answer the query, including when
+   *	the indexed values are not all of the same class as the value.
+   */
+  public int[] find( String key, Comparable value, int condition ) {
+  	this.checkIndexes( );
+  	if ( condition == Criterion.EQUAL && this.hashIndexes.containsKey( key )) {
+  		HashIndex index = this.getHashIndex( key );
+  		if ( index.answers( value ))
+  			return index.find( value );
+  	}
+  	if ( this.sortedIndexes.containsKey( key )) {
+  		SortedIndex index = this.getSortedIndex( key );
+  		if ( index.answers( value ))
+  			return index.find( value, condition );
+  	}
+  	return null;
+  }
+
+  /**
+   * Finds the records whose value for an attribute, read as a double,
+   * compares to a value in the way given by a Criterion condition.
+   *
+   * @param key The attribute to compare.
+   * @param value The value to compare to.
+   * @param condition A combination of Criterion.EQUAL, Criterion.LESS and
+   *	Criterion.GREATER.
+   * @return The positions of the matching records in ascending order, or
+   *	null if there is no numeric index on the attribute.
+   */
+  public int[] findNumeric( String key, double value, int condition ) {
+  	this.checkIndexes( );
+  	if ( this.numericIndexes.containsKey( key ))
+  		return this.getNumericIndex( key ).find( value, condition );
+  	return null;
+  }
+
+  /**
+   * Counts the records which find( String, Comparable, int ) would return,
+   * without building the list of their positions.
+   *
+   * @param key The attribute to compare.
+   * @param value The value to compare to.
+   * @param condition A combination of Criterion.EQUAL, Criterion.LESS and
+   *	Criterion.GREATER.
+   * @return The number of matching records, or -1 if there is no index which
+   *	can answer the query.
+   */
+  public int count( String key, Comparable value, int condition ) {
+  	this.checkIndexes( );
+  	if ( condition == Criterion.EQUAL && this.hashIndexes.containsKey( key )) {
+  		HashIndex index = this.getHashIndex( key );
+  		if ( index.answers( value ))
+  			return index.count( value );
+  	}
+  	if ( this.sortedIndexes.containsKey( key )) {
+  		SortedIndex index = this.getSortedIndex( key );
+  		if ( index.answers( value ))
+  			return index.count( value, condition );
+  	}
+  	return -1;
+  }
+
+  /**
+   * Counts the records which findNumeric( String, double, int ) would
+   * return, without building the list of their positions.
+   *
+   * @param key The attribute to compare.
+   * @param value The value to compare to.
+   * @param condition A combination of Criterion.EQUAL, Criterion.LESS and
+   *	Criterion.GREATER.
+   * @return The number of matching records, or -1 if there is no numeric
+   *	index on the attribute.
+   */
+  public int countNumeric( String key, double value, int condition ) {
+  	this.checkIndexes( );
+  	if ( this.numericIndexes.containsKey( key ))
+  		return this.getNumericIndex( key ).count( value, condition );
+  	return -1;
+  }
+
+  /**
+   * Evaluates a filter over this collection, returning the positions of the
+   * records which pass it rather than the records themselves. The branches
+   * of AttributesFilterLists and NegatedAttributesFilters are combined as
+   * bitwise operations on RowBitmaps, Criterion lookups are answered from
+   * the indexes where possible, and other filters only examine the records
+   * which could still change the result. The records can then be retrieved
+   * with get( RowBitmap ).
+   *
+   * @param filter The filter to evaluate.
+   * @return The positions of the records which pass the filter.
+   */
+  public RowBitmap select( AttributesFilter<T> filter ) {
+  	return this.select( filter, null );
+  }
+
+  /**
+   * Evaluates a filter over some of the records in this collection.
+   *
+   * @param filter The filter to evaluate.
+   * @param candidates The positions to consider, or null for all of them.
+   * @return The positions of the candidates which pass the filter.
+   */
+  RowBitmap select( AttributesFilter<T> filter, RowBitmap candidates ) {
+  	if ( filter instanceof AttributesFilterList )
+  		return (( AttributesFilterList<T> )filter ).select( this, candidates );
+  	if ( filter instanceof NegatedAttributesFilter ) {
+  		RowBitmap all = ( candidates == null ) ?
+  			RowBitmap.range( 0, this.size( )) : candidates;
+  		return all.andNot( this.select(
+  			(( NegatedAttributesFilter<T> )filter ).getFilter( ), candidates ));
+  	}
+  	if ( filter instanceof Criterion ) {
+  		int[] positions = (( Criterion<T> )filter ).find( this );
+  		if ( positions != null ) {
+  			RowBitmap returnValue = RowBitmap.valueOf( positions );
+  			return ( candidates == null ) ? returnValue :
+  			                                returnValue.and( candidates );
+  		}
+  	}
+
+  	int[] positions = ( candidates == null ) ? null : candidates.toArray( );
+  	int count = ( positions == null ) ? this.size( ) : positions.length;
+  	RowBitmap returnValue = new RowBitmap( );
+  	if ( filter instanceof AttributesPredicate ) {
+  		AttributesPredicate<T> predicate = Predicates.compile( filter );
+  		for ( int i=0; i < count; i++ ) {
+  			int position = ( positions == null ) ? i : positions[ i ];
+  			if ( predicate.accept( this.records.get( position )))
+  				returnValue.add( position );
+  		}
+  		return returnValue;
+  	}
+  	// any other filter is applied to the candidate records, which are then
+  	// found again by identity.
+  	List<T> records = ( positions == null ) ? this.records :
+  	                                          this.get( positions );
+  	Map<T,Boolean> passed = new IdentityHashMap<T,Boolean>( );
+  	for ( T record : filter.filter( records )) {
+  		passed.put( record, Boolean.TRUE );
+  	}
+  	for ( int i=0; i < count; i++ ) {
+  		if ( passed.containsKey( records.get( i )))
+  			returnValue.add(( positions == null ) ? i : positions[ i ]);
+  	}
+  	return returnValue;
+  }
+
+  /**
+   * Gets the records at the positions in a RowBitmap.
+   *
+   * @param positions The positions of the records.
+   * @return A new List containing the records, in the order of this
+   *	collection.
+   */
+  public List<T> get( RowBitmap positions ) {
+  	return this.get( positions.toArray( ));
+  }
+
+  /**
+   * Gets the records at the given positions.
+   *
+   * @param positions The positions of the records.
+   * @return A new List containing the records.
+   */
+  public List<T> get( int[] positions ) {
+  	List<T> returnValue = new ArrayList<T>( positions.length );
+  	for ( int position : positions ) {
+  		returnValue.add( this.records.get( position ));
+  	}
+  	return returnValue;
+  }
+
+  /**
+   * Discards all built indexes if the list has changed since they were
+   * built.
+   */
+  private void checkIndexes( ) {
+  	if ( this.indexedModCount != this.modCount ) {
+  		for ( String key : this.sortedIndexes.keySet( )) {
+  			this.sortedIndexes.put( key, null );
+  		}
+  		for ( String key : this.numericIndexes.keySet( )) {
+  			this.numericIndexes.put( key, null );
+  		}
+  		for ( String key : this.hashIndexes.keySet( )) {
+  			this.hashIndexes.put( key, null );
+  		}
+  		this.indexedModCount = this.modCount;
+  	}
+  }
+
+  private SortedIndex getSortedIndex( String key ) {
+  	SortedIndex returnValue = this.sortedIndexes.get( key );
+  	if ( returnValue == null ) {
+  		returnValue = new SortedIndex( this.records, key );
+  		this.sortedIndexes.put( key, returnValue );
+  	}
+  	return returnValue;
+  }
+
+  private NumericIndex getNumericIndex( String key ) {
+  	NumericIndex returnValue = this.numericIndexes.get( key );
+  	if ( returnValue == null ) {
+  		returnValue = new NumericIndex( this.records, key );
+  		this.numericIndexes.put( key, returnValue );
+  	}
+  	return returnValue;
+  }
+
+  private HashIndex getHashIndex( String key ) {
+  	HashIndex returnValue = this.hashIndexes.get( key );
+  	if ( returnValue == null ) {
+  		returnValue = new HashIndex( this.records, key );
+  		this.hashIndexes.put( key, returnValue );
+  	}
+  	return returnValue;
+  }
+
+  /**
+   * Collects the positions in the selected parts of a sorted index and puts
+   * them back into list order. The index is split into the entries less
+   * than, equal to and greater than the value at lower and upper.
+   */
+  private static int[] select( int[] positions, int lower, int upper,
+                               int condition ) {
+  	boolean less = ( condition & Criterion.LESS ) != 0;
+  	boolean equal = ( condition & Criterion.EQUAL ) != 0;
+  	boolean greater = ( condition & Criterion.GREATER ) != 0;
+  	int[] returnValue =
+  		new int[ count( positions.length, lower, upper, condition )];
+  	int n = 0;
+  	if ( less ) {
+  		System.arraycopy( positions, 0, returnValue, n, lower );
+  		n += lower;
+  	}
+  	if ( equal ) {
+  		System.arraycopy( positions, lower, returnValue, n, upper - lower );
+  		n += upper - lower;
+  	}
+  	if ( greater ) {
+  		System.arraycopy( positions, upper, returnValue, n,
+  		                  positions.length - upper );
+  	}
+  	Arrays.sort( returnValue );
+  	return returnValue;
+  }
+
+  /**
+   * Returns the number of entries select( ) would return.
+   */
+  private static int count( int length, int lower, int upper,
+                            int condition ) {
+  	int returnValue = 0;
+  	if (( condition & Criterion.LESS ) != 0 )
+  		returnValue += lower;
+  	if (( condition & Criterion.EQUAL ) != 0 )
+  		returnValue += upper - lower;
+  	if (( condition & Criterion.GREATER ) != 0 )
+  		returnValue += length - upper;
+  	return returnValue;
+  }
+
+  /**
+   * Sorts the positions of the records by the values at those positions.
+   */
+  private static int[] sortPositions( final Comparable[] values,
+                                      int count ) {
+  	Integer[] order = new Integer[ count ];
+  	for ( int i=0; i < count; i++ ) {
+  		order[ i ] = Integer.valueOf( i );
+  	}
+  	Arrays.sort( order, new Comparator<Integer>( ) {
+  		public int compare( Integer a, Integer b ) {
+  			return values[ a.intValue( )].compareTo( values[ b.intValue( )]);
+  		}
+  	});
+  	int[] returnValue = new int[ count ];
+  	for ( int i=0; i < count; i++ ) {
+  		returnValue[ i ] = order[ i ].intValue( );
+  	}
+  	return returnValue;
+  }
+
+  /**
+   * The base of the indexes which compare values with equals( ) or
+   * compareTo( ), keeping track of the class of the indexed values.
+   */
+  private static abstract class ValueIndex {
+  	private Class type;
+  	private boolean mixed;
+
+  	/**
+  	 * Records the class of a value added to this index.
+  	 */
+  	protected void addType( Object value ) {
+  		if ( this.type == null )
+  			this.type = value.getClass( );
+  		else if ( this.type != value.getClass( ))
+  			this.mixed = true;
+  	}
+
+  	/**
+  	 * Whether this index can answer a query on a value, which it can only
+  	 * do when the value and every indexed value are of the same class.
+  	 */
+  	boolean answers( Object value ) {
+  		return value != null && !this.mixed &&
+  		       ( this.type == null || this.type == value.getClass( ));
+  	}
+
+  	boolean isMixed( ) {
+  		return this.mixed;
+  	}
+  }
+
+  /**
+   * An index holding the positions of the records sorted by value. Values
+   * of different classes cannot be sorted, so an index on them is left
+   * empty and never used.
+   */
+  private static class SortedIndex extends ValueIndex {
+  	private Comparable[] values;
+  	private int[] positions;
+
+  	SortedIndex( List<? extends Attributes> records, String key ) {
+  		Comparable[] found = new Comparable[ records.size( )];
+  		int[] foundPositions = new int[ records.size( )];
+  		int count = 0;
+  		for ( int i=0; i < found.length; i++ ) {
+  			Object value = records.get( i ).getAttribute( key );
+  			if ( value != null ) {
+  				this.addType( value );
+  				found[ count ] = ( Comparable )value;
+  				foundPositions[ count++ ] = i;
+  			}
+  		}
+  		if ( this.isMixed( ))
+  			count = 0;
+  		int[] order = sortPositions( found, count );
+  		this.values = new Comparable[ count ];
+  		this.positions = new int[ count ];
+  		for ( int i=0; i < count; i++ ) {
+  			this.values[ i ] = found[ order[ i ]];
+  			this.positions[ i ] = foundPositions[ order[ i ]];
+  		}
+  	}
+
+  	int[] find( Comparable value, int condition ) {
+  		return select( this.positions, this.search( value, false ),
+  		               this.search( value, true ), condition );
+  	}
+
+  	int count( Comparable value, int condition ) {
+  		return IndexedAttributesCollection.count( this.positions.length,
+  			this.search( value, false ), this.search( value, true ), condition );
+  	}
+
+  	/**
+  	 * Returns the first entry which is not less than the value, or with
+  	 * after set, the first entry which is greater than it.
+  	 */
+  	private int search( Comparable value, boolean after ) {
+  		int low = 0;
+  		int high = this.values.length;
+  		while ( low < high ) {
+  			int mid = ( low + high ) >>> 1;
+  			int result = this.values[ mid ].compareTo( value );
+  			if ( result < 0 || ( after && result == 0 ))
+  				low = mid + 1;
+  			else
+  				high = mid;
+  		}
+  		return low;
+  	}
+  }
+
+  /**
+   * An index holding the positions of the records sorted by the value of
+   * the attribute read as a double.
+   */
+  private static class NumericIndex {
+  	private double[] values;
+  	private int[] positions;
+
+  	NumericIndex( List<? extends Attributes> records, String key ) {
+  		Double[] found = new Double[ records.size( )];
+  		int[] foundPositions = new int[ records.size( )];
+  		int count = 0;
+  		for ( int i=0; i < found.length; i++ ) {
+  			Object value = records.get( i ).getAttribute( key );
+  			if ( value == null )
+  				continue;
+  			try {
+  				found[ count ] = ( value instanceof Double ) ? ( Double )value :
+  					Double.valueOf(( value instanceof Number ) ?
+  				    (( Number )value ).doubleValue( ) :
+  				    Double.parseDouble( value.toString( )));
+  				foundPositions[ count++ ] = i;
+  			} catch ( NumberFormatException e ) { }
+  		}
+  		int[] order = sortPositions( found, count );
+  		this.values = new double[ count ];
+  		this.positions = new int[ count ];
+  		for ( int i=0; i < count; i++ ) {
+  			this.values[ i ] = found[ order[ i ]].doubleValue( );
+  			this.positions[ i ] = foundPositions[ order[ i ]];
+  		}
+  	}
+
+  	int[] find( double value, int condition ) {
+  		return select( this.positions, this.search( value, false ),
+  		               this.search( value, true ), condition );
+  	}
+
+  	int count( double value, int condition ) {
+  		return IndexedAttributesCollection.count( this.positions.length,
+  			this.search( value, false ), this.search( value, true ), condition );
+  	}
+
+  	private int search( double value, boolean after ) {
+  		int low = 0;
+  		int high = this.values.length;
+  		while ( low < high ) {
+  			int mid = ( low + high ) >>> 1;
+  			int result = Double.compare( this.values[ mid ], value );
+  			if ( result < 0 || ( after && result == 0 ))
+  				low = mid + 1;
+  			else
+  				high = mid;
+  		}
+  		return low;
+  	}
+  }
+
+  /**
+   * An index holding the positions of the records for each distinct value.
+   */
+  private static class HashIndex extends ValueIndex {
+  	private static final int[] NONE = new int[ 0 ];
+  	private Map<Object,int[]> positions = new HashMap<Object,int[]>( );
+
+  	HashIndex( List<? extends Attributes> records, String key ) {
+  		Map<Object,int[]> counts = new HashMap<Object,int[]>( );
+  		int size = records.size( );
+  		for ( int i=0; i < size; i++ ) {
+  			Object value = records.get( i ).getAttribute( key );
+  			if ( value == null )
+  				continue;
+  			this.addType( value );
+  			int[] count = counts.get( value );
+  			if ( count == null ) {
+  				count = new int[ 1 ];
+  				counts.put( value, count );
+  			}
+  			count[ 0 ]++;
+  		}
+  		for ( Map.Entry<Object,int[]> entry : counts.entrySet( )) {
+  			this.positions.put( entry.getKey( ), new int[ entry.getValue( )[ 0 ]]);
+  			entry.getValue( )[ 0 ] = 0;
+  		}
+  		for ( int i=0; i < size; i++ ) {
+  			Object value = records.get( i ).getAttribute( key );
+  			if ( value != null ) {
+  				this.positions.get( value )[ counts.get( value )[ 0 ]++ ] = i;
+  			}
+  		}
+  	}
+
+  	int[] find( Object value ) {
+  		int[] returnValue = this.positions.get( value );
+  		return ( returnValue == null ) ? NONE : returnValue.clone( );
+  	}
+
+  	int count( Object value ) {
+  		int[] positions = this.positions.get( value );
+  		return ( positions == null ) ? 0 : positions.length;
+  	}
+  }
+}
@@ -0,0 +1,130 @@
+/*
+
+Copyright: 2010 Bindley Bioscience Center, Purdue University
+
+License: X11 license.
+
+  Permission is hereby granted, free of charge, to any person
+  obtaining a copy of this software and associated documentation
+  files (the "Software"), to deal in the Software without
+  restriction, including without limitation the rights to use,
+  copy, modify, merge, publish, distribute, sublicense, and/or sell
+  copies of the Software, and to permit persons to whom the
+  Software is furnished to do so, subject to the following
+  conditions:
+
+  The above copyright notice and this permission notice shall be
+  included in all copies or substantial portions of the Software.
+
+  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+  OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+package edu.purdue.bbc.util.attributes;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A filter which passes the Attributes objects that another filter rejects.
+ */
+public class NegatedAttributesFilter<T extends Attributes>
+                                     implements AttributesFilter<T>,
+                                                AttributesPredicate<T> {
+  private AttributesFilter<T> filter;
+
+  /**
+   * Creates a new NegatedAttributesFilter.
+   *
+   * @param filter The filter to negate.
+   */
+  public NegatedAttributesFilter( AttributesFilter<T> filter ) {
+  	this.filter = filter;
+  }
+
+  /**
+   * Gets the filter which is negated by this one.
+   *
+   * @return The negated filter.
+   */
+  public AttributesFilter<T> getFilter( ) {
+  	return this.filter;
+  }
+
+  /**
+   * Filters the passed in Attribute objects, keeping those which do not
+   * pass the negated filter.
+   *
+   * @see AttributesFilter#filter( Collection )
+   * @param attributes The set of Attributes to be filtered.
+   * @return The new set containing only objects which passed through the
+   *	filtering process.
+   */
+  public Collection<T> filter( Collection<T> attributes ) {
+  	if ( attributes instanceof IndexedAttributesCollection ) {
+  		IndexedAttributesCollection<T> indexed =
+  			( IndexedAttributesCollection<T> )attributes;
+  		return indexed.get( indexed.select( this ));
+  	}
+  	Collection<T> returnValue = new ArrayList<T>( );
+  	if ( this.filter instanceof AttributesPredicate ) {
+  		AttributesPredicate<T> predicate = this.compile( );
+  		for ( T record : attributes ) {
+  			if ( predicate.accept( record ))
+  				returnValue.add( record );
+  		}
+  		return returnValue;
+  	}
+  	Map<T,Boolean> rejected = new IdentityHashMap<T,Boolean>( );
+  	for ( T record : this.filter.filter( attributes )) {
+  		rejected.put( record, Boolean.TRUE );
+  	}
+  	for ( T record : attributes ) {
+  		if ( !rejected.containsKey( record ))
+  			returnValue.add( record );
+  	}
+  	return returnValue;
+  }
+
+  /**
+   * Determines whether an Attributes object is rejected by the negated
+   * filter.
+   *
+   * @param attributes The object to test.
+   * @return true if the negated filter rejects the object.
+   */
+  public boolean accept( T attributes ) {
+  	if ( this.filter instanceof AttributesPredicate )
+  		return !(( AttributesPredicate<T> )this.filter ).accept( attributes );
+  	return this.filter.filter(
+  		Collections.singletonList( attributes )).isEmpty( );
+  }
+
+  /**
+   * Compiles this filter into a predicate by compiling the negated filter.
+   *
+   * @return A predicate accepting the same objects as this filter.
+   */
+  public AttributesPredicate<T> compile( ) {
+  	return Predicates.not( Predicates.compile( this.filter ));
+  }
+
+  /**
+   * Returns a string representation of this filter.
+   *
+   * @return A string representation of this object.
+   */
+  public String toString( ) {
+  	return "not " + this.filter;
+  }
+}
@@ -64,6 +64,57 @@ public class NumericalCriterion<T extends Attributes> extends Criterion<T> {
   	return new NumericalCriterion( this.key, (Number)this.value, this.condition );
   }
 
+  /**
+   * Compiles this Criterion into a predicate specialized for its value and
+   * condition. Numbers are compared without being parsed, and the rows of
+   * an AttributesTable without creating any objects. Later changes to this
+   * Criterion do not affect the predicate. Subclasses which do not override
+   * this method are returned unchanged.
+   * 
+   * @return A predicate accepting the same objects as this Criterion.
+   */
+  @Override
+  public AttributesPredicate<T> compile( ) {
+  	if ( this.getClass( ) != NumericalCriterion.class )
+  		return this;
+  	return Predicates.compareNumeric( this.key,
+  		((Number)this.value).doubleValue( ), this.condition );
+  }
+
+  /**
+   * Looks up the records meeting this Criterion in the numeric index of a
+   * collection. Subclasses which do not override this method are never
+   * answered from an index.
+   * 
+   * @param collection The collection to search.
+   * @return The positions of the matching records in ascending order, or
+   *	null if the collection has no numeric index on the key.
+   */
+  @Override
+  protected int[] find( IndexedAttributesCollection<T> collection ) {
+  	if ( this.getClass( ) != NumericalCriterion.class )
+  		return null;
+  	return collection.findNumeric( this.key,
+  		((Number)this.value).doubleValue( ), this.condition );
+  }
+
+  /**
+   * Counts the records meeting this Criterion using the numeric index of a
+   * collection. Subclasses which do not override this method are never
+   * counted from an index.
+   * 
+   * @param collection The collection to search.
+   * @return The number of matching records, or -1 if the collection has no
+   *	numeric index on the key.
+   */
+  @Override
+  protected int count( IndexedAttributesCollection<T> collection ) {
+  	if ( this.getClass( ) != NumericalCriterion.class )
+  		return -1;
+  	return collection.countNumeric( this.key,
+  		((Number)this.value).doubleValue( ), this.condition );
+  }
+
   /**
    * Determines whether or not this value meets the Criterion.
    * 
@@ -72,16 +123,17 @@ public class NumericalCriterion<T extends Attributes> extends Criterion<T> {
    */
   @Override
   protected boolean passes( Comparable value ) {
-  	int result;
+  	double number;
   	if ( value instanceof Number ) {
-  		result = value.compareTo( this.value );
-  	}
-  	try {
-  		result = Double.compare( Double.parseDouble( value.toString( )),
-  		                        ((Number)this.value).doubleValue( ));
-  	} catch ( NumberFormatException e ) {
-  		return false;
+  		number = ((Number)value ).doubleValue( );
+  	} else {
+  		try {
+  			number = Double.parseDouble( value.toString( ));
+  		} catch ( NumberFormatException e ) {
+  			return false;
+  		}
   	}
+  	int result = Double.compare( number, ((Number)this.value).doubleValue( ));
   	return ( result == 0 && ( this.condition & EQUAL   ) != 0 ) ||
   	       ( result >  0 && ( this.condition & GREATER ) != 0 ) ||
   	       ( result <  0 && ( this.condition & LESS    ) != 0 );
@@ -0,0 +1,307 @@
+/*
+
+Copyright: 2010 Bindley Bioscience Center, Purdue University
+
+License: X11 license.
+
+  Permission is hereby granted, free of charge, to any person
+  obtaining a copy of this software and associated documentation
+  files (the "Software"), to deal in the Software without
+  restriction, including without limitation the rights to use,
+  copy, modify, merge, publish, distribute, sublicense, and/or sell
+  copies of the Software, and to permit persons to whom the
+  Software is furnished to do so, subject to the following
+  conditions:
+
+  The above copyright notice and this permission notice shall be
+  included in all copies or substantial portions of the Software.
+
+  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+  OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+package edu.purdue.bbc.util.attributes;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Static methods for building the specialized predicates returned by the
+ * compile( ) methods of Criterion, NumericalCriterion, AttributesFilterList
+ * and NegatedAttributesFilter. The comparison value is converted once and
+ * the condition is reduced to three booleans, so testing a record involves
+ * no parsing or bit tests.
+ */
+final class Predicates {
+
+  private Predicates( ) { }
+
+  /**
+   * Compiles any filter into a predicate. Filters with a compile( ) method
+   * are compiled, other predicates are returned as they are, and any other
+   * filter is applied to a collection containing only the tested record.
+   *
+   * @param filter The filter to compile.
+   * @return A predicate accepting the records which pass the filter.
+   */
+  static <T extends Attributes> AttributesPredicate<T> compile(
+      final AttributesFilter<T> filter ) {
+  	if ( filter instanceof Criterion )
+  		return (( Criterion<T> )filter ).compile( );
+  	if ( filter instanceof AttributesFilterList )
+  		return (( AttributesFilterList<T> )filter ).compile( );
+  	if ( filter instanceof NegatedAttributesFilter )
+  		return (( NegatedAttributesFilter<T> )filter ).compile( );
+  	if ( filter instanceof AttributesPredicate )
+  		return ( AttributesPredicate<T> )filter;
+  	return new AttributesPredicate<T>( ) {
+  		public boolean accept( T attributes ) {
+  			return !filter.filter(
+  				Collections.singletonList( attributes )).isEmpty( );
+  		}
+  	};
+  }
+
+  /**
+   * Creates a predicate comparing an attribute with compareTo( ), as
+   * Criterion does.
+   */
+  static <T extends Attributes> AttributesPredicate<T> compare(
+      String key, Comparable value, int condition ) {
+  	if ( value instanceof String )
+  		return new StringComparison<T>( key, ( String )value, condition );
+  	return new Comparison<T>( key, value, condition );
+  }
+
+  /**
+   * Creates a predicate comparing an attribute as a double, as
+   * NumericalCriterion does.
+   */
+  static <T extends Attributes> AttributesPredicate<T> compareNumeric(
+      String key, double value, int condition ) {
+  	return new NumericComparison<T>( key, value, condition );
+  }
+
+  /**
+   * Creates a predicate accepting records which all of the passed in
+   * predicates accept.
+   */
+  static <T extends Attributes> AttributesPredicate<T> and(
+      Collection<AttributesPredicate<T>> predicates ) {
+  	if ( predicates.size( ) == 1 )
+  		return predicates.iterator( ).next( );
+  	final AttributesPredicate<T>[] array = toArray( predicates );
+  	return new AttributesPredicate<T>( ) {
+  		public boolean accept( T attributes ) {
+  			for ( AttributesPredicate<T> predicate : array ) {
+  				if ( !predicate.accept( attributes ))
+  					return false;
+  			}
+  			return true;
+  		}
+  	};
+  }
+
+  /**
+   * Creates a predicate accepting records which any of the passed in
+   * predicates accept.
+   */
+  static <T extends Attributes> AttributesPredicate<T> or(
+      Collection<AttributesPredicate<T>> predicates ) {
+  	if ( predicates.size( ) == 1 )
+  		return predicates.iterator( ).next( );
+  	final AttributesPredicate<T>[] array = toArray( predicates );
+  	return new AttributesPredicate<T>( ) {
+  		public boolean accept( T attributes ) {
+  			for ( AttributesPredicate<T> predicate : array ) {
+  				if ( predicate.accept( attributes ))
+  					return true;
+  			}
+  			return false;
+  		}
+  	};
+  }
+
+  /**
+   * Creates a predicate accepting the records another predicate rejects.
+   */
+  static <T extends Attributes> AttributesPredicate<T> not(
+      final AttributesPredicate<T> predicate ) {
+  	return new AttributesPredicate<T>( ) {
+  		public boolean accept( T attributes ) {
+  			return !predicate.accept( attributes );
+  		}
+  	};
+  }
+
+  private static <T extends Attributes> AttributesPredicate<T>[] toArray(
+      Collection<AttributesPredicate<T>> predicates ) {
+  	return predicates.toArray( new AttributesPredicate[ predicates.size( )]);
+  }
+
+  /**
+   * The slot of an attribute in an AttributeKeys table. These are replaced
+   * rather than changed, so they can be shared between threads.
+   */
+  private static class Slot {
+  	final AttributeKeys keys;
+  	final int index;
+
+  	Slot( AttributeKeys keys, int index ) {
+  		this.keys = keys;
+  		this.index = index;
+  	}
+  }
+
+  /**
+   * Compares an attribute with a value using compareTo( ). Records which
+   * do not have the attribute are rejected.
+   */
+  private static class Comparison<T extends Attributes>
+                                  implements AttributesPredicate<T> {
+  	protected String key;
+  	private Comparable value;
+  	private Slot slot;
+  	private boolean less;
+  	private boolean equal;
+  	private boolean greater;
+
+  	Comparison( String key, Comparable value, int condition ) {
+  		this.key = key;
+  		this.value = value;
+  		this.less = ( condition & Criterion.LESS ) != 0;
+  		this.equal = ( condition & Criterion.EQUAL ) != 0;
+  		this.greater = ( condition & Criterion.GREATER ) != 0;
+  	}
+
+  	public boolean accept( T attributes ) {
+  		Object value = this.get( attributes );
+  		return value != null &&
+  		       this.matches( compareValues(( Comparable )value, this.value ));
+  	}
+
+  	/**
+  	 * Gets the compared attribute from a record. The slot of the attribute
+  	 * in the AttributeKeys table of BasicAttributes records is looked up
+  	 * once and remembered for as long as the records share the table.
+  	 */
+  	final Object get( T attributes ) {
+  		if ( !( attributes instanceof BasicAttributes ) ||
+  		     (( BasicAttributes )attributes ).getKeys( ) == null ) {
+  			return attributes.getAttribute( this.key );
+  		}
+  		BasicAttributes basic = ( BasicAttributes )attributes;
+  		Slot slot = this.slot;
+  		if ( slot == null || slot.keys != basic.getKeys( )) {
+  			int index = basic.getKeys( ).findSlot( this.key );
+  			// no record has the attribute yet, so it cannot be remembered.
+  			if ( index < 0 )
+  				return null;
+  			slot = new Slot( basic.getKeys( ), index );
+  			this.slot = slot;
+  		}
+  		return basic.getAttribute( slot.index );
+  	}
+
+  	/**
+  	 * Determines whether the result of a comparison meets the condition.
+  	 */
+  	final boolean matches( int result ) {
+  		return ( result < 0 ) ? this.less :
+  		       ( result > 0 ) ? this.greater : this.equal;
+  	}
+  }
+
+  /**
+   * Compares an attribute with a String, avoiding the interface call for
+   * String values.
+   */
+  private static class StringComparison<T extends Attributes>
+                                        extends Comparison<T> {
+  	private String value;
+
+  	StringComparison( String key, String value, int condition ) {
+  		super( key, value, condition );
+  		this.value = value;
+  	}
+
+  	public boolean accept( T attributes ) {
+  		Object value = this.get( attributes );
+  		if ( value instanceof String )
+  			return this.matches((( String )value ).compareTo( this.value ));
+  		return value != null &&
+  		       this.matches( asString( value ).compareTo( this.value ));
+  	}
+  }
+
+  /**
+   * Converts a value which is compared with a String to a String. Doubles
+   * are formatted as AttributesTable does, so numbers read from a numeric
+   * column compare as they were written.
+   */
+  static String asString( Object value ) {
+  	if ( value instanceof Double )
+  		return AttributesTable.format((( Double )value ).doubleValue( ));
+  	return value.toString( );
+  }
+
+  /**
+   * Compares two values with compareTo( ), except that Numbers of different
+   * classes, such as the Doubles of a numeric column and an Integer, are
+   * compared by their double values.
+   */
+  static int compareValues( Comparable value, Comparable other ) {
+  	if ( value instanceof Number && other instanceof Number &&
+  	     value.getClass( ) != other.getClass( )) {
+  		return Double.compare((( Number )value ).doubleValue( ),
+  		                      (( Number )other ).doubleValue( ));
+  	}
+  	return value.compareTo( other );
+  }
+
+  /**
+   * Compares an attribute with a number. Numbers are compared directly,
+   * rows of an AttributesTable are read without creating any objects, and
+   * other values are parsed. Records whose value is missing or is not a
+   * number are rejected.
+   */
+  private static class NumericComparison<T extends Attributes>
+                                         extends Comparison<T> {
+  	private double value;
+
+  	NumericComparison( String key, double value, int condition ) {
+  		super( key, Double.valueOf( value ), condition );
+  		this.value = value;
+  	}
+
+  	public boolean accept( T attributes ) {
+  		if ( attributes instanceof AttributesTable.Row ) {
+  			double number =
+  				(( AttributesTable.Row )attributes ).getDouble( this.key );
+  			// NaN is also returned for missing values, so check those below.
+  			if ( number == number )
+  				return this.matches( Double.compare( number, this.value ));
+  		}
+  		Object value = this.get( attributes );
+  		if ( value instanceof Number ) {
+  			return this.matches( Double.compare(
+  				(( Number )value ).doubleValue( ), this.value ));
+  		}
+  		if ( value == null )
+  			return false;
+  		try {
+  			return this.matches( Double.compare(
+  				Double.parseDouble( value.toString( )), this.value ));
+  		} catch ( NumberFormatException e ) {
+  			return false;
+  		}
+  	}
+  }
+}
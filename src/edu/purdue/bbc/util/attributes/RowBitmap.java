@@ -0,0 +1,656 @@
+/*
+
+Copyright: 2010 Bindley Bioscience Center, Purdue University
+
+License: X11 license.
+
+  Permission is hereby granted, free of charge, to any person
+  obtaining a copy of this software and associated documentation
+  files (the "Software"), to deal in the Software without
+  restriction, including without limitation the rights to use,
+  copy, modify, merge, publish, distribute, sublicense, and/or sell
+  copies of the Software, and to permit persons to whom the
+  Software is furnished to do so, subject to the following
+  conditions:
+
+  The above copyright notice and this permission notice shall be
+  included in all copies or substantial portions of the Software.
+
+  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+  OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+
+package edu.purdue.bbc.util.attributes;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A compressed set of non-negative ints, used to hold the positions of
+ * records which pass a filter. As in a Roaring bitmap, the values are split
+ * into chunks of 65536 by their upper 16 bits. Sparse chunks store their
+ * values in a sorted array and dense chunks in a bitmap, so both small and
+ * large results take little space and combine quickly.
+ *
+ * The and, or, andNot and not operations return new RowBitmaps and leave
+ * their operands unchanged.
+ */
+public class RowBitmap implements Iterable<Integer> {
+  /**
+   * The largest number of values held in an array chunk. Above this a
+   * bitmap of 1024 longs is smaller.
+   */
+  private static final int ARRAY_LIMIT = 4096;
+
+  private int[] keys;
+  private Container[] containers;
+  private int size;
+
+  /**
+   * Creates a new, empty RowBitmap.
+   */
+  public RowBitmap( ) {
+  	this.keys = new int[ 4 ];
+  	this.containers = new Container[ 4 ];
+  }
+
+  /**
+   * Creates a RowBitmap containing the passed in values.
+   *
+   * @param values The values to add. These are added most efficiently in
+   *	ascending order.
+   * @return The new RowBitmap.
+   */
+  public static RowBitmap valueOf( int[] values ) {
+  	RowBitmap returnValue = new RowBitmap( );
+  	for ( int value : values ) {
+  		returnValue.add( value );
+  	}
+  	return returnValue;
+  }
+
+  /**
+   * Creates a RowBitmap containing a range of values.
+   *
+   * @param start The first value in the range.
+   * @param end The value after the last one in the range.
+   * @return The new RowBitmap.
+   */
+  public static RowBitmap range( int start, int end ) {
+  	if ( start < 0 )
+  		throw new IllegalArgumentException( "Negative value: " + start );
+  	RowBitmap returnValue = new RowBitmap( );
+  	while ( start < end ) {
+  		int high = start >>> 16;
+  		int chunkEnd = Math.min( end - ( high << 16 ), 65536 );
+  		BitmapContainer container = new BitmapContainer( );
+  		container.setRange( start & 0xffff, chunkEnd );
+  		returnValue.append( high, container.shrink( ));
+  		start = ( high + 1 ) << 16;
+  		if ( start <= 0 )
+  			break;
+  	}
+  	return returnValue;
+  }
+
+  /**
+   * Adds a value to this RowBitmap.
+   *
+   * @param value The value to add.
+   * @throws IllegalArgumentException If the value is negative.
+   */
+  public void add( int value ) {
+  	if ( value < 0 )
+  		throw new IllegalArgumentException( "Negative value: " + value );
+  	int high = value >>> 16;
+  	int index;
+  	if ( this.size > 0 && this.keys[ this.size - 1 ] == high ) {
+  		index = this.size - 1;
+  	} else {
+  		index = this.indexOf( high );
+  		if ( index < 0 ) {
+  			index = -1 - index;
+  			this.insert( index, high, new ArrayContainer( ));
+  		}
+  	}
+  	this.containers[ index ] = this.containers[ index ].add( value & 0xffff );
+  }
+
+  /**
+   * Determines whether a value is in this RowBitmap.
+   *
+   * @param value The value to look for.
+   * @return true if the value is present.
+   */
+  public boolean contains( int value ) {
+  	if ( value < 0 )
+  		return false;
+  	int index = this.indexOf( value >>> 16 );
+  	return index >= 0 && this.containers[ index ].contains( value & 0xffff );
+  }
+
+  /**
+   * Returns the number of values in this RowBitmap.
+   *
+   * @return The number of values.
+   */
+  public int cardinality( ) {
+  	int returnValue = 0;
+  	for ( int i=0; i < this.size; i++ ) {
+  		returnValue += this.containers[ i ].cardinality( );
+  	}
+  	return returnValue;
+  }
+
+  /**
+   * Determines whether this RowBitmap contains no values.
+   *
+   * @return true if it is empty.
+   */
+  public boolean isEmpty( ) {
+  	return this.size == 0;
+  }
+
+  /**
+   * Returns the values which are in both this and another RowBitmap.
+   *
+   * @param other The other RowBitmap.
+   * @return A new RowBitmap holding the intersection.
+   */
+  public RowBitmap and( RowBitmap other ) {
+  	RowBitmap returnValue = new RowBitmap( );
+  	int i = 0;
+  	int j = 0;
+  	while ( i < this.size && j < other.size ) {
+  		if ( this.keys[ i ] == other.keys[ j ]) {
+  			returnValue.append( this.keys[ i ],
+  				this.containers[ i ].and( other.containers[ j ]));
+  			i++;
+  			j++;
+  		} else if ( this.keys[ i ] < other.keys[ j ]) {
+  			i++;
+  		} else {
+  			j++;
+  		}
+  	}
+  	return returnValue;
+  }
+
+  /**
+   * Returns the values which are in either this or another RowBitmap.
+   *
+   * @param other The other RowBitmap.
+   * @return A new RowBitmap holding the union.
+   */
+  public RowBitmap or( RowBitmap other ) {
+  	RowBitmap returnValue = new RowBitmap( );
+  	int i = 0;
+  	int j = 0;
+  	while ( i < this.size || j < other.size ) {
+  		if ( j == other.size ||
+  		     ( i < this.size && this.keys[ i ] < other.keys[ j ])) {
+  			returnValue.append( this.keys[ i ], this.containers[ i ].copy( ));
+  			i++;
+  		} else if ( i == this.size || this.keys[ i ] > other.keys[ j ]) {
+  			returnValue.append( other.keys[ j ], other.containers[ j ].copy( ));
+  			j++;
+  		} else {
+  			returnValue.append( this.keys[ i ],
+  				this.containers[ i ].or( other.containers[ j ]));
+  			i++;
+  			j++;
+  		}
+  	}
+  	return returnValue;
+  }
+
+  /**
+   * Returns the values which are in this RowBitmap but not in another.
+   *
+   * @param other The other RowBitmap.
+   * @return A new RowBitmap holding the difference.
+   */
+  public RowBitmap andNot( RowBitmap other ) {
+  	RowBitmap returnValue = new RowBitmap( );
+  	int j = 0;
+  	for ( int i=0; i < this.size; i++ ) {
+  		while ( j < other.size && other.keys[ j ] < this.keys[ i ]) {
+  			j++;
+  		}
+  		if ( j < other.size && other.keys[ j ] == this.keys[ i ]) {
+  			returnValue.append( this.keys[ i ],
+  				this.containers[ i ].andNot( other.containers[ j ]));
+  		} else {
+  			returnValue.append( this.keys[ i ], this.containers[ i ].copy( ));
+  		}
+  	}
+  	return returnValue;
+  }
+
+  /**
+   * Returns the values from 0 up to a limit which are not in this
+   * RowBitmap.
+   *
+   * @param end The value after the last one which may be returned, normally
+   *	the number of records.
+   * @return A new RowBitmap holding the complement.
+   */
+  public RowBitmap not( int end ) {
+  	return range( 0, end ).andNot( this );
+  }
+
+  /**
+   * Returns the values in this RowBitmap in ascending order.
+   *
+   * @return A new array of the values.
+   */
+  public int[] toArray( ) {
+  	int[] returnValue = new int[ this.cardinality( )];
+  	int offset = 0;
+  	for ( int i=0; i < this.size; i++ ) {
+  		offset = this.containers[ i ].toArray( this.keys[ i ] << 16,
+  		                                       returnValue, offset );
+  	}
+  	return returnValue;
+  }
+
+  /**
+   * Returns an Iterator over the values in this RowBitmap in ascending
+   * order.
+   *
+   * @return An Iterator.
+   */
+  public Iterator<Integer> iterator( ) {
+  	final int[] values = this.toArray( );
+  	return new Iterator<Integer>( ) {
+  		private int next;
+
+  		public boolean hasNext( ) {
+  			return this.next < values.length;
+  		}
+
+  		public Integer next( ) {
+  			if ( this.next >= values.length )
+  				throw new NoSuchElementException( );
+  			return Integer.valueOf( values[ this.next++ ]);
+  		}
+
+  		public void remove( ) {
+  			throw new UnsupportedOperationException( );
+  		}
+  	};
+  }
+
+  @Override
+  public boolean equals( Object o ) {
+  	if ( !( o instanceof RowBitmap ))
+  		return false;
+  	RowBitmap other = ( RowBitmap )o;
+  	return other.cardinality( ) == this.cardinality( ) &&
+  	       this.andNot( other ).isEmpty( );
+  }
+
+  @Override
+  public int hashCode( ) {
+  	int returnValue = 0;
+  	for ( int value : this.toArray( )) {
+  		returnValue = returnValue * 31 + value;
+  	}
+  	return returnValue;
+  }
+
+  @Override
+  public String toString( ) {
+  	StringBuilder returnValue = new StringBuilder( "{" );
+  	for ( int value : this.toArray( )) {
+  		if ( returnValue.length( ) > 1 )
+  			returnValue.append( ", " );
+  		returnValue.append( value );
+  	}
+  	return returnValue.append( "}" ).toString( );
+  }
+
+  /**
+   * Finds the chunk for the given upper 16 bits.
+   *
+   * @return The index of the chunk, or (-1 - index) for where it would be
+   *	inserted.
+   */
+  private int indexOf( int high ) {
+  	int low = 0;
+  	int top = this.size - 1;
+  	while ( low <= top ) {
+  		int mid = ( low + top ) >>> 1;
+  		if ( this.keys[ mid ] < high )
+  			low = mid + 1;
+  		else if ( this.keys[ mid ] > high )
+  			top = mid - 1;
+  		else
+  			return mid;
+  	}
+  	return -1 - low;
+  }
+
+  private void insert( int index, int high, Container container ) {
+  	if ( this.size == this.keys.length ) {
+  		int[] newKeys = new int[ this.size * 2 ];
+  		Container[] newContainers = new Container[ this.size * 2 ];
+  		System.arraycopy( this.keys, 0, newKeys, 0, this.size );
+  		System.arraycopy( this.containers, 0, newContainers, 0, this.size );
+  		this.keys = newKeys;
+  		this.containers = newContainers;
+  	}
+  	System.arraycopy( this.keys, index, this.keys, index + 1,
+  	                  this.size - index );
+  	System.arraycopy( this.containers, index, this.containers, index + 1,
+  	                  this.size - index );
+  	this.keys[ index ] = high;
+  	this.containers[ index ] = container;
+  	this.size++;
+  }
+
+  /**
+   * Adds a chunk after all of the existing ones, unless it is empty.
+   */
+  private void append( int high, Container container ) {
+  	if ( container.cardinality( ) > 0 )
+  		this.insert( this.size, high, container );
+  }
+
+  /**
+   * The values in a chunk of 65536, stored by their lower 16 bits.
+   */
+  private abstract static class Container {
+  	abstract int cardinality( );
+  	abstract boolean contains( int low );
+  	abstract Container add( int low );
+  	abstract Container and( Container other );
+  	abstract Container or( Container other );
+  	abstract Container andNot( Container other );
+  	abstract Container copy( );
+
+  	/**
+  	 * Writes the values of this chunk into an array.
+  	 *
+  	 * @return The offset following the last value written.
+  	 */
+  	abstract int toArray( int high, int[] out, int offset );
+  }
+
+  /**
+   * A chunk storing its values in a sorted array.
+   */
+  private static class ArrayContainer extends Container {
+  	private char[] values;
+  	private int cardinality;
+
+  	ArrayContainer( ) {
+  		this.values = new char[ 4 ];
+  	}
+
+  	ArrayContainer( char[] values, int cardinality ) {
+  		this.values = values;
+  		this.cardinality = cardinality;
+  	}
+
+  	int cardinality( ) {
+  		return this.cardinality;
+  	}
+
+  	boolean contains( int low ) {
+  		return this.search( low ) >= 0;
+  	}
+
+  	Container add( int low ) {
+  		int index = this.search( low );
+  		if ( index >= 0 )
+  			return this;
+  		if ( this.cardinality == ARRAY_LIMIT )
+  			return this.toBitmap( ).add( low );
+  		index = -1 - index;
+  		if ( this.cardinality == this.values.length ) {
+  			char[] newValues = new char[ Math.max( 4, this.cardinality * 2 )];
+  			System.arraycopy( this.values, 0, newValues, 0, this.cardinality );
+  			this.values = newValues;
+  		}
+  		System.arraycopy( this.values, index, this.values, index + 1,
+  		                  this.cardinality - index );
+  		this.values[ index ] = ( char )low;
+  		this.cardinality++;
+  		return this;
+  	}
+
+  	Container and( Container other ) {
+  		char[] result = new char[ Math.min( this.cardinality,
+  		                                    other.cardinality( ))];
+  		int n = 0;
+  		if ( other instanceof ArrayContainer ) {
+  			ArrayContainer array = ( ArrayContainer )other;
+  			int i = 0;
+  			int j = 0;
+  			while ( i < this.cardinality && j < array.cardinality ) {
+  				if ( this.values[ i ] == array.values[ j ]) {
+  					result[ n++ ] = this.values[ i ];
+  					i++;
+  					j++;
+  				} else if ( this.values[ i ] < array.values[ j ]) {
+  					i++;
+  				} else {
+  					j++;
+  				}
+  			}
+  		} else {
+  			for ( int i=0; i < this.cardinality; i++ ) {
+  				if ( other.contains( this.values[ i ]))
+  					result[ n++ ] = this.values[ i ];
+  			}
+  		}
+  		return new ArrayContainer( result, n );
+  	}
+
+  	Container or( Container other ) {
+  		if ( other instanceof BitmapContainer )
+  			return other.or( this );
+  		ArrayContainer array = ( ArrayContainer )other;
+  		if ( this.cardinality + array.cardinality > ARRAY_LIMIT )
+  			return this.toBitmap( ).or( array ).shrink( );
+  		char[] result = new char[ this.cardinality + array.cardinality ];
+  		int n = 0;
+  		int i = 0;
+  		int j = 0;
+  		while ( i < this.cardinality || j < array.cardinality ) {
+  			if ( j == array.cardinality || ( i < this.cardinality &&
+  			     this.values[ i ] < array.values[ j ])) {
+  				result[ n++ ] = this.values[ i++ ];
+  			} else if ( i == this.cardinality ||
+  			            this.values[ i ] > array.values[ j ]) {
+  				result[ n++ ] = array.values[ j++ ];
+  			} else {
+  				result[ n++ ] = this.values[ i++ ];
+  				j++;
+  			}
+  		}
+  		return new ArrayContainer( result, n );
+  	}
+
+  	Container andNot( Container other ) {
+  		char[] result = new char[ this.cardinality ];
+  		int n = 0;
+  		for ( int i=0; i < this.cardinality; i++ ) {
+  			if ( !other.contains( this.values[ i ]))
+  				result[ n++ ] = this.values[ i ];
+  		}
+  		return new ArrayContainer( result, n );
+  	}
+
+  	Container copy( ) {
+  		return new ArrayContainer( this.values.clone( ), this.cardinality );
+  	}
+
+  	int toArray( int high, int[] out, int offset ) {
+  		for ( int i=0; i < this.cardinality; i++ ) {
+  			out[ offset++ ] = high | this.values[ i ];
+  		}
+  		return offset;
+  	}
+
+  	BitmapContainer toBitmap( ) {
+  		BitmapContainer returnValue = new BitmapContainer( );
+  		for ( int i=0; i < this.cardinality; i++ ) {
+  			returnValue.add( this.values[ i ]);
+  		}
+  		return returnValue;
+  	}
+
+  	private int search( int low ) {
+  		int start = 0;
+  		int end = this.cardinality - 1;
+  		while ( start <= end ) {
+  			int mid = ( start + end ) >>> 1;
+  			if ( this.values[ mid ] < low )
+  				start = mid + 1;
+  			else if ( this.values[ mid ] > low )
+  				end = mid - 1;
+  			else
+  				return mid;
+  		}
+  		return -1 - start;
+  	}
+  }
+
+  /**
+   * A chunk storing its values as a bitmap of 65536 bits.
+   */
+  private static class BitmapContainer extends Container {
+  	private long[] words;
+  	private int cardinality;
+
+  	BitmapContainer( ) {
+  		this.words = new long[ 1024 ];
+  	}
+
+  	BitmapContainer( long[] words ) {
+  		this.words = words;
+  		for ( long word : words ) {
+  			this.cardinality += Long.bitCount( word );
+  		}
+  	}
+
+  	int cardinality( ) {
+  		return this.cardinality;
+  	}
+
+  	boolean contains( int low ) {
+  		return ( this.words[ low >>> 6 ] & ( 1L << low )) != 0;
+  	}
+
+  	Container add( int low ) {
+  		long bit = 1L << low;
+  		if (( this.words[ low >>> 6 ] & bit ) == 0 ) {
+  			this.words[ low >>> 6 ] |= bit;
+  			this.cardinality++;
+  		}
+  		return this;
+  	}
+
+  	/**
+  	 * Sets the bits from start up to but not including end.
+  	 */
+  	void setRange( int start, int end ) {
+  		for ( int i=start; i < end; i++ ) {
+  			if (( i & 63 ) == 0 && i + 64 <= end ) {
+  				this.cardinality += 64 - Long.bitCount( this.words[ i >>> 6 ]);
+  				this.words[ i >>> 6 ] = -1L;
+  				i += 63;
+  			} else {
+  				this.add( i );
+  			}
+  		}
+  	}
+
+  	Container and( Container other ) {
+  		if ( other instanceof ArrayContainer )
+  			return other.and( this );
+  		long[] otherWords = (( BitmapContainer )other ).words;
+  		long[] result = new long[ 1024 ];
+  		for ( int i=0; i < 1024; i++ ) {
+  			result[ i ] = this.words[ i ] & otherWords[ i ];
+  		}
+  		return new BitmapContainer( result ).shrink( );
+  	}
+
+  	BitmapContainer or( Container other ) {
+  		long[] result = this.words.clone( );
+  		if ( other instanceof ArrayContainer ) {
+  			ArrayContainer array = ( ArrayContainer )other;
+  			for ( int i=0; i < array.cardinality; i++ ) {
+  				result[ array.values[ i ] >>> 6 ] |= 1L << array.values[ i ];
+  			}
+  		} else {
+  			long[] otherWords = (( BitmapContainer )other ).words;
+  			for ( int i=0; i < 1024; i++ ) {
+  				result[ i ] |= otherWords[ i ];
+  			}
+  		}
+  		return new BitmapContainer( result );
+  	}
+
+  	Container andNot( Container other ) {
+  		long[] result = this.words.clone( );
+  		if ( other instanceof ArrayContainer ) {
+  			ArrayContainer array = ( ArrayContainer )other;
+  			for ( int i=0; i < array.cardinality; i++ ) {
+  				result[ array.values[ i ] >>> 6 ] &= ~( 1L << array.values[ i ]);
+  			}
+  		} else {
+  			long[] otherWords = (( BitmapContainer )other ).words;
+  			for ( int i=0; i < 1024; i++ ) {
+  				result[ i ] &= ~otherWords[ i ];
+  			}
+  		}
+  		return new BitmapContainer( result ).shrink( );
+  	}
+
+  	Container copy( ) {
+  		return new BitmapContainer( this.words.clone( ));
+  	}
+
+  	int toArray( int high, int[] out, int offset ) {
+  		for ( int i=0; i < 1024; i++ ) {
+  			long word = this.words[ i ];
+  			while ( word != 0 ) {
+  				out[ offset++ ] = high | ( i << 6 ) |
+  				                  Long.numberOfTrailingZeros( word );
+  				word &= word - 1;
+  			}
+  		}
+  		return offset;
+  	}
+
+  	/**
+  	 * Converts this chunk to an array chunk if that would be smaller.
+  	 */
+  	Container shrink( ) {
+  		if ( this.cardinality > ARRAY_LIMIT )
+  			return this;
+  		char[] values = new char[ this.cardinality ];
+  		int n = 0;
+  		for ( int i=0; i < 1024; i++ ) {
+  			long word = this.words[ i ];
+  			while ( word != 0 ) {
+  				values[ n++ ] = ( char )(( i << 6 ) |
+  				                         Long.numberOfTrailingZeros( word ));
+  				word &= word - 1;
+  			}
+  		}
+  		return new ArrayContainer( values, n );
+  	}
+  }
+}
@@ -54,6 +54,16 @@ public class StringAttributes extends BasicAttributes<String> {
   	super( caseSensitive );
   }
 
+  /**
+   * Creates a new StringAttributes object which resolves attribute names
+   * with the given table. The case sensitivity is that of the table.
+   * 
+   * @param keys The table of attribute names to use.
+   */
+  public StringAttributes( AttributeKeys keys ) {
+  	super( keys );
+  }
+
   /**
    * Gets an attribute for this object.
    * 
@@ -0,0 +1,274 @@
+/*
+
+Copyright: 2010 Purdue University
+
+This file is distributed under the following terms (MIT/X11 License):
+
+  Permission is hereby granted, free of charge, to any person
+  obtaining a copy of this file and associated documentation
+  files (the "Software"), to deal in the Software without
+  restriction, including without limitation the rights to use,
+  copy, modify, merge, publish, distribute, sublicense, and/or sell
+  copies of the Software, and to permit persons to whom the
+  Software is furnished to do so, subject to the following
+  conditions:
+
+  The above copyright notice and this permission notice shall be
+  included in all copies or substantial portions of the Software.
+
+  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+  OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+package edu.purdue.bbc.util.equation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An Equation which has been flattened for fast repeated evaluation. The
+ * terms of the original equation, including those of any nested
+ * MultiPartEquations, are gathered into primitive arrays by type: all
+ * polynomial terms and EquationTerms with small whole number powers are
+ * merged into a single polynomial solved by Horner's rule, and other terms
+ * with the same power or exponent are merged into one. Evaluation then runs
+ * as a few simple loops with no virtual calls for the built in Equation
+ * types.
+ *
+ * Because terms are merged and summed in a different order, the results may
+ * differ from those of the original equation in the last few bits.
+ *
+ * @see Equation#compile()
+ */
+public class CompiledEquation implements Equation {
+  private final Equation source;
+  private final double[] polynomial;
+  private final double[] powerA;
+  private final double[] powerB;
+  private final double[] expA;
+  private final double[] expB;
+  private final double[] logA;
+  private final double[] logB;
+  private final Equation[] others;
+
+  /**
+   * Compiles an Equation.
+   *
+   * @param equation The Equation to compile.
+   */
+  public CompiledEquation( Equation equation ) {
+  	if ( equation instanceof CompiledEquation )
+  		equation = ((CompiledEquation)equation).source;
+  	if ( equation instanceof MultiPartEquation )
+  		equation = new MultiPartEquation((MultiPartEquation)equation );
+  	this.source = equation;
+  	TermCollector terms = new TermCollector( );
+  	terms.add( equation );
+  	this.polynomial = terms.getPolynomial( );
+  	List<Double> powers = new ArrayList<Double>( );
+  	for ( Map.Entry<Double,Double> term : terms.powers.entrySet( )) {
+  		if ( !TermCollector.isPolynomialPower( term.getKey( )) &&
+  		     term.getValue( ) != 0.0 ) {
+  			powers.add( term.getKey( ));
+  			powers.add( term.getValue( ));
+  		}
+  	}
+  	this.powerB = keys( powers );
+  	this.powerA = values( powers );
+  	this.expB = keys( entries( terms.exponentials ));
+  	this.expA = values( entries( terms.exponentials ));
+  	this.logB = keys( entries( terms.logs ));
+  	this.logA = values( entries( terms.logs ));
+  	this.others = terms.others.toArray( new Equation[ terms.others.size( )]);
+  }
+
+  /**
+   * Solves the equation for the given value of x.
+   *
+   * @param x The value to solve the equation for.
+   * @return The solution to the equation with the given value.
+   */
+  public double solve( double x ) {
+  	double returnValue = 0.0;
+  	if ( this.polynomial.length > 0 ) {
+  		returnValue = this.polynomial[ this.polynomial.length - 1 ];
+  		for ( int j=this.polynomial.length - 2; j >= 0; j-- ) {
+  			returnValue = returnValue * x + this.polynomial[ j ];
+  		}
+  	}
+  	for ( int j=0; j < this.powerA.length; j++ ) {
+  		returnValue += this.powerA[ j ] * Math.pow( x, this.powerB[ j ]);
+  	}
+  	for ( int j=0; j < this.expA.length; j++ ) {
+  		returnValue += this.expA[ j ] * Math.exp( this.expB[ j ] * x );
+  	}
+  	for ( int j=0; j < this.logA.length; j++ ) {
+  		returnValue += log( this.logA[ j ], this.logB[ j ] * x );
+  	}
+  	for ( Equation e : this.others ) {
+  		returnValue += e.solve( x );
+  	}
+  	return returnValue;
+  }
+
+  /**
+   * Solves the equation for each of an array of values.
+   *
+   * @param x The values to solve the equation for.
+   * @param solutions An array to store the solutions in.
+   */
+  public void solve( double[] x, double[] solutions ) {
+  	int n = x.length;
+  	if ( x == solutions )
+  		x = x.clone( );
+  	if ( this.polynomial.length == 0 ) {
+  		Arrays.fill( solutions, 0, n, 0.0 );
+  	} else {
+  		Arrays.fill( solutions, 0, n, this.polynomial[ this.polynomial.length - 1 ]);
+  		for ( int j=this.polynomial.length - 2; j >= 0; j-- ) {
+  			double coefficient = this.polynomial[ j ];
+  			for ( int i=0; i < n; i++ ) {
+  				solutions[ i ] = solutions[ i ] * x[ i ] + coefficient;
+  			}
+  		}
+  	}
+  	for ( int j=0; j < this.powerA.length; j++ ) {
+  		double a = this.powerA[ j ];
+  		double b = this.powerB[ j ];
+  		for ( int i=0; i < n; i++ ) {
+  			solutions[ i ] += a * Math.pow( x[ i ], b );
+  		}
+  	}
+  	for ( int j=0; j < this.expA.length; j++ ) {
+  		double a = this.expA[ j ];
+  		double b = this.expB[ j ];
+  		for ( int i=0; i < n; i++ ) {
+  			solutions[ i ] += a * Math.exp( b * x[ i ]);
+  		}
+  	}
+  	for ( int j=0; j < this.logA.length; j++ ) {
+  		double a = this.logA[ j ];
+  		double b = this.logB[ j ];
+  		for ( int i=0; i < n; i++ ) {
+  			solutions[ i ] += log( a, b * x[ i ]);
+  		}
+  	}
+  	if ( this.others.length > 0 ) {
+  		double[] partSolutions = new double[ n ];
+  		for ( Equation e : this.others ) {
+  			e.solve( x, partSolutions );
+  			for ( int i=0; i < n; i++ ) {
+  				solutions[ i ] += partSolutions[ i ];
+  			}
+  		}
+  	}
+  }
+
+  /**
+   * Finds the derivative of the original equation and compiles it.
+   *
+   * @return A new CompiledEquation which is the derivative of this equation.
+   */
+  public Equation derivative( ) {
+  	return this.source.derivative( ).compile( );
+  }
+
+  /**
+   * Finds the integral of the original equation and compiles it.
+   *
+   * @param constant A constant to be added to the integral of this
+   *	equation.
+   * @return A new CompiledEquation which is the integral of this equation.
+   */
+  public Equation integral( double constant ) {
+  	return this.source.integral( constant ).compile( );
+  }
+
+  /**
+   * Returns this equation, which is already compiled.
+   *
+   * @return This CompiledEquation.
+   */
+  public CompiledEquation compile( ) {
+  	return this;
+  }
+
+  /**
+   * Returns the Equation this was compiled from.
+   *
+   * @return The original Equation.
+   */
+  public Equation getSource( ) {
+  	return this.source;
+  }
+
+  /**
+   * Returns a String representation of the original equation.
+   *
+   * @return A String representation of this Equation.
+   */
+  public String toString( ) {
+  	return this.source.toString( );
+  }
+
+  /**
+   * Returns a String representation of the original equation.
+   *
+   * @param exponentFormat The format string to use for the exponent.
+   * @return A String representation of this Equation.
+   */
+  public String toString( String exponentFormat ) {
+  	return this.source.toString( exponentFormat );
+  }
+
+  /**
+   * Solves a * ln( bx ) in the same way as LogEquation.
+   */
+  private static double log( double a, double bx ) {
+  	if ( bx < 0 ) {
+  		throw new IllegalArgumentException( "Unable to determine the log of a negative number (b*x = " + bx + ")" );
+  	} else if ( bx == 0 ) {
+  		return a * Math.log( Double.MIN_VALUE );
+  	}
+  	return a * Math.log( bx );
+  }
+
+  /**
+   * Flattens the non-zero terms of a map into a list of alternating keys and
+   * values.
+   */
+  private static List<Double> entries( Map<Double,Double> terms ) {
+  	List<Double> returnValue = new ArrayList<Double>( );
+  	for ( Map.Entry<Double,Double> term : terms.entrySet( )) {
+  		if ( term.getValue( ) != 0.0 ) {
+  			returnValue.add( term.getKey( ));
+  			returnValue.add( term.getValue( ));
+  		}
+  	}
+  	return returnValue;
+  }
+
+  private static double[] keys( List<Double> entries ) {
+  	double[] returnValue = new double[ entries.size( ) / 2 ];
+  	for ( int i=0; i < returnValue.length; i++ ) {
+  		returnValue[ i ] = entries.get( 2 * i );
+  	}
+  	return returnValue;
+  }
+
+  private static double[] values( List<Double> entries ) {
+  	double[] returnValue = new double[ entries.size( ) / 2 ];
+  	for ( int i=0; i < returnValue.length; i++ ) {
+  		returnValue[ i ] = entries.get( 2 * i + 1 );
+  	}
+  	return returnValue;
+  }
+}
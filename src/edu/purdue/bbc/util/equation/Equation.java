@@ -41,6 +41,17 @@ public interface Equation {
    */
   public double solve( double x );
 
+  /**
+   * Solves the equation for each of an array of x values. This gives the 
+   * same results as calling solve( double ) for each value, but avoids the
+   * overhead of a call per value.
+   * 
+   * @param x The values to solve the equation for.
+   * @param solutions An array to store the solutions in, which must be at
+   *	least as long as x. This may be the same array as x.
+   */
+  public void solve( double[] x, double[] solutions );
+
   /**
    * Finds the derivative of the equation and returns it. This
    * method may throw an UnsupportedOperationException if the
@@ -60,6 +71,14 @@ public interface Equation {
    * @return A new Equation which is the integral of this equation.
    */
   public Equation integral( double constant );
+
+  /**
+   * Compiles this Equation into a form which is faster to solve repeatedly,
+   * such as in root finding or numerical integration.
+   *
+   * @return A CompiledEquation equivalent to this Equation.
+   */
+  public CompiledEquation compile( );
   
   /**
    * Returns a String representation of this Equation with the given 
@@ -0,0 +1,392 @@
+/*
+
+Copyright: 2010 Purdue University
+
+This file is distributed under the following terms (MIT/X11 License):
+
+  Permission is hereby granted, free of charge, to any person
+  obtaining a copy of this file and associated documentation
+  files (the "Software"), to deal in the Software without
+  restriction, including without limitation the rights to use,
+  copy, modify, merge, publish, distribute, sublicense, and/or sell
+  copies of the Software, and to permit persons to whom the
+  Software is furnished to do so, subject to the following
+  conditions:
+
+  The above copyright notice and this permission notice shall be
+  included in all copies or substantial portions of the Software.
+
+  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+  OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+package edu.purdue.bbc.util.equation;
+
+import java.util.Map;
+
+/**
+ * Parses textual formulas in x into Equation objects. The result is
+ * simplified in the same way as MultiPartEquation.simplify( ).
+ *
+ * Formulas may use numbers, x, the constants e and pi, the operators +, -,
+ * *, / and ^, parentheses, and the functions exp, ln (or log) and sqrt.
+ * Multiplication may be implied, as in "2x^2" or "3e^(0.5x)". The formula
+ * must reduce to a sum of terms which can be represented by the Equation
+ * types in this package:
+ *
+ * <ul>
+ *   <li>ax<sup>b</sup>, for any constants a and b, including polynomials.</li>
+ *   <li>ae<sup>bx</sup>, which may also be written as exp( bx ) or with any
+ *	positive constant base.</li>
+ *   <li>a ln( bx ).</li>
+ * </ul>
+ *
+ * For example, "3x^2 - 2x + 1", "1.5 * e^(-0.2x) + 4" and "2 ln(3x) / 5"
+ * can all be parsed, while "x * e^x" cannot.
+ */
+public class EquationParser {
+  private final String text;
+  private int position;
+
+  private EquationParser( String text ) {
+  	this.text = text;
+  }
+
+  /**
+   * Parses a formula into an Equation.
+   *
+   * @param formula The formula to parse.
+   * @return The Equation described by the formula.
+   * @throws IllegalArgumentException If the formula is not valid or cannot be
+   *	represented by the available Equation types.
+   */
+  public static Equation parse( String formula ) {
+  	EquationParser parser = new EquationParser( formula );
+  	TermCollector returnValue = parser.parseSum( );
+  	parser.skipWhitespace( );
+  	if ( parser.position < parser.text.length( ))
+  		throw parser.error( "Unexpected '" + parser.peek( ) + "'" );
+  	return returnValue.toEquation( );
+  }
+
+  /**
+   * sum := product ( ( '+' | '-' ) product )*
+   */
+  private TermCollector parseSum( ) {
+  	TermCollector returnValue = this.parseProduct( );
+  	while ( true ) {
+  		char next = this.peek( );
+  		if ( next == '+' ) {
+  			this.position++;
+  			returnValue.addAll( this.parseProduct( ));
+  		} else if ( next == '-' ) {
+  			this.position++;
+  			TermCollector product = this.parseProduct( );
+  			product.scale( -1.0 );
+  			returnValue.addAll( product );
+  		} else {
+  			return returnValue;
+  		}
+  	}
+  }
+
+  /**
+   * product := unary ( ( '*' | '/' )? unary )*
+   */
+  private TermCollector parseProduct( ) {
+  	TermCollector returnValue = this.parseUnary( );
+  	while ( true ) {
+  		char next = this.peek( );
+  		if ( next == '*' ) {
+  			this.position++;
+  			returnValue = this.multiply( returnValue, this.parseUnary( ));
+  		} else if ( next == '/' ) {
+  			this.position++;
+  			returnValue = this.divide( returnValue, this.parseUnary( ));
+  		} else if ( next == '(' || Character.isLetter( next )) {
+  			// implied multiplication, as in 2x or 3(x + 1)
+  			returnValue = this.multiply( returnValue, this.parseUnary( ));
+  		} else {
+  			return returnValue;
+  		}
+  	}
+  }
+
+  /**
+   * unary := ( '-' | '+' ) unary | power
+   */
+  private TermCollector parseUnary( ) {
+  	char next = this.peek( );
+  	if ( next == '-' ) {
+  		this.position++;
+  		TermCollector returnValue = this.parseUnary( );
+  		returnValue.scale( -1.0 );
+  		return returnValue;
+  	} else if ( next == '+' ) {
+  		this.position++;
+  		return this.parseUnary( );
+  	}
+  	return this.parsePower( );
+  }
+
+  /**
+   * power := primary ( '^' unary )?
+   */
+  private TermCollector parsePower( ) {
+  	TermCollector base = this.parsePrimary( );
+  	if ( this.peek( ) == '^' ) {
+  		this.position++;
+  		return this.power( base, this.parseUnary( ));
+  	}
+  	return base;
+  }
+
+  /**
+   * primary := number | 'x' | 'e' | 'pi' | '(' sum ')' | function '(' sum ')'
+   */
+  private TermCollector parsePrimary( ) {
+  	char next = this.peek( );
+  	if ( next == '(' ) {
+  		this.position++;
+  		TermCollector returnValue = this.parseSum( );
+  		this.expect( ')' );
+  		return returnValue;
+  	}
+  	if ( Character.isDigit( next ) || next == '.' )
+  		return constant( this.parseNumber( ));
+  	if ( !Character.isLetter( next ))
+  		throw this.error(( next == 0 ) ? "Unexpected end of formula" :
+  	                                   "Unexpected '" + next + "'" );
+  	int start = this.position;
+  	while ( this.position < this.text.length( ) &&
+  	        Character.isLetter( this.text.charAt( this.position ))) {
+  		this.position++;
+  	}
+  	String name = this.text.substring( start, this.position ).toLowerCase( );
+  	if ( name.equals( "x" )) {
+  		TermCollector returnValue = new TermCollector( );
+  		TermCollector.merge( returnValue.powers, 1, 1.0 );
+  		return returnValue;
+  	} else if ( name.equals( "e" )) {
+  		return constant( Math.E );
+  	} else if ( name.equals( "pi" )) {
+  		return constant( Math.PI );
+  	}
+  	this.expect( '(' );
+  	TermCollector argument = this.parseSum( );
+  	this.expect( ')' );
+  	if ( name.equals( "exp" )) {
+  		return this.power( constant( Math.E ), argument );
+  	} else if ( name.equals( "ln" ) || name.equals( "log" )) {
+  		return this.log( argument );
+  	} else if ( name.equals( "sqrt" )) {
+  		return this.power( argument, constant( 0.5 ));
+  	}
+  	this.position = start;
+  	throw this.error( "Unknown function or variable '" + name + "'" );
+  }
+
+  /**
+   * Parses a number, including an optional exponent such as 1.5e-3.
+   */
+  private double parseNumber( ) {
+  	int start = this.position;
+  	int length = this.text.length( );
+  	while ( this.position < length &&
+  	        ( Character.isDigit( this.text.charAt( this.position )) ||
+  	          this.text.charAt( this.position ) == '.' )) {
+  		this.position++;
+  	}
+  	// only treat 'e' as an exponent if digits follow, so that 2e^x works.
+  	if ( this.position + 1 < length &&
+  	     Character.toLowerCase( this.text.charAt( this.position )) == 'e' ) {
+  		int exponent = this.position + 1;
+  		char sign = this.text.charAt( exponent );
+  		if (( sign == '-' || sign == '+' ) && exponent + 1 < length )
+  			exponent++;
+  		if ( Character.isDigit( this.text.charAt( exponent ))) {
+  			this.position = exponent;
+  			while ( this.position < length &&
+  			        Character.isDigit( this.text.charAt( this.position ))) {
+  				this.position++;
+  			}
+  		}
+  	}
+  	try {
+  		return Double.parseDouble( this.text.substring( start, this.position ));
+  	} catch ( NumberFormatException e ) {
+  		this.position = start;
+  		throw this.error( "Invalid number" );
+  	}
+  }
+
+  /**
+   * Multiplies two sums of terms.
+   */
+  private TermCollector multiply( TermCollector left, TermCollector right ) {
+  	if ( left.isConstant( )) {
+  		right.scale( left.getConstant( ));
+  		return right;
+  	}
+  	if ( right.isConstant( )) {
+  		left.scale( right.getConstant( ));
+  		return left;
+  	}
+  	if ( left.isPowers( ) && right.isPowers( )) {
+  		TermCollector returnValue = new TermCollector( );
+  		for ( Map.Entry<Double,Double> l : left.powers.entrySet( )) {
+  			for ( Map.Entry<Double,Double> r : right.powers.entrySet( )) {
+  				TermCollector.merge( returnValue.powers, l.getKey( ) + r.getKey( ),
+  				                     l.getValue( ) * r.getValue( ));
+  			}
+  		}
+  		return returnValue;
+  	}
+  	if ( left.powers.isEmpty( ) && left.logs.isEmpty( ) &&
+  	     right.powers.isEmpty( ) && right.logs.isEmpty( ) &&
+  	     left.others.isEmpty( ) && right.others.isEmpty( )) {
+  		TermCollector returnValue = new TermCollector( );
+  		for ( Map.Entry<Double,Double> l : left.exponentials.entrySet( )) {
+  			for ( Map.Entry<Double,Double> r : right.exponentials.entrySet( )) {
+  				TermCollector.merge( returnValue.exponentials,
+  				                     l.getKey( ) + r.getKey( ),
+  				                     l.getValue( ) * r.getValue( ));
+  			}
+  		}
+  		return returnValue;
+  	}
+  	throw this.error( "Unable to represent this product" );
+  }
+
+  /**
+   * Divides a sum of terms by a constant or a single power of x.
+   */
+  private TermCollector divide( TermCollector left, TermCollector right ) {
+  	if ( right.isConstant( )) {
+  		left.scale( 1.0 / right.getConstant( ));
+  		return left;
+  	}
+  	if ( right.isPowers( ) && right.powers.size( ) == 1 ) {
+  		Map.Entry<Double,Double> term = singleTerm( right.powers );
+  		TermCollector reciprocal = new TermCollector( );
+  		TermCollector.merge( reciprocal.powers, -term.getKey( ),
+  		                     1.0 / term.getValue( ));
+  		return this.multiply( left, reciprocal );
+  	}
+  	throw this.error( "Unable to represent this quotient" );
+  }
+
+  /**
+   * Raises a sum of terms to a power.
+   */
+  private TermCollector power( TermCollector base, TermCollector exponent ) {
+  	if ( exponent.isConstant( )) {
+  		double k = exponent.getConstant( );
+  		if ( base.isConstant( ))
+  			return constant( Math.pow( base.getConstant( ), k ));
+  		if ( base.isPowers( ) && base.powers.size( ) == 1 ) {
+  			Map.Entry<Double,Double> term = singleTerm( base.powers );
+  			TermCollector returnValue = new TermCollector( );
+  			TermCollector.merge( returnValue.powers, term.getKey( ) * k,
+  			                     Math.pow( term.getValue( ), k ));
+  			return returnValue;
+  		}
+  		if ( k >= 0 && k <= TermCollector.MAX_POLYNOMIAL_DEGREE &&
+  		     k == Math.floor( k )) {
+  			TermCollector returnValue = constant( 1.0 );
+  			for ( int i=0; i < k; i++ ) {
+  				returnValue = this.multiply( returnValue, copy( base ));
+  			}
+  			return returnValue;
+  		}
+  	} else if ( base.isConstant( ) && base.getConstant( ) > 0 &&
+  	            exponent.isPowers( )) {
+  		// c^( d + bx ) = c^d * e^( b ln( c ) x )
+  		boolean linear = exponent.powers.containsKey( 1.0 );
+  		for ( Double key : exponent.powers.keySet( )) {
+  			if ( key != 0.0 && key != 1.0 )
+  				linear = false;
+  		}
+  		if ( linear ) {
+  			double b = exponent.powers.get( 1.0 );
+  			double logBase = Math.log( base.getConstant( ));
+  			TermCollector returnValue = new TermCollector( );
+  			TermCollector.merge( returnValue.exponentials, b * logBase,
+  				Math.pow( base.getConstant( ), exponent.getConstant( )));
+  			return returnValue;
+  		}
+  	}
+  	throw this.error( "Unable to represent this power" );
+  }
+
+  /**
+   * Finds the natural logarithm of a constant or of bx.
+   */
+  private TermCollector log( TermCollector argument ) {
+  	if ( argument.isConstant( ))
+  		return constant( Math.log( argument.getConstant( )));
+  	if ( argument.isPowers( ) && argument.powers.size( ) == 1 ) {
+  		Double b = argument.powers.get( 1.0 );
+  		if ( b != null ) {
+  			TermCollector returnValue = new TermCollector( );
+  			TermCollector.merge( returnValue.logs, b, 1.0 );
+  			return returnValue;
+  		}
+  	}
+  	throw this.error( "Unable to represent this logarithm" );
+  }
+
+  private static TermCollector constant( double value ) {
+  	TermCollector returnValue = new TermCollector( );
+  	TermCollector.merge( returnValue.powers, 0, value );
+  	return returnValue;
+  }
+
+  /**
+   * Returns the only term of a map which holds a single term.
+   */
+  private static Map.Entry<Double,Double> singleTerm(
+      Map<Double,Double> terms ) {
+  	return terms.entrySet( ).iterator( ).next( );
+  }
+
+  private static TermCollector copy( TermCollector terms ) {
+  	TermCollector returnValue = new TermCollector( );
+  	returnValue.addAll( terms );
+  	return returnValue;
+  }
+
+  /**
+   * Skips any whitespace and returns the next character without consuming
+   * it, or 0 at the end of the formula.
+   */
+  private char peek( ) {
+  	this.skipWhitespace( );
+  	return ( this.position < this.text.length( )) ?
+  		this.text.charAt( this.position ) : 0;
+  }
+
+  private void skipWhitespace( ) {
+  	while ( this.position < this.text.length( ) &&
+  	        Character.isWhitespace( this.text.charAt( this.position ))) {
+  		this.position++;
+  	}
+  }
+
+  private void expect( char c ) {
+  	if ( this.peek( ) != c )
+  		throw this.error( "Expected '" + c + "'" );
+  	this.position++;
+  }
+
+  private IllegalArgumentException error( String message ) {
+  	return new IllegalArgumentException( String.format(
+  		"%s at position %d in \"%s\"", message, this.position, this.text ));
+  }
+}
@@ -28,10 +28,12 @@ This file is distributed under the following terms (MIT/X11 License):
 */
 package edu.purdue.bbc.util.equation;
 
+import java.util.Arrays;
+
 /**
  * Represents a single term Equation of the form ax<sup>b</sup>.
  */
-public class EquationTerm implements Equation {
+public class EquationTerm implements ParametricEquation {
   private double a;
   private double b;
 
@@ -65,6 +67,32 @@ public class EquationTerm implements Equation {
   	return ( this.a * Math.pow( x, this.b ));
   }
 
+  /**
+   * Solves the equation for each of an array of values.
+   * 
+   * @param x The values to solve the equation for.
+   * @param solutions An array to store the solutions in.
+   */
+  public void solve( double[] x, double[] solutions ) {
+  	double a = this.a;
+  	double b = this.b;
+  	if ( b == 0.0 ) {
+  		Arrays.fill( solutions, 0, x.length, a );
+  	} else if ( b == 1.0 ) {
+  		for ( int i=0; i < x.length; i++ ) {
+  			solutions[ i ] = a * x[ i ];
+  		}
+  	} else if ( b == 2.0 ) {
+  		for ( int i=0; i < x.length; i++ ) {
+  			solutions[ i ] = a * ( x[ i ] * x[ i ]);
+  		}
+  	} else {
+  		for ( int i=0; i < x.length; i++ ) {
+  			solutions[ i ] = a * Math.pow( x[ i ], b );
+  		}
+  	}
+  }
+
   /**
    * Gets the value for a, the multiplier.
    * 
@@ -89,6 +117,10 @@ public class EquationTerm implements Equation {
    * @return A new Equation which is the derivative of this equation.
    */
   public Equation derivative( ) {
+  	if ( this.a == 0 || this.b == 0 ) {
+  		// the derivative of a constant is 0 everywhere, including x = 0
+  		return new EquationTerm( 0, 0 );
+  	}
   	return new EquationTerm( this.a * this.b, this.b - 1 );
   }
 
@@ -111,6 +143,60 @@ public class EquationTerm implements Equation {
   	}
   }
 
+  /**
+   * Returns the number of parameters of this equation, a and b.
+   * 
+   * @return 2.
+   */
+  public int getParameterCount( ) {
+  	return 2;
+  }
+
+  /**
+   * Returns the parameters of this equation.
+   * 
+   * @return A new array containing a and b.
+   */
+  public double[] getParameters( ) {
+  	return new double[] { this.a, this.b };
+  }
+
+  /**
+   * Creates a new EquationTerm with different parameters.
+   * 
+   * @param parameters The new values of a and b.
+   * @return A new EquationTerm.
+   */
+  public ParametricEquation withParameters( double[] parameters ) {
+  	return new EquationTerm( parameters[ 0 ], parameters[ 1 ]);
+  }
+
+  /**
+   * Solves the equation ax<sup>b</sup> with the given values for a and b.
+   * 
+   * @param x The value to solve the equation for.
+   * @param parameters The values of a and b.
+   * @return The solution to the equation.
+   */
+  public double solve( double x, double[] parameters ) {
+  	return parameters[ 0 ] * Math.pow( x, parameters[ 1 ]);
+  }
+
+  /**
+   * Finds the partial derivatives of ax<sup>b</sup> with respect to a and b.
+   * 
+   * @param x The value of x.
+   * @param parameters The values of a and b.
+   * @param gradient An array to store the two partial derivatives in.
+   */
+  public void gradient( double x, double[] parameters, double[] gradient ) {
+  	double power = Math.pow( x, parameters[ 1 ]);
+  	gradient[ 0 ] = power;
+  	// the limit of x^b * ln( x ) is 0 as x approaches 0.
+  	gradient[ 1 ] = ( power == 0.0 ) ? 0.0 :
+  	                parameters[ 0 ] * power * Math.log( x );
+  }
+
   public String toString( ) {
   	return this.toString( "^%s" );
   }
@@ -126,5 +212,13 @@ public class EquationTerm implements Equation {
   			String.format( "%.3g", this.b )));
   }
 
+  /**
+   * Compiles this Equation for fast repeated evaluation.
+   * 
+   * @return A CompiledEquation equivalent to this Equation.
+   */
+  public CompiledEquation compile( ) {
+  	return new CompiledEquation( this );
+  }
 }
 
@@ -31,7 +31,7 @@ package edu.purdue.bbc.util.equation;
 /**
  * Represents an equation in the form a * e<sup>bx</sup>
  */
-public class ExponentialEquation implements Equation {
+public class ExponentialEquation implements ParametricEquation {
   private double a;
   private double b;
 
@@ -73,6 +73,21 @@ public class ExponentialEquation implements Equation {
   public double solve( double x ) {
   	return this.a * Math.exp( this.b * x ); 
   }
+
+  /**
+   * Solves the equation for each of an array of values.
+   * 
+   * @param x The values to solve the equation for.
+   * @param solutions An array to store the solutions in.
+   */
+  public void solve( double[] x, double[] solutions ) {
+  	double a = this.a;
+  	double b = this.b;
+  	for ( int i=0; i < x.length; i++ ) {
+  		solutions[ i ] = a * Math.exp( b * x[ i ]);
+  	}
+  }
+
   /**
    * Finds the derivative of this equation on x.
    * 
@@ -95,6 +110,59 @@ public class ExponentialEquation implements Equation {
   	return returnValue;
   }
 
+  /**
+   * Returns the number of parameters of this equation, a and b.
+   * 
+   * @return 2.
+   */
+  public int getParameterCount( ) {
+  	return 2;
+  }
+
+  /**
+   * Returns the parameters of this equation.
+   * 
+   * @return A new array containing a and b.
+   */
+  public double[] getParameters( ) {
+  	return new double[] { this.a, this.b };
+  }
+
+  /**
+   * Creates a new ExponentialEquation with different parameters.
+   * 
+   * @param parameters The new values of a and b.
+   * @return A new ExponentialEquation.
+   */
+  public ParametricEquation withParameters( double[] parameters ) {
+  	return new ExponentialEquation( parameters[ 0 ], parameters[ 1 ]);
+  }
+
+  /**
+   * Solves the equation a * e<sup>bx</sup> with the given values for a and b.
+   * 
+   * @param x The value to solve the equation for.
+   * @param parameters The values of a and b.
+   * @return The solution to the equation.
+   */
+  public double solve( double x, double[] parameters ) {
+  	return parameters[ 0 ] * Math.exp( parameters[ 1 ] * x );
+  }
+
+  /**
+   * Finds the partial derivatives of a * e<sup>bx</sup> with respect to a and
+   * b.
+   * 
+   * @param x The value of x.
+   * @param parameters The values of a and b.
+   * @param gradient An array to store the two partial derivatives in.
+   */
+  public void gradient( double x, double[] parameters, double[] gradient ) {
+  	double exp = Math.exp( parameters[ 1 ] * x );
+  	gradient[ 0 ] = exp;
+  	gradient[ 1 ] = parameters[ 0 ] * x * exp;
+  }
+
   /**
    * Returns a string representation of this equation.
    * 
@@ -116,5 +184,14 @@ public class ExponentialEquation implements Equation {
   		String.format( exponentFormat, 
   			String.format( "%.3gx", this.b )));
   }
+
+  /**
+   * Compiles this Equation for fast repeated evaluation.
+   * 
+   * @return A CompiledEquation equivalent to this Equation.
+   */
+  public CompiledEquation compile( ) {
+  	return new CompiledEquation( this );
+  }
 }
 
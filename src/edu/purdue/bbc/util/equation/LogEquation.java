@@ -31,7 +31,7 @@ package edu.purdue.bbc.util.equation;
 /**
  * Implements a natural logarighmic equation: a * ln( b * x )
  */
-public class LogEquation implements Equation {
+public class LogEquation implements ParametricEquation {
   private double a;
   private double b;
 
@@ -86,6 +86,27 @@ public class LogEquation implements Equation {
   	return this.a * Math.log( this.b * x );
   }
 
+  /**
+   * Solves the equation for each of an array of values. Throws an
+   * IllegalArgumentException if b*x is negative for any of the values, in
+   * which case the contents of solutions are undefined.
+   * 
+   * @param x The values to solve the equation for.
+   * @param solutions An array to store the solutions in.
+   */
+  public void solve( double[] x, double[] solutions ) {
+  	double a = this.a;
+  	double b = this.b;
+  	double minimum = a * Math.log( Double.MIN_VALUE );
+  	for ( int i=0; i < x.length; i++ ) {
+  		double bx = b * x[ i ];
+  		if ( bx < 0 ) {
+  			throw new IllegalArgumentException( "Unable to determine the log of a negative number (b*x = " + bx + ")" );
+  		}
+  		solutions[ i ] = ( bx == 0 ) ? minimum : a * Math.log( bx );
+  	}
+  }
+
   /**
    * Finds the derivative of this equation.
    * 
@@ -107,6 +128,66 @@ public class LogEquation implements Equation {
   		"Finding the integral of a LogEquation is not supported at this time." );
   }
 
+  /**
+   * Returns the number of parameters of this equation, a and b.
+   * 
+   * @return 2.
+   */
+  public int getParameterCount( ) {
+  	return 2;
+  }
+
+  /**
+   * Returns the parameters of this equation.
+   * 
+   * @return A new array containing a and b.
+   */
+  public double[] getParameters( ) {
+  	return new double[] { this.a, this.b };
+  }
+
+  /**
+   * Creates a new LogEquation with different parameters.
+   * 
+   * @param parameters The new values of a and b.
+   * @return A new LogEquation.
+   */
+  public ParametricEquation withParameters( double[] parameters ) {
+  	return new LogEquation( parameters[ 0 ], parameters[ 1 ]);
+  }
+
+  /**
+   * Solves the equation a * ln( bx ) with the given values for a and b.
+   * 
+   * @param x The value to solve the equation for.
+   * @param parameters The values of a and b.
+   * @return The solution to the equation, or NaN if bx is negative.
+   */
+  public double solve( double x, double[] parameters ) {
+  	double bx = parameters[ 1 ] * x;
+  	if ( bx == 0 )
+  		return parameters[ 0 ] * Math.log( Double.MIN_VALUE );
+  	return parameters[ 0 ] * Math.log( bx );
+  }
+
+  /**
+   * Finds the partial derivatives of a * ln( bx ) with respect to a and b.
+   * 
+   * @param x The value of x.
+   * @param parameters The values of a and b.
+   * @param gradient An array to store the two partial derivatives in.
+   */
+  public void gradient( double x, double[] parameters, double[] gradient ) {
+  	double bx = parameters[ 1 ] * x;
+  	if ( bx == 0 ) {
+  		gradient[ 0 ] = Math.log( Double.MIN_VALUE );
+  		gradient[ 1 ] = 0.0;
+  	} else {
+  		gradient[ 0 ] = Math.log( bx );
+  		gradient[ 1 ] = parameters[ 0 ] / parameters[ 1 ];
+  	}
+  }
+
   /**
    * Returns a String representation of this Equation.
    * 
@@ -125,6 +206,15 @@ public class LogEquation implements Equation {
   public String toString( String exponentFormat ) {
   	return String.format( "%.3g * ln( %.3gx )", this.a, this.b );
   }
+
+  /**
+   * Compiles this Equation for fast repeated evaluation.
+   * 
+   * @return A CompiledEquation equivalent to this Equation.
+   */
+  public CompiledEquation compile( ) {
+  	return new CompiledEquation( this );
+  }
 }
 
 
@@ -29,12 +29,14 @@ This file is distributed under the following terms (MIT/X11 License):
 package edu.purdue.bbc.util.equation;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 
 /**
  * A class for holding multiple equations in a single construct. Performs all operations as if each Equation contained within were to be added together.
  */
 public class MultiPartEquation extends ArrayList<Equation> implements Equation {
+  private static final int BLOCK_SIZE = 1024;
 
   /**
    * Creates a new MultiPartEquation.
@@ -66,12 +68,46 @@ public class MultiPartEquation extends ArrayList<Equation> implements Equation {
   	return returnValue;
   }
 
+  /**
+   * Solves the equation for each of an array of values. The values are
+   * processed in blocks, with each part solving a whole block at a time and
+   * the results summed in a single loop.
+   * 
+   * @param x The values to solve the equation for.
+   * @param solutions An array to store the solutions in.
+   */
+  public void solve( double[] x, double[] solutions ) {
+  	Equation[] parts = this.toArray( new Equation[ this.size( )]);
+  	int blockSize = Math.min( x.length, BLOCK_SIZE );
+  	double[] block = new double[ blockSize ];
+  	double[] partSolutions = new double[ blockSize ];
+  	double[] sums = new double[ blockSize ];
+  	for ( int start=0; start < x.length; start += blockSize ) {
+  		int length = Math.min( blockSize, x.length - start );
+  		if ( length < blockSize ) {
+  			block = new double[ length ];
+  			partSolutions = new double[ length ];
+  		}
+  		System.arraycopy( x, start, block, 0, length );
+  		Arrays.fill( sums, 0.0 );
+  		for ( Equation part : parts ) {
+  			part.solve( block, partSolutions );
+  			for ( int i=0; i < length; i++ ) {
+  				sums[ i ] += partSolutions[ i ];
+  			}
+  		}
+  		System.arraycopy( sums, 0, solutions, start, length );
+  	}
+  }
+
   /**
    * Finds the derivative of this equation on x. May throw an
    * UnsupportedOperationException if any of the parts of this Equaiton do
-   * not support finding the derivative.
+   * not support finding the derivative. The result is simplified, so
+   * repeatedly finding the derivative does not accumulate zero terms.
    * 
    * @return A new Equation which is the derivative of this Equation.
+   * @see #simplify()
    */
   public Equation derivative( ) {
   	MultiPartEquation returnValue = new MultiPartEquation( );
@@ -80,13 +116,13 @@ public class MultiPartEquation extends ArrayList<Equation> implements Equation {
   		if ( deriv != null )
   			returnValue.add( deriv );
   	}
-  	return returnValue;
+  	return returnValue.simplify( );
   }
 
   /**
    * Finds the integral of this equation on x. May throw an 
    * UnsupportedOperationException if any of the parts of this Equaiton do
-   * not support finding the integral.
+   * not support finding the integral. The result is simplified.
    * 
    * @param constant The constant value to be appended to this equation.
    * @return A new Equation which is the integral of this equation.
@@ -99,7 +135,23 @@ public class MultiPartEquation extends ArrayList<Equation> implements Equation {
   	if ( constant != 0.0 ) {
   		returnValue.add( new EquationTerm( constant, 0 ));
   	}
-  	return returnValue;
+  	return returnValue.simplify( );
+  }
+
+  /**
+   * Creates the simplest Equation equal to this one. Nested
+   * MultiPartEquations are flattened, EquationTerms and Polynomials with
+   * whole number powers are merged into a single Polynomial, other terms of
+   * the same type and power or exponent are merged, and terms with a
+   * coefficient of 0 are dropped. If only one term remains it is returned on
+   * its own.
+   * 
+   * @return A new simplified Equation.
+   */
+  public Equation simplify( ) {
+  	TermCollector terms = new TermCollector( );
+  	terms.add( this );
+  	return terms.toEquation( );
   }
 
   /**
@@ -128,5 +180,15 @@ public class MultiPartEquation extends ArrayList<Equation> implements Equation {
   	return returnValue.toString( );
   }
 
+  /**
+   * Compiles this Equation for fast repeated evaluation, flattening any
+   * nested MultiPartEquations. Later changes to this list are not reflected
+   * in the result.
+   * 
+   * @return A CompiledEquation equivalent to this Equation.
+   */
+  public CompiledEquation compile( ) {
+  	return new CompiledEquation( this );
+  }
 }
 
@@ -0,0 +1,87 @@
+/*
+
+Copyright: 2010 Purdue University
+
+This file is distributed under the following terms (MIT/X11 License):
+
+  Permission is hereby granted, free of charge, to any person
+  obtaining a copy of this file and associated documentation
+  files (the "Software"), to deal in the Software without
+  restriction, including without limitation the rights to use,
+  copy, modify, merge, publish, distribute, sublicense, and/or sell
+  copies of the Software, and to permit persons to whom the
+  Software is furnished to do so, subject to the following
+  conditions:
+
+  The above copyright notice and this permission notice shall be
+  included in all copies or substantial portions of the Software.
+
+  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+  OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+package edu.purdue.bbc.util.equation;
+
+/**
+ * An Equation whose shape is controlled by a fixed number of parameters, such
+ * as a and b in a * e<sup>bx</sup>. Parametric equations can be evaluated and
+ * differentiated with respect to their parameters for any set of parameter
+ * values, which allows them to be fitted to data by nonlinear least squares.
+ *
+ * @see edu.purdue.bbc.util.LevenbergMarquardt
+ */
+public interface ParametricEquation extends Equation {
+
+  /**
+   * Returns the number of parameters of this equation.
+   * 
+   * @return The number of parameters.
+   */
+  public int getParameterCount( );
+
+  /**
+   * Returns the current values of the parameters of this equation.
+   * 
+   * @return A new array containing the parameters.
+   */
+  public double[] getParameters( );
+
+  /**
+   * Creates a new equation of the same form with different parameters.
+   * 
+   * @param parameters The parameters for the new equation.
+   * @return A new ParametricEquation.
+   */
+  public ParametricEquation withParameters( double[] parameters );
+
+  /**
+   * Solves an equation of this form with the given parameters for a value of
+   * x. Unlike solve( double ), this returns NaN where the equation is
+   * undefined rather than throwing an exception.
+   * 
+   * @param x The value to solve the equation for.
+   * @param parameters The parameters to use in place of those of this
+   *	equation.
+   * @return The solution to the equation.
+   */
+  public double solve( double x, double[] parameters );
+
+  /**
+   * Finds the partial derivatives of an equation of this form with respect to
+   * each of its parameters, at a value of x.
+   * 
+   * @param x The value of x.
+   * @param parameters The parameters to use in place of those of this
+   *	equation.
+   * @param gradient An array to store the partial derivatives in, with one
+   *	element for each parameter.
+   */
+  public void gradient( double x, double[] parameters, double[] gradient );
+
+}
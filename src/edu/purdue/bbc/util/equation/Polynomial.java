@@ -30,12 +30,13 @@ package edu.purdue.bbc.util.equation;
 
 import edu.purdue.bbc.util.NumberList;
 
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * Implements a Polynomial Equation.
  */
-public class Polynomial implements Equation {
+public class Polynomial implements ParametricEquation {
   private NumberList coefficients;
 
   /**
@@ -115,13 +116,49 @@ public class Polynomial implements Equation {
    * @return The solution for the equation.
    */
   public double solve( double x ) {
-  	double returnValue = 0.0;
-  	for ( int i=0; i < this.coefficients.size( ); i++ ) {
-  		returnValue += Math.pow( x, i ) * this.coefficients.get( i ).doubleValue( );
+  	int degree = this.coefficients.size( ) - 1;
+  	if ( degree < 0 )
+  		return 0.0;
+  	double returnValue = this.coefficients.get( degree ).doubleValue( );
+  	for ( int i=degree - 1; i >= 0; i-- ) {
+  		returnValue = returnValue * x + this.coefficients.get( i ).doubleValue( );
   	}
   	return returnValue;
   }
 
+  /**
+   * Solves the equation for each of an array of values, using Horner's rule.
+   * 
+   * @param x The values to solve the equation for.
+   * @param solutions An array to store the solutions in.
+   */
+  public void solve( double[] x, double[] solutions ) {
+  	double[] c = this.getParameters( );
+  	int n = x.length;
+  	if ( c.length == 0 ) {
+  		Arrays.fill( solutions, 0, n, 0.0 );
+  	} else if ( x == solutions ) {
+  		for ( int i=0; i < n; i++ ) {
+  			double value = x[ i ];
+  			double sum = c[ c.length - 1 ];
+  			for ( int j=c.length - 2; j >= 0; j-- ) {
+  				sum = sum * value + c[ j ];
+  			}
+  			solutions[ i ] = sum;
+  		}
+  	} else {
+  		// one pass per coefficient keeps the inner loop simple enough for the
+  		// JIT compiler to vectorize.
+  		Arrays.fill( solutions, 0, n, c[ c.length - 1 ]);
+  		for ( int j=c.length - 2; j >= 0; j-- ) {
+  			double coefficient = c[ j ];
+  			for ( int i=0; i < n; i++ ) {
+  				solutions[ i ] = solutions[ i ] * x[ i ] + coefficient;
+  			}
+  		}
+  	}
+  }
+
   /**
    * Returns the degree of the Polynomial.
    * 
@@ -144,9 +181,13 @@ public class Polynomial implements Equation {
   /**
    * Finds the derivative of this Polynomial on x.
    * 
-   * @return A new Polynomial which is the dervative of this Polynomial.
+   * @return A new Polynomial which is the dervative of this Polynomial. The
+   *	derivative of a constant or empty Polynomial is the constant 0.
    */
   public Polynomial derivative( ) {
+  	if ( this.coefficients.size( ) < 2 ) {
+  		return new Polynomial( 0.0 );
+  	}
   	NumberList newCoefficients = new NumberList( this.coefficients.size( ) - 1 );
   	for( int i=1; i < this.coefficients.size( ); i++ ) {
   		newCoefficients.add( this.coefficients.get( i ).doubleValue( ) * i );
@@ -161,7 +202,7 @@ public class Polynomial implements Equation {
    * @return A new Polynomial which is the integral of this Polynomial.
    */
   public Polynomial integral( double constant ) {
-  	NumberList newCoefficients = new NumberList( this.coefficients.size( ) - 1 );
+  	NumberList newCoefficients = new NumberList( this.coefficients.size( ) + 1 );
   	newCoefficients.add( constant );
   	for( int i=0; i < this.coefficients.size( ); i++ ) {
   		newCoefficients.add( this.coefficients.get( i ).doubleValue( ) / ( i+1 ));
@@ -169,6 +210,73 @@ public class Polynomial implements Equation {
   	return new Polynomial( newCoefficients );
   }
 
+  /**
+   * Returns the number of parameters of this Polynomial, which is the number
+   * of coefficients.
+   * 
+   * @return The degree of the Polynomial plus one.
+   */
+  public int getParameterCount( ) {
+  	return this.coefficients.size( );
+  }
+
+  /**
+   * Returns the coefficients of this Polynomial.
+   * 
+   * @return A new array containing the coefficients for the powers of x, in
+   *	order from 0 to n.
+   */
+  public double[] getParameters( ) {
+  	double[] returnValue = new double[ this.coefficients.size( )];
+  	for ( int i=0; i < returnValue.length; i++ ) {
+  		returnValue[ i ] = this.coefficients.get( i ).doubleValue( );
+  	}
+  	return returnValue;
+  }
+
+  /**
+   * Creates a new Polynomial with different coefficients.
+   * 
+   * @param parameters The coefficients for the powers of x, in order from 0
+   *	to n.
+   * @return A new Polynomial.
+   */
+  public ParametricEquation withParameters( double[] parameters ) {
+  	return new Polynomial( parameters );
+  }
+
+  /**
+   * Solves a Polynomial with the given coefficients.
+   * 
+   * @param x The value of x to find the solution for.
+   * @param parameters The coefficients for the powers of x, in order from 0
+   *	to n.
+   * @return The solution for the equation.
+   */
+  public double solve( double x, double[] parameters ) {
+  	double returnValue = 0.0;
+  	for ( int i=parameters.length - 1; i >= 0; i-- ) {
+  		returnValue = returnValue * x + parameters[ i ];
+  	}
+  	return returnValue;
+  }
+
+  /**
+   * Finds the partial derivatives of a Polynomial with respect to each of its
+   * coefficients, which are the powers of x.
+   * 
+   * @param x The value of x.
+   * @param parameters The coefficients of the Polynomial.
+   * @param gradient An array to store the partial derivatives in.
+   */
+  public void gradient( double x, double[] parameters, double[] gradient ) {
+  	double power = 1.0;
+  	for ( int i=0; i < parameters.length; i++ ) {
+  		gradient[ i ] = power;
+  		power *= x;
+  	}
+  }
+
   /**
    * Returns a String representation of this Polynomial.
    *
@@ -205,5 +313,14 @@ public class Polynomial implements Equation {
   	}
   	return returnValue.toString( ).trim( );
   }
+
+  /**
+   * Compiles this Equation for fast repeated evaluation.
+   * 
+   * @return A CompiledEquation equivalent to this Equation.
+   */
+  public CompiledEquation compile( ) {
+  	return new CompiledEquation( this );
+  }
 }
 
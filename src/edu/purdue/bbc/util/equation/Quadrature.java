@@ -0,0 +1,242 @@
+/*
+
+Copyright: 2010 Purdue University
+
+This file is distributed under the following terms (MIT/X11 License):
+
+  Permission is hereby granted, free of charge, to any person
+  obtaining a copy of this file and associated documentation
+  files (the "Software"), to deal in the Software without
+  restriction, including without limitation the rights to use,
+  copy, modify, merge, publish, distribute, sublicense, and/or sell
+  copies of the Software, and to permit persons to whom the
+  Software is furnished to do so, subject to the following
+  conditions:
+
+  The above copyright notice and this permission notice shall be
+  included in all copies or substantial portions of the Software.
+
+  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+  OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+package edu.purdue.bbc.util.equation;
+
+import edu.purdue.bbc.util.ParallelUtils;
+import edu.purdue.bbc.util.RangeTask;
+
+import java.util.PriorityQueue;
+
+/**
+ * Finds definite integrals of Equations numerically by adaptive
+ * Gauss-Kronrod quadrature. Each interval is estimated with the 15 point
+ * Kronrod rule, and the difference from the embedded 7 point Gauss rule is
+ * used as its error estimate. The interval with the largest error is split in
+ * half until the total error is within tolerance. This works for any
+ * Equation, including those such as LogEquation which cannot be integrated
+ * symbolically. The 15 points of each interval are evaluated together with
+ * Equation.solve( double[], double[] ) on a compiled equation.
+ *
+ * A Quadrature object is not thread-safe; see integrate( Equation[], double,
+ * double ) for integrating many equations at once.
+ *
+ * References:
+ * <CITE>Piessens, R. et al. (1983). QUADPACK: A Subroutine Package for
+ * Automatic Integration. Springer.</CITE>
+ */
+public class Quadrature {
+  private static final double[] NODES = {
+  	0.991455371120812639206854697526329,
+  	0.949107912342758524526189684047851,
+  	0.864864423359769072789712788640926,
+  	0.741531185599394439863864773280788,
+  	0.586087235467691130294144845693013,
+  	0.405845151377397166906606412076961,
+  	0.207784955007898467600689403773245,
+  	0.000000000000000000000000000000000 };
+  private static final double[] KRONROD_WEIGHTS = {
+  	0.022935322010529224963732008058970,
+  	0.063092092629978553290700663189204,
+  	0.104790010322250183839876322541518,
+  	0.140653259715525918745189590510238,
+  	0.169004726639267902826583426598550,
+  	0.190350578064785409913256402421014,
+  	0.204432940075298892414161999234649,
+  	0.209482141084727828012999174891714 };
+  /** The Gauss weights of the odd numbered nodes. */
+  private static final double[] GAUSS_WEIGHTS = {
+  	0.129484966168869693270611432679082,
+  	0.279705391489276667901467771423780,
+  	0.381830050505118944950369775488975,
+  	0.417959183673469387755102040816327 };
+
+  private double absoluteTolerance = 1e-10;
+  private double relativeTolerance = 1e-10;
+  private int maxIntervals = 1000;
+  private double error;
+
+  private final double[] points = new double[ 15 ];
+  private final double[] values = new double[ 15 ];
+
+  /**
+   * Creates a new Quadrature.
+   */
+  public Quadrature( ) { }
+
+  /**
+   * Sets the error tolerance. Integration stops once the estimated error is
+   * below either the absolute tolerance or the relative tolerance times the
+   * magnitude of the integral. The defaults are both 1e-10.
+   *
+   * @param absoluteTolerance The absolute error tolerance.
+   * @param relativeTolerance The relative error tolerance.
+   */
+  public void setTolerance( double absoluteTolerance,
+                            double relativeTolerance ) {
+  	this.absoluteTolerance = absoluteTolerance;
+  	this.relativeTolerance = relativeTolerance;
+  }
+
+  /**
+   * Sets the maximum number of subintervals. The default is 1000.
+   *
+   * @param maxIntervals The maximum number of subintervals.
+   */
+  public void setMaxIntervals( int maxIntervals ) {
+  	this.maxIntervals = maxIntervals;
+  }
+
+  /**
+   * Returns the estimated absolute error of the last integral. If this is
+   * larger than the tolerance, the maximum number of subintervals was
+   * reached, which usually means the equation is not smooth or has a
+   * singularity in the interval.
+   *
+   * @return The estimated error.
+   */
+  public double getError( ) {
+  	return this.error;
+  }
+
+  /**
+   * Finds the definite integral of an equation from a to b.
+   *
+   * @param equation The equation to integrate.
+   * @param a The lower limit of integration.
+   * @param b The upper limit of integration. If this is less than a, the
+   *	integral from b to a is negated.
+   * @return The estimated integral.
+   */
+  public double integrate( Equation equation, double a, double b ) {
+  	if ( a > b )
+  		return -this.integrate( equation, b, a );
+  	Equation f = equation.compile( );
+  	PriorityQueue<Interval> intervals = new PriorityQueue<Interval>( );
+  	Interval first = this.estimate( f, a, b );
+  	intervals.add( first );
+  	double total = first.value;
+  	double totalError = first.error;
+  	while ( intervals.size( ) < this.maxIntervals &&
+  	        totalError > Math.max( this.absoluteTolerance,
+  	                               this.relativeTolerance * Math.abs( total ))) {
+  		Interval worst = intervals.poll( );
+  		double middle = 0.5 * ( worst.start + worst.end );
+  		if ( middle <= worst.start || middle >= worst.end ) {
+  			// the interval cannot be divided any further.
+  			intervals.add( worst );
+  			break;
+  		}
+  		Interval left = this.estimate( f, worst.start, middle );
+  		Interval right = this.estimate( f, middle, worst.end );
+  		intervals.add( left );
+  		intervals.add( right );
+  		total += left.value + right.value - worst.value;
+  		totalError += left.error + right.error - worst.error;
+  	}
+  	// sum again to avoid the rounding error of the running totals.
+  	total = 0.0;
+  	totalError = 0.0;
+  	for ( Interval interval : intervals ) {
+  		total += interval.value;
+  		totalError += interval.error;
+  	}
+  	this.error = totalError;
+  	return total;
+  }
+
+  /**
+   * Finds the definite integral from a to b of each of a set of equations,
+   * dividing the equations between several threads.
+   *
+   * @param equations The equations to integrate.
+   * @param a The lower limit of integration.
+   * @param b The upper limit of integration.
+   * @return The estimated integral of each equation.
+   */
+  public static double[] integrate( final Equation[] equations,
+                                    final double a, final double b ) {
+  	final double[] returnValue = new double[ equations.length ];
+  	ParallelUtils.forRange( 0, equations.length, new RangeTask( ) {
+  		public void run( int start, int end ) {
+  			Quadrature quadrature = new Quadrature( );
+  			for ( int i=start; i < end; i++ ) {
+  				returnValue[ i ] = quadrature.integrate( equations[ i ], a, b );
+  			}
+  		}
+  	});
+  	return returnValue;
+  }
+
+  /**
+   * Applies the 15 point Kronrod rule and the 7 point Gauss rule to an
+   * interval.
+   */
+  private Interval estimate( Equation f, double start, double end ) {
+  	double center = 0.5 * ( start + end );
+  	double halfLength = 0.5 * ( end - start );
+  	for ( int i=0; i < 7; i++ ) {
+  		this.points[ 2 * i ] = center - halfLength * NODES[ i ];
+  		this.points[ 2 * i + 1 ] = center + halfLength * NODES[ i ];
+  	}
+  	this.points[ 14 ] = center;
+  	f.solve( this.points, this.values );
+  	double kronrod = KRONROD_WEIGHTS[ 7 ] * this.values[ 14 ];
+  	double gauss = GAUSS_WEIGHTS[ 3 ] * this.values[ 14 ];
+  	for ( int i=0; i < 7; i++ ) {
+  		double sum = this.values[ 2 * i ] + this.values[ 2 * i + 1 ];
+  		kronrod += KRONROD_WEIGHTS[ i ] * sum;
+  		if ( i % 2 == 1 )
+  			gauss += GAUSS_WEIGHTS[ i / 2 ] * sum;
+  	}
+  	return new Interval( start, end, kronrod * halfLength,
+  	                     Math.abs(( kronrod - gauss ) * halfLength ));
+  }
+
+  /**
+   * A subinterval with its integral and error estimates, ordered so that the
+   * interval with the largest error comes first.
+   */
+  private static class Interval implements Comparable<Interval> {
+  	final double start;
+  	final double end;
+  	final double value;
+  	final double error;
+
+  	Interval( double start, double end, double value, double error ) {
+  		this.start = start;
+  		this.end = end;
+  		this.value = value;
+  		this.error = error;
+  	}
+
+  	public int compareTo( Interval other ) {
+  		return Double.compare( other.error, this.error );
+  	}
+  }
+}
@@ -0,0 +1,303 @@
+/*
+
+Copyright: 2010 Purdue University
+
+This file is distributed under the following terms (MIT/X11 License):
+
+  Permission is hereby granted, free of charge, to any person
+  obtaining a copy of this file and associated documentation
+  files (the "Software"), to deal in the Software without
+  restriction, including without limitation the rights to use,
+  copy, modify, merge, publish, distribute, sublicense, and/or sell
+  copies of the Software, and to permit persons to whom the
+  Software is furnished to do so, subject to the following
+  conditions:
+
+  The above copyright notice and this permission notice shall be
+  included in all copies or substantial portions of the Software.
+
+  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+  OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+package edu.purdue.bbc.util.equation;
+
+import edu.purdue.bbc.util.ParallelUtils;
+import edu.purdue.bbc.util.RangeTask;
+
+/**
+ * Finds where an Equation crosses a given value, such as a threshold, within
+ * a bracketing interval. When the derivative of the equation can be found,
+ * Newton's method is used, falling back to bisection whenever a Newton step
+ * would leave the bracket or converge too slowly. Otherwise Brent's method is
+ * used, which combines bisection with inverse quadratic interpolation. Both
+ * are guaranteed to converge once the value is bracketed. Equations are
+ * compiled before solving.
+ *
+ * A RootFinder is not thread-safe; see findRoots( Equation[], double, double,
+ * double ) for solving many equations at once.
+ *
+ * References:
+ * <CITE>Brent, R. P. (1973). Algorithms for Minimization without
+ * Derivatives (ch 4) Prentice-Hall.</CITE>
+ * <CITE>Press, W. H. et al. (2007). Numerical Recipes: The Art of Scientific
+ * Computing, 3rd ed. (pp 454-462) Cambridge University Press.</CITE>
+ */
+public class RootFinder {
+  private static final double EPSILON = Math.ulp( 1.0 );
+
+  private double tolerance = 1e-12;
+  private int maxIterations = 200;
+  private int iterations;
+
+  /**
+   * Creates a new RootFinder.
+   */
+  public RootFinder( ) { }
+
+  /**
+   * Sets the absolute tolerance of the roots found. The default is 1e-12.
+   *
+   * @param tolerance The tolerance.
+   */
+  public void setTolerance( double tolerance ) {
+  	this.tolerance = tolerance;
+  }
+
+  /**
+   * Sets the maximum number of iterations. The default is 200.
+   *
+   * @param maxIterations The maximum number of iterations.
+   */
+  public void setMaxIterations( int maxIterations ) {
+  	this.maxIterations = maxIterations;
+  }
+
+  /**
+   * Returns the number of iterations used to find the last root.
+   *
+   * @return The number of iterations.
+   */
+  public int getIterations( ) {
+  	return this.iterations;
+  }
+
+  /**
+   * Finds a root of an equation between a and b, using the derivative of the
+   * equation if it is available.
+   *
+   * @param equation The equation to solve.
+   * @param a One end of the interval to search.
+   * @param b The other end of the interval to search.
+   * @return A value of x between a and b where the equation is 0.
+   * @throws IllegalArgumentException If the equation has the same sign at a
+   *	and b.
+   */
+  public double findRoot( Equation equation, double a, double b ) {
+  	return this.findRoot( equation, 0.0, a, b );
+  }
+
+  /**
+   * Finds where an equation crosses a value between a and b, using the
+   * derivative of the equation if it is available.
+   *
+   * @param equation The equation to solve.
+   * @param value The value to find.
+   * @param a One end of the interval to search.
+   * @param b The other end of the interval to search.
+   * @return A value of x between a and b where the equation equals value.
+   * @throws IllegalArgumentException If the equation minus value has the same
+   *	sign at a and b.
+   */
+  public double findRoot( Equation equation, double value, double a,
+                          double b ) {
+  	Equation derivative;
+  	try {
+  		derivative = equation.derivative( );
+  	} catch ( UnsupportedOperationException e ) {
+  		return this.brent( equation, value, a, b );
+  	}
+  	return this.newton( equation, derivative, value, a, b );
+  }
+
+  /**
+   * Finds where an equation crosses a value between a and b with Brent's
+   * method, which does not need the derivative.
+   *
+   * @param equation The equation to solve.
+   * @param value The value to find.
+   * @param a One end of the interval to search.
+   * @param b The other end of the interval to search.
+   * @return A value of x between a and b where the equation equals value.
+   * @throws IllegalArgumentException If the equation minus value has the same
+   *	sign at a and b.
+   */
+  public double brent( Equation equation, double value, double a, double b ) {
+  	Equation f = equation.compile( );
+  	this.iterations = 0;
+  	double fa = f.solve( a ) - value;
+  	double fb = f.solve( b ) - value;
+  	if ( fa == 0.0 )
+  		return a;
+  	if ( fb == 0.0 )
+  		return b;
+  	checkBracket( fa, fb, a, b );
+  	double c = a, fc = fa;
+  	double d = b - a, e = d;
+  	while ( this.iterations++ < this.maxIterations ) {
+  		if (( fb > 0 ) == ( fc > 0 )) {
+  			c = a;
+  			fc = fa;
+  			d = e = b - a;
+  		}
+  		if ( Math.abs( fc ) < Math.abs( fb )) {
+  			a = b; b = c; c = a;
+  			fa = fb; fb = fc; fc = fa;
+  		}
+  		double tol = 2 * EPSILON * Math.abs( b ) + 0.5 * this.tolerance;
+  		double middle = 0.5 * ( c - b );
+  		if ( Math.abs( middle ) <= tol || fb == 0.0 )
+  			return b;
+  		if ( Math.abs( e ) >= tol && Math.abs( fa ) > Math.abs( fb )) {
+  			// attempt inverse quadratic interpolation
+  			double s = fb / fa;
+  			double p, q;
+  			if ( a == c ) {
+  				p = 2 * middle * s;
+  				q = 1 - s;
+  			} else {
+  				double r = fb / fc;
+  				q = fa / fc;
+  				p = s * ( 2 * middle * q * ( q - r ) - ( b - a ) * ( r - 1 ));
+  				q = ( q - 1 ) * ( r - 1 ) * ( s - 1 );
+  			}
+  			if ( p > 0 )
+  				q = -q;
+  			p = Math.abs( p );
+  			double min = Math.min( 3 * middle * q - Math.abs( tol * q ),
+  			                       Math.abs( e * q ));
+  			if ( 2 * p < min ) {
+  				e = d;
+  				d = p / q;
+  			} else {
+  				d = middle;
+  				e = d;
+  			}
+  		} else {
+  			d = middle;
+  			e = d;
+  		}
+  		a = b;
+  		fa = fb;
+  		if ( Math.abs( d ) > tol ) {
+  			b += d;
+  		} else {
+  			b += ( middle > 0 ) ? tol : -tol;
+  		}
+  		fb = f.solve( b ) - value;
+  	}
+  	return b;
+  }
+
+  /**
+   * Finds where an equation crosses a value between a and b with Newton's
+   * method, safeguarded by bisection.
+   *
+   * @param equation The equation to solve.
+   * @param derivative The derivative of the equation.
+   * @param value The value to find.
+   * @param a One end of the interval to search.
+   * @param b The other end of the interval to search.
+   * @return A value of x between a and b where the equation equals value.
+   * @throws IllegalArgumentException If the equation minus value has the same
+   *	sign at a and b.
+   */
+  public double newton( Equation equation, Equation derivative, double value,
+                        double a, double b ) {
+  	Equation f = equation.compile( );
+  	Equation df = derivative.compile( );
+  	this.iterations = 0;
+  	double fa = f.solve( a ) - value;
+  	double fb = f.solve( b ) - value;
+  	if ( fa == 0.0 )
+  		return a;
+  	if ( fb == 0.0 )
+  		return b;
+  	checkBracket( fa, fb, a, b );
+  	// orient the bracket so that the function is negative at low
+  	double low = ( fa < 0 ) ? a : b;
+  	double high = ( fa < 0 ) ? b : a;
+  	double x = 0.5 * ( a + b );
+  	double step = Math.abs( b - a );
+  	double lastStep = step;
+  	double fx = f.solve( x ) - value;
+  	double slope = df.solve( x );
+  	while ( this.iterations++ < this.maxIterations ) {
+  		boolean bisect = slope == 0.0 || Double.isNaN( slope ) ||
+  			((( x - high ) * slope - fx ) * (( x - low ) * slope - fx ) > 0 ) ||
+  			( Math.abs( 2 * fx ) > Math.abs( lastStep * slope ));
+  		lastStep = step;
+  		if ( bisect ) {
+  			step = 0.5 * ( high - low );
+  			x = low + step;
+  		} else {
+  			step = fx / slope;
+  			x -= step;
+  		}
+  		if ( Math.abs( step ) < this.tolerance )
+  			return x;
+  		fx = f.solve( x ) - value;
+  		if ( fx == 0.0 )
+  			return x;
+  		slope = df.solve( x );
+  		if ( fx < 0 ) {
+  			low = x;
+  		} else {
+  			high = x;
+  		}
+  	}
+  	return x;
+  }
+
+  /**
+   * Finds where each of a set of equations crosses a value between a and b,
+   * dividing the equations between several threads.
+   *
+   * @param equations The equations to solve.
+   * @param value The value to find.
+   * @param a One end of the interval to search.
+   * @param b The other end of the interval to search.
+   * @return The root of each equation, or NaN for equations which do not
+   *	cross the value between a and b.
+   */
+  public static double[] findRoots( final Equation[] equations,
+                                    final double value, final double a,
+                                    final double b ) {
+  	final double[] returnValue = new double[ equations.length ];
+  	ParallelUtils.forRange( 0, equations.length, new RangeTask( ) {
+  		public void run( int start, int end ) {
+  			RootFinder finder = new RootFinder( );
+  			for ( int i=start; i < end; i++ ) {
+  				try {
+  					returnValue[ i ] = finder.findRoot( equations[ i ], value, a, b );
+  				} catch ( IllegalArgumentException e ) {
+  					returnValue[ i ] = Double.NaN;
+  				}
+  			}
+  		}
+  	});
+  	return returnValue;
+  }
+
+  private static void checkBracket( double fa, double fb, double a, double b ) {
+  	if ( !(( fa < 0 && fb > 0 ) || ( fa > 0 && fb < 0 )))
+  		throw new IllegalArgumentException( String.format(
+  	    "The root is not bracketed by [%g, %g]", a, b ));
+  }
+}
@@ -0,0 +1,240 @@
+/*
+
+Copyright: 2010 Purdue University
+
+This file is distributed under the following terms (MIT/X11 License):
+
+  Permission is hereby granted, free of charge, to any person
+  obtaining a copy of this file and associated documentation
+  files (the "Software"), to deal in the Software without
+  restriction, including without limitation the rights to use,
+  copy, modify, merge, publish, distribute, sublicense, and/or sell
+  copies of the Software, and to permit persons to whom the
+  Software is furnished to do so, subject to the following
+  conditions:
+
+  The above copyright notice and this permission notice shall be
+  included in all copies or substantial portions of the Software.
+
+  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+  EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+  OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+  NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+  HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+  WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+  OTHER DEALINGS IN THE SOFTWARE.
+
+*/
+package edu.purdue.bbc.util.equation;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gathers the terms of one or more Equations, merging terms of the same type
+ * and power or exponent. Nested MultiPartEquations are flattened, so the
+ * terms form a single sum. Used for compiling, simplifying and parsing
+ * equations.
+ */
+class TermCollector {
+  /** The highest whole number power which is treated as a polynomial term. */
+  static final int MAX_POLYNOMIAL_DEGREE = 16;
+
+  /** Coefficients of x<sup>power</sup>, keyed by power. */
+  final Map<Double,Double> powers = new LinkedHashMap<Double,Double>( );
+  /** Coefficients of e<sup>bx</sup>, keyed by b. */
+  final Map<Double,Double> exponentials = new LinkedHashMap<Double,Double>( );
+  /** Coefficients of ln( bx ), keyed by b. */
+  final Map<Double,Double> logs = new LinkedHashMap<Double,Double>( );
+  /** Equations of types which cannot be merged. */
+  final List<Equation> others = new ArrayList<Equation>( );
+
+  /**
+   * Adds the terms of an Equation.
+   *
+   * @param equation The Equation to add.
+   */
+  void add( Equation equation ) {
+  	if ( equation instanceof CompiledEquation ) {
+  		this.add(((CompiledEquation)equation).getSource( ));
+  	} else if ( equation instanceof MultiPartEquation ) {
+  		for ( Equation part : (MultiPartEquation)equation ) {
+  			this.add( part );
+  		}
+  	} else if ( equation instanceof Polynomial ) {
+  		Polynomial p = (Polynomial)equation;
+  		for ( int i=0; i <= p.getDegree( ); i++ ) {
+  			merge( this.powers, i, p.getCoefficient( i ));
+  		}
+  	} else if ( equation instanceof EquationTerm ) {
+  		EquationTerm term = (EquationTerm)equation;
+  		merge( this.powers, term.getPower( ), term.getMultiplier( ));
+  	} else if ( equation instanceof ExponentialEquation ) {
+  		ExponentialEquation e = (ExponentialEquation)equation;
+  		if ( e.getXMultiplier( ) == 0.0 ) {
+  			merge( this.powers, 0, e.getMultiplier( ));
+  		} else {
+  			merge( this.exponentials, e.getXMultiplier( ), e.getMultiplier( ));
+  		}
+  	} else if ( equation instanceof LogEquation ) {
+  		LogEquation log = (LogEquation)equation;
+  		merge( this.logs, log.getXMultiplier( ), log.getMultipler( ));
+  	} else {
+  		this.others.add( equation );
+  	}
+  }
+
+  /**
+   * Adds the terms of another TermCollector.
+   *
+   * @param terms The terms to add.
+   */
+  void addAll( TermCollector terms ) {
+  	mergeAll( this.powers, terms.powers );
+  	mergeAll( this.exponentials, terms.exponentials );
+  	mergeAll( this.logs, terms.logs );
+  	this.others.addAll( terms.others );
+  }
+
+  /**
+   * Multiplies every term by a constant.
+   *
+   * @param factor The value to multiply by.
+   */
+  void scale( double factor ) {
+  	if ( !this.others.isEmpty( ))
+  		throw new UnsupportedOperationException(
+  	    "Unable to scale an Equation of unknown type" );
+  	scaleAll( this.powers, factor );
+  	scaleAll( this.exponentials, factor );
+  	scaleAll( this.logs, factor );
+  }
+
+  /**
+   * Determines whether the terms only contain powers of x.
+   *
+   * @return true if there are no exponential, logarithmic or other terms.
+   */
+  boolean isPowers( ) {
+  	return this.exponentials.isEmpty( ) && this.logs.isEmpty( ) &&
+  	       this.others.isEmpty( );
+  }
+
+  /**
+   * Determines whether the terms sum to a constant.
+   *
+   * @return true if the only term is a constant.
+   */
+  boolean isConstant( ) {
+  	if ( !this.isPowers( ))
+  		return false;
+  	for ( Map.Entry<Double,Double> term : this.powers.entrySet( )) {
+  		if ( term.getKey( ) != 0.0 && term.getValue( ) != 0.0 )
+  			return false;
+  	}
+  	return true;
+  }
+
+  /**
+   * Returns the value of the constant term.
+   *
+   * @return The coefficient of x<sup>0</sup>.
+   */
+  double getConstant( ) {
+  	Double returnValue = this.powers.get( 0.0 );
+  	return ( returnValue == null ) ? 0.0 : returnValue.doubleValue( );
+  }
+
+  /**
+   * Creates the simplest Equation equal to the sum of the terms. Terms with a
+   * coefficient of 0 are dropped, and whole number powers are combined into
+   * a single Polynomial.
+   *
+   * @return An Equation for the sum of the terms.
+   */
+  Equation toEquation( ) {
+  	List<Equation> parts = new ArrayList<Equation>( );
+  	double[] polynomial = this.getPolynomial( );
+  	if ( polynomial.length == 1 ) {
+  		parts.add( new EquationTerm( polynomial[ 0 ], 0 ));
+  	} else if ( polynomial.length > 1 ) {
+  		parts.add( new Polynomial( polynomial ));
+  	}
+  	for ( Map.Entry<Double,Double> term : this.powers.entrySet( )) {
+  		if ( !isPolynomialPower( term.getKey( )) && term.getValue( ) != 0.0 )
+  			parts.add( new EquationTerm( term.getValue( ), term.getKey( )));
+  	}
+  	for ( Map.Entry<Double,Double> term : this.exponentials.entrySet( )) {
+  		if ( term.getValue( ) != 0.0 )
+  			parts.add( new ExponentialEquation( term.getValue( ), term.getKey( )));
+  	}
+  	for ( Map.Entry<Double,Double> term : this.logs.entrySet( )) {
+  		if ( term.getValue( ) != 0.0 )
+  			parts.add( new LogEquation( term.getValue( ), term.getKey( )));
+  	}
+  	parts.addAll( this.others );
+  	if ( parts.isEmpty( ))
+  		return new EquationTerm( 0, 0 );
+  	if ( parts.size( ) == 1 )
+  		return parts.get( 0 );
+  	return new MultiPartEquation( parts );
+  }
+
+  /**
+   * Returns the coefficients of the whole number powers of x, in order from
+   * 0 to n, with any zero coefficients above the highest power removed.
+   *
+   * @return The polynomial coefficients.
+   */
+  double[] getPolynomial( ) {
+  	double[] coefficients = new double[ MAX_POLYNOMIAL_DEGREE + 1 ];
+  	int length = 0;
+  	for ( Map.Entry<Double,Double> term : this.powers.entrySet( )) {
+  		double power = term.getKey( );
+  		if ( isPolynomialPower( power ) && term.getValue( ) != 0.0 ) {
+  			coefficients[(int)power ] = term.getValue( );
+  			length = Math.max( length, (int)power + 1 );
+  		}
+  	}
+  	double[] returnValue = new double[ length ];
+  	System.arraycopy( coefficients, 0, returnValue, 0, length );
+  	return returnValue;
+  }
+
+  /**
+   * Determines whether a power of x is merged into a Polynomial.
+   *
+   * @param power The power of x.
+   * @return true for whole numbers from 0 to MAX_POLYNOMIAL_DEGREE.
+   */
+  static boolean isPolynomialPower( double power ) {
+  	return power >= 0 && power <= MAX_POLYNOMIAL_DEGREE &&
+  	       power == Math.floor( power );
+  }
+
+  /**
+   * Adds a coefficient to a term, creating the term if needed.
+   */
+  static void merge( Map<Double,Double> terms, double key, double coefficient ) {
+  	// adding 0.0 turns -0.0 into 0.0 so that both share a single term.
+  	Double k = key + 0.0;
+  	Double current = terms.get( k );
+  	terms.put( k, ( current == null ) ? coefficient : current + coefficient );
+  }
+
+  private static void mergeAll( Map<Double,Double> terms,
+                                Map<Double,Double> additions ) {
+  	for ( Map.Entry<Double,Double> term : additions.entrySet( )) {
+  		merge( terms, term.getKey( ), term.getValue( ));
+  	}
+  }
+
+  private static void scaleAll( Map<Double,Double> terms, double factor ) {
+  	for ( Map.Entry<Double,Double> term : terms.entrySet( )) {
+  		term.setValue( term.getValue( ) * factor );
+  	}
+  }
+}
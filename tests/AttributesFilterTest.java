@@ -0,0 +1,412 @@
+/*
+ * Copyright (c) 2013. Purdue University
+ *
+ * This file is distributed under the following terms (MIT/X11 License):
+ *
+ *   Permission is hereby granted, free of charge, to any person
+ *   obtaining a copy of this file and associated documentation
+ *   files (the "Software"), to deal in the Software without
+ *   restriction, including without limitation the rights to use,
+ *   copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the
+ *   Software is furnished to do so, subject to the following
+ *   conditions:
+ *
+ *   The above copyright notice and this permission notice shall be
+ *   included in all copies or substantial portions of the Software.
+ *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *   EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *   OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *   NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *   HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *   WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *   FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *   OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import edu.purdue.bbc.io.CSVTableReader;
+import edu.purdue.bbc.util.attributes.AttributesFilterList;
+import edu.purdue.bbc.util.attributes.AttributesPredicate;
+import edu.purdue.bbc.util.attributes.AttributesTable;
+import edu.purdue.bbc.util.attributes.BasicAttributes;
+import edu.purdue.bbc.util.attributes.Criterion;
+import edu.purdue.bbc.util.attributes.FilterUtils;
+import edu.purdue.bbc.util.attributes.IndexedAttributesCollection;
+import edu.purdue.bbc.util.attributes.NegatedAttributesFilter;
+import edu.purdue.bbc.util.attributes.NumericalCriterion;
+import edu.purdue.bbc.util.attributes.RowBitmap;
+import edu.purdue.bbc.util.attributes.StringAttributes;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+
+import junit.framework.*;
+
+public class AttributesFilterTest extends TestCase {
+
+  private List<BasicAttributes<String>> createRecords() {
+    List<BasicAttributes<String>> records =
+      new ArrayList<BasicAttributes<String>>();
+    String[] names = {"alpha", "beta", "gamma", "beta", "delta"};
+    for (int i=0; i < 200; i++) {
+      BasicAttributes<String> record = new BasicAttributes<String>();
+      record.setAttribute("name", names[i % names.length]);
+      record.setAttribute("score", Integer.toString((i * 37) % 100));
+      if (i % 7 != 0) {
+        record.setAttribute("group", "g" + (i % 3));
+      }
+      records.add(record);
+    }
+    return records;
+  }
+
+  private <T extends BasicAttributes> void assertSameResult(
+      Criterion<T> criterion, List<T> records, List<T> indexed) {
+    assertEquals(criterion.toString(),
+                 new ArrayList<T>(criterion.filter(records)),
+                 new ArrayList<T>(criterion.filter(indexed)));
+  }
+
+  public void testIndexes() {
+    List<BasicAttributes<String>> records = createRecords();
+    IndexedAttributesCollection<BasicAttributes<String>> indexed =
+      new IndexedAttributesCollection<BasicAttributes<String>>(records);
+    indexed.createIndex("name");
+    indexed.createHashIndex("name");
+    indexed.createNumericIndex("score");
+    assertTrue(indexed.hasIndex("score"));
+    assertNull(indexed.find("group", "g1", Criterion.EQUAL));
+
+    int[] conditions = {Criterion.EQUAL, Criterion.LESS, Criterion.GREATER,
+                        Criterion.NOT_EQUAL, Criterion.LESS | Criterion.EQUAL,
+                        Criterion.GREATER | Criterion.EQUAL};
+    for (int condition : conditions) {
+      assertSameResult(new Criterion<BasicAttributes<String>>(
+        "name", "beta", condition), records, indexed);
+      assertSameResult(new Criterion<BasicAttributes<String>>(
+        "name", "c", condition), records, indexed);
+      assertSameResult(new NumericalCriterion<BasicAttributes<String>>(
+        "score", 42.0, condition), records, indexed);
+      assertSameResult(new NumericalCriterion<BasicAttributes<String>>(
+        "score", 4.5, condition), records, indexed);
+    }
+    assertEquals(80, indexed.find("name", "beta", Criterion.EQUAL).length);
+
+    // indexes are rebuilt after the list changes
+    BasicAttributes<String> record = new BasicAttributes<String>();
+    record.setAttribute("name", "beta");
+    record.setAttribute("score", "-1");
+    indexed.add(record);
+    assertEquals(81, indexed.find("name", "beta", Criterion.EQUAL).length);
+    assertEquals(1, indexed.findNumeric("score", 0.0, Criterion.LESS).length);
+    record.setAttribute("score", "1000");
+    indexed.reindex();
+    assertEquals(200,
+                 indexed.findNumeric("score", 999.0, Criterion.GREATER)[0]);
+  }
+
+  public void testFilterList() {
+    List<BasicAttributes<String>> records = createRecords();
+    IndexedAttributesCollection<BasicAttributes<String>> indexed =
+      new IndexedAttributesCollection<BasicAttributes<String>>(records);
+    indexed.createNumericIndex("score");
+    Criterion<BasicAttributes<String>> beta =
+      new Criterion<BasicAttributes<String>>("name", "beta", Criterion.EQUAL);
+    Criterion<BasicAttributes<String>> group =
+      new Criterion<BasicAttributes<String>>("group", "g1", Criterion.EQUAL);
+    NumericalCriterion<BasicAttributes<String>> low =
+      new NumericalCriterion<BasicAttributes<String>>(
+        "score", 10.0, Criterion.LESS);
+
+    for (int operation = 0; operation < 2; operation++) {
+      AttributesFilterList<BasicAttributes<String>> list =
+        new AttributesFilterList<BasicAttributes<String>>(operation);
+      list.add(beta);
+      list.add(group);
+      list.add(low);
+      List<BasicAttributes<String>> expected =
+        new ArrayList<BasicAttributes<String>>();
+      for (BasicAttributes<String> record : records) {
+        boolean b = beta.accept(record);
+        boolean g = group.accept(record);
+        boolean l = low.accept(record);
+        if (operation == AttributesFilterList.OR ? (b || g || l)
+                                                 : (b && g && l)) {
+          expected.add(record);
+        }
+        assertEquals(expected.contains(record), list.accept(record));
+      }
+      assertTrue(expected.size() > 0);
+      assertEquals(expected,
+        new ArrayList<BasicAttributes<String>>(list.filter(records)));
+      assertEquals(expected,
+        new ArrayList<BasicAttributes<String>>(list.filter(indexed)));
+    }
+  }
+
+  private RowBitmap randomBitmap(Random random, BitSet bits, int density) {
+    RowBitmap bitmap = new RowBitmap();
+    for (int i=0; i < 300000; i++) {
+      // dense and sparse chunks alternate
+      int chunk = i >>> 16;
+      if (random.nextInt(chunk % 2 == 0 ? density : 1000) == 0) {
+        bitmap.add(i);
+        bits.set(i);
+      }
+    }
+    return bitmap;
+  }
+
+  private void assertBits(BitSet expected, RowBitmap actual) {
+    assertEquals(expected.cardinality(), actual.cardinality());
+    int[] values = actual.toArray();
+    int n = 0;
+    for (int i = expected.nextSetBit(0); i >= 0;
+         i = expected.nextSetBit(i + 1)) {
+      assertEquals(i, values[n++]);
+    }
+  }
+
+  public void testRowBitmap() {
+    Random random = new Random(17);
+    BitSet a = new BitSet();
+    BitSet b = new BitSet();
+    RowBitmap x = randomBitmap(random, a, 2);
+    RowBitmap y = randomBitmap(random, b, 3);
+    assertBits(a, x);
+    assertTrue(x.contains(a.nextSetBit(70000)));
+    assertFalse(x.contains(a.nextClearBit(0)));
+
+    BitSet expected = (BitSet)a.clone();
+    expected.and(b);
+    assertBits(expected, x.and(y));
+    expected = (BitSet)a.clone();
+    expected.or(b);
+    assertBits(expected, x.or(y));
+    expected = (BitSet)a.clone();
+    expected.andNot(b);
+    assertBits(expected, x.andNot(y));
+    expected = (BitSet)a.clone();
+    expected.flip(0, 250000);
+    expected.clear(250000, 300000);
+    assertBits(expected, x.not(250000));
+    assertEquals(x, x.or(x.and(y)));
+    assertBits(a, x);
+
+    assertEquals(70000, RowBitmap.range(5, 70005).cardinality());
+    assertTrue(RowBitmap.range(3, 3).isEmpty());
+  }
+
+  public void testBitmapFilters() {
+    List<BasicAttributes<String>> records = createRecords();
+    IndexedAttributesCollection<BasicAttributes<String>> indexed =
+      new IndexedAttributesCollection<BasicAttributes<String>>(records);
+    indexed.createIndex("name");
+    indexed.createNumericIndex("score");
+
+    AttributesFilterList<BasicAttributes<String>> inner =
+      new AttributesFilterList<BasicAttributes<String>>(
+        AttributesFilterList.OR);
+    inner.add(new Criterion<BasicAttributes<String>>(
+      "group", "g2", Criterion.EQUAL));
+    inner.add(new NumericalCriterion<BasicAttributes<String>>(
+      "score", 90.0, Criterion.GREATER));
+    AttributesFilterList<BasicAttributes<String>> outer =
+      new AttributesFilterList<BasicAttributes<String>>();
+    outer.add(new NegatedAttributesFilter<BasicAttributes<String>>(
+      new Criterion<BasicAttributes<String>>(
+        "name", "beta", Criterion.EQUAL)));
+    outer.add(inner);
+
+    List<BasicAttributes<String>> expected =
+      new ArrayList<BasicAttributes<String>>();
+    for (BasicAttributes<String> record : records) {
+      if (outer.accept(record)) {
+        expected.add(record);
+      }
+    }
+    assertTrue(expected.size() > 0);
+    assertEquals(expected,
+      new ArrayList<BasicAttributes<String>>(outer.filter(records)));
+    RowBitmap rows = indexed.select(outer);
+    assertEquals(expected.size(), rows.cardinality());
+    assertEquals(expected, indexed.get(rows));
+    assertEquals(expected,
+      new ArrayList<BasicAttributes<String>>(outer.filter(indexed)));
+  }
+
+  public void testSubclassIgnoresIndexes() {
+    List<BasicAttributes<String>> records = createRecords();
+    IndexedAttributesCollection<BasicAttributes<String>> indexed =
+      new IndexedAttributesCollection<BasicAttributes<String>>(records);
+    indexed.createIndex("name");
+    indexed.createHashIndex("name");
+    Criterion<BasicAttributes<String>> ignoreCase =
+      new Criterion<BasicAttributes<String>>("name", "BETA", Criterion.EQUAL) {
+        protected boolean passes(Comparable value) {
+          return value.toString().equalsIgnoreCase(this.value.toString());
+        }
+      };
+    List<BasicAttributes<String>> expected =
+      new ArrayList<BasicAttributes<String>>(ignoreCase.filter(records));
+    assertEquals(80, expected.size());
+    assertEquals(expected, indexed.get(indexed.select(ignoreCase)));
+    assertEquals(expected,
+      new ArrayList<BasicAttributes<String>>(ignoreCase.filter(indexed)));
+
+    AttributesFilterList<BasicAttributes<String>> list =
+      new AttributesFilterList<BasicAttributes<String>>();
+    list.add(ignoreCase);
+    list.add(new Criterion<BasicAttributes<String>>(
+      "name", "alpha", Criterion.NOT_EQUAL));
+    assertEquals(expected,
+      new ArrayList<BasicAttributes<String>>(list.filter(indexed)));
+  }
+
+  public void testIndexMatchesScan() {
+    List<BasicAttributes<Object>> records =
+      new ArrayList<BasicAttributes<Object>>();
+    for (int i=0; i < 50; i++) {
+      BasicAttributes<Object> record = new BasicAttributes<Object>();
+      record.setAttribute("v", Double.valueOf(i % 10));
+      Object mixed = (i % 2 == 0) ? (Object)Integer.valueOf(i % 10)
+                                  : (Object)Integer.toString(i % 10);
+      record.setAttribute("mixed", mixed);
+      records.add(record);
+    }
+    IndexedAttributesCollection<BasicAttributes<Object>> hashed =
+      new IndexedAttributesCollection<BasicAttributes<Object>>(records);
+    hashed.createHashIndex("v");
+    hashed.createHashIndex("mixed");
+    IndexedAttributesCollection<BasicAttributes<Object>> sorted =
+      new IndexedAttributesCollection<BasicAttributes<Object>>(records);
+    sorted.createIndex("v");
+    sorted.createIndex("mixed");
+    int[] conditions = {Criterion.EQUAL, Criterion.LESS, Criterion.GREATER};
+    String[] keys = {"v", "mixed"};
+    for (String key : keys) {
+      for (int condition : conditions) {
+        Criterion<BasicAttributes<Object>> criterion =
+          new Criterion<BasicAttributes<Object>>(key, "5", condition);
+        assertSameResult(criterion, records, hashed);
+        assertSameResult(criterion, records, sorted);
+        assertEquals(criterion.filter(records).size(),
+                     sorted.select(criterion).cardinality());
+      }
+    }
+    assertEquals(5, new Criterion<BasicAttributes<Object>>(
+      "v", "5", Criterion.EQUAL).filter(hashed).size());
+  }
+
+  public void testCompile() {
+    List<BasicAttributes<String>> records = createRecords();
+    AttributesTable table = new AttributesTable();
+    List<BasicAttributes<Object>> numbers =
+      new ArrayList<BasicAttributes<Object>>();
+    for (BasicAttributes<String> record : records) {
+      table.addRow(record);
+      BasicAttributes<Object> number = new BasicAttributes<Object>();
+      number.setAttribute("score",
+        Integer.valueOf(record.getAttribute("score")));
+      numbers.add(number);
+    }
+    int[] conditions = {Criterion.EQUAL, Criterion.LESS, Criterion.GREATER,
+                        Criterion.NOT_EQUAL, Criterion.LESS | Criterion.EQUAL};
+    for (int condition : conditions) {
+      Criterion<BasicAttributes<String>> name =
+        new Criterion<BasicAttributes<String>>("name", "beta", condition);
+      NumericalCriterion<BasicAttributes<String>> score =
+        new NumericalCriterion<BasicAttributes<String>>(
+          "score", 37, condition);
+      AttributesPredicate<BasicAttributes<String>> compiledName =
+        name.compile();
+      AttributesPredicate<BasicAttributes<String>> compiledScore =
+        score.compile();
+      for (BasicAttributes<String> record : records) {
+        assertEquals(name.accept(record), compiledName.accept(record));
+        assertEquals(score.accept(record), compiledScore.accept(record));
+      }
+
+      // numbers are compared as numbers, whatever their type
+      NumericalCriterion<BasicAttributes<Object>> objectScore =
+        new NumericalCriterion<BasicAttributes<Object>>(
+          "score", 37, condition);
+      AttributesPredicate<BasicAttributes<Object>> compiledObjectScore =
+        objectScore.compile();
+      NumericalCriterion<AttributesTable.Row> rowScore =
+        new NumericalCriterion<AttributesTable.Row>("score", 37, condition);
+      AttributesPredicate<AttributesTable.Row> compiledRowScore =
+        rowScore.compile();
+      for (int i=0; i < records.size(); i++) {
+        boolean expected = score.accept(records.get(i));
+        assertEquals(expected, objectScore.accept(numbers.get(i)));
+        assertEquals(expected, compiledObjectScore.accept(numbers.get(i)));
+        assertEquals(expected, rowScore.accept(table.getRow(i)));
+        assertEquals(expected, compiledRowScore.accept(table.getRow(i)));
+      }
+    }
+
+    AttributesFilterList<BasicAttributes<String>> list =
+      new AttributesFilterList<BasicAttributes<String>>(
+        AttributesFilterList.OR);
+    list.add(new Criterion<BasicAttributes<String>>(
+      "group", "g0", Criterion.EQUAL));
+    list.add(new NegatedAttributesFilter<BasicAttributes<String>>(
+      new NumericalCriterion<BasicAttributes<String>>(
+        "score", 50, Criterion.LESS)));
+    AttributesPredicate<BasicAttributes<String>> compiled = list.compile();
+    for (BasicAttributes<String> record : records) {
+      assertEquals(list.accept(record), compiled.accept(record));
+    }
+  }
+
+  public void testStreaming() {
+    List<BasicAttributes<String>> records =
+      new ArrayList<BasicAttributes<String>>();
+    for (int i=0; i < 50; i++) {
+      records.addAll(createRecords());
+    }
+    AttributesFilterList<BasicAttributes<String>> list =
+      new AttributesFilterList<BasicAttributes<String>>();
+    list.add(new Criterion<BasicAttributes<String>>(
+      "name", "beta", Criterion.EQUAL));
+    list.add(new NumericalCriterion<BasicAttributes<String>>(
+      "score", 30, Criterion.GREATER));
+    List<BasicAttributes<String>> expected =
+      new ArrayList<BasicAttributes<String>>(list.filter(records));
+    assertEquals(expected, FilterUtils.parallelFilter(records, list));
+
+    List<BasicAttributes<String>> actual =
+      new ArrayList<BasicAttributes<String>>();
+    Iterator<BasicAttributes<String>> i =
+      FilterUtils.parallelIterator(records, list);
+    while (i.hasNext()) {
+      actual.add(i.next());
+    }
+    assertEquals(expected, actual);
+    actual.clear();
+    i = FilterUtils.iterator(records.iterator(), list);
+    while (i.hasNext()) {
+      actual.add(i.next());
+    }
+    assertEquals(expected, actual);
+  }
+
+  public void testCSVStream() throws Exception {
+    CSVTableReader reader = new CSVTableReader(new Scanner(
+      "name,score\nalpha,4\nbeta,12\ngamma,7\nbeta,3\n"), ",");
+    Iterator<StringAttributes> i = FilterUtils.iterator(
+      FilterUtils.attributes(reader),
+      new NumericalCriterion<StringAttributes>("score", 5, Criterion.GREATER));
+    assertTrue(i.hasNext());
+    assertEquals("beta", i.next().getAttribute("name"));
+    assertEquals("gamma", i.next().getAttribute("name"));
+    assertFalse(i.hasNext());
+  }
+}
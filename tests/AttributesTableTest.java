@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2013. Purdue University
+ *
+ * This file is distributed under the following terms (MIT/X11 License):
+ *
+ *   Permission is hereby granted, free of charge, to any person
+ *   obtaining a copy of this file and associated documentation
+ *   files (the "Software"), to deal in the Software without
+ *   restriction, including without limitation the rights to use,
+ *   copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the
+ *   Software is furnished to do so, subject to the following
+ *   conditions:
+ *
+ *   The above copyright notice and this permission notice shall be
+ *   included in all copies or substantial portions of the Software.
+ *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *   EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *   OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *   NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *   HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *   WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *   FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *   OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import edu.purdue.bbc.util.attributes.AttributesTable;
+import edu.purdue.bbc.util.attributes.BasicAttributes;
+import edu.purdue.bbc.util.attributes.Criterion;
+import edu.purdue.bbc.util.attributes.NumericalCriterion;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.*;
+
+public class AttributesTableTest extends TestCase {
+
+  private AttributesTable createTable() {
+    AttributesTable table = new AttributesTable(false);
+    table.addNumericColumn("Ratio");
+    String[] names = {"alpha", "beta", "gamma", "beta", "delta"};
+    for (int i=0; i < 50; i++) {
+      Map<String,String> row = new HashMap<String,String>();
+      row.put("Name", names[i % names.length]);
+      row.put("Score", Integer.toString(i));
+      row.put("Ratio", (i % 10 == 0) ? "" : Double.toString(i / 4.0));
+      table.addRow(row);
+    }
+    return table;
+  }
+
+  public void testColumns() {
+    AttributesTable table = createTable();
+    assertEquals(50, table.size());
+    assertTrue(table.isNumeric("score"));
+    assertTrue(table.isNumeric("RATIO"));
+    assertFalse(table.isNumeric("name"));
+    assertEquals(4, table.getCardinality("name"));
+    assertEquals(12.0, table.getDouble(12, "score"));
+    assertEquals("gamma", table.get(12, "Name"));
+    assertFalse(table.isSet(20, "ratio"));
+    assertTrue(Double.isNaN(table.getDouble(20, "ratio")));
+    assertNull(table.getRow(20).getAttribute("ratio"));
+    assertEquals(2, table.getRow(20).getAttributes().size());
+
+    table.set(3, "score", "n/a");
+    assertFalse(table.isNumeric("score"));
+    assertEquals("n/a", table.get(3, "score"));
+    assertEquals("7", table.getString(7, "score"));
+    assertEquals(7.0, table.getDouble(7, "score"));
+  }
+
+  public void testCriterion() {
+    AttributesTable table = createTable();
+    Collection<AttributesTable.Row> result =
+      new Criterion<AttributesTable.Row>("name", "beta", Criterion.EQUAL)
+        .filter(table.getRows());
+    assertEquals(20, result.size());
+    result = new NumericalCriterion<AttributesTable.Row>(
+      "score", 40.0, Criterion.GREATER | Criterion.EQUAL)
+        .filter(table.getRows());
+    assertEquals(10, result.size());
+    assertEquals(40, result.iterator().next().getIndex());
+
+    // numeric columns hold Doubles, which compare with other numbers
+    Criterion<AttributesTable.Row> integer =
+      new Criterion<AttributesTable.Row>("score", Integer.valueOf(5),
+                                         Criterion.EQUAL);
+    result = integer.filter(table.getRows());
+    assertEquals(1, result.size());
+    assertEquals(5, result.iterator().next().getIndex());
+    assertTrue(integer.accept(table.getRow(5)));
+    assertTrue(integer.compile().accept(table.getRow(5)));
+    result = new Criterion<AttributesTable.Row>(
+      "score", Integer.valueOf(45), Criterion.GREATER)
+        .filter(table.getRows());
+    assertEquals(4, result.size());
+  }
+
+  public void testRowView() {
+    AttributesTable table = createTable();
+    AttributesTable.Row row = table.getRow(5);
+    assertEquals(table.getRow(5), row);
+    assertEquals(table.getRow(5).hashCode(), row.hashCode());
+    row.setAttribute("flag", "yes");
+    assertEquals("yes", table.get(5, "flag"));
+    assertNull(table.get(6, "flag"));
+
+    BasicAttributes<Object> copy = new BasicAttributes<Object>();
+    copy.setAttributes(row.getAttributes());
+    int index = table.addRow(copy);
+    assertEquals(50, index);
+    assertEquals("yes", table.get(index, "flag"));
+    assertEquals(5.0, table.getDouble(index, "score"));
+  }
+
+  public void testInferredStrings() {
+    AttributesTable table = new AttributesTable();
+    String[] ids = {"12", "007", "1.50", "3"};
+    for (String id : ids) {
+      Map<String,String> row = new HashMap<String,String>();
+      row.put("id", id);
+      row.put("count", id.equals("007") ? "7" : "1");
+      table.addRow(row);
+    }
+    assertFalse(table.isNumeric("id"));
+    assertTrue(table.isNumeric("count"));
+    for (int i=0; i < ids.length; i++) {
+      assertEquals(ids[i], table.get(i, "id"));
+    }
+    Collection<AttributesTable.Row> result =
+      new Criterion<AttributesTable.Row>("id", "007", Criterion.EQUAL)
+        .filter(table.getRows());
+    assertEquals(1, result.size());
+    assertEquals(1, result.iterator().next().getIndex());
+    result = new Criterion<AttributesTable.Row>("count", "7", Criterion.EQUAL)
+      .filter(table.getRows());
+    assertEquals(1, result.size());
+    assertTrue(new Criterion<AttributesTable.Row>("count", "1",
+      Criterion.EQUAL).accept(table.getRow(0)));
+
+    table.set(2, "count", "1.0");
+    assertFalse(table.isNumeric("count"));
+    assertEquals("7", table.get(1, "count"));
+    assertEquals("1.0", table.get(2, "count"));
+    assertEquals("1", table.get(3, "count"));
+  }
+}
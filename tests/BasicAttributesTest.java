@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2013. Purdue University
+ *
+ * This file is distributed under the following terms (MIT/X11 License):
+ *
+ *   Permission is hereby granted, free of charge, to any person
+ *   obtaining a copy of this file and associated documentation
+ *   files (the "Software"), to deal in the Software without
+ *   restriction, including without limitation the rights to use,
+ *   copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the
+ *   Software is furnished to do so, subject to the following
+ *   conditions:
+ *
+ *   The above copyright notice and this permission notice shall be
+ *   included in all copies or substantial portions of the Software.
+ *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *   EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *   OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *   NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *   HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *   WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *   FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *   OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import edu.purdue.bbc.util.attributes.AttributeKeys;
+import edu.purdue.bbc.util.attributes.BasicAttributes;
+import edu.purdue.bbc.util.attributes.Criterion;
+import edu.purdue.bbc.util.attributes.FilterUtils;
+import edu.purdue.bbc.util.attributes.StringAttributes;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.*;
+
+public class BasicAttributesTest extends TestCase {
+
+  public void testCaseInsensitive() {
+    StringAttributes attributes = new StringAttributes(false);
+    attributes.setAttribute("Count", "12");
+    assertEquals("12", attributes.getAttribute("COUNT"));
+    assertEquals(12, attributes.getIntAttribute("count"));
+    assertTrue(attributes.hasAttribute("cOunt"));
+    assertEquals("12", attributes.getAttributes().get("count"));
+    assertEquals("count",
+      attributes.getAttributes().keySet().iterator().next());
+    assertEquals("12", attributes.removeAttribute("COUNT"));
+    assertFalse(attributes.hasAttribute("count"));
+    assertEquals("x", attributes.getAttribute("count", "x"));
+  }
+
+  public void testSlots() {
+    AttributeKeys keys = new AttributeKeys(true);
+    BasicAttributes<Object> a = new BasicAttributes<Object>(keys);
+    BasicAttributes<Object> b = new BasicAttributes<Object>(keys);
+    a.setAttribute("x", 1.0);
+    a.setAttribute("y", null);
+    b.setAttribute("y", "b");
+    assertEquals(2, keys.size());
+    int slot = keys.findSlot("y");
+    assertEquals(slot, keys.getSlot("y"));
+    assertEquals(-1, keys.findSlot("Y"));
+    assertEquals("b", b.getAttribute(slot));
+    assertNull(a.getAttribute(slot));
+    assertTrue(a.hasAttribute("y"));
+    assertEquals("default", b.getAttribute("x", "default"));
+    assertEquals(2, a.getAttributes().size());
+    assertEquals(1, b.getAttributes().size());
+
+    Map<String,Object> map = a.getAttributes();
+    map.put("z", "new");
+    assertEquals("new", a.getAttribute("z"));
+    Iterator<Map.Entry<String,Object>> i = map.entrySet().iterator();
+    assertEquals("x", i.next().getKey());
+    i.remove();
+    assertFalse(a.hasAttribute("x"));
+    assertEquals(2, map.size());
+  }
+
+  public void testOwnKeys() {
+    StringAttributes wide = new StringAttributes();
+    for (int i=0; i < 1000; i++) {
+      wide.setAttribute("column" + i, "x");
+    }
+    StringAttributes narrow = new StringAttributes();
+    narrow.setAttribute("column5", "y");
+    assertNull(wide.getKeys());
+    assertNull(narrow.getAttribute(0));
+    assertEquals(1, narrow.getAttributes().size());
+    narrow.setAttribute("empty", null);
+    assertNull(narrow.getAttribute("empty", "default"));
+    assertEquals("default", narrow.getAttribute("column6", "default"));
+    assertEquals("y", narrow.getAttribute("column5", "default"));
+    narrow.removeAttribute("empty");
+
+    List<Map<String,String>> rows = new ArrayList<Map<String,String>>();
+    for (int i=0; i < 3; i++) {
+      Map<String,String> row = new HashMap<String,String>();
+      row.put("id", "r" + i);
+      rows.add(row);
+    }
+    List<StringAttributes> records = new ArrayList<StringAttributes>();
+    Iterator<StringAttributes> i = FilterUtils.attributes(rows.iterator());
+    while (i.hasNext()) {
+      records.add(i.next());
+    }
+    records.add(narrow);
+    assertSame(records.get(0).getKeys(), records.get(2).getKeys());
+    assertEquals(1, records.get(0).getKeys().size());
+    assertEquals(1, new Criterion<StringAttributes>("id", "r1",
+      Criterion.EQUAL).filter(records).size());
+  }
+}
@@ -0,0 +1,447 @@
+/*
+ * Copyright (c) 2013. Purdue University
+ *
+ * This file is distributed under the following terms (MIT/X11 License):
+ *
+ *   Permission is hereby granted, free of charge, to any person
+ *   obtaining a copy of this file and associated documentation
+ *   files (the "Software"), to deal in the Software without
+ *   restriction, including without limitation the rights to use,
+ *   copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the
+ *   Software is furnished to do so, subject to the following
+ *   conditions:
+ *
+ *   The above copyright notice and this permission notice shall be
+ *   included in all copies or substantial portions of the Software.
+ *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *   EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *   OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *   NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *   HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *   WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *   FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *   OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import edu.purdue.bbc.util.CurveFitting;
+import edu.purdue.bbc.util.IncrementalFitter;
+import edu.purdue.bbc.util.LevenbergMarquardt;
+import edu.purdue.bbc.util.PolynomialFitter;
+import edu.purdue.bbc.util.equation.Equation;
+import edu.purdue.bbc.util.equation.EquationParser;
+import edu.purdue.bbc.util.equation.EquationTerm;
+import edu.purdue.bbc.util.equation.ExponentialEquation;
+import edu.purdue.bbc.util.equation.LogEquation;
+import edu.purdue.bbc.util.equation.MultiPartEquation;
+import edu.purdue.bbc.util.equation.ParametricEquation;
+import edu.purdue.bbc.util.equation.Polynomial;
+import edu.purdue.bbc.util.equation.Quadrature;
+import edu.purdue.bbc.util.equation.RootFinder;
+
+import java.util.Random;
+
+import junit.framework.*;
+
+public class CurveFittingTest extends TestCase {
+
+  /**
+   * The original implementation of chiSquareFit, used as a reference.
+   */
+  private static Equation legacyChiSquareFit(double[] values) {
+    Equation best = CurveFitting.linearFit(values);
+    double chi2 = CurveFitting.getChiSquare(values, best);
+    Equation[] candidates = new Equation[] {
+      CurveFitting.powerLawFit(values),
+      CurveFitting.logFit(values),
+      CurveFitting.exponentialFit(values)
+    };
+    for (int i=0; i < candidates.length; i++) {
+      double current = CurveFitting.getChiSquare(values, candidates[i]);
+      if (!Double.isNaN(current) && Double.compare(current, chi2) < 0) {
+        best = candidates[i];
+        chi2 = current;
+      }
+    }
+    return best;
+  }
+
+  private static void assertSameFit(double[] values) {
+    Equation expected = legacyChiSquareFit(values);
+    Equation actual = CurveFitting.chiSquareFit(values);
+    assertEquals(expected.getClass(), actual.getClass());
+    for (int x=1; x < values.length; x++) {
+      assertEquals(expected.solve(x), actual.solve(x),
+                   1e-9 * Math.max(1.0, Math.abs(expected.solve(x))));
+    }
+  }
+
+  public void testChiSquareFitLinear() {
+    double[] values = new double[50];
+    for (int x=0; x < values.length; x++) {
+      values[x] = 3.0 + 2.0 * x;
+    }
+    values[7] = Double.NaN;
+    assertSameFit(values);
+  }
+
+  public void testChiSquareFitExponential() {
+    double[] values = new double[30];
+    for (int x=0; x < values.length; x++) {
+      values[x] = 1.5 * Math.exp(0.2 * x);
+    }
+    assertSameFit(values);
+  }
+
+  public void testChiSquareFitPowerLaw() {
+    double[] values = new double[40];
+    for (int x=0; x < values.length; x++) {
+      values[x] = 2.0 * Math.pow(x, 1.7);
+    }
+    assertSameFit(values);
+  }
+
+  public void testChiSquareFitLogarithmic() {
+    double[] values = new double[40];
+    for (int x=0; x < values.length; x++) {
+      values[x] = 4.0 + Math.log(3.0 * x);
+    }
+    values[0] = 1.0;
+    assertSameFit(values);
+  }
+
+  public void testChiSquareFitNoisy() {
+    Random random = new Random(29);
+    for (int i=0; i < 20; i++) {
+      double[] values = new double[10 + random.nextInt(50)];
+      for (int x=0; x < values.length; x++) {
+        values[x] = random.nextDouble() * 100.0;
+        if (random.nextInt(10) == 0) {
+          values[x] = (random.nextBoolean()) ? Double.NaN : 0.0;
+        }
+      }
+      assertSameFit(values);
+    }
+  }
+
+  public void testBatchChiSquareFit() {
+    Random random = new Random(30);
+    double[][] values = new double[500][];
+    for (int i=0; i < values.length; i++) {
+      values[i] = new double[20 + random.nextInt(20)];
+      double scale = random.nextDouble() * 10.0;
+      for (int x=0; x < values[i].length; x++) {
+        values[i][x] = (i % 2 == 0) ? scale * Math.exp(0.1 * x) :
+                       scale * x + random.nextDouble();
+      }
+    }
+    CurveFitting.FitResults results = CurveFitting.chiSquareFit(values);
+    assertEquals(values.length, results.size());
+    for (int i=0; i < values.length; i++) {
+      Equation expected = CurveFitting.chiSquareFit(values[i]);
+      Equation actual = results.getEquation(i);
+      assertEquals(expected.getClass(), actual.getClass());
+      assertEquals(CurveFitting.getChiSquare(values[i], expected),
+                   results.getChiSquare()[i], 1e-9);
+      assertEquals(expected.solve(5), actual.solve(5), 1e-9);
+    }
+  }
+
+  public void testQuadraticFit() {
+    double[] values = new double[100];
+    for (int x=0; x < values.length; x++) {
+      values[x] = 1.0 - 2.5 * x + 0.25 * x * x;
+    }
+    values[10] = Double.NaN;
+    Polynomial result = CurveFitting.quadraticFit(values);
+    assertEquals(2, result.getDegree());
+    for (int x=0; x < values.length; x += 9) {
+      assertEquals(1.0 - 2.5 * x + 0.25 * x * x, result.solve(x), 1e-8);
+    }
+  }
+
+  public void testWeightedPolynomialFit() {
+    PolynomialFitter fitter = new PolynomialFitter(4);
+    Random random = new Random(31);
+    double[] expected = new double[] { 0.5, -1.0, 0.0, 2.0, -0.125 };
+    for (int i=0; i < 100000; i++) {
+      double x = random.nextDouble() * 4.0 - 2.0;
+      double y = new Polynomial(expected).solve(x);
+      fitter.add(x, y + random.nextGaussian() * 1e-6, 1.0 + random.nextDouble());
+    }
+    // an outlier with no weight has no effect
+    fitter.add(0.0, 1e6, 0.0);
+    double[] coefficients = fitter.getCoefficients();
+    for (int i=0; i < expected.length; i++) {
+      assertEquals(expected[i], coefficients[i], 1e-6);
+    }
+    assertEquals(100000, fitter.getCount());
+
+    double[] x = { 1, 2, 3, 4 };
+    double[] y = { 2, 4, 6, 100 };
+    double[] weights = { 1, 1, 1, 0 };
+    Polynomial line = CurveFitting.polynomialFit(x, y, weights, 1);
+    assertEquals(8.0, line.solve(4.0), 1e-12);
+  }
+
+  public void testUnderdeterminedPolynomialFit() {
+    PolynomialFitter fitter = new PolynomialFitter(2);
+    fitter.add(1.0, 1.0);
+    fitter.add(1.0, 2.0);
+    assertTrue(Double.isNaN(fitter.getCoefficients()[0]));
+  }
+
+  public void testIncrementalSlidingWindow() {
+    int[] models = { CurveFitting.LINEAR, CurveFitting.POWER_LAW,
+                     CurveFitting.LOGARITHMIC, CurveFitting.EXPONENTIAL };
+    Random random = new Random(32);
+    double[] x = new double[1000];
+    double[] y = new double[x.length];
+    for (int i=0; i < x.length; i++) {
+      x[i] = 1e6 + i;
+      y[i] = 1.0 + random.nextDouble();
+    }
+    for (int model : models) {
+      IncrementalFitter window = new IncrementalFitter(model);
+      for (int i=0; i < x.length; i++) {
+        window.add(x[i], y[i]);
+        if (i >= 50) {
+          window.remove(x[i - 50], y[i - 50]);
+        }
+      }
+      IncrementalFitter fresh = new IncrementalFitter(model);
+      for (int i=x.length - 50; i < x.length; i++) {
+        fresh.add(x[i], y[i]);
+      }
+      assertEquals(50, window.getCount());
+      assertEquals(fresh.getB(), window.getB(),
+                   1e-6 * Math.abs(fresh.getB()));
+      assertEquals(fresh.getEquation().solve(x[x.length - 1]),
+                   window.getEquation().solve(x[x.length - 1]), 1e-6);
+    }
+  }
+
+  public void testIncrementalModels() {
+    IncrementalFitter linear = new IncrementalFitter(CurveFitting.LINEAR);
+    IncrementalFitter power = new IncrementalFitter(CurveFitting.POWER_LAW);
+    IncrementalFitter log = new IncrementalFitter(CurveFitting.LOGARITHMIC);
+    IncrementalFitter exp = new IncrementalFitter(CurveFitting.EXPONENTIAL);
+    for (int x=0; x < 20; x++) {
+      linear.add(x, 3.0 + 2.0 * x);
+      power.add(x, 2.0 * Math.pow(x, 1.5));
+      log.add(x, 1.0 + 0.5 * Math.log(x));
+      exp.add(x, 4.0 * Math.exp(-0.3 * x));
+    }
+    // x = 0 is not defined for the power law and logarithmic models.
+    assertEquals(19, power.getCount());
+    assertEquals(20, exp.getCount());
+    assertEquals(43.0, linear.getEquation().solve(20), 1e-9);
+    assertEquals(2.0 * Math.pow(20, 1.5), power.getEquation().solve(20), 1e-9);
+    assertEquals(1.0 + 0.5 * Math.log(20), log.getEquation().solve(20), 1e-9);
+    assertEquals(4.0 * Math.exp(-6.0), exp.getEquation().solve(20), 1e-9);
+  }
+
+  public void testLevenbergMarquardt() {
+    Random random = new Random(33);
+    double[] x = new double[200];
+    double[] y = new double[x.length];
+    for (int i=0; i < x.length; i++) {
+      x[i] = i * 0.05;
+      // noise takes some of the values below zero
+      y[i] = 3.0 * Math.exp(-0.8 * x[i]) + random.nextGaussian() * 0.01 - 0.005;
+    }
+    LevenbergMarquardt fitter = new LevenbergMarquardt();
+    ParametricEquation result =
+      fitter.fit(new ExponentialEquation(1.0, -0.1), x, y);
+    assertTrue(fitter.hasConverged());
+    double[] parameters = result.getParameters();
+    assertEquals(3.0, parameters[0], 0.02);
+    assertEquals(-0.8, parameters[1], 0.02);
+
+    // a polynomial is linear in its parameters, so this matches least squares
+    ParametricEquation quadratic =
+      fitter.fit(new Polynomial(0.0, 0.0, 0.0), x, y);
+    double[] expected = CurveFitting.polynomialFit(x, y, 2).getParameters();
+    for (int i=0; i < expected.length; i++) {
+      assertEquals(expected[i], quadratic.getParameters()[i], 1e-6);
+    }
+  }
+
+  public void testLevenbergMarquardtBatch() {
+    double[] x = new double[50];
+    double[][] y = new double[100][x.length];
+    for (int i=0; i < x.length; i++) {
+      x[i] = i + 1;
+      for (int j=0; j < y.length; j++) {
+        y[j][i] = (j + 1) * Math.pow(x[i], 0.5 + j * 0.01);
+      }
+    }
+    ParametricEquation[] results =
+      LevenbergMarquardt.fit(new EquationTerm(1.0, 1.0), x, y);
+    for (int j=0; j < y.length; j++) {
+      assertEquals(j + 1, results[j].getParameters()[0], 1e-6);
+      assertEquals(0.5 + j * 0.01, results[j].getParameters()[1], 1e-8);
+    }
+  }
+
+  public void testBulkSolve() {
+    MultiPartEquation equation = new MultiPartEquation();
+    equation.add(new Polynomial(new double[] { 1.0, -2.0, 0.5, 0.25 }));
+    equation.add(new EquationTerm(3.0, 1.5));
+    equation.add(new EquationTerm(-1.0, 2.0));
+    equation.add(new ExponentialEquation(0.5, -0.1));
+    equation.add(new LogEquation(2.0, 3.0));
+    double[] x = new double[3000];
+    for (int i=0; i < x.length; i++) {
+      x[i] = i * 0.01;
+    }
+    double[] solutions = new double[x.length];
+    equation.solve(x, solutions);
+    for (int i=0; i < x.length; i++) {
+      assertEquals(equation.solve(x[i]), solutions[i], 0.0);
+    }
+    // solving in place
+    equation.solve(x, x);
+    for (int i=0; i < x.length; i++) {
+      assertEquals(solutions[i], x[i], 0.0);
+    }
+  }
+
+  public void testCompile() {
+    MultiPartEquation inner = new MultiPartEquation();
+    inner.add(new EquationTerm(2.0, 3.0));
+    inner.add(new ExponentialEquation(0.5, -0.1));
+    inner.add(new EquationTerm(1.5, 0.5));
+    MultiPartEquation equation = new MultiPartEquation();
+    equation.add(new Polynomial(1.0, -2.0, 0.5));
+    equation.add(inner);
+    equation.add(new ExponentialEquation(0.25, -0.1));
+    equation.add(new LogEquation(2.0, 3.0));
+    equation.add(new EquationTerm(4.0, 0));
+    Equation compiled = equation.compile();
+    double[] x = new double[500];
+    for (int i=0; i < x.length; i++) {
+      x[i] = i * 0.02;
+    }
+    double[] solutions = new double[x.length];
+    compiled.solve(x, solutions);
+    for (int i=0; i < x.length; i++) {
+      double expected = equation.solve(x[i]);
+      assertEquals(expected, compiled.solve(x[i]), 1e-12 * Math.abs(expected));
+      assertEquals(compiled.solve(x[i]), solutions[i], 0.0);
+    }
+    Equation derivative = compiled.derivative();
+    assertEquals(equation.derivative().solve(1.5), derivative.solve(1.5), 1e-12);
+  }
+
+  public void testParse() {
+    double[] xs = { 0.5, 1.0, 2.0, 7.5 };
+    for (double x : xs) {
+      assertEquals(3 * x * x - 2 * x + 1,
+                   EquationParser.parse("3x^2 - 2x + 1").solve(x), 1e-12);
+      assertEquals(1.5 * Math.exp(-0.2 * x) + 4,
+                   EquationParser.parse("1.5 * e^(-0.2x) + 4").solve(x), 1e-12);
+      assertEquals(2 * Math.log(3 * x) / 5,
+                   EquationParser.parse("2 ln(3x) / 5").solve(x), 1e-12);
+      assertEquals((x + 1) * (x - 1) - Math.sqrt(x) + 2.5e-1 / x,
+                   EquationParser.parse("(x+1)(x-1) - sqrt(x) + 2.5e-1/x").solve(x),
+                   1e-12);
+      assertEquals(Math.pow(2, x + 1),
+                   EquationParser.parse("2^(x + 1)").solve(x), 1e-12);
+    }
+    assertTrue(EquationParser.parse("x^2 + 2x^2") instanceof Polynomial);
+    try {
+      EquationParser.parse("x * e^x");
+      fail();
+    } catch (IllegalArgumentException e) { }
+    try {
+      EquationParser.parse("3x +");
+      fail();
+    } catch (IllegalArgumentException e) { }
+  }
+
+  public void testRepeatedDerivative() {
+    MultiPartEquation equation = new MultiPartEquation();
+    equation.add(new Polynomial(1.0, 2.0, 3.0, 4.0));
+    equation.add(new EquationTerm(5.0, 0));
+    equation.add(new ExponentialEquation(2.0, 0.5));
+    Equation current = equation;
+    for (int i=0; i < 6; i++) {
+      current = current.derivative();
+    }
+    // only the exponential term is left
+    assertTrue(current instanceof ExponentialEquation);
+    assertEquals(2.0 * Math.pow(0.5, 6) * Math.exp(0.5), current.solve(1.0),
+                 1e-12);
+    Equation integral = equation.integral(1.0);
+    assertEquals(2, ((MultiPartEquation)integral).size());
+    assertEquals(0.0, new EquationTerm(5.0, 0).derivative().solve(0.0));
+  }
+
+  public void testRepeatedPolynomialDerivative() {
+    Equation current = EquationParser.parse("x^3 - 2x");
+    double[] expected = { 3 * 4 - 2, 6 * 2, 6, 0, 0, 0 };
+    for (int i=0; i < expected.length; i++) {
+      current = current.derivative();
+      assertEquals(expected[i], current.solve(2.0), 1e-12);
+    }
+    assertEquals(0.0, new Polynomial(new double[0]).derivative().solve(1.0));
+    assertEquals(3.0, new Polynomial(new double[0]).integral(3.0).solve(1.0));
+  }
+
+  public void testRootFinder() {
+    RootFinder finder = new RootFinder();
+    Equation cubic = new Polynomial(-2.0, 0.0, 0.0, 1.0);
+    assertEquals(Math.cbrt(2.0), finder.findRoot(cubic, 0.0, 5.0), 1e-12);
+    assertEquals(Math.cbrt(2.0), finder.brent(cubic, 0.0, 0.0, 5.0), 1e-12);
+    // threshold crossing of a decaying curve
+    Equation decay = new ExponentialEquation(10.0, -0.5);
+    assertEquals(2 * Math.log(10.0), finder.findRoot(decay, 1.0, 0.0, 20.0),
+                 1e-10);
+    try {
+      finder.findRoot(cubic, 2.0, 5.0);
+      fail();
+    } catch (IllegalArgumentException e) { }
+
+    Equation[] equations = new Equation[1000];
+    for (int i=0; i < equations.length; i++) {
+      equations[i] = new Polynomial(-(i + 1), 1.0);
+    }
+    double[] roots = RootFinder.findRoots(equations, 0.0, 0.0, 500.0);
+    for (int i=0; i < equations.length; i++) {
+      assertEquals((i < 500) ? i + 1 : Double.NaN, roots[i], 1e-9);
+    }
+  }
+
+  public void testQuadrature() {
+    Quadrature quadrature = new Quadrature();
+    // LogEquation has no symbolic integral
+    double expected = 2 * Math.log(2) - 1;
+    assertEquals(expected, quadrature.integrate(new LogEquation(1.0), 1.0, 2.0),
+                 1e-12);
+    assertTrue(quadrature.getError() < 1e-10);
+    Equation equation = EquationParser.parse("3x^2 + e^(-x) + sqrt(x)");
+    assertEquals(8.0 + (1 - Math.exp(-2)) + Math.pow(2, 1.5) * 2 / 3,
+                 quadrature.integrate(equation, 0.0, 2.0), 1e-9);
+    Equation[] equations = new Equation[200];
+    for (int i=0; i < equations.length; i++) {
+      equations[i] = new EquationTerm(i, 2);
+    }
+    double[] integrals = Quadrature.integrate(equations, 0.0, 3.0);
+    for (int i=0; i < equations.length; i++) {
+      assertEquals(9.0 * i, integrals[i], 1e-9);
+    }
+  }
+
+  public void testQuadratureReversedLimits() {
+    Quadrature quadrature = new Quadrature();
+    Equation equation = new EquationTerm(1.0, 20);
+    double expected = Math.pow(2, 21) / 21;
+    assertEquals(expected, quadrature.integrate(equation, 0.0, 2.0), 1e-6);
+    double error = quadrature.getError();
+    assertEquals(-expected, quadrature.integrate(equation, 2.0, 0.0), 1e-6);
+    assertEquals(error, quadrature.getError());
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2013. Purdue University
+ *
+ * This file is distributed under the following terms (MIT/X11 License):
+ *
+ *   Permission is hereby granted, free of charge, to any person
+ *   obtaining a copy of this file and associated documentation
+ *   files (the "Software"), to deal in the Software without
+ *   restriction, including without limitation the rights to use,
+ *   copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the
+ *   Software is furnished to do so, subject to the following
+ *   conditions:
+ *
+ *   The above copyright notice and this permission notice shall be
+ *   included in all copies or substantial portions of the Software.
+ *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *   EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *   OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *   NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *   HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *   WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *   FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *   OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import edu.purdue.bbc.io.CSVTableReader;
+import edu.purdue.bbc.io.CSVTableWriter;
+import edu.purdue.bbc.io.ExternalSort;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Scanner;
+
+import junit.framework.*;
+
+public class ExternalSortTest extends TestCase {
+
+  private static String table(int rows) {
+    Random random = new Random(42);
+    StringBuilder returnValue = new StringBuilder("id,score\n");
+    for (int i=0; i < rows; i++) {
+      returnValue.append(i).append(',').append(random.nextInt(500))
+        .append('\n');
+    }
+    return returnValue.toString();
+  }
+
+  private static void assertSorted(Iterator<Map<String,String>> rows,
+                                   int count) {
+    int previousScore = -1;
+    int previousId = -1;
+    for (int i=0; i < count; i++) {
+      assertTrue(rows.hasNext());
+      Map<String,String> row = rows.next();
+      int score = Integer.parseInt(row.get("score"));
+      int id = Integer.parseInt(row.get("id"));
+      assertTrue(score >= previousScore);
+      if (score == previousScore)
+        assertTrue(id > previousId);
+      previousScore = score;
+      previousId = id;
+    }
+    assertFalse(rows.hasNext());
+  }
+
+  public void testInMemory() throws IOException {
+    ExternalSort sort =
+      new ExternalSort(ExternalSort.byNumber("score", false));
+    assertSorted(sort.sort(
+      new CSVTableReader(new Scanner(table(1000)), ",")), 1000);
+  }
+
+  public void testRuns() throws IOException {
+    ExternalSort sort =
+      new ExternalSort(ExternalSort.byNumber("score", false));
+    sort.setMemoryBudget(16384);
+    assertSorted(sort.sort(
+      new CSVTableReader(new Scanner(table(50000)), ",")), 50000);
+  }
+
+  public void testWriter() throws IOException {
+    ExternalSort sort =
+      new ExternalSort(ExternalSort.byString("name", true));
+    sort.setMemoryBudget(256);
+    StringWriter text = new StringWriter();
+    CSVTableWriter writer =
+      new CSVTableWriter(text, new String[]{"name", "value"}, ",", false);
+    assertEquals(4, sort.sort(new CSVTableReader(new Scanner(
+      "name,value\nb,1\nd,2\n,3\nc,4\n"), ","), writer));
+    writer.close();
+    String[] lines = text.toString().split("\r?\n");
+    assertEquals(5, lines.length);
+    assertEquals("d,2", lines[1]);
+    assertEquals("c,4", lines[2]);
+    assertEquals("b,1", lines[3]);
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2013. Purdue University
+ *
+ * This file is distributed under the following terms (MIT/X11 License):
+ *
+ *   Permission is hereby granted, free of charge, to any person
+ *   obtaining a copy of this file and associated documentation
+ *   files (the "Software"), to deal in the Software without
+ *   restriction, including without limitation the rights to use,
+ *   copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the
+ *   Software is furnished to do so, subject to the following
+ *   conditions:
+ *
+ *   The above copyright notice and this permission notice shall be
+ *   included in all copies or substantial portions of the Software.
+ *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *   EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *   OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *   NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *   HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *   WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *   FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *   OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import edu.purdue.bbc.io.CSVTableReader;
+import edu.purdue.bbc.util.attributes.BasicAttributes;
+import edu.purdue.bbc.util.attributes.FilterUtils;
+import edu.purdue.bbc.util.attributes.GroupBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+import junit.framework.*;
+
+public class GroupByTest extends TestCase {
+
+  public void testGroupBy() {
+    CSVTableReader reader = new CSVTableReader(new Scanner(
+      "name,score\na,1\nb,10\na,3\na,\nb,20\na,8\n"), ",");
+    GroupBy groupBy = new GroupBy("name");
+    groupBy.addAggregate("score", GroupBy.COUNT);
+    groupBy.addAggregate("score", GroupBy.MEAN);
+    groupBy.addAggregate("score", GroupBy.STANDARD_DEVIATION);
+    groupBy.addAggregate("score", GroupBy.MEDIAN);
+    groupBy.addAggregate("score", GroupBy.MAX);
+    List<BasicAttributes<Object>> groups =
+      groupBy.apply(FilterUtils.attributes(reader));
+    assertEquals(2, groups.size());
+    BasicAttributes<Object> a = groups.get(0);
+    assertEquals("a", a.getAttribute("name"));
+    assertEquals(4L, a.getAttribute("count"));
+    assertEquals(3L, a.getAttribute("count(score)"));
+    assertEquals(4.0, a.getAttribute("mean(score)"));
+    assertEquals(Math.sqrt(13.0), (Double)a.getAttribute("sd(score)"), 1e-12);
+    assertEquals(3.0, a.getAttribute("median(score)"));
+    assertEquals(8.0, a.getAttribute("max(score)"));
+    assertEquals(15.0, groups.get(1).getAttribute("mean(score)"));
+  }
+
+  public void testParallel() {
+    List<BasicAttributes<Object>> records =
+      new ArrayList<BasicAttributes<Object>>();
+    for (int i=0; i < 100000; i++) {
+      BasicAttributes<Object> record = new BasicAttributes<Object>();
+      record.setAttribute("group", Integer.valueOf(i % 7));
+      record.setAttribute("parity", Boolean.valueOf(i % 2 == 0));
+      record.setAttribute("value", Double.valueOf((i * 31) % 1000));
+      records.add(record);
+    }
+    GroupBy groupBy = new GroupBy("group", "parity");
+    groupBy.addAggregate("value", GroupBy.SUM);
+    groupBy.addAggregate("value", GroupBy.STANDARD_DEVIATION);
+    groupBy.addAggregate("value", GroupBy.FIRST_QUARTILE);
+    groupBy.addAggregate("value", GroupBy.MIN);
+    List<BasicAttributes<Object>> expected = groupBy.apply(records);
+    List<BasicAttributes<Object>> actual = groupBy.applyParallel(records);
+    assertEquals(14, expected.size());
+    assertEquals(expected.size(), actual.size());
+    for (int i=0; i < expected.size(); i++) {
+      BasicAttributes<Object> e = expected.get(i);
+      BasicAttributes<Object> g = actual.get(i);
+      assertEquals(e.getAttribute("group"), g.getAttribute("group"));
+      assertEquals(e.getAttribute("parity"), g.getAttribute("parity"));
+      assertEquals(e.getAttribute("count"), g.getAttribute("count"));
+      for (String name : new String[]{"sum(value)", "sd(value)",
+                                      "q1(value)", "min(value)"}) {
+        assertEquals(name, (Double)e.getAttribute(name),
+                     (Double)g.getAttribute(name), 1e-6);
+      }
+    }
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2013. Purdue University
+ *
+ * This file is distributed under the following terms (MIT/X11 License):
+ *
+ *   Permission is hereby granted, free of charge, to any person
+ *   obtaining a copy of this file and associated documentation
+ *   files (the "Software"), to deal in the Software without
+ *   restriction, including without limitation the rights to use,
+ *   copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the
+ *   Software is furnished to do so, subject to the following
+ *   conditions:
+ *
+ *   The above copyright notice and this permission notice shall be
+ *   included in all copies or substantial portions of the Software.
+ *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *   EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *   OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *   NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *   HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *   WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *   FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *   OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import edu.purdue.bbc.io.CSVTableReader;
+import edu.purdue.bbc.io.HashJoin;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+import junit.framework.*;
+
+public class HashJoinTest extends TestCase {
+
+  private static CSVTableReader reader(String text) {
+    return new CSVTableReader(new Scanner(text), ",");
+  }
+
+  private static Map<String,Map<String,String>> byKey(
+      Iterator<Map<String,String>> rows, String key) {
+    Map<String,Map<String,String>> returnValue =
+      new HashMap<String,Map<String,String>>();
+    while (rows.hasNext()) {
+      Map<String,String> row = rows.next();
+      assertNull(returnValue.put(row.get(key), row));
+    }
+    return returnValue;
+  }
+
+  public void testJoin() throws IOException {
+    HashJoin join = new HashJoin("id", "gene");
+    Map<String,Map<String,String>> rows = byKey(join.join(
+      reader("id,value,name\na,1,x\nb,2,y\nc,3,z\n"),
+      reader("gene,name,note\nc,w,third\na,v,first\nd,u,none\n")), "id");
+    assertEquals(2, rows.size());
+    assertEquals("1", rows.get("a").get("value"));
+    assertEquals("x", rows.get("a").get("name"));
+    assertEquals("first", rows.get("a").get("note"));
+    assertEquals("c", rows.get("c").get("gene"));
+    assertEquals("third", rows.get("c").get("note"));
+  }
+
+  public void testSpill() throws IOException {
+    StringBuilder left = new StringBuilder("id,value\n");
+    StringBuilder right = new StringBuilder("id,label\n");
+    for (int i=0; i < 1000; i++) {
+      left.append(i).append(',').append(i * 2).append('\n');
+      if (i % 3 == 0)
+        right.append(i).append(",label").append(i).append('\n');
+    }
+    HashJoin join = new HashJoin("id");
+    join.setMemoryBudget(4096);
+    Map<String,Map<String,String>> rows = byKey(
+      join.join(reader(left.toString()), reader(right.toString())), "id");
+    assertEquals(334, rows.size());
+    assertEquals("1998", rows.get("999").get("value"));
+    assertEquals("label999", rows.get("999").get("label"));
+    assertNull(rows.get("998"));
+  }
+
+  public void testFailedSpillDeletesFiles() throws IOException {
+    File directory = File.createTempFile("join", "");
+    directory.delete();
+    directory.mkdir();
+    StringBuilder right = new StringBuilder("id,label\n");
+    for (int i=0; i < 1000; i++) {
+      right.append(i).append(",label").append(i).append('\n');
+    }
+    final CSVTableReader left =
+      reader("id,value\n1,a\n2,b\n3,c\n4,d\n5,e\n");
+    Iterator<Map<String,String>> failing = new Iterator<Map<String,String>>() {
+      private int count = 0;
+      public boolean hasNext() {
+        return true;
+      }
+      public Map<String,String> next() {
+        if (++this.count > 3)
+          throw new IllegalStateException("read error");
+        return left.next();
+      }
+      public void remove() { }
+    };
+    HashJoin join = new HashJoin("id");
+    join.setMemoryBudget(4096);
+    join.setTempDirectory(directory);
+    try {
+      join.join(failing, reader(right.toString()));
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals("read error", e.getMessage());
+    }
+    assertEquals(0, directory.list().length);
+    directory.delete();
+  }
+
+  public void testSmallerSideBuilds() throws IOException {
+    List<Map<String,String>> left = new ArrayList<Map<String,String>>();
+    List<Map<String,String>> right = new ArrayList<Map<String,String>>();
+    for (int i=0; i < 5; i++) {
+      Map<String,String> row = new HashMap<String,String>();
+      row.put("id", String.valueOf(i % 2));
+      row.put("side", "left");
+      left.add(row);
+    }
+    Map<String,String> row = new HashMap<String,String>();
+    row.put("id", "1");
+    row.put("side", "right");
+    right.add(row);
+    Iterator<Map<String,String>> joined = new HashJoin("id").join(left, right);
+    int count = 0;
+    while (joined.hasNext()) {
+      assertEquals("left", joined.next().get("side"));
+      count++;
+    }
+    assertEquals(2, count);
+  }
+}
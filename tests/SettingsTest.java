@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2013. Purdue University
+ *
+ * This file is distributed under the following terms (MIT/X11 License):
+ *
+ *   Permission is hereby granted, free of charge, to any person
+ *   obtaining a copy of this file and associated documentation
+ *   files (the "Software"), to deal in the Software without
+ *   restriction, including without limitation the rights to use,
+ *   copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the
+ *   Software is furnished to do so, subject to the following
+ *   conditions:
+ *
+ *   The above copyright notice and this permission notice shall be
+ *   included in all copies or substantial portions of the Software.
+ *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *   EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *   OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *   NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *   HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *   WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *   FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *   OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import edu.purdue.bbc.util.Settings;
+import edu.purdue.bbc.util.SettingsEvent;
+import edu.purdue.bbc.util.SettingsListener;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.*;
+
+public class SettingsTest extends TestCase {
+
+  public void testTypedValues() {
+    Map<String,String> defaults = new HashMap<String,String>();
+    defaults.put("width", "640");
+    Settings settings = new Settings(defaults);
+    assertEquals(640, settings.getInt("width"));
+    assertEquals(640.0, settings.getDouble("width"));
+    assertEquals("false", settings.getProperty("debug"));
+    settings.setInt("width", 800);
+    assertEquals(800, settings.getInt("width"));
+    assertEquals(800.0, settings.getDouble("width", 1.0));
+    settings.remove("width");
+    assertEquals(640, settings.getInt("width"));
+    settings.getDefaults().setProperty("width", "320");
+    assertEquals(320, settings.getInt("width", 1));
+    assertEquals(5, settings.getInt("height", 5));
+    settings.set("flag", "true");
+    assertTrue(settings.getBoolean("flag"));
+    settings.put("flag", "false");
+    assertFalse(settings.getBoolean("flag", true));
+    settings.clear();
+    assertEquals(320, settings.getInt("width"));
+    assertNull(settings.get("flag"));
+    try {
+      settings.getInt("height");
+      fail();
+    } catch (NumberFormatException e) { }
+  }
+
+  private static class Recorder implements SettingsListener {
+    List<SettingsEvent> events = new ArrayList<SettingsEvent>();
+    CountDownLatch latch = new CountDownLatch(1);
+
+    public void settingsChanged(SettingsEvent event) {
+      this.events.add(event);
+      this.latch.countDown();
+    }
+  }
+
+  public void testListeners() throws InterruptedException {
+    Settings settings = new Settings();
+    settings.setProperty("a", "1");
+    Recorder all = new Recorder();
+    Recorder some = new Recorder();
+    Recorder other = new Recorder();
+    settings.addSettingsListener(all);
+    settings.addSettingsListener("a", some);
+    settings.addSettingsListener("b", some);
+    settings.addSettingsListener("z", other);
+    Map<String,String> changes = new HashMap<String,String>();
+    changes.put("a", "2");
+    changes.put("b", "3");
+    changes.put("c", "4");
+    synchronized (settings) {
+      settings.putAll(changes);
+      settings.setProperty("c", "5");
+      settings.setProperty("debug", "false");
+    }
+    assertTrue(all.latch.await(5, TimeUnit.SECONDS));
+    assertTrue(some.latch.await(5, TimeUnit.SECONDS));
+    Thread.sleep(100);
+    assertEquals(1, all.events.size());
+    SettingsEvent event = all.events.get(0);
+    assertSame(settings, event.getSettings());
+    assertEquals(3, event.getProperties().size());
+    assertEquals("1", event.getOldValue("a"));
+    assertEquals("2", event.getNewValue("a"));
+    assertNull(event.getOldValue("c"));
+    assertEquals("5", event.getNewValue("c"));
+    assertFalse(event.isChanged("debug"));
+    assertEquals(1, some.events.size());
+    assertEquals(2, some.events.get(0).getProperties().size());
+    assertFalse(some.events.get(0).isChanged("c"));
+    assertTrue(other.events.isEmpty());
+  }
+
+  public void testPersistence() throws IOException, InterruptedException {
+    File file = File.createTempFile("settings", ".xml");
+    File journal = new File(file.getPath() + ".journal");
+    file.delete();
+    try {
+      Settings settings = new Settings((Properties)null, file.getPath());
+      settings.setProperty("width", "800");
+      for (int i=0; i < 50 && !file.exists(); i++) {
+        Thread.sleep(100);
+      }
+      assertTrue(file.exists());
+      assertEquals(800, new Settings((Properties)null, file.getPath())
+        .getInt("width"));
+
+      settings.setJournaled(true);
+      settings.setProperty("name", "a\tb\nc");
+      settings.setProperty("width", "1024");
+      settings.flush();
+      assertTrue(journal.exists());
+      Settings loaded = new Settings((Properties)null, file.getPath());
+      assertEquals("a\tb\nc", loaded.get("name"));
+      assertEquals(1024, loaded.getInt("width"));
+      assertFalse(journal.exists());
+      assertFalse(new File(file.getPath() + ".tmp").exists());
+      assertEquals(1024, new Settings((Properties)null, file.getPath())
+        .getInt("width"));
+    } finally {
+      file.delete();
+      journal.delete();
+    }
+  }
+
+  public void testLoadDoesNotSave() throws IOException {
+    File file = File.createTempFile("settings", ".xml");
+    File journal = new File(file.getPath() + ".journal");
+    try {
+      Settings settings = new Settings((Properties)null, file.getPath());
+      settings.setProperty("a", "1");
+      settings.setProperty("b", "2");
+      settings.save();
+      settings.flush();
+      long modified = file.lastModified();
+
+      Settings loaded = new Settings((Properties)null, file.getPath());
+      loaded.setJournaled(true);
+      assertTrue(loaded.load());
+      loaded.flush();
+      assertEquals("2", loaded.get("b"));
+      assertFalse(journal.exists());
+      assertEquals(modified, file.lastModified());
+    } finally {
+      file.delete();
+      journal.delete();
+    }
+  }
+
+  public void testTornJournal() throws IOException {
+    File file = File.createTempFile("settings", ".xml");
+    File journal = new File(file.getPath() + ".journal");
+    try {
+      Settings settings = new Settings((Properties)null, file.getPath());
+      settings.setProperty("width", "5");
+      settings.save();
+      FileWriter writer = new FileWriter(journal);
+      writer.write("name\tx\nwidth\t6");
+      writer.close();
+
+      Settings loaded = new Settings((Properties)null, file.getPath());
+      assertEquals("x", loaded.get("name"));
+      assertEquals(5, loaded.getInt("width"));
+      assertFalse(journal.exists());
+    } finally {
+      file.delete();
+      journal.delete();
+    }
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2013. Purdue University
+ *
+ * This file is distributed under the following terms (MIT/X11 License):
+ *
+ *   Permission is hereby granted, free of charge, to any person
+ *   obtaining a copy of this file and associated documentation
+ *   files (the "Software"), to deal in the Software without
+ *   restriction, including without limitation the rights to use,
+ *   copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *   copies of the Software, and to permit persons to whom the
+ *   Software is furnished to do so, subject to the following
+ *   conditions:
+ *
+ *   The above copyright notice and this permission notice shall be
+ *   included in all copies or substantial portions of the Software.
+ *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ *   EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ *   OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ *   NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ *   HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ *   WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *   FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ *   OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+import edu.purdue.bbc.io.MappedSparseMatrix;
+import edu.purdue.bbc.io.SparseMatrixFile;
+import edu.purdue.bbc.util.CompressedSparseMatrix;
+import edu.purdue.bbc.util.ConcurrentSparseMatrix;
+import edu.purdue.bbc.util.SparseMatrix;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.*;
+
+public class SparseMatrixTest extends TestCase {
+
+  public void testConcurrentAddTo() throws InterruptedException {
+    final ConcurrentSparseMatrix matrix = new ConcurrentSparseMatrix( );
+    Thread[] threads = new Thread[4];
+    for (int t=0; t < threads.length; t++) {
+      threads[t] = new Thread() {
+        public void run() {
+          for (int i=0; i < 200; i++) {
+            for (int j=0; j < 50; j++) {
+              matrix.addTo(i, j - 25, 1.0);
+            }
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(200 * 50, matrix.size());
+    assertEquals(4.0, matrix.get(199, 24));
+    assertEquals(0.0, matrix.get(200, 0));
+    assertFalse(matrix.isSet(0, 25));
+  }
+
+  public void testFreeze() {
+    ConcurrentSparseMatrix matrix = new ConcurrentSparseMatrix(Double.NaN);
+    matrix.set(3, 1, 2.0);
+    matrix.set(3, -7, 1.5);
+    matrix.set(0, 2, 4.0);
+    matrix.set(-5, 0, 8.0);
+    CompressedSparseMatrix frozen = matrix.freeze();
+    assertEquals(4, frozen.size());
+    assertEquals(3, frozen.getRowCount());
+    assertEquals(2.0, frozen.get(3, 1));
+    assertEquals(8.0, frozen.get(-5, 0));
+    assertTrue(Double.isNaN(frozen.get(1, 3)));
+    int[] columns = frozen.getRowColumns(3);
+    assertEquals(2, columns.length);
+    assertEquals(-7, columns[0]);
+    assertEquals(1, columns[1]);
+    assertEquals(1.5, frozen.getRowValues(3)[0]);
+  }
+
+  public void testMultiply() {
+    ConcurrentSparseMatrix matrix = new ConcurrentSparseMatrix();
+    matrix.set(0, 0, 2.0);
+    matrix.set(0, 2, 1.0);
+    matrix.set(2, 1, -3.0);
+    double[] product = matrix.freeze().multiply(new double[]{1.0, 2.0, 3.0});
+    assertEquals(5.0, product[0]);
+    assertEquals(0.0, product[1]);
+    assertEquals(-6.0, product[2]);
+  }
+
+  public void testMappedFile() throws IOException {
+    SparseMatrix<Double> matrix = new SparseMatrix<Double>(0.5);
+    for (int i=0; i < 100; i++) {
+      matrix.set(i * 3, i * i - 200, (double)i);
+      matrix.set(i * 3, Integer.MAX_VALUE - i, -1.0 * i);
+    }
+    matrix.set(-1, Integer.MIN_VALUE, 7.0);
+    File file = File.createTempFile("sparse", ".bin");
+    try {
+      SparseMatrixFile.write(matrix, file);
+      MappedSparseMatrix mapped = SparseMatrixFile.map(file);
+      assertEquals(201L, mapped.size());
+      assertEquals(101, mapped.getRowCount());
+      assertEquals(0.5, mapped.getDefault());
+      for (int i=0; i < 100; i++) {
+        assertEquals((double)i, mapped.get(i * 3, i * i - 200));
+        assertEquals(-1.0 * i, mapped.get(i * 3, Integer.MAX_VALUE - i));
+        assertFalse(mapped.isSet(i * 3, i * i - 199));
+      }
+      assertEquals(7.0, mapped.get(-1, Integer.MIN_VALUE));
+      assertEquals(0.5, mapped.get(1, 1));
+
+      CompressedSparseMatrix loaded = SparseMatrixFile.read(file);
+      assertEquals(201, loaded.size());
+      assertEquals(9.0, loaded.get(27, -119));
+      assertEquals(2, mapped.getRowColumns(6).length);
+      assertEquals(-196, mapped.getRowColumns(6)[0]);
+    } finally {
+      file.delete();
+    }
+  }
+
+  public void testSymmetric() throws IOException {
+    SparseMatrix<Double> matrix = new SparseMatrix<Double>(0.0, true);
+    matrix.set(2, 0, 3.0);
+    matrix.set(1, 1, 2.0);
+    matrix.set(1, 2, -1.0);
+    assertEquals(3, matrix.size());
+    assertEquals(3.0, matrix.get(0, 2));
+    assertEquals(-1.0, matrix.get(2, 1));
+    assertEquals(2, matrix.getRow(2).size());
+    assertEquals(3.0, matrix.getRow(2).get(0));
+
+    double[] vector = new double[]{1.0, 10.0, 100.0};
+    CompressedSparseMatrix compressed = CompressedSparseMatrix.valueOf(matrix);
+    assertTrue(compressed.isSymmetric());
+    assertEquals(3.0, compressed.get(2, 0));
+    int[] columns = compressed.getRowColumns(2);
+    assertEquals(2, columns.length);
+    assertEquals(0, columns[0]);
+    assertEquals(1, columns[1]);
+    assertEquals(-1.0, compressed.getRowValues(2)[1]);
+    double[] product = compressed.multiply(vector);
+    assertEquals(300.0, product[0]);
+    assertEquals(-80.0, product[1]);
+    assertEquals(-7.0, product[2]);
+
+    File file = File.createTempFile("sparse", ".bin");
+    try {
+      SparseMatrixFile.write(compressed, file);
+      MappedSparseMatrix mapped = SparseMatrixFile.map(file);
+      assertTrue(mapped.isSymmetric());
+      assertEquals(-1.0, mapped.get(2, 1));
+      assertEquals(3.0, mapped.getRowValues(2)[0]);
+      assertEquals(1, mapped.getRowColumns(2)[1]);
+      double[] mappedProduct = new double[3];
+      mapped.multiply(vector, mappedProduct);
+      assertEquals(-80.0, mappedProduct[1]);
+      assertEquals(-7.0, mappedProduct[2]);
+    } finally {
+      file.delete();
+    }
+
+    ConcurrentSparseMatrix concurrent = 
+      new ConcurrentSparseMatrix(0.0, 4, true);
+    concurrent.addTo(5, 4, 1.0);
+    concurrent.addTo(4, 5, 1.0);
+    assertEquals(1, concurrent.size());
+    assertEquals(2.0, concurrent.freeze().get(5, 4));
+  }
+
+  public void testSymmetricRoundTrip() throws IOException {
+    SparseMatrix<Double> matrix = new SparseMatrix<Double>(0.0, true);
+    matrix.set(0, 1, 5.0);
+    matrix.set(1, 2, 1.0);
+    matrix.set(3, 2, 2.0);
+    CompressedSparseMatrix compressed = CompressedSparseMatrix.valueOf(matrix);
+    double[] vector = new double[]{1.0, 10.0, 100.0, 1000.0};
+    double[] expected = compressed.multiply(vector);
+    File file = File.createTempFile("sparse", ".bin");
+    try {
+      SparseMatrixFile.write(compressed, file);
+      MappedSparseMatrix mapped = SparseMatrixFile.map(file);
+      assertEquals((long)compressed.size(), mapped.size());
+      double[] product = new double[vector.length];
+      mapped.multiply(vector, product);
+      CompressedSparseMatrix loaded = SparseMatrixFile.read(file);
+      assertEquals(compressed.size(), loaded.size());
+      double[] loadedProduct = loaded.multiply(vector);
+      for (int i=0; i < vector.length; i++) {
+        assertEquals(expected[i], product[i]);
+        assertEquals(expected[i], loadedProduct[i]);
+      }
+      int[] columns = loaded.getRowColumns(1);
+      assertEquals(2, columns.length);
+      assertEquals(0, columns[0]);
+      assertEquals(2, columns[1]);
+    } finally {
+      file.delete();
+    }
+  }
+}